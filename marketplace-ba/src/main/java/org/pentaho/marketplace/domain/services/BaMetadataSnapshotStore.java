@@ -0,0 +1,30 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+/**
+ * Creates a marketplace metadata snapshot store in the BA server system folder.
+ */
+public class BaMetadataSnapshotStore extends MetadataSnapshotStore {
+
+  public BaMetadataSnapshotStore() {
+    super( getPentahoSystemPath( DEFAULT_SNAPSHOT_DIR_NAME ) );
+  }
+
+  private static String getPentahoSystemPath( String snapshotDirName ) {
+    return PentahoSystem.getApplicationContext().getSolutionPath( "system/" + snapshotDirName );
+  }
+}
@@ -0,0 +1,30 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+/**
+ * Creates a plugin package cache in the BA server system folder.
+ */
+public class BaPackageCache extends PackageCache {
+
+  public BaPackageCache() {
+    super( getPentahoSystemPath( DEFAULT_CACHE_DIR_NAME ) );
+  }
+
+  private static String getPentahoSystemPath( String cacheDirName ) {
+    return PentahoSystem.getApplicationContext().getSolutionPath( "system/" + cacheDirName );
+  }
+}
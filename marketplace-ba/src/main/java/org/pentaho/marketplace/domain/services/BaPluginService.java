@@ -15,7 +15,6 @@ package org.pentaho.marketplace.domain.services;
 
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.DirectoryFileFilter;
@@ -54,6 +53,8 @@ import org.pentaho.platform.util.VersionInfo;
 import org.pentaho.telemetry.ITelemetryService;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.xml.sax.InputSource;
 
 import java.io.File;
@@ -74,12 +75,33 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Plugin service implementation for the BA server
  */
 public class BaPluginService extends BasePluginService {
 
+  //region Inner Definitions
+  /**
+   * Parsed job definition, with the last modification time of the file it was parsed from.
+   */
+  private static final class CachedJobMeta {
+    private final JobMeta jobMeta;
+    private final long lastModified;
+
+    private CachedJobMeta( JobMeta jobMeta, long lastModified ) {
+      this.jobMeta = jobMeta;
+      this.lastModified = lastModified;
+    }
+  }
+  //endregion
+
   //region Constants
 
   private static final String CLOSE_METHOD_NAME = "close";
@@ -93,6 +115,7 @@ public class BaPluginService extends BasePluginService {
   private static final String DOWNLOAD_CACHE_FOLDER = CACHE_FOLDER + "downloads/";
   private static final String BACKUP_CACHE_FOLDER = CACHE_FOLDER + "backups/";
   private static final String STAGING_CACHE_FOLDER = CACHE_FOLDER + "staging/";
+  private static final String SAMPLES_STAGING_CACHE_FOLDER = CACHE_FOLDER + "staging_samples/";
 
   private static final String MARKETPLACE_FOLDER = "system/marketplace";
 
@@ -285,18 +308,36 @@ public class BaPluginService extends BasePluginService {
     return this.getJobMeta( UNINSTALL_JOB_NAME );
   }
 
-  private JobMeta getJobMeta( String jobFileName ) {
-    String jobFilePath = this.getAbsoluteKettleExecutionFolderPath().resolve( jobFileName ).toString();
-    JobMeta meta = null;
-    try {
-      meta = new JobMeta( jobFilePath, null );
-    } catch ( KettleXMLException e ) {
-      this.getLogger().error( "Unable to create job meta from file path " + jobFilePath, e );
+  /**
+   * Gets the definition of a job. Job files are only parsed again when they change, and every caller gets a copy of
+   * its own, so that the parameters of a run never leak into another.
+   */
+  protected JobMeta getJobMeta( String jobFileName ) {
+    File jobFile = this.getAbsoluteKettleExecutionFolderPath().resolve( jobFileName ).toFile();
+    long lastModified = jobFile.lastModified();
+
+    CachedJobMeta cachedJobMeta = this.jobMetas.get( jobFileName );
+    if ( cachedJobMeta == null || cachedJobMeta.lastModified != lastModified ) {
+      String jobFilePath = jobFile.getPath();
+      try {
+        cachedJobMeta = new CachedJobMeta( new JobMeta( jobFilePath, null ), lastModified );
+      } catch ( KettleXMLException e ) {
+        this.getLogger().error( "Unable to create job meta from file path " + jobFilePath, e );
+        this.jobMetas.remove( jobFileName );
+        return null;
+      }
+      this.jobMetas.put( jobFileName, cachedJobMeta );
     }
 
-    return meta;
+    // not cleared, so that entries keep resolving files relative to the job file
+    return (JobMeta) cachedJobMeta.jobMeta.realClone( false );
   }
 
+  /**
+   * Parsed job definitions, by job file name.
+   */
+  private final Map<String, CachedJobMeta> jobMetas = new ConcurrentHashMap<>();
+
   //endregion
 
   //region Constructors
@@ -322,33 +363,29 @@ public class BaPluginService extends BasePluginService {
   /**
    * Called after class is instantiated by Dependency Injector
    */
+  @Override
   public void init() {
+    super.init();
     this.copyKettleFilesToExecutionFolder();
   }
 
   /**
    * Called on object destruction by Dependency Injector
    */
+  @Override
   public void destroy() {
+    this.jobMetas.clear();
     this.deleteKettleFilesFromExecutionFolder();
+    super.destroy();
   }
   //endregion
 
 
   //region Methods
   @Override
-  public Map<String, IPlugin> getPlugins() {
-    Map<String, IPlugin> plugins = super.getPlugins();
-
-    // remove non BA plugins
-    CollectionUtils.filter( plugins.entrySet(), new Predicate() {
-      @Override public boolean evaluate( Object mapEntry ) {
-        Map.Entry<String, IPlugin> mapEntryCasted = (Map.Entry<String, IPlugin>) mapEntry;
-        return mapEntryCasted.getValue().getType() == MarketEntryType.Platform;
-      }
-    } );
-
-    return plugins;
+  protected boolean isSupported( IPlugin plugin ) {
+    // only BA plugins
+    return plugin.getType() == MarketEntryType.Platform;
   }
 
 
@@ -414,6 +451,35 @@ public class BaPluginService extends BasePluginService {
     return ( new File( pluginConfigPath ).isFile() );
   }
 
+  @Override
+  public <T> Callable<T> inCallerContext( final Callable<T> operation ) {
+    // permissions are checked and plugins unloaded using the caller's session
+    final IPentahoSession session = this.getCurrentSession();
+    final SecurityContext securityContext = SecurityContextHolder.getContext();
+
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        IPentahoSession previousSession = getCurrentSession();
+        SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+        setCurrentSession( session );
+        SecurityContextHolder.setContext( securityContext );
+        try {
+          return operation.call();
+        } finally {
+          setCurrentSession( previousSession );
+          SecurityContextHolder.setContext( previousSecurityContext );
+        }
+      }
+    };
+  }
+
+  @Override
+  protected Collection<File> getPluginFolders() {
+    // legacy plugins are installed in the system folder
+    return Collections.singletonList( new File( this.getApplicationContext().getSolutionPath( SYSTEM_FOLDER ) ) );
+  }
+
   @Override
   protected Collection<String> getInstalledNonOsgiPluginIds() {
     Collection<String> plugins = new HashSet<>();
@@ -456,17 +522,84 @@ public class BaPluginService extends BasePluginService {
 
   @Override
   protected boolean executeNonOsgiInstall( IPlugin plugin, IPluginVersion version ) {
+    if ( version.getSamplesDownloadUrl() != null ) {
+      // samples can only be imported into the repository by the install job
+      return this.executeNonOsgiInstallJob( plugin, version );
+    }
+
+    String pluginId = plugin.getId();
+    long installTime = new Date().getTime();
+    File stagingFolder = new File( this.getApplicationContext().getSolutionPath( STAGING_CACHE_FOLDER
+      + pluginId + "_" + installTime ) );
+    File pluginFolder = new File( this.getApplicationContext().getSolutionPath( SYSTEM_FOLDER + pluginId ) );
+    File backupFolder = new File( this.getApplicationContext().getSolutionPath( BACKUP_CACHE_FOLDER
+      + pluginId + "_" + installTime ) );
+    this.getLogger().info( "Installing plugin in folder: " + pluginFolder.getAbsolutePath() );
+
+    try {
+      // the installed plugin is left untouched until the new one is completely extracted
+      this.extractPackage( version.getDownloadUrl(), stagingFolder );
+      File stagedPluginFolder = new File( stagingFolder, pluginId );
+      if ( !stagedPluginFolder.isDirectory() ) {
+        this.getLogger().error( "Plugin package " + version.getDownloadUrl() + " did not contain " + pluginId );
+        return false;
+      }
+
+      boolean upgrade = pluginFolder.exists();
+      if ( upgrade ) {
+        moveFolder( pluginFolder, backupFolder );
+      }
+      try {
+        moveFolder( stagedPluginFolder, pluginFolder );
+      } catch ( IOException e ) {
+        if ( upgrade ) {
+          moveFolder( backupFolder, pluginFolder );
+        }
+        throw e;
+      }
+    } catch ( IOException e ) {
+      this.getLogger().error( "Unable to install plugin " + pluginId + " from " + version.getDownloadUrl(), e );
+      return false;
+    } finally {
+      FileUtils.deleteQuietly( stagingFolder );
+    }
+
+    this.pruneBackups( pluginId );
+    return true;
+  }
+
+  /**
+   * Installs a plugin by running the install job, which downloads the plugin and its samples, backs up the installed
+   * plugin, installs the new one and imports the samples into the repository.
+   */
+  private boolean executeNonOsgiInstallJob( IPlugin plugin, IPluginVersion version ) {
+    File downloadFile = new File( this.getApplicationContext().getSolutionPath( DOWNLOAD_CACHE_FOLDER
+      + plugin.getId() + "-" + version.getVersion() + "_" + new Date().getTime() + ".part" ) );
     try {
+      downloadFile.getParentFile().mkdirs();
+      // the package may already have been downloaded
+      File packageFile = this.getPackageFile( version.getDownloadUrl(), downloadFile.toPath() );
+      if ( packageFile == null ) {
+        return false;
+      }
+
       Result result =
-          this.executeInstallPluginJob( plugin.getId(), version.getDownloadUrl(), version.getSamplesDownloadUrl(),
+          this.executeInstallPluginJob( plugin.getId(), packageFile.toURI().toString(),
+            version.getSamplesDownloadUrl(),
             version.getVersion() );
 
       if ( result == null || result.getNrErrors() > 0 ) {
         return false;
       }
+      this.pruneBackups( plugin.getId() );
     } catch ( KettleException e ) {
       logger.error( e.getMessage(), e );
       return false;
+    } catch ( IOException e ) {
+      logger.error( "Unable to download plugin " + plugin.getId() + " from " + version.getDownloadUrl(), e );
+      return false;
+    } finally {
+      FileUtils.deleteQuietly( downloadFile );
     }
 
     return true;
@@ -480,6 +613,7 @@ public class BaPluginService extends BasePluginService {
       if ( result == null || result.getNrErrors() > 0 ) {
         return false;
       }
+      this.pruneBackups( plugin.getId() );
     } catch ( KettleException e ) {
       logger.error( e.getMessage(), e );
       return false;
@@ -488,6 +622,41 @@ public class BaPluginService extends BasePluginService {
     return true;
   }
 
+  /**
+   * Discards all but the latest backup of a plugin, and of its samples, so that a backup is not left behind by every
+   * upgrade and uninstall.
+   */
+  private void pruneBackups( String pluginId ) {
+    File backupsFolder = new File( this.getApplicationContext().getSolutionPath( BACKUP_CACHE_FOLDER ) );
+    this.pruneBackups( backupsFolder, Pattern.compile( Pattern.quote( pluginId ) + "_(\\d{1,18})" ) );
+    this.pruneBackups( backupsFolder, Pattern.compile( Pattern.quote( pluginId ) + "_samples_(\\d{1,18})" ) );
+  }
+
+  private void pruneBackups( File backupsFolder, Pattern backupNamePattern ) {
+    File[] backups = backupsFolder.listFiles();
+    if ( backups == null ) {
+      return;
+    }
+
+    // backups are named after the time they were taken
+    NavigableMap<Long, File> backupsByTime = new TreeMap<>();
+    for ( File backup : backups ) {
+      Matcher matcher = backupNamePattern.matcher( backup.getName() );
+      if ( backup.isDirectory() && matcher.matches() ) {
+        backupsByTime.put( Long.parseLong( matcher.group( 1 ) ), backup );
+      }
+    }
+    backupsByTime.pollLastEntry();
+
+    for ( File backup : backupsByTime.values() ) {
+      try {
+        this.discardFolder( backup );
+      } catch ( IOException e ) {
+        this.getLogger().warn( "Unable to discard plugin backup " + backup, e );
+      }
+    }
+  }
+
   private Result executeInstallPluginJob( String pluginId, String downloadUrl, String samplesDownloadUrl,
                                           String availableVersion )
     throws UnknownParamException {
@@ -500,6 +669,12 @@ public class BaPluginService extends BasePluginService {
 
     Job job = new Job( null, installMeta );
 
+    // the job deletes its staging folders when it is done, so each run gets folders of its own; a shared folder would
+    // take the plugins being staged by other installs along with it
+    long runTime = new Date().getTime();
+    String stagingFolder = STAGING_CACHE_FOLDER + pluginId + "_job_" + runTime + "/";
+    String samplesStagingFolder = SAMPLES_STAGING_CACHE_FOLDER + pluginId + "_job_" + runTime + "/";
+
     File file = new File( this.getApplicationContext().getSolutionPath( DOWNLOAD_CACHE_FOLDER ) );
     file.mkdirs();
     file = new File( this.getApplicationContext().getSolutionPath( BACKUP_CACHE_FOLDER ) );
@@ -521,18 +696,18 @@ public class BaPluginService extends BasePluginService {
           .getSolutionPath( DOWNLOAD_CACHE_FOLDER + pluginId + "-samples-" + availableVersion
           + "_" + new Date().getTime() + ".zip" ) );
       job.getJobMeta().setParameterValue( "samplesStagingDestination", this.getApplicationContext()
-          .getSolutionPath( "system/plugin-cache/staging_samples" ) );
+          .getSolutionPath( samplesStagingFolder ) );
       job.getJobMeta().setParameterValue( "samplesStagingDestinationAndDir", this.getApplicationContext()
-          .getSolutionPath( "system/plugin-cache/staging_samples/" + pluginId ) );
+          .getSolutionPath( samplesStagingFolder + pluginId ) );
     }
 
     job.getJobMeta().setParameterValue( "downloadDestination", this.getApplicationContext()
         .getSolutionPath( "system/plugin-cache/downloads/" + pluginId + "-" + availableVersion + "_"
           + new Date().getTime() + ".zip" ) );
     job.getJobMeta().setParameterValue( "stagingDestination", this.getApplicationContext()
-        .getSolutionPath( STAGING_CACHE_FOLDER ) );
+        .getSolutionPath( stagingFolder ) );
     job.getJobMeta().setParameterValue( "stagingDestinationAndDir", this.getApplicationContext()
-        .getSolutionPath( STAGING_CACHE_FOLDER + pluginId ) );
+        .getSolutionPath( stagingFolder + pluginId ) );
     job.getJobMeta().setParameterValue( "targetDestination", this.getApplicationContext()
         .getSolutionPath( "system/" + pluginId ) );
     job.getJobMeta().setParameterValue( "targetBackup", this.getApplicationContext()
@@ -541,11 +716,17 @@ public class BaPluginService extends BasePluginService {
     job.copyParametersFrom( job.getJobMeta() );
     job.setLogLevel( LogLevel.DETAILED );
     job.activateParameters();
-    job.start();
-    job.waitUntilFinished();
-    Result result = job.getResult(); // Execute the selected job.
+    try {
+      job.start();
+      job.waitUntilFinished();
+      Result result = job.getResult(); // Execute the selected job.
 
-    return result;
+      return result;
+    } finally {
+      // left behind when the job fails before cleaning up
+      FileUtils.deleteQuietly( new File( this.getApplicationContext().getSolutionPath( stagingFolder ) ) );
+      FileUtils.deleteQuietly( new File( this.getApplicationContext().getSolutionPath( samplesStagingFolder ) ) );
+    }
   }
 
   private Result executeUninstallPluginJob( String pluginId )
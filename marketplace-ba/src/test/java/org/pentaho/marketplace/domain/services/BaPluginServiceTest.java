@@ -17,13 +17,18 @@ import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.Repository;
 import org.apache.karaf.kar.KarService;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.osgi.framework.Bundle;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.pentaho.di.core.parameters.UnknownParamException;
+import org.pentaho.di.job.JobMeta;
 import org.pentaho.marketplace.domain.model.entities.MarketEntryType;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
@@ -46,28 +51,59 @@ import org.pentaho.telemetry.ITelemetryService;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class BaPluginServiceTest {
 
+  private static final String PLUGIN_ID = "myPlugin";
+  private static final String DOWNLOAD_URL = "http://marketplace.example.com/myPlugin-2.0.zip";
+  private static final String JOB_FILE_NAME = "test_job.kjb";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String versionWhileDownloading;
+  private boolean stagedWhileDownloading;
 
   private String getSolutionPath() {
     return System.getProperty( "user.dir" ) + "/target/test-classes/pentaho-solutions/";
@@ -87,6 +123,10 @@ public class BaPluginServiceTest {
    * @return a new test plugin service
    */
   private BaPluginService createPluginService() {
+    return this.createPluginService( this.getSolutionPath() );
+  }
+
+  private BaPluginService createPluginService( final String solutionPath ) {
     IDomainStatusMessageFactory domainStatusMessageFactory = this.domainStatusMessageFactory;
     IVersionDataFactory versionDataFactory = this.versionDataFactory;
     IPluginVersionFactory pluginVersionFactory = this.pluginVersionFactory;
@@ -110,7 +150,6 @@ public class BaPluginServiceTest {
       karService, featuresService, configurationAdmin, telemetryService, domainStatusMessageFactory, serializer, securityHelper, bundle );
 
     IApplicationContext applicationContext = mock( IApplicationContext.class );
-    final String solutionPath = this.getSolutionPath();
     when( applicationContext.getSolutionPath( anyString() ) ).thenAnswer( new Answer<String>() {
       @Override public String answer( InvocationOnMock invocation ) throws Throwable {
         String path = (String) invocation.getArguments()[ 0 ];
@@ -134,6 +173,118 @@ public class BaPluginServiceTest {
     return  userAuthentication;
   }
 
+  /**
+   * Creates a plugin service with its solution folder in a temporary folder, where version 1.0 of a plugin is
+   * installed, and which reads the package of version 2.0 from memory.
+   */
+  private BaPluginService createNativeInstallService( final byte[] pluginPackage ) throws IOException {
+    final File solutionFolder = this.temporaryFolder.getRoot();
+    writeVersion( this.getPluginFolder(), "1.0" );
+
+    BaPluginService service = spy( this.createPluginService( solutionFolder.getPath() + File.separator ) );
+    doAnswer( new Answer<InputStream>() {
+      @Override public InputStream answer( InvocationOnMock invocation ) throws Throwable {
+        return new SequenceInputStream( new ByteArrayInputStream( pluginPackage ), new InputStream() {
+          @Override
+          public int read() throws IOException {
+            // the whole package is extracted by now
+            versionWhileDownloading = readVersion( getPluginFolder() );
+            stagedWhileDownloading = !FileUtils.listFiles( getStagingFolder(), null, true ).isEmpty();
+            return -1;
+          }
+        } );
+      }
+    } ).when( service ).openPackageStream( DOWNLOAD_URL );
+
+    return service;
+  }
+
+  /**
+   * Creates the package of a plugin version, with a file telling the version.
+   */
+  private static byte[] createPackage( String pluginId, String version ) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try ( ZipOutputStream zipOutputStream = new ZipOutputStream( content ) ) {
+      zipOutputStream.putNextEntry( new ZipEntry( pluginId + "/version.txt" ) );
+      zipOutputStream.write( version.getBytes( StandardCharsets.UTF_8 ) );
+    }
+    return content.toByteArray();
+  }
+
+  private IPlugin createPlugin() {
+    IPlugin plugin = this.pluginFactory.create();
+    plugin.setId( PLUGIN_ID );
+    plugin.setType( MarketEntryType.Platform );
+    return plugin;
+  }
+
+  private IPluginVersion createVersion() {
+    IPluginVersion version = this.pluginVersionFactory.create();
+    version.setVersion( "2.0" );
+    version.setDownloadUrl( DOWNLOAD_URL );
+    return version;
+  }
+
+  private File getPluginFolder() {
+    return new File( this.temporaryFolder.getRoot(), "system" + File.separator + PLUGIN_ID );
+  }
+
+  private File getStagingFolder() {
+    return new File( this.temporaryFolder.getRoot(), "system/plugin-cache/staging".replace( '/', File.separatorChar ) );
+  }
+
+  private File getBackupsFolder() {
+    return new File( this.temporaryFolder.getRoot(), "system/plugin-cache/backups".replace( '/', File.separatorChar ) );
+  }
+
+  /**
+   * @return the backups of the plugin, leaving out the backups of its samples
+   */
+  private List<File> listPluginBackups() {
+    List<File> backups = new ArrayList<>();
+    File[] files = this.getBackupsFolder().listFiles();
+    if ( files != null ) {
+      for ( File file : files ) {
+        if ( file.getName().matches( PLUGIN_ID + "_\\d+" ) ) {
+          backups.add( file );
+        }
+      }
+    }
+    return backups;
+  }
+
+  /**
+   * Creates a plugin service with its solution folder in a temporary folder, and its kettle execution folder in it.
+   */
+  private BaPluginService createJobService() {
+    BaPluginService service = this.createPluginService( this.temporaryFolder.getRoot().getPath() + File.separator );
+    service.setRelativeKettleExecutionFolderPath( "kettle" );
+    return service;
+  }
+
+  /**
+   * Writes a job with a download url parameter into the kettle execution folder of a service.
+   */
+  private static File writeJob( BaPluginService service, String jobName ) throws IOException {
+    File jobFile = service.getAbsoluteKettleExecutionFolderPath().resolve( JOB_FILE_NAME ).toFile();
+    FileUtils.writeStringToFile( jobFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<job>\n"
+      + "  <name>" + jobName + "</name>\n"
+      + "  <parameters>\n"
+      + "    <parameter><name>downloadUrl</name><default_value/><description/></parameter>\n"
+      + "  </parameters>\n"
+      + "</job>\n", StandardCharsets.UTF_8 );
+    return jobFile;
+  }
+
+  private static void writeVersion( File pluginFolder, String version ) throws IOException {
+    FileUtils.writeStringToFile( new File( pluginFolder, "version.txt" ), version, StandardCharsets.UTF_8 );
+  }
+
+  private static String readVersion( File pluginFolder ) throws IOException {
+    return FileUtils.readFileToString( new File( pluginFolder, "version.txt" ), StandardCharsets.UTF_8 );
+  }
+
   // endregion
 
   @Before
@@ -345,9 +496,12 @@ public class BaPluginServiceTest {
     IPlugin actualPlugin = actualPlugins.get( pluginId );
     Collection<IPluginVersion> actualVersions = actualPlugin.getVersions();
 
-    assertThat( actualPlugin, is( equalTo( plugin ) ) );
+    assertThat( actualPlugin.getId(), is( equalTo( plugin.getId() ) ) );
     assertTrue( actualVersions.contains( compatibleVersion ) );
     assertFalse( actualVersions.contains( notCompatibleVersion ) );
+
+    // the plugin obtained from the provider is shared and must be left untouched
+    assertTrue( plugin.getVersions().contains( notCompatibleVersion ) );
   }
 
   /**
@@ -397,10 +551,317 @@ public class BaPluginServiceTest {
     assertThat( actualNotInstalledPlugin, is( notNullValue() ) );
     assertThat( actualInstalledPlugin.isInstalled(), is( true ) );
     assertThat( actualNotInstalledPlugin.isInstalled(), is( false ) );
+
+    // installed state is kept apart from the shared plugins obtained from the provider
+    assertThat( installedPlugin.isInstalled(), is( false ) );
   }
 
+  /**
+   * Tests that looking up single plugins uses the catalog built when listing the plugins and that only BA plugins
+   * are in it
+   */
+  @Test
+  public void testGetPluginUsesCatalog() {
+    // arrange
+    BaPluginService service = this.createPluginService();
+    service.setServerVersion( "5.2" );
 
+    IPluginVersion compatibleVersion = this.pluginVersionFactory.create();
+    compatibleVersion.setMinParentVersion( "1.0" );
+    compatibleVersion.setMaxParentVersion( "6.9.99" );
 
-  // endregion
+    IPlugin baPlugin = this.pluginFactory.create();
+    baPlugin.setId( "baPlugin" );
+    baPlugin.setType( MarketEntryType.Platform );
+    baPlugin.getVersions().add( compatibleVersion );
+
+    IPlugin diPlugin = this.pluginFactory.create();
+    diPlugin.setId( "diPlugin" );
+    diPlugin.setType( MarketEntryType.Step );
+    diPlugin.getVersions().add( compatibleVersion );
+
+    Map<String, IPlugin> plugins = new HashMap<>();
+    plugins.put( baPlugin.getId(), baPlugin );
+    plugins.put( diPlugin.getId(), diPlugin );
+
+    IPluginProvider pluginProvider = service.getMetadataPluginsProvider();
+    when( pluginProvider.getPlugins() ).thenReturn( plugins );
+
+    // act
+    Map<String, IPlugin> actualPlugins = service.getPlugins();
+    IPlugin actualBaPlugin = service.getPlugin( "baPlugin" );
+    IPlugin actualDiPlugin = service.getPlugin( "diPlugin" );
 
+    // assert
+    assertThat( actualPlugins.containsKey( "diPlugin" ), is( false ) );
+    assertThat( actualBaPlugin, is( notNullValue() ) );
+    assertThat( actualDiPlugin, is( nullValue() ) );
+    verify( pluginProvider, times( 1 ) ).getPlugins();
+  }
+  /**
+   * Tests that plugin version compatibility is only computed once for the same plugins and server version
+   */
+  @Test
+  public void testCompatibilityIsComputedOncePerSnapshotAndServerVersion() {
+    // arrange
+    this.versionDataFactory = spy( new VersionDataFactory() );
+    BaPluginService service = this.createPluginService();
+    service.setServerVersion( "5.2" );
+
+    IPluginVersion compatibleVersion = this.pluginVersionFactory.create();
+    compatibleVersion.setMinParentVersion( "1.0" );
+    compatibleVersion.setMaxParentVersion( "6.9.99" );
+
+    IPlugin plugin = this.pluginFactory.create();
+    plugin.setId( "myPlugin" );
+    plugin.setType( MarketEntryType.Platform );
+    plugin.getVersions().add( compatibleVersion );
+
+    Map<String, IPlugin> plugins = new HashMap<>();
+    plugins.put( plugin.getId(), plugin );
+
+    IPluginProvider pluginProvider = service.getMetadataPluginsProvider();
+    when( pluginProvider.getPlugins() ).thenReturn( plugins );
+    service.getPlugins();
+    reset( this.versionDataFactory );
+
+    // act
+    Map<String, IPlugin> samePlugins = service.getPlugins();
+
+    // assert
+    assertThat( samePlugins.containsKey( "myPlugin" ), is( true ) );
+    verify( this.versionDataFactory, never() ).create( anyString() );
+
+    // a different server version needs the compatibility computed again
+    service.setServerVersion( "7.0" );
+    Map<String, IPlugin> otherVersionPlugins = service.getPlugins();
+    assertThat( otherVersionPlugins.containsKey( "myPlugin" ), is( false ) );
+    verify( this.versionDataFactory, atLeastOnce() ).create( anyString() );
+  }
+
+  /**
+   * Tests that when the user trying to install several plugins is not authorized then every installation is denied
+   */
+  @Test
+  public void testBatchInstallDeniedNoRolesAndNonAdminUser() {
+    // arrange
+    BaPluginService service = this.createPluginService();
+    service.setAuthorizedRoles( Collections.<String>emptyList() );
+    ISecurityHelper securityHelper = service.getSecurityHelper();
+    when( securityHelper.isPentahoAdministrator( Mockito.any( IPentahoSession.class ) ) ).thenReturn( false );
+
+    Map<String, String> versionBranchesByPluginId = new LinkedHashMap<>();
+    versionBranchesByPluginId.put( "second", "stable" );
+    versionBranchesByPluginId.put( "first", "stable" );
+
+    // act
+    Map<String, IDomainStatusMessage> results = service.installPlugins( versionBranchesByPluginId );
+
+    // assert
+    assertThat( new ArrayList<>( results.keySet() ), is( equalTo( Arrays.asList( "second", "first" ) ) ) );
+    for ( IDomainStatusMessage result : results.values() ) {
+      assertThat( result.getCode(), is( equalTo( BasePluginService.UNAUTHORIZED_ACCESS_ERROR_CODE ) ) );
+    }
+  }
+
+  /**
+   * Tests that the plugins to install in a batch are resolved against a single catalog and each one gets its own result
+   */
+  @Test
+  public void testBatchInstallResolvesPluginsAgainstOneCatalog() {
+    // arrange
+    BaPluginService service = this.createPluginService();
+    service.setServerVersion( "5.2" );
+    service.setAuthorizedRoles( Collections.<String>emptyList() );
+    ISecurityHelper securityHelper = service.getSecurityHelper();
+    when( securityHelper.isPentahoAdministrator( Mockito.any( IPentahoSession.class ) ) ).thenReturn( true );
+
+    IPluginVersion compatibleVersion = this.pluginVersionFactory.create();
+    compatibleVersion.setBranch( "stable" );
+    compatibleVersion.setMinParentVersion( "1.0" );
+    compatibleVersion.setMaxParentVersion( "6.9.99" );
+
+    IPlugin plugin = this.pluginFactory.create();
+    plugin.setId( "myPlugin" );
+    plugin.setType( MarketEntryType.Platform );
+    plugin.getVersions().add( compatibleVersion );
+
+    Map<String, IPlugin> plugins = new HashMap<>();
+    plugins.put( plugin.getId(), plugin );
+
+    IPluginProvider pluginProvider = service.getMetadataPluginsProvider();
+    when( pluginProvider.getPlugins() ).thenReturn( plugins );
+
+    Map<String, String> versionBranchesByPluginId = new LinkedHashMap<>();
+    versionBranchesByPluginId.put( "myPlugin", "unknownBranch" );
+    versionBranchesByPluginId.put( "unknownPlugin", "stable" );
+    versionBranchesByPluginId.put( "invalid.id", "stable" );
+
+    // act
+    Map<String, IDomainStatusMessage> results = service.installPlugins( versionBranchesByPluginId );
+
+    // assert
+    assertThat( new ArrayList<>( results.keySet() ),
+      is( equalTo( Arrays.asList( "myPlugin", "unknownPlugin", "invalid.id" ) ) ) );
+    for ( IDomainStatusMessage result : results.values() ) {
+      assertThat( result.getCode(), is( equalTo( BasePluginService.NO_PLUGIN_ERROR_CODE ) ) );
+    }
+    verify( pluginProvider, times( 1 ) ).getPlugins();
+  }
+
+  /**
+   * Tests that the package of a plugin is extracted into a staging folder, and only replaces the installed plugin once
+   * it is completely extracted.
+   */
+  @Test
+  public void testNativeUpgradeStagesPackageBeforeReplacingPlugin() throws IOException {
+    // arrange
+    BaPluginService service = this.createNativeInstallService( createPackage( PLUGIN_ID, "2.0" ) );
+
+    // act
+    boolean installed = service.executeNonOsgiInstall( this.createPlugin(), this.createVersion() );
+
+    // assert
+    assertThat( installed, is( true ) );
+    assertThat( this.stagedWhileDownloading, is( true ) );
+    assertThat( this.versionWhileDownloading, is( equalTo( "1.0" ) ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( equalTo( "2.0" ) ) );
+    assertThat( FileUtils.listFiles( this.getStagingFolder(), null, true ).isEmpty(), is( true ) );
+  }
+
+  /**
+   * Tests that the plugin replaced by an upgrade is renamed into a backup folder.
+   */
+  @Test
+  public void testNativeUpgradeMovesReplacedPluginToBackup() throws IOException {
+    // arrange
+    BaPluginService service = this.createNativeInstallService( createPackage( PLUGIN_ID, "2.0" ) );
+
+    // act
+    boolean installed = service.executeNonOsgiInstall( this.createPlugin(), this.createVersion() );
+
+    // assert
+    assertThat( installed, is( true ) );
+    List<File> backups = this.listPluginBackups();
+    assertThat( backups.size(), is( 1 ) );
+    assertThat( readVersion( backups.get( 0 ) ), is( equalTo( "1.0" ) ) );
+  }
+
+  /**
+   * Tests that a package which does not contain the plugin leaves the installed plugin untouched.
+   */
+  @Test
+  public void testNativeInstallOfPackageWithoutPluginLeavesPluginUntouched() throws IOException {
+    // arrange
+    BaPluginService service = this.createNativeInstallService( createPackage( "otherPlugin", "2.0" ) );
+
+    // act
+    boolean installed = service.executeNonOsgiInstall( this.createPlugin(), this.createVersion() );
+
+    // assert
+    assertThat( installed, is( false ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( equalTo( "1.0" ) ) );
+    assertThat( this.listPluginBackups().isEmpty(), is( true ) );
+    assertThat( FileUtils.listFiles( this.getStagingFolder(), null, true ).isEmpty(), is( true ) );
+  }
+
+  /**
+   * Tests that only the latest backup of a plugin, and of its samples, is kept once a plugin is upgraded, and that the
+   * backups of other plugins are left alone.
+   */
+  @Test
+  public void testNativeUpgradeKeepsOnlyLatestBackup() throws IOException {
+    // arrange
+    BaPluginService service = this.createNativeInstallService( createPackage( PLUGIN_ID, "2.0" ) );
+    File backupsFolder = this.getBackupsFolder();
+    writeVersion( new File( backupsFolder, PLUGIN_ID + "_1000" ), "0.1" );
+    writeVersion( new File( backupsFolder, PLUGIN_ID + "_2000" ), "0.2" );
+    File oldSamplesBackup = new File( backupsFolder, PLUGIN_ID + "_samples_1000" );
+    File latestSamplesBackup = new File( backupsFolder, PLUGIN_ID + "_samples_2000" );
+    File otherPluginBackup = new File( backupsFolder, PLUGIN_ID + "Extra_1000" );
+    assertThat( oldSamplesBackup.mkdirs() && latestSamplesBackup.mkdirs() && otherPluginBackup.mkdirs(), is( true ) );
+
+    // act
+    boolean installed = service.executeNonOsgiInstall( this.createPlugin(), this.createVersion() );
+
+    // assert
+    assertThat( installed, is( true ) );
+    List<File> backups = this.listPluginBackups();
+    assertThat( backups.size(), is( 1 ) );
+    assertThat( readVersion( backups.get( 0 ) ), is( equalTo( "1.0" ) ) );
+    assertThat( oldSamplesBackup.exists(), is( false ) );
+    assertThat( latestSamplesBackup.exists(), is( true ) );
+    assertThat( otherPluginBackup.exists(), is( true ) );
+  }
+
+  /**
+   * Tests that a plugin version with samples is installed by the install job, which imports the samples, instead of
+   * being extracted natively.
+   */
+  @Test
+  public void testInstallWithSamplesFallsBackToInstallJob() throws IOException {
+    // arrange
+    BaPluginService service = this.createNativeInstallService( createPackage( PLUGIN_ID, "2.0" ) );
+    IPluginVersion version = this.createVersion();
+    version.setSamplesDownloadUrl( "http://marketplace.example.com/myPlugin-samples-2.0.zip" );
+    // the package can not be obtained, so that the job is not run
+    doReturn( null ).when( service ).getPackageFile( eq( DOWNLOAD_URL ), any( Path.class ) );
+
+    // act
+    boolean installed = service.executeNonOsgiInstall( this.createPlugin(), version );
+
+    // assert
+    assertThat( installed, is( false ) );
+    verify( service ).getPackageFile( eq( DOWNLOAD_URL ), any( Path.class ) );
+    verify( service, never() ).extractPackage( anyString(), any( File.class ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( equalTo( "1.0" ) ) );
+  }
+
+  /**
+   * Tests that a job file is only parsed again once its modification time changes.
+   */
+  @Test
+  public void testJobMetaIsReloadedWhenJobFileChanges() throws IOException {
+    // arrange
+    BaPluginService service = this.createJobService();
+    File jobFile = writeJob( service, "first" );
+    long lastModified = jobFile.lastModified();
+    service.getJobMeta( JOB_FILE_NAME );
+
+    // a change that keeps the modification time is not noticed
+    writeJob( service, "second" );
+    assertThat( jobFile.setLastModified( lastModified ), is( true ) );
+    JobMeta cachedJobMeta = service.getJobMeta( JOB_FILE_NAME );
+
+    // act
+    assertThat( jobFile.setLastModified( lastModified + 2000 ), is( true ) );
+    JobMeta reloadedJobMeta = service.getJobMeta( JOB_FILE_NAME );
+
+    // assert
+    assertThat( cachedJobMeta.getName(), is( equalTo( "first" ) ) );
+    assertThat( reloadedJobMeta.getName(), is( equalTo( "second" ) ) );
+  }
+
+  /**
+   * Tests that changing a job definition obtained from the service leaves the parsed definition untouched, so that the
+   * parameters of a run do not leak into the next one.
+   */
+  @Test
+  public void testReturnedJobMetaChangesDoNotLeakIntoCache() throws IOException, UnknownParamException {
+    // arrange
+    BaPluginService service = this.createJobService();
+    writeJob( service, "first" );
+    JobMeta firstJobMeta = service.getJobMeta( JOB_FILE_NAME );
+
+    // act
+    firstJobMeta.setName( "changed" );
+    firstJobMeta.setParameterValue( "downloadUrl", DOWNLOAD_URL );
+    JobMeta secondJobMeta = service.getJobMeta( JOB_FILE_NAME );
+
+    // assert
+    assertThat( secondJobMeta, is( not( sameInstance( firstJobMeta ) ) ) );
+    assertThat( secondJobMeta.getName(), is( equalTo( "first" ) ) );
+    assertThat( secondJobMeta.getParameterValue( "downloadUrl" ), is( not( equalTo( DOWNLOAD_URL ) ) ) );
+  }
+  // endregion
 }
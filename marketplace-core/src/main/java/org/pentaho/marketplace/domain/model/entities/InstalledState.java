@@ -0,0 +1,72 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.model.entities;
+
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+
+/**
+ * Immutable installation state of a plugin in the running server / spoon. It is kept apart from the plugins obtained
+ * from the marketplace metadata so that those can be shared between threads.
+ */
+public final class InstalledState {
+
+  // region Constants
+  public static final InstalledState NOT_INSTALLED = new InstalledState( false, null, null, null );
+  // endregion
+
+  // region Properties
+  private final boolean installed;
+  private final String branch;
+  private final String version;
+  private final String buildId;
+
+  public boolean isInstalled() {
+    return this.installed;
+  }
+
+  public String getBranch() {
+    return this.branch;
+  }
+
+  public String getVersion() {
+    return this.version;
+  }
+
+  public String getBuildId() {
+    return this.buildId;
+  }
+  // endregion
+
+  // region Constructors
+  private InstalledState( boolean installed, String branch, String version, String buildId ) {
+    this.installed = installed;
+    this.branch = branch;
+    this.version = version;
+    this.buildId = buildId;
+  }
+
+  /**
+   * Creates the state of an installed plugin.
+   * @param installedVersion the installed version, or null if it could not be determined.
+   * @return the installed state
+   */
+  public static InstalledState installed( IPluginVersion installedVersion ) {
+    if ( installedVersion == null ) {
+      return new InstalledState( true, null, null, null );
+    }
+    return new InstalledState( true, installedVersion.getBranch(), installedVersion.getVersion(),
+      installedVersion.getBuildId() );
+  }
+  // endregion
+}
@@ -16,6 +16,7 @@ package org.pentaho.marketplace.domain.model.entities;
 import org.pentaho.marketplace.domain.model.entities.interfaces.ICategory;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+import org.pentaho.marketplace.util.CompressedText;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,14 +37,14 @@ public class Plugin implements IPlugin {
   private String installedBranch;
   private String installedVersion;
   private String installedBuildId;
-  private String installationNotes;
+  private CompressedText installationNotes;
   private boolean installed;
   private Collection<IPluginVersion> versions;
   private String[] screenshots;
   private String dependencies;
   private String license;
   private String licenseName;
-  private String licenseText;
+  private CompressedText licenseText;
   private ICategory category;
 
   private MarketEntryType type;
@@ -160,10 +161,18 @@ public class Plugin implements IPlugin {
 
   @Override
   public String getInstallationNotes() {
-    return this.installationNotes;
+    return CompressedText.textOf( this.installationNotes );
   }
   @Override
   public void setInstallationNotes( String value ) {
+    this.installationNotes = CompressedText.of( value );
+  }
+  @Override
+  public CompressedText getCompressedInstallationNotes() {
+    return this.installationNotes;
+  }
+  @Override
+  public void setCompressedInstallationNotes( CompressedText value ) {
     this.installationNotes = value;
   }
 
@@ -223,9 +232,15 @@ public class Plugin implements IPlugin {
   }
 
   @Override public String getLicenseText() {
-    return this.licenseText;
+    return CompressedText.textOf( this.licenseText );
   }
   @Override public void setLicenseText( String value ) {
+    this.licenseText = CompressedText.of( value );
+  }
+  @Override public CompressedText getCompressedLicenseText() {
+    return this.licenseText;
+  }
+  @Override public void setCompressedLicenseText( CompressedText value ) {
     this.licenseText = value;
   }
 
@@ -0,0 +1,169 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.model.entities;
+
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
+import org.pentaho.marketplace.util.DownloadProgress;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A plugin install or uninstall, or the install of a batch of plugins, submitted to run in the background; or a plugin
+ * rollback, which runs on the thread that requested it. Installing an already installed plugin upgrades it.
+ */
+public final class PluginJob {
+
+  // region Inner Definitions
+  public enum Type {
+    INSTALL,
+    UNINSTALL,
+    BATCH_INSTALL,
+    ROLLBACK
+  }
+
+  public enum State {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED
+  }
+  // endregion
+
+  // region Properties
+  private final String id;
+  private final Type type;
+  private final String pluginId;
+  private final String versionBranch;
+  private final Map<String, String> versionBranchesByPluginId;
+  private final Map<String, IDomainStatusMessage> pluginStatusMessages = new LinkedHashMap<>();
+  private final long createdAt;
+  private final DownloadProgress downloadProgress = new DownloadProgress();
+
+  private volatile State state = State.QUEUED;
+  private volatile IDomainStatusMessage statusMessage;
+  private volatile long finishedAt;
+
+  public String getId() {
+    return this.id;
+  }
+
+  public Type getType() {
+    return this.type;
+  }
+
+  /**
+   * @return the id of the plugin; null for batch installs.
+   */
+  public String getPluginId() {
+    return this.pluginId;
+  }
+
+  /**
+   * @return the branch of the version to install; null for uninstalls.
+   */
+  public String getVersionBranch() {
+    return this.versionBranch;
+  }
+
+  /**
+   * @return the ids of the plugins of the job, in order, with the branch of the version to install of each one; the
+   * branches are null for uninstalls. The returned map can not be changed.
+   */
+  public Map<String, String> getVersionBranchesByPluginId() {
+    return this.versionBranchesByPluginId;
+  }
+
+  /**
+   * @return the outcome of each plugin of a batch install known so far, by plugin id.
+   */
+  public Map<String, IDomainStatusMessage> getPluginStatusMessages() {
+    synchronized ( this.pluginStatusMessages ) {
+      return new LinkedHashMap<>( this.pluginStatusMessages );
+    }
+  }
+
+  public long getCreatedAt() {
+    return this.createdAt;
+  }
+
+  public State getState() {
+    return this.state;
+  }
+
+  /**
+   * @return the outcome of the job; null while it is not finished.
+   */
+  public IDomainStatusMessage getStatusMessage() {
+    return this.statusMessage;
+  }
+
+  /**
+   * @return the time the job finished, or zero while it is not finished.
+   */
+  public long getFinishedAt() {
+    return this.finishedAt;
+  }
+
+  public boolean isFinished() {
+    State state = this.state;
+    return state == State.SUCCEEDED || state == State.FAILED;
+  }
+
+  public DownloadProgress getDownloadProgress() {
+    return this.downloadProgress;
+  }
+  // endregion
+
+  // region Constructors
+  public PluginJob( String id, Type type, String pluginId, String versionBranch ) {
+    this.id = id;
+    this.type = type;
+    this.pluginId = pluginId;
+    this.versionBranch = versionBranch;
+    this.versionBranchesByPluginId = pluginId != null
+      ? Collections.singletonMap( pluginId, versionBranch ) : Collections.<String, String>emptyMap();
+    this.createdAt = System.currentTimeMillis();
+  }
+
+  public PluginJob( String id, Map<String, String> versionBranchesByPluginId ) {
+    this.id = id;
+    this.type = Type.BATCH_INSTALL;
+    this.pluginId = null;
+    this.versionBranch = null;
+    this.versionBranchesByPluginId =
+      Collections.unmodifiableMap( new LinkedHashMap<>( versionBranchesByPluginId ) );
+    this.createdAt = System.currentTimeMillis();
+  }
+  // endregion
+
+  // region Methods
+  public void start() {
+    this.state = State.RUNNING;
+  }
+
+  public void setPluginStatusMessage( String pluginId, IDomainStatusMessage statusMessage ) {
+    synchronized ( this.pluginStatusMessages ) {
+      this.pluginStatusMessages.put( pluginId, statusMessage );
+    }
+  }
+
+  public void finish( boolean succeeded, IDomainStatusMessage statusMessage ) {
+    this.statusMessage = statusMessage;
+    this.finishedAt = System.currentTimeMillis();
+    this.state = succeeded ? State.SUCCEEDED : State.FAILED;
+  }
+  // endregion
+}
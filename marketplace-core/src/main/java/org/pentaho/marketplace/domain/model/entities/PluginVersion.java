@@ -15,6 +15,7 @@ package org.pentaho.marketplace.domain.model.entities;
 
 import org.pentaho.marketplace.domain.model.entities.interfaces.IDevelopmentStage;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+import org.pentaho.marketplace.util.CompressedText;
 
 import javax.xml.bind.annotation.XmlRootElement;
 
@@ -28,7 +29,7 @@ public class PluginVersion implements IPluginVersion {
   private String downloadUrl;
   private String samplesDownloadUrl;
   private String description;
-  private String changelog;
+  private CompressedText changelog;
   private String buildId;
   private String releaseDate;
   private String minParentVersion;
@@ -100,11 +101,21 @@ public class PluginVersion implements IPluginVersion {
 
   @Override
   public String getChangelog() {
-    return this.changelog;
+    return CompressedText.textOf( this.changelog );
   }
 
   @Override
   public void setChangelog( String value ) {
+    this.changelog = CompressedText.of( value );
+  }
+
+  @Override
+  public CompressedText getCompressedChangelog() {
+    return this.changelog;
+  }
+
+  @Override
+  public void setCompressedChangelog( CompressedText value ) {
     this.changelog = value;
   }
 
@@ -0,0 +1,311 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.model.entities;
+
+import org.pentaho.marketplace.domain.model.entities.interfaces.ICategory;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+import org.pentaho.marketplace.util.CompressedText;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Read only view of a plugin obtained from the marketplace metadata, restricted to the versions compatible with the
+ * running server / spoon and merged with the plugin {@link InstalledState}.
+ *
+ * The viewed plugin is shared and never changed, so views are cheap to create and safe to share between threads.
+ * All setters throw {@link UnsupportedOperationException}.
+ */
+public final class PluginView implements IPlugin {
+
+  // region Properties
+  private final IPlugin plugin;
+  private final Collection<IPluginVersion> versions;
+  private final InstalledState installedState;
+
+  /**
+   * @return the viewed plugin, with all its versions and no installed state.
+   */
+  public IPlugin getPlugin() {
+    return this.plugin;
+  }
+
+  public InstalledState getInstalledState() {
+    return this.installedState;
+  }
+  // endregion
+
+  // region Constructors
+  /**
+   * @param plugin the plugin to view
+   * @param versions the versions of the plugin to expose
+   * @param installedState the installation state of the plugin
+   */
+  public PluginView( IPlugin plugin, Collection<IPluginVersion> versions, InstalledState installedState ) {
+    this.plugin = plugin instanceof PluginView ? ( (PluginView) plugin ).getPlugin() : plugin;
+    this.versions = Collections.unmodifiableCollection( versions );
+    this.installedState = installedState != null ? installedState : InstalledState.NOT_INSTALLED;
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * @param installedState the installation state of the plugin
+   * @return a view of the same plugin and versions with the given installation state.
+   */
+  public PluginView withInstalledState( InstalledState installedState ) {
+    return new PluginView( this.plugin, this.versions, installedState );
+  }
+
+  private static UnsupportedOperationException readOnly() {
+    return new UnsupportedOperationException( "Plugin views are read only." );
+  }
+  // endregion
+
+  //region IPlugin implementation
+  @Override
+  public String getId() {
+    return this.plugin.getId();
+  }
+  @Override
+  public void setId( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getName() {
+    return this.plugin.getName();
+  }
+  @Override
+  public void setName( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getImg() {
+    return this.plugin.getImg();
+  }
+  @Override
+  public void setImg( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getSmallImg() {
+    return this.plugin.getSmallImg();
+  }
+  @Override
+  public void setSmallImg( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getDocumentationUrl() {
+    return this.plugin.getDocumentationUrl();
+  }
+  @Override
+  public void setDocumentationUrl( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getDescription() {
+    return this.plugin.getDescription();
+  }
+  @Override
+  public void setDescription( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getAuthorName() {
+    return this.plugin.getAuthorName();
+  }
+  @Override
+  public void setAuthorName( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getAuthorUrl() {
+    return this.plugin.getAuthorUrl();
+  }
+  @Override
+  public void setAuthorUrl( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getAuthorLogo() {
+    return this.plugin.getAuthorLogo();
+  }
+  @Override
+  public void setAuthorLogo( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getInstalledBranch() {
+    return this.installedState.getBranch();
+  }
+  @Override
+  public void setInstalledBranch( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getInstalledVersion() {
+    return this.installedState.getVersion();
+  }
+  @Override
+  public void setInstalledVersion( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getInstalledBuildId() {
+    return this.installedState.getBuildId();
+  }
+  @Override
+  public void setInstalledBuildId( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getInstallationNotes() {
+    return this.plugin.getInstallationNotes();
+  }
+  @Override
+  public void setInstallationNotes( String value ) {
+    throw readOnly();
+  }
+  @Override
+  public CompressedText getCompressedInstallationNotes() {
+    return this.plugin.getCompressedInstallationNotes();
+  }
+  @Override
+  public void setCompressedInstallationNotes( CompressedText value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public boolean isInstalled() {
+    return this.installedState.isInstalled();
+  }
+  @Override
+  public void setInstalled( boolean value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public Collection<IPluginVersion> getVersions() {
+    return this.versions;
+  }
+  @Override
+  public void setVersions( Collection<IPluginVersion> value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String[] getScreenshots() {
+    return this.plugin.getScreenshots();
+  }
+  @Override
+  public void setScreenshots( String[] value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getDependencies() {
+    return this.plugin.getDependencies();
+  }
+  @Override
+  public void setDependencies( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getLicense() {
+    return this.plugin.getLicense();
+  }
+  @Override
+  public void setLicense( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getLicenseName() {
+    return this.plugin.getLicenseName();
+  }
+  @Override
+  public void setLicenseName( String value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public String getLicenseText() {
+    return this.plugin.getLicenseText();
+  }
+  @Override
+  public void setLicenseText( String value ) {
+    throw readOnly();
+  }
+  @Override
+  public CompressedText getCompressedLicenseText() {
+    return this.plugin.getCompressedLicenseText();
+  }
+  @Override
+  public void setCompressedLicenseText( CompressedText value ) {
+    throw readOnly();
+  }
+
+  @Override
+  public ICategory getCategory() {
+    return this.plugin.getCategory();
+  }
+  @Override
+  public void setCategory( ICategory category ) {
+    throw readOnly();
+  }
+
+  @Override
+  public MarketEntryType getType() {
+    return this.plugin.getType();
+  }
+  @Override
+  public void setType( MarketEntryType type ) {
+    throw readOnly();
+  }
+
+  @Override
+  public int getRank() {
+    return this.plugin.getRank();
+  }
+  @Override
+  public void setRank( int rank ) {
+    throw readOnly();
+  }
+
+  @Override
+  public IPluginVersion getVersionByBranch( String branch ) {
+    for ( IPluginVersion version : this.versions ) {
+      if ( branch != null && branch.equals( version.getBranch() ) ) {
+        return version;
+      }
+    }
+    return null;
+  }
+  //endregion
+}
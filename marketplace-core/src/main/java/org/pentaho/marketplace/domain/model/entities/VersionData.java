@@ -17,140 +17,211 @@ import org.pentaho.marketplace.domain.model.entities.interfaces.IVersionData;
 
 public class VersionData implements IVersionData {
 
+  //region Constants
+  private static final int COMPONENT_BITS = 21;
+  /**
+   * Packed value of a component set to {@link Integer#MAX_VALUE}, greater than any other packed component value.
+   */
+  private static final long MAX_COMPONENT = ( 1L << COMPONENT_BITS ) - 1;
+  /**
+   * Key of versions with a component that does not fit in {@link #COMPONENT_BITS} bits.
+   */
+  private static final long UNPACKED_KEY = -1L;
+  /**
+   * Result of parsing a component that is not a valid int.
+   */
+  private static final long INVALID_COMPONENT = Long.MIN_VALUE;
+  //endregion
+
   //region Attributes
   private int major;
   private int minor;
   private int patch;
   private String info;
+  /**
+   * major, minor and patch packed in a single long that sorts as the version does, so that versions can be compared
+   * with a single long comparison.
+   */
+  private long key;
   //endregion
 
   //region Constructors
   public VersionData( String info ) {
+    this.info = info;
+    if ( this.info == null ) {
+      this.info = "";
+    }
+    this.parse();
+    this.key = pack( this.major, this.minor, this.patch );
+  }
+  //endregion
+
+  //region Methods
+  private void parse() {
     // general parsing algorithm
     // first see if this starts with a N.N.N
     // second see if it starts with a N.N
     // third see with "TRUNK"
     // also handle -SNAPSHOT, etc
+    // parsing scans the info string in place, so no intermediate strings are created
 
-    this.info = info;
-    if ( this.info == null ) {
-      this.info = "";
-    }
-    int majorStop = this.info.indexOf( "." );
+    int majorStop = this.info.indexOf( '.' );
     if ( majorStop >= 0 ) {
       // read in first number
       // Examples: 1.0-SNAPSHOT, 1.0.0-GA, etc
-      try {
-        this.major = Integer.parseInt( this.info.substring( 0, majorStop ) );
-      } catch ( Exception e ) {
+      long major = parseComponent( this.info, 0, majorStop );
+      if ( major == INVALID_COMPONENT ) {
         // couldn't parse "N.xxxx", setting to MAX-INT
-        this.major = Integer.MAX_VALUE;
-        this.minor = Integer.MAX_VALUE;
-        this.patch = Integer.MAX_VALUE;
+        this.setAllComponentsFrom( 0 );
         return;
       }
+      this.major = (int) major;
 
-      int minorStop = this.info.indexOf( ".", majorStop + 1 );
+      int minorStop = this.info.indexOf( '.', majorStop + 1 );
       if ( minorStop >= 0 ) {
-        try {
-          this.minor = Integer.parseInt( this.info.substring( majorStop + 1, minorStop ) );
-        } catch ( Exception e ) {
+        long minor = parseComponent( this.info, majorStop + 1, minorStop );
+        if ( minor == INVALID_COMPONENT ) {
           // couldn't parse "MAJOR.N.xxxx", setting to MAX-INT
-          this.minor = Integer.MAX_VALUE;
-          this.patch = Integer.MAX_VALUE;
+          this.setAllComponentsFrom( 1 );
           return;
         }
+        this.minor = (int) minor;
 
         // Examples: 1.2.0, 1.2.0-stable, 1.2.0-GA, 1.2.0.GA
 
-        int patchStop = this.info.indexOf( ".", minorStop + 1 );
+        int patchStop = this.info.indexOf( '.', minorStop + 1 );
         if ( patchStop < 0 ) {
-          patchStop = this.info.indexOf( "-", minorStop + 1 );
+          patchStop = this.info.indexOf( '-', minorStop + 1 );
         }
         if ( patchStop < 0 ) {
           patchStop = this.info.length();
         }
 
-        try {
-          this.patch = Integer.parseInt( this.info.substring( minorStop + 1, patchStop ) );
-        } catch ( Exception e ) {
-          // couldn't parse "MAJOR.MINOR.N[.-]xxxx", setting to MAX-INT
-          this.patch = Integer.MAX_VALUE;
-          return;
-        }
+        long patch = parseComponent( this.info, minorStop + 1, patchStop );
+        // couldn't parse "MAJOR.MINOR.N[.-]xxxx", setting to MAX-INT
+        this.patch = patch == INVALID_COMPONENT ? Integer.MAX_VALUE : (int) patch;
       } else {
-        minorStop = this.info.indexOf( "-", majorStop + 1 );
+        minorStop = this.info.indexOf( '-', majorStop + 1 );
         if ( minorStop >= 0 ) {
           // Examples: 4.5-SNAPSHOT, 1.2-SNAPSHOT
-          try {
-            this.minor = Integer.parseInt( this.info.substring( majorStop + 1, minorStop ) );
-          } catch ( Exception e ) {
+          long minor = parseComponent( this.info, majorStop + 1, minorStop );
+          if ( minor == INVALID_COMPONENT ) {
             // couldn't parse "MAJOR.N-xxxx", setting to MAX-INT
-            this.minor = Integer.MAX_VALUE;
-            this.patch = Integer.MAX_VALUE;
+            this.setAllComponentsFrom( 1 );
             return;
           }
+          this.minor = (int) minor;
 
           // whatever is after the -, set the patch to MAX_VALUE
           this.patch = Integer.MAX_VALUE;
-          return;
-
         } else {
           // Examples: 4.5, 3.1, etc
-          minorStop = this.info.length();
-          try {
-            this.minor = Integer.parseInt( this.info.substring( majorStop + 1, minorStop ) );
-          } catch ( Exception e ) {
+          long minor = parseComponent( this.info, majorStop + 1, this.info.length() );
+          if ( minor == INVALID_COMPONENT ) {
             // couldn't parse "MAJOR.N.xxxx", setting to MAX-INT
-            this.minor = Integer.MAX_VALUE;
-            this.patch = Integer.MAX_VALUE;
+            this.setAllComponentsFrom( 1 );
             return;
           }
+          this.minor = (int) minor;
 
           // set the patch to 0
           this.patch = 0;
-          return;
         }
       }
 
     } else {
-      majorStop = this.info.indexOf( "-" );
+      majorStop = this.info.indexOf( '-' );
       if ( majorStop >= 0 ) {
         // 4-SNAPSHOT
         // TRUNK-SNAPSHOT
-
-        try {
-          this.major = Integer.parseInt( this.info.substring( 0, majorStop ) );
-        } catch ( Exception e ) {
+        long major = parseComponent( this.info, 0, majorStop );
+        if ( major == INVALID_COMPONENT ) {
           // couldn't parse "N.xxxx", setting to MAX-INT
-          this.major = Integer.MAX_VALUE;
-          this.minor = Integer.MAX_VALUE;
-          this.patch = Integer.MAX_VALUE;
+          this.setAllComponentsFrom( 0 );
           return;
         }
-
+        this.major = (int) major;
         this.minor = Integer.MAX_VALUE;
         this.patch = Integer.MAX_VALUE;
-        return;
-
       } else {
         // 4
-        try {
-          this.major = Integer.parseInt( this.info );
-        } catch ( Exception e ) {
+        long major = parseComponent( this.info, 0, this.info.length() );
+        if ( major == INVALID_COMPONENT ) {
           // couldn't parse "N.xxxx", setting to MAX-INT
-          this.major = Integer.MAX_VALUE;
-          this.minor = Integer.MAX_VALUE;
-          this.patch = Integer.MAX_VALUE;
+          this.setAllComponentsFrom( 0 );
           return;
         }
-
+        this.major = (int) major;
         this.minor = 0;
         this.patch = 0;
-        return;
       }
     }
   }
+
+  /**
+   * Sets the component at the given position (0 = major, 1 = minor, 2 = patch) and the ones after it to MAX-INT.
+   */
+  private void setAllComponentsFrom( int component ) {
+    if ( component <= 0 ) {
+      this.major = Integer.MAX_VALUE;
+    }
+    if ( component <= 1 ) {
+      this.minor = Integer.MAX_VALUE;
+    }
+    this.patch = Integer.MAX_VALUE;
+  }
+
+  /**
+   * Parses a version component with the same rules as {@link Integer#parseInt(String)}, without creating a substring
+   * and without using exceptions for invalid input.
+   * @return the component value, or {@link #INVALID_COMPONENT} if the characters are not a valid int.
+   */
+  private static long parseComponent( String info, int begin, int end ) {
+    if ( begin >= end ) {
+      return INVALID_COMPONENT;
+    }
+
+    boolean negative = false;
+    int i = begin;
+    char first = info.charAt( i );
+    if ( first == '-' || first == '+' ) {
+      negative = first == '-';
+      if ( ++i == end ) {
+        return INVALID_COMPONENT;
+      }
+    }
+
+    long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+    long value = 0;
+    for ( ; i < end; i++ ) {
+      int digit = Character.digit( info.charAt( i ), 10 );
+      if ( digit < 0 ) {
+        return INVALID_COMPONENT;
+      }
+      value = value * 10 + digit;
+      if ( value > limit ) {
+        return INVALID_COMPONENT;
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  private static long pack( int major, int minor, int patch ) {
+    long packedMajor = packComponent( major );
+    long packedMinor = packComponent( minor );
+    long packedPatch = packComponent( patch );
+    if ( packedMajor < 0 || packedMinor < 0 || packedPatch < 0 ) {
+      return UNPACKED_KEY;
+    }
+    return packedMajor << ( 2 * COMPONENT_BITS ) | packedMinor << COMPONENT_BITS | packedPatch;
+  }
+
+  private static long packComponent( int component ) {
+    if ( component == Integer.MAX_VALUE ) {
+      return MAX_COMPONENT;
+    }
+    return component >= 0 && component < MAX_COMPONENT ? component : -1;
+  }
   //endregion
 
   //region IVersionData implementation
@@ -176,15 +247,18 @@ public class VersionData implements IVersionData {
 
   @Override
   public boolean within( IVersionData min, IVersionData max ) {
+    String minInfo = min.getInfo();
+    String maxInfo = max.getInfo();
+
     // if min and max aren't specified, skip check
-    if ( min.getInfo().equals( "" ) && max.getInfo().equals( "" ) ) {
+    if ( minInfo.isEmpty() && maxInfo.isEmpty() ) {
       return true;
     }
 
     // see if min and max are equal to one another.  If so, make sure platform version is equal
     // this allows for folks to specify specific -GA and -stable releases
-    if ( min.getInfo().equals( max.getInfo() ) ) {
-      return this.info.equals( min.getInfo() );
+    if ( minInfo.equals( maxInfo ) ) {
+      return this.info.equals( minInfo );
     }
 
     // do a major, minor, patch comparison
@@ -193,6 +267,13 @@ public class VersionData implements IVersionData {
 
   @Override
   public int compareTo( IVersionData versionData ) {
+    if ( versionData instanceof VersionData ) {
+      long otherKey = ( (VersionData) versionData ).key;
+      if ( this.key != UNPACKED_KEY && otherKey != UNPACKED_KEY ) {
+        return Long.compare( otherKey, this.key );
+      }
+    }
+
     if ( versionData.getMajor() > this.major ) {
       return 1;
     }
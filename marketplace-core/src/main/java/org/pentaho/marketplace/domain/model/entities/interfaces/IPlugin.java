@@ -14,6 +14,7 @@
 package org.pentaho.marketplace.domain.model.entities.interfaces;
 
 import org.pentaho.marketplace.domain.model.entities.MarketEntryType;
+import org.pentaho.marketplace.util.CompressedText;
 
 import java.util.Collection;
 
@@ -74,6 +75,8 @@ public interface IPlugin {
   //installationNotes
   String getInstallationNotes();
   void setInstallationNotes( String value );
+  CompressedText getCompressedInstallationNotes();
+  void setCompressedInstallationNotes( CompressedText value );
 
   //installed
   boolean isInstalled();
@@ -102,6 +105,8 @@ public interface IPlugin {
   //licence_text
   String getLicenseText();
   void setLicenseText( String value );
+  CompressedText getCompressedLicenseText();
+  void setCompressedLicenseText( CompressedText value );
 
   // Category
   ICategory getCategory();
@@ -13,6 +13,8 @@
 
 package org.pentaho.marketplace.domain.model.entities.interfaces;
 
+import org.pentaho.marketplace.util.CompressedText;
+
 public interface IPluginVersion {
 
   //region Properties
@@ -44,6 +46,8 @@ public interface IPluginVersion {
   //changelog
   String getChangelog();
   void setChangelog( String value );
+  CompressedText getCompressedChangelog();
+  void setCompressedChangelog( CompressedText value );
 
   //buildId
   String getBuildId();
@@ -0,0 +1,496 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.model.entities.serialization;
+
+import org.pentaho.marketplace.domain.model.entities.DevelopmentStage;
+import org.pentaho.marketplace.domain.model.entities.MarketEntryType;
+import org.pentaho.marketplace.domain.model.entities.interfaces.ICategory;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDevelopmentStage;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+import org.pentaho.marketplace.domain.model.factories.interfaces.ICategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionFactory;
+import org.pentaho.marketplace.util.CompressedText;
+import org.pentaho.marketplace.util.Digests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the plugins parsed from the marketplace metadata xml in a compact binary format, and reads them back without
+ * any xml parsing, e.g. from a memory mapped file on startup.
+ *
+ * The format is made of a header, a string table and sections of fixed width records, all in big endian:
+ * <pre>
+ *   header       magic, format version, SHA-256 of the metadata xml the plugins were parsed from
+ *   strings      count, end offset of each string, length and UTF-8 bytes of all strings
+ *   texts        count, records of [end offset, inflated length] of each deflated text, length and bytes of all texts
+ *   categories   count, records of [name, parent category index]
+ *   plugins      count, records of {@link #PLUGIN_RECORD_SIZE} ints
+ *   versions     count, records of {@link #VERSION_RECORD_SIZE} ints
+ *   screenshots  count, string indexes
+ * </pre>
+ * Strings are referred to by their index in the string table, and null values by {@link #NULL_INDEX}. Each distinct
+ * string is kept once, so the plugins read share equal strings.
+ *
+ * Long texts, such as license texts or changelogs, are written as a pair of [string index, text index]: texts kept
+ * deflated in memory by {@link CompressedText} are written as their deflated bytes and read back as they are, so they
+ * are never inflated nor deflated again, and the other texts are written as strings. Install state is not written,
+ * as it is not part of the metadata.
+ *
+ * Any change to the records must increase {@link #FORMAT_VERSION}, so that catalogs written by previous versions are
+ * rejected instead of misread.
+ */
+public class BinaryCatalogSerializer {
+
+  // region Inner Definitions
+  /**
+   * Collects the strings and records of the plugins before writing them.
+   */
+  private static final class CatalogWriter {
+    private final Map<String, Integer> stringIndexes = new LinkedHashMap<>();
+    private final Map<ByteBuffer, Integer> textIndexes = new LinkedHashMap<>();
+    private final List<Integer> textLengths = new ArrayList<>();
+    private final Map<ICategory, Integer> categoryIndexes = new IdentityHashMap<>();
+    private final List<Integer> categoryRecords = new ArrayList<>();
+    private final List<Integer> pluginRecords = new ArrayList<>();
+    private final List<Integer> versionRecords = new ArrayList<>();
+    private final List<Integer> screenshotRecords = new ArrayList<>();
+    private int versionCount = 0;
+
+    private void addPlugin( IPlugin plugin ) {
+      List<Integer> record = this.pluginRecords;
+      record.add( this.string( plugin.getId() ) );
+      record.add( this.string( plugin.getName() ) );
+      record.add( this.string( plugin.getImg() ) );
+      record.add( this.string( plugin.getSmallImg() ) );
+      record.add( this.string( plugin.getDocumentationUrl() ) );
+      record.add( this.string( plugin.getDescription() ) );
+      record.add( this.string( plugin.getAuthorName() ) );
+      record.add( this.string( plugin.getAuthorUrl() ) );
+      record.add( this.string( plugin.getAuthorLogo() ) );
+      this.addText( record, plugin.getCompressedInstallationNotes() );
+      record.add( this.string( plugin.getDependencies() ) );
+      record.add( this.string( plugin.getLicense() ) );
+      record.add( this.string( plugin.getLicenseName() ) );
+      this.addText( record, plugin.getCompressedLicenseText() );
+      record.add( this.string( plugin.getType() != null ? plugin.getType().name() : null ) );
+      record.add( this.category( plugin.getCategory() ) );
+      record.add( plugin.getRank() );
+
+      Collection<IPluginVersion> versions = plugin.getVersions();
+      record.add( this.versionCount );
+      record.add( versions.size() );
+      for ( IPluginVersion version : versions ) {
+        this.addVersion( version );
+      }
+
+      String[] screenshots = plugin.getScreenshots();
+      record.add( this.screenshotRecords.size() );
+      record.add( screenshots != null ? screenshots.length : NULL_INDEX );
+      if ( screenshots != null ) {
+        for ( String screenshot : screenshots ) {
+          this.screenshotRecords.add( this.string( screenshot ) );
+        }
+      }
+    }
+
+    private void addVersion( IPluginVersion version ) {
+      List<Integer> record = this.versionRecords;
+      record.add( this.string( version.getBranch() ) );
+      record.add( this.string( version.getName() ) );
+      record.add( this.string( version.getVersion() ) );
+      record.add( this.string( version.getDownloadUrl() ) );
+      record.add( this.string( version.getSamplesDownloadUrl() ) );
+      record.add( this.string( version.getDescription() ) );
+      this.addText( record, version.getCompressedChangelog() );
+      record.add( this.string( version.getBuildId() ) );
+      record.add( this.string( version.getReleaseDate() ) );
+      record.add( this.string( version.getMinParentVersion() ) );
+      record.add( this.string( version.getMaxParentVersion() ) );
+      record.add( version.isOsgi() ? 1 : 0 );
+
+      IDevelopmentStage stage = version.getDevelopmentStage();
+      record.add( stage != null ? 1 : 0 );
+      record.add( this.string( stage != null ? stage.getLane() : null ) );
+      record.add( this.string( stage != null ? stage.getPhase() : null ) );
+
+      this.versionCount++;
+    }
+
+    private void addText( List<Integer> record, CompressedText text ) {
+      if ( text == null || !text.isDeflated() ) {
+        record.add( this.string( CompressedText.textOf( text ) ) );
+        record.add( NULL_INDEX );
+        return;
+      }
+
+      ByteBuffer deflated = ByteBuffer.wrap( text.getDeflated() );
+      Integer index = this.textIndexes.get( deflated );
+      if ( index == null ) {
+        index = this.textIndexes.size();
+        this.textIndexes.put( deflated, index );
+        this.textLengths.add( text.getInflatedLength() );
+      }
+      record.add( NULL_INDEX );
+      record.add( index );
+    }
+
+    private int category( ICategory category ) {
+      if ( category == null ) {
+        return NULL_INDEX;
+      }
+
+      Integer index = this.categoryIndexes.get( category );
+      if ( index == null ) {
+        int parent = this.category( category.getParent() );
+        index = this.categoryIndexes.size();
+        this.categoryIndexes.put( category, index );
+        this.categoryRecords.add( this.string( category.getName() ) );
+        this.categoryRecords.add( parent );
+      }
+      return index;
+    }
+
+    private int string( String value ) {
+      if ( value == null ) {
+        return NULL_INDEX;
+      }
+
+      Integer index = this.stringIndexes.get( value );
+      if ( index == null ) {
+        index = this.stringIndexes.size();
+        this.stringIndexes.put( value, index );
+      }
+      return index;
+    }
+
+    private void writeTo( DataOutputStream output, byte[] digest ) throws IOException {
+      output.writeInt( MAGIC );
+      output.writeInt( FORMAT_VERSION );
+      output.write( digest );
+
+      ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+      output.writeInt( this.stringIndexes.size() );
+      for ( String value : this.stringIndexes.keySet() ) {
+        stringBytes.write( value.getBytes( StandardCharsets.UTF_8 ) );
+        output.writeInt( stringBytes.size() );
+      }
+      output.writeInt( stringBytes.size() );
+      stringBytes.writeTo( output );
+
+      output.writeInt( this.textIndexes.size() );
+      int textEnd = 0;
+      int textIndex = 0;
+      for ( ByteBuffer deflated : this.textIndexes.keySet() ) {
+        textEnd += deflated.remaining();
+        output.writeInt( textEnd );
+        output.writeInt( this.textLengths.get( textIndex++ ) );
+      }
+      output.writeInt( textEnd );
+      for ( ByteBuffer deflated : this.textIndexes.keySet() ) {
+        output.write( deflated.array() );
+      }
+
+      writeRecords( output, this.categoryRecords, 2 );
+      writeRecords( output, this.pluginRecords, PLUGIN_RECORD_SIZE );
+      writeRecords( output, this.versionRecords, VERSION_RECORD_SIZE );
+      writeRecords( output, this.screenshotRecords, 1 );
+      output.flush();
+    }
+
+    private static void writeRecords( DataOutputStream output, List<Integer> records, int recordSize )
+      throws IOException {
+      output.writeInt( records.size() / recordSize );
+      for ( int value : records ) {
+        output.writeInt( value );
+      }
+    }
+  }
+  // endregion
+
+  // region Constants
+  public static final int MAGIC = 0x4D4B5443; // "MKTC"
+  public static final int FORMAT_VERSION = 2;
+
+  private static final int NULL_INDEX = -1;
+  private static final int DIGEST_LENGTH = 32;
+  private static final int PLUGIN_RECORD_SIZE = 23;
+  private static final int VERSION_RECORD_SIZE = 16;
+  // endregion
+
+  // region Properties
+  private IPluginFactory pluginFactory;
+  private IPluginVersionFactory pluginVersionFactory;
+  private ICategoryFactory categoryFactory;
+  // endregion
+
+  // region Constructors
+  public BinaryCatalogSerializer( IPluginFactory pluginFactory,
+                                  IPluginVersionFactory pluginVersionFactory,
+                                  ICategoryFactory categoryFactory ) {
+    this.pluginFactory = pluginFactory;
+    this.pluginVersionFactory = pluginVersionFactory;
+    this.categoryFactory = categoryFactory;
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Writes the plugins in the binary catalog format.
+   * @param plugins the plugins parsed from the metadata
+   * @param metadata the metadata xml the plugins were parsed from
+   * @return the binary catalog
+   */
+  public byte[] write( Map<String, IPlugin> plugins, byte[] metadata ) {
+    CatalogWriter writer = new CatalogWriter();
+    for ( IPlugin plugin : plugins.values() ) {
+      writer.addPlugin( plugin );
+    }
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try {
+      writer.writeTo( new DataOutputStream( outputStream ), Digests.createSha256().digest( metadata ) );
+    } catch ( IOException e ) {
+      // only ever writing to memory
+      throw new IllegalStateException( e );
+    }
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Reads the plugins from a binary catalog.
+   * @param catalog the binary catalog, from its current position. The position of the buffer is not changed.
+   * @param metadata the metadata xml the catalog is expected to be written for
+   * @return map which keys are plugin ids and values are plugins
+   * @throws IOException if the catalog is corrupted, of an unsupported format version, or not written for the metadata
+   */
+  public Map<String, IPlugin> read( ByteBuffer catalog, byte[] metadata ) throws IOException {
+    ByteBuffer buffer = catalog.duplicate().order( ByteOrder.BIG_ENDIAN );
+    try {
+      if ( buffer.getInt() != MAGIC ) {
+        throw new IOException( "Not a marketplace binary catalog." );
+      }
+      int formatVersion = buffer.getInt();
+      if ( formatVersion != FORMAT_VERSION ) {
+        throw new IOException( "Unsupported marketplace binary catalog format version " + formatVersion + "." );
+      }
+      byte[] digest = new byte[ DIGEST_LENGTH ];
+      buffer.get( digest );
+      if ( !Arrays.equals( digest, Digests.createSha256().digest( metadata ) ) ) {
+        throw new IOException( "Marketplace binary catalog was not written for the given metadata." );
+      }
+
+      return this.readPlugins( buffer );
+    } catch ( BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e ) {
+      throw new IOException( "Corrupted marketplace binary catalog.", e );
+    }
+  }
+
+  private Map<String, IPlugin> readPlugins( ByteBuffer buffer ) throws IOException {
+    String[] strings = readStrings( buffer );
+    CompressedText[] texts = readTexts( buffer );
+    ICategory[] categories = this.readCategories( buffer, strings );
+    int[] pluginRecords = readRecords( buffer, PLUGIN_RECORD_SIZE );
+    IPluginVersion[] versions = this.readVersions( buffer, strings, texts );
+    String[] screenshots = readScreenshots( buffer, strings );
+
+    int pluginCount = pluginRecords.length / PLUGIN_RECORD_SIZE;
+    Map<String, IPlugin> plugins = new HashMap<>( pluginCount * 4 / 3 + 1 );
+    for ( int i = 0; i < pluginCount; i++ ) {
+      IPlugin plugin = this.readPlugin( pluginRecords, i * PLUGIN_RECORD_SIZE, strings, texts, categories, versions,
+        screenshots );
+      plugins.put( plugin.getId(), plugin );
+    }
+
+    return plugins;
+  }
+
+  private IPlugin readPlugin( int[] record, int offset, String[] strings, CompressedText[] texts,
+                              ICategory[] categories, IPluginVersion[] versions, String[] screenshots )
+    throws IOException {
+    int field = offset;
+    IPlugin plugin = this.pluginFactory.create();
+    plugin.setId( string( strings, record[ field++ ] ) );
+    plugin.setName( string( strings, record[ field++ ] ) );
+    plugin.setImg( string( strings, record[ field++ ] ) );
+    plugin.setSmallImg( string( strings, record[ field++ ] ) );
+    plugin.setDocumentationUrl( string( strings, record[ field++ ] ) );
+    plugin.setDescription( string( strings, record[ field++ ] ) );
+    plugin.setAuthorName( string( strings, record[ field++ ] ) );
+    plugin.setAuthorUrl( string( strings, record[ field++ ] ) );
+    plugin.setAuthorLogo( string( strings, record[ field++ ] ) );
+    plugin.setCompressedInstallationNotes( text( strings, texts, record[ field++ ], record[ field++ ] ) );
+    plugin.setDependencies( string( strings, record[ field++ ] ) );
+    plugin.setLicense( string( strings, record[ field++ ] ) );
+    plugin.setLicenseName( string( strings, record[ field++ ] ) );
+    plugin.setCompressedLicenseText( text( strings, texts, record[ field++ ], record[ field++ ] ) );
+
+    String type = string( strings, record[ field++ ] );
+    plugin.setType( type != null ? MarketEntryType.valueOf( type ) : null );
+    int category = record[ field++ ];
+    plugin.setCategory( category != NULL_INDEX ? categories[ category ] : null );
+    plugin.setRank( record[ field++ ] );
+
+    int firstVersion = record[ field++ ];
+    int versionCount = record[ field++ ];
+    plugin.setVersions( new ArrayList<>( Arrays.asList(
+      Arrays.copyOfRange( versions, firstVersion, checkedEnd( firstVersion, versionCount, versions.length ) ) ) ) );
+
+    int firstScreenshot = record[ field++ ];
+    int screenshotCount = record[ field ];
+    plugin.setScreenshots( screenshotCount == NULL_INDEX ? null
+      : Arrays.copyOfRange( screenshots, firstScreenshot,
+          checkedEnd( firstScreenshot, screenshotCount, screenshots.length ) ) );
+
+    return plugin;
+  }
+
+  private IPluginVersion[] readVersions( ByteBuffer buffer, String[] strings, CompressedText[] texts )
+    throws IOException {
+    int[] records = readRecords( buffer, VERSION_RECORD_SIZE );
+    IPluginVersion[] versions = new IPluginVersion[ records.length / VERSION_RECORD_SIZE ];
+    int field = 0;
+    for ( int i = 0; i < versions.length; i++ ) {
+      IPluginVersion version = this.pluginVersionFactory.create();
+      version.setBranch( string( strings, records[ field++ ] ) );
+      version.setName( string( strings, records[ field++ ] ) );
+      version.setVersion( string( strings, records[ field++ ] ) );
+      version.setDownloadUrl( string( strings, records[ field++ ] ) );
+      version.setSamplesDownloadUrl( string( strings, records[ field++ ] ) );
+      version.setDescription( string( strings, records[ field++ ] ) );
+      version.setCompressedChangelog( text( strings, texts, records[ field++ ], records[ field++ ] ) );
+      version.setBuildId( string( strings, records[ field++ ] ) );
+      version.setReleaseDate( string( strings, records[ field++ ] ) );
+      version.setMinParentVersion( string( strings, records[ field++ ] ) );
+      version.setMaxParentVersion( string( strings, records[ field++ ] ) );
+      version.setIsOsgi( records[ field++ ] != 0 );
+
+      boolean hasDevelopmentStage = records[ field++ ] != 0;
+      String lane = string( strings, records[ field++ ] );
+      String phase = string( strings, records[ field++ ] );
+      if ( hasDevelopmentStage ) {
+        version.setDevelopmentStage( new DevelopmentStage( lane, phase ) );
+      }
+
+      versions[ i ] = version;
+    }
+
+    return versions;
+  }
+
+  private ICategory[] readCategories( ByteBuffer buffer, String[] strings ) throws IOException {
+    int[] records = readRecords( buffer, 2 );
+    ICategory[] categories = new ICategory[ records.length / 2 ];
+    for ( int i = 0; i < categories.length; i++ ) {
+      String name = strings[ records[ i * 2 ] ];
+      int parent = records[ i * 2 + 1 ];
+      // parents are always written before their children
+      if ( parent >= i ) {
+        throw new IOException( "Corrupted marketplace binary catalog category " + i + "." );
+      }
+      categories[ i ] = this.categoryFactory.create( name, parent != NULL_INDEX ? categories[ parent ] : null );
+    }
+
+    return categories;
+  }
+
+  private static String[] readScreenshots( ByteBuffer buffer, String[] strings ) throws IOException {
+    int[] records = readRecords( buffer, 1 );
+    String[] screenshots = new String[ records.length ];
+    for ( int i = 0; i < records.length; i++ ) {
+      screenshots[ i ] = string( strings, records[ i ] );
+    }
+
+    return screenshots;
+  }
+
+  private static String[] readStrings( ByteBuffer buffer ) throws IOException {
+    int[] endOffsets = readRecords( buffer, 1 );
+    byte[] bytes = new byte[ readCount( buffer, 1 ) ];
+    buffer.get( bytes );
+
+    String[] strings = new String[ endOffsets.length ];
+    int start = 0;
+    for ( int i = 0; i < strings.length; i++ ) {
+      int end = checkedEnd( start, endOffsets[ i ] - start, bytes.length );
+      strings[ i ] = new String( bytes, start, end - start, StandardCharsets.UTF_8 );
+      start = end;
+    }
+
+    return strings;
+  }
+
+  private static CompressedText[] readTexts( ByteBuffer buffer ) throws IOException {
+    int[] records = readRecords( buffer, 2 );
+    byte[] bytes = new byte[ readCount( buffer, 1 ) ];
+    buffer.get( bytes );
+
+    CompressedText[] texts = new CompressedText[ records.length / 2 ];
+    int start = 0;
+    for ( int i = 0; i < texts.length; i++ ) {
+      int end = checkedEnd( start, records[ i * 2 ] - start, bytes.length );
+      texts[ i ] = CompressedText.ofDeflated( Arrays.copyOfRange( bytes, start, end ), records[ i * 2 + 1 ] );
+      start = end;
+    }
+
+    return texts;
+  }
+
+  private static int[] readRecords( ByteBuffer buffer, int recordSize ) throws IOException {
+    int count = readCount( buffer, recordSize * 4 );
+    int[] records = new int[ count * recordSize ];
+    buffer.asIntBuffer().get( records );
+    buffer.position( buffer.position() + records.length * 4 );
+    return records;
+  }
+
+  private static int readCount( ByteBuffer buffer, int elementSize ) throws IOException {
+    int count = buffer.getInt();
+    if ( count < 0 || (long) count * elementSize > buffer.remaining() ) {
+      throw new IOException( "Corrupted marketplace binary catalog section of " + count + " elements." );
+    }
+    return count;
+  }
+
+  private static int checkedEnd( int start, int count, int length ) throws IOException {
+    if ( start < 0 || count < 0 || start > length - count ) {
+      throw new IOException( "Corrupted marketplace binary catalog range " + start + "+" + count + "." );
+    }
+    return start + count;
+  }
+
+  private static String string( String[] strings, int index ) {
+    return index != NULL_INDEX ? strings[ index ] : null;
+  }
+
+  private static CompressedText text( String[] strings, CompressedText[] texts, int stringIndex, int textIndex ) {
+    return textIndex != NULL_INDEX ? texts[ textIndex ] : CompressedText.ofPlain( string( strings, stringIndex ) );
+  }
+  // endregion
+}
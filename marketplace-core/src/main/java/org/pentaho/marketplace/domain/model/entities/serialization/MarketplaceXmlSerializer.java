@@ -24,6 +24,7 @@ import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
 import org.pentaho.marketplace.domain.model.factories.interfaces.ICategoryFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionFactory;
+import org.pentaho.marketplace.util.StringDeduplicator;
 import org.pentaho.marketplace.util.XmlParserFactoryProducer;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -131,41 +132,42 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
     XPathExpressionException {
     NodeList plugins = marketplaceMetadataDocument.getElementsByTagName( "market_entry" );
     Map<String, IPlugin> pluginMap = new HashMap<>();
+    StringDeduplicator strings = new StringDeduplicator();
     for ( int i = 0; i < plugins.getLength(); i++ ) {
       Element pluginElement = (Element) plugins.item( i );
 
-      IPlugin plugin = getPlugin( pluginElement );
+      IPlugin plugin = getPlugin( pluginElement, strings );
       pluginMap.put( plugin.getId(), plugin );
     }
 
     return pluginMap;
   }
 
-  private IPlugin getPlugin( Element pluginElement ) throws XPathExpressionException {
+  private IPlugin getPlugin( Element pluginElement, StringDeduplicator strings ) throws XPathExpressionException {
     IPlugin plugin = this.pluginFactory.create();
 
     plugin.setId( getElementChildValue( pluginElement, "id" ) );
     plugin.setName( getElementChildValue( pluginElement, "name" ) );
     plugin.setDescription( getElementChildValue( pluginElement, "description" ) );
 
-    plugin.setAuthorName( getElementChildValue( pluginElement, "author" ) );
-    plugin.setAuthorUrl( getElementChildValue( pluginElement, "author_url" ) );
-    plugin.setAuthorLogo( getElementChildValue( pluginElement, "author_logo" ) );
+    plugin.setAuthorName( strings.deduplicate( getElementChildValue( pluginElement, "author" ) ) );
+    plugin.setAuthorUrl( strings.deduplicate( getElementChildValue( pluginElement, "author_url" ) ) );
+    plugin.setAuthorLogo( strings.deduplicate( getElementChildValue( pluginElement, "author_logo" ) ) );
     plugin.setImg( getElementChildValue( pluginElement, "img" ) );
 
     plugin.setSmallImg( getElementChildValue( pluginElement, "small_img" ) );
     plugin.setDocumentationUrl( getElementChildValue( pluginElement, "documentation_url" ) );
     plugin.setInstallationNotes( getElementChildValue( pluginElement, "installation_notes" ) );
-    plugin.setLicense( getElementChildValue( pluginElement, "license" ) );
-    plugin.setLicenseName( getElementChildValue( pluginElement, "license_name" ) );
+    plugin.setLicense( strings.deduplicate( getElementChildValue( pluginElement, "license" ) ) );
+    plugin.setLicenseName( strings.deduplicate( getElementChildValue( pluginElement, "license_name" ) ) );
     plugin.setLicenseText( getElementChildValue( pluginElement, "license_text" ) );
     plugin.setDependencies( getElementChildValue( pluginElement, "dependencies" ) );
     plugin.setType( MarketEntryType.valueOf( getElementChildValue( pluginElement, "type" ) ) );
-    plugin.setCategory( this.getCategory( pluginElement ) );
+    plugin.setCategory( this.getCategory( pluginElement, strings ) );
 
     NodeList availableVersionsNode =
         (NodeList) this.xpath.evaluate( "versions/version", pluginElement, XPathConstants.NODESET );
-    Collection<IPluginVersion> versions = this.getPluginVersions( availableVersionsNode );
+    Collection<IPluginVersion> versions = this.getPluginVersions( availableVersionsNode, strings );
     plugin.setVersions( versions );
 
     NodeList availableScreenshotsNode = (NodeList) xpath.evaluate( "screenshots/screenshot", pluginElement,
@@ -176,11 +178,12 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
     return plugin;
   }
 
-  private IPluginVersion getPluginVersion( Element versionElement ) throws XPathExpressionException {
+  private IPluginVersion getPluginVersion( Element versionElement, StringDeduplicator strings )
+    throws XPathExpressionException {
     IPluginVersion version = this.pluginVersionFactory.create();
 
-    version.setBranch( getElementChildValue( versionElement, "branch" ) );
-    version.setName( getElementChildValue( versionElement, "name" ) );
+    version.setBranch( strings.deduplicate( getElementChildValue( versionElement, "branch" ) ) );
+    version.setName( strings.deduplicate( getElementChildValue( versionElement, "name" ) ) );
     version.setVersion( getElementChildValue( versionElement, "version" ) );
     String downloadUrl = getElementChildValue( versionElement, "package_url" );
     if ( downloadUrl != null ) {
@@ -193,14 +196,15 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
     version.setChangelog( getElementChildValue( versionElement, "changelog" ) );
     version.setBuildId( getElementChildValue( versionElement, "build_id" ) );
     version.setReleaseDate( getElementChildValue( versionElement, "releaseDate" ) );
-    version.setMinParentVersion( getElementChildValue( versionElement, "min_parent_version" ) );
-    version.setMaxParentVersion( getElementChildValue( versionElement, "max_parent_version" ) );
-    version.setDevelopmentStage( getDevelopmentStage( versionElement ) );
+    version.setMinParentVersion( strings.deduplicate( getElementChildValue( versionElement, "min_parent_version" ) ) );
+    version.setMaxParentVersion( strings.deduplicate( getElementChildValue( versionElement, "max_parent_version" ) ) );
+    version.setDevelopmentStage( getDevelopmentStage( versionElement, strings ) );
 
     return version;
   }
 
-  private Collection<IPluginVersion> getPluginVersions( NodeList versionsElement ) throws XPathExpressionException {
+  private Collection<IPluginVersion> getPluginVersions( NodeList versionsElement, StringDeduplicator strings )
+    throws XPathExpressionException {
     if ( versionsElement.getLength() == 0 ) {
       return Collections.emptyList();
     }
@@ -208,7 +212,7 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
     Collection<IPluginVersion> versions = new ArrayList<>();
     for ( int j = 0; j < versionsElement.getLength(); j++ ) {
       Element versionElement = (Element) versionsElement.item( j );
-      IPluginVersion pv = this.getPluginVersion( versionElement );
+      IPluginVersion pv = this.getPluginVersion( versionElement, strings );
       versions.add( pv );
     }
 
@@ -239,7 +243,8 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
     }
   }
 
-  private ICategory getCategory( Element pluginElement ) throws XPathExpressionException {
+  private ICategory getCategory( Element pluginElement, StringDeduplicator strings )
+    throws XPathExpressionException {
     final String CATEGORY_ELEMENT_NAME = "category";
 
     Element categoryElement = (Element) xpath.evaluate( CATEGORY_ELEMENT_NAME, pluginElement, XPathConstants.NODE );
@@ -247,10 +252,10 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
       return null;
     }
 
-    return this.getCategoryFromCategoryElement( categoryElement );
+    return this.getCategoryFromCategoryElement( categoryElement, strings );
   }
 
-  private ICategory getCategoryFromCategoryElement( Element categoryElement )
+  private ICategory getCategoryFromCategoryElement( Element categoryElement, StringDeduplicator strings )
     throws XPathExpressionException {
 
     final String PARENT_ELEMENT_NAME = "parent";
@@ -259,10 +264,10 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
     ICategory parent = null;
     Element parentElement = (Element) xpath.evaluate( PARENT_ELEMENT_NAME, categoryElement, XPathConstants.NODE );
     if ( parentElement != null ) {
-      parent = getCategoryFromCategoryElement( parentElement );
+      parent = getCategoryFromCategoryElement( parentElement, strings );
     }
 
-    String name = getElementChildValue( categoryElement, NAME_ELEMENT_NAME );
+    String name = strings.deduplicate( getElementChildValue( categoryElement, NAME_ELEMENT_NAME ) );
     ICategory category = this.categoryFactory.create( name, parent );
     return category;
   }
@@ -271,9 +276,11 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
    * Parses the version element to get the development stage
    *
    * @param versionElement where the development stage element is contained
+   * @param strings the deduplicator of the document being parsed
    * @return the parsed development stage
    */
-  private IDevelopmentStage getDevelopmentStage( Element versionElement ) throws XPathExpressionException {
+  private IDevelopmentStage getDevelopmentStage( Element versionElement, StringDeduplicator strings )
+    throws XPathExpressionException {
     final String DEVELOPMENT_STAGE_ELEMENT_NAME = "development_stage";
     final String DEVELOPMENT_STAGE_LANE_ELEMENT_NAME = "lane";
     final String DEVELOPMENT_STAGE_PHASE_ELEMENT_NAME = "phase";
@@ -284,8 +291,10 @@ public class MarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
       return null;
     }
 
-    String lane = this.getElementChildValue( devStageElement, DEVELOPMENT_STAGE_LANE_ELEMENT_NAME );
-    String phase = this.getElementChildValue( devStageElement, DEVELOPMENT_STAGE_PHASE_ELEMENT_NAME );
+    String lane =
+      strings.deduplicate( this.getElementChildValue( devStageElement, DEVELOPMENT_STAGE_LANE_ELEMENT_NAME ) );
+    String phase =
+      strings.deduplicate( this.getElementChildValue( devStageElement, DEVELOPMENT_STAGE_PHASE_ELEMENT_NAME ) );
 
     // TODO: switch to factory to allow DI?
     return new DevelopmentStage( lane, phase );
@@ -0,0 +1,450 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.model.entities.serialization;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.marketplace.domain.model.entities.DevelopmentStage;
+import org.pentaho.marketplace.domain.model.entities.MarketEntryType;
+import org.pentaho.marketplace.domain.model.entities.interfaces.ICategory;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDevelopmentStage;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+import org.pentaho.marketplace.domain.model.factories.interfaces.ICategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionFactory;
+import org.pentaho.marketplace.util.StringDeduplicator;
+import org.pentaho.marketplace.util.XmlParserFactoryProducer;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Marketplace xml serializer that reads the metadata in a single pass over a StAX stream, creating the plugins and
+ * their versions as their elements are read, without building a DOM or a DTO tree first.
+ *
+ * Already parsed documents are mapped by a {@link MarketplaceXmlSerializer}.
+ *
+ * This serializer is not used by default. Parsing the metadata once on a cold start is faster with JAXB, and later
+ * starts read the binary catalog instead of the xml. To use it, e.g. for very large metadata parsed by a warmed up
+ * JVM, set it as the class of the marketplacePluginSerializer bean in the blueprint.
+ */
+public class StaxMarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
+
+  // region Constants
+  private static final String[] EMPTY_STRING_ARRAY = new String[ 0 ];
+  private static final String OSGI_URL_SUFFIX = ".kar";
+  // endregion
+
+  // region Properties
+  private IPluginFactory pluginFactory;
+  private IPluginVersionFactory pluginVersionFactory;
+  private ICategoryFactory categoryFactory;
+
+  // only used to create readers once configured
+  private XMLInputFactory xmlInputFactory;
+
+  private IMarketplaceXmlSerializer documentSerializer;
+
+  protected Log getLogger() {
+    return this.logger;
+  }
+  private Log logger = LogFactory.getLog( this.getClass() );
+  // endregion
+
+  // region Constructors
+  public StaxMarketplaceXmlSerializer( IPluginFactory pluginFactory,
+                                       IPluginVersionFactory pluginVersionFactory,
+                                       ICategoryFactory categoryFactory ) {
+
+    this.pluginFactory = pluginFactory;
+    this.pluginVersionFactory = pluginVersionFactory;
+    this.categoryFactory = categoryFactory;
+
+    this.xmlInputFactory = XmlParserFactoryProducer.createSecureXMLInputFactory();
+    this.documentSerializer = new MarketplaceXmlSerializer( pluginFactory, pluginVersionFactory, categoryFactory );
+  }
+  // endregion
+
+  // region Methods
+  @Override public Map<String, IPlugin> getPlugins( InputStream xmlInputStream ) {
+    try {
+      return this.getPlugins( this.xmlInputFactory.createXMLStreamReader( xmlInputStream ) );
+    } catch ( XMLStreamException e ) {
+      this.getLogger().debug( "Failed trying to parse invalid marketplace metadata.", e );
+      return Collections.emptyMap();
+    }
+  }
+
+  @Override public Map<String, IPlugin> getPlugins( String xml ) {
+    try {
+      return this.getPlugins( this.xmlInputFactory.createXMLStreamReader( new StringReader( xml ) ) );
+    } catch ( XMLStreamException e ) {
+      this.getLogger().debug( "Failed trying to parse invalid marketplace metadata.", e );
+      return Collections.emptyMap();
+    }
+  }
+
+  @Override public Map<String, IPlugin> getPlugins( Document marketplaceMetadataDocument )
+    throws XPathExpressionException {
+    return this.documentSerializer.getPlugins( marketplaceMetadataDocument );
+  }
+
+  @Override public IPluginVersion getInstalledVersion( String xml ) {
+    return this.getInstalledVersion( new InputSource( new StringReader( xml ) ) );
+  }
+
+  @Override public IPluginVersion getInstalledVersion( InputSource inputDocument ) {
+    IPluginVersion version = null;
+    try {
+      XMLStreamReader reader = this.createXMLStreamReader( inputDocument );
+      try {
+        version = this.readInstalledVersion( reader );
+      } finally {
+        reader.close();
+      }
+
+    } catch ( Exception e ) {
+      this.getLogger().error( "Error getting plugin version from version xml.", e );
+      // TODO: throw app exception in order to return error in endpoint
+    }
+
+    return version;
+  }
+
+  @Override public IPluginVersion getInstalledVersion( Document installedVersionDocument ) {
+    return this.documentSerializer.getInstalledVersion( installedVersionDocument );
+  }
+
+  private XMLStreamReader createXMLStreamReader( InputSource inputSource ) throws XMLStreamException {
+    if ( inputSource.getCharacterStream() != null ) {
+      return this.xmlInputFactory.createXMLStreamReader( inputSource.getCharacterStream() );
+    }
+    if ( inputSource.getByteStream() != null ) {
+      return inputSource.getEncoding() != null
+        ? this.xmlInputFactory.createXMLStreamReader( inputSource.getByteStream(), inputSource.getEncoding() )
+        : this.xmlInputFactory.createXMLStreamReader( inputSource.getByteStream() );
+    }
+    return this.xmlInputFactory.createXMLStreamReader( new StreamSource( inputSource.getSystemId() ) );
+  }
+
+  private Map<String, IPlugin> getPlugins( XMLStreamReader reader ) throws XMLStreamException {
+    try {
+      return this.readPlugins( reader );
+    } finally {
+      reader.close();
+    }
+  }
+  // endregion
+
+  // region Stream => Entity mapping
+  private Map<String, IPlugin> readPlugins( XMLStreamReader reader ) throws XMLStreamException {
+    Map<String, IPlugin> plugins = new HashMap<>();
+    StringDeduplicator strings = new StringDeduplicator();
+
+    int rank = 0;
+    while ( nextElement( reader ) ) {
+      if ( "market_entry".equals( reader.getLocalName() ) ) {
+        IPlugin plugin = this.readPlugin( reader, rank++, strings );
+        plugins.put( plugin.getId(), plugin );
+      }
+    }
+
+    return plugins;
+  }
+
+  private IPlugin readPlugin( XMLStreamReader reader, int rank, StringDeduplicator strings )
+    throws XMLStreamException {
+    IPlugin plugin = this.pluginFactory.create();
+    Collection<IPluginVersion> versions = Collections.emptyList();
+    String[] screenshots = EMPTY_STRING_ARRAY;
+
+    plugin.setRank( rank );
+    while ( nextChildElement( reader ) ) {
+      switch ( reader.getLocalName() ) {
+        case "id":
+          plugin.setId( reader.getElementText() );
+          break;
+        case "name":
+          plugin.setName( reader.getElementText() );
+          break;
+        case "type":
+          plugin.setType( MarketEntryType.getMarketEntryType( reader.getElementText().trim() ) );
+          break;
+        case "category":
+          plugin.setCategory( this.readCategory( reader, strings ) );
+          break;
+        case "img":
+          plugin.setImg( reader.getElementText() );
+          break;
+        case "small_img":
+          plugin.setSmallImg( reader.getElementText() );
+          break;
+        case "documentation_url":
+          plugin.setDocumentationUrl( reader.getElementText() );
+          break;
+        case "description":
+          plugin.setDescription( reader.getElementText() );
+          break;
+        case "author":
+          plugin.setAuthorName( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "author_url":
+          plugin.setAuthorUrl( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "author_logo":
+          plugin.setAuthorLogo( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "installation_notes":
+          plugin.setInstallationNotes( reader.getElementText() );
+          break;
+        case "dependencies":
+          plugin.setDependencies( reader.getElementText() );
+          break;
+        case "license":
+          plugin.setLicense( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "license_name":
+          plugin.setLicenseName( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "license_text":
+          plugin.setLicenseText( reader.getElementText() );
+          break;
+        case "versions":
+          versions = this.readVersions( reader, strings );
+          break;
+        case "screenshots":
+          screenshots = readScreenshots( reader );
+          break;
+        default:
+          skipElement( reader );
+      }
+    }
+
+    plugin.setVersions( versions );
+    plugin.setScreenshots( screenshots );
+
+    return plugin;
+  }
+
+  private Collection<IPluginVersion> readVersions( XMLStreamReader reader, StringDeduplicator strings )
+    throws XMLStreamException {
+    Collection<IPluginVersion> versions = new ArrayList<>();
+    while ( nextChildElement( reader ) ) {
+      if ( "version".equals( reader.getLocalName() ) ) {
+        versions.add( this.readVersion( reader, strings ) );
+      } else {
+        skipElement( reader );
+      }
+    }
+
+    return versions;
+  }
+
+  private IPluginVersion readVersion( XMLStreamReader reader, StringDeduplicator strings )
+    throws XMLStreamException {
+    IPluginVersion version = this.pluginVersionFactory.create();
+
+    while ( nextChildElement( reader ) ) {
+      switch ( reader.getLocalName() ) {
+        case "branch":
+          version.setBranch( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "name":
+          version.setName( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "version":
+          version.setVersion( reader.getElementText() );
+          break;
+        case "package_url":
+          String downloadUrl = reader.getElementText().trim();
+          version.setDownloadUrl( downloadUrl );
+          version.setIsOsgi( downloadUrl.endsWith( OSGI_URL_SUFFIX ) );
+          break;
+        case "samples_url":
+          version.setSamplesDownloadUrl( reader.getElementText() );
+          break;
+        case "description":
+          version.setDescription( reader.getElementText() );
+          break;
+        case "changelog":
+          version.setChangelog( reader.getElementText() );
+          break;
+        case "build_id":
+          version.setBuildId( reader.getElementText() );
+          break;
+        case "releaseDate":
+          version.setReleaseDate( reader.getElementText() );
+          break;
+        case "min_parent_version":
+          version.setMinParentVersion( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "max_parent_version":
+          version.setMaxParentVersion( strings.deduplicate( reader.getElementText() ) );
+          break;
+        case "development_stage":
+          version.setDevelopmentStage( readDevelopmentStage( reader, strings ) );
+          break;
+        default:
+          skipElement( reader );
+      }
+    }
+
+    return version;
+  }
+
+  private static String[] readScreenshots( XMLStreamReader reader ) throws XMLStreamException {
+    List<String> screenshots = new ArrayList<>();
+    while ( nextChildElement( reader ) ) {
+      if ( "screenshot".equals( reader.getLocalName() ) ) {
+        screenshots.add( reader.getElementText() );
+      } else {
+        skipElement( reader );
+      }
+    }
+
+    return screenshots.toArray( new String[ screenshots.size() ] );
+  }
+
+  private ICategory readCategory( XMLStreamReader reader, StringDeduplicator strings ) throws XMLStreamException {
+    String name = null;
+    ICategory parent = null;
+    while ( nextChildElement( reader ) ) {
+      switch ( reader.getLocalName() ) {
+        case "name":
+          name = strings.deduplicate( reader.getElementText() );
+          break;
+        case "parent":
+          parent = this.readCategory( reader, strings );
+          break;
+        default:
+          skipElement( reader );
+      }
+    }
+
+    return this.categoryFactory.create( name, parent );
+  }
+
+  private static IDevelopmentStage readDevelopmentStage( XMLStreamReader reader, StringDeduplicator strings )
+    throws XMLStreamException {
+    String lane = null;
+    String phase = null;
+    while ( nextChildElement( reader ) ) {
+      switch ( reader.getLocalName() ) {
+        case "lane":
+          lane = strings.deduplicate( reader.getElementText().trim() );
+          break;
+        case "phase":
+          phase = strings.deduplicate( reader.getElementText().trim() );
+          break;
+        default:
+          skipElement( reader );
+      }
+    }
+
+    // TODO: switch to factory to allow DI?
+    return new DevelopmentStage( lane, phase );
+  }
+
+  private IPluginVersion readInstalledVersion( XMLStreamReader reader ) throws XMLStreamException {
+    while ( nextElement( reader ) ) {
+      if ( "version".equals( reader.getLocalName() ) ) {
+        IPluginVersion version = this.pluginVersionFactory.create();
+        version.setBranch( getAttributeValue( reader, "branch" ) );
+        version.setBuildId( getAttributeValue( reader, "buildId" ) );
+        version.setVersion( reader.getElementText() );
+        return version;
+      }
+    }
+
+    return null;
+  }
+  // endregion
+
+  // region Stream navigation
+  /**
+   * Moves the reader to the next element start, at any depth.
+   * @return false if the end of the document was reached
+   * @throws XMLStreamException if the document is not well formed or declares a DTD
+   */
+  private static boolean nextElement( XMLStreamReader reader ) throws XMLStreamException {
+    while ( reader.hasNext() ) {
+      int event = reader.next();
+      if ( event == XMLStreamConstants.START_ELEMENT ) {
+        return true;
+      }
+      if ( event == XMLStreamConstants.DTD ) {
+        throw new XMLStreamException( "DOCTYPE is not allowed in marketplace metadata.", reader.getLocation() );
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves the reader to the start of the next child of the current element.
+   * @return false if the end of the current element was reached
+   * @throws XMLStreamException if the document is not well formed
+   */
+  private static boolean nextChildElement( XMLStreamReader reader ) throws XMLStreamException {
+    while ( reader.hasNext() ) {
+      int event = reader.next();
+      if ( event == XMLStreamConstants.START_ELEMENT ) {
+        return true;
+      }
+      if ( event == XMLStreamConstants.END_ELEMENT ) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Moves the reader from the start of an element to its end, skipping its content.
+   */
+  private static void skipElement( XMLStreamReader reader ) throws XMLStreamException {
+    int depth = 1;
+    while ( depth > 0 && reader.hasNext() ) {
+      int event = reader.next();
+      if ( event == XMLStreamConstants.START_ELEMENT ) {
+        depth++;
+      } else if ( event == XMLStreamConstants.END_ELEMENT ) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Gets an attribute value the way {@link org.w3c.dom.Element#getAttribute(String)} does.
+   * @return the attribute value, or an empty string if the attribute is missing
+   */
+  private static String getAttributeValue( XMLStreamReader reader, String name ) {
+    String value = reader.getAttributeValue( null, name );
+    return value != null ? value : "";
+  }
+  // endregion
+}
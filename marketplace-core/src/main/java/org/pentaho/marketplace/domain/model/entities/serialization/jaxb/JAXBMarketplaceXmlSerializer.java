@@ -30,6 +30,7 @@ import org.pentaho.marketplace.domain.model.entities.serialization.IMarketplaceX
 import org.pentaho.marketplace.domain.model.factories.interfaces.ICategoryFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionFactory;
+import org.pentaho.marketplace.util.StringDeduplicator;
 import org.pentaho.marketplace.util.XmlParserFactoryProducer;
 
 import org.w3c.dom.Document;
@@ -47,6 +48,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.xpath.XPathExpressionException;
 
@@ -58,16 +60,31 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerializer {
 
   // region Constants
   private static final String OSGI_URL_SUFFIX = ".kar";
+  private static final int MAX_IDLE_UNMARSHALLERS = Runtime.getRuntime().availableProcessors() * 2;
   // endregion
 
   // region Properties
   private JAXBContext jaxbContext;
-  private Unmarshaller jaxbUnmarshaller;
+  private BlockingQueue<Unmarshaller> idleUnmarshallers =
+    new ArrayBlockingQueue<>( MAX_IDLE_UNMARSHALLERS );
+
+  private SAXParserFactory getSAXParserFactory() throws SAXException, ParserConfigurationException {
+    SAXParserFactory saxParserFactory = this.saxParserFactory;
+    if ( saxParserFactory == null ) {
+      // only used to create parsers once configured
+      saxParserFactory = XmlParserFactoryProducer.createSecureSAXParserFactory();
+      this.saxParserFactory = saxParserFactory;
+    }
+    return saxParserFactory;
+  }
+  private volatile SAXParserFactory saxParserFactory;
 
   private ICategoryFactory categoryFactory;
   private IPluginFactory pluginFactory;
@@ -90,7 +107,7 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
 
     try {
       this.jaxbContext = JAXBContext.newInstance( Market.class );
-      this.jaxbUnmarshaller = jaxbContext.createUnmarshaller();
+      this.idleUnmarshallers.offer( jaxbContext.createUnmarshaller() );
     } catch ( JAXBException e ) {
       this.getLogger().error( "Error initializing JAXBMarketplaceXmlSerializer.", e );
     }
@@ -99,24 +116,18 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
 
   // regions Methods
   @Override public Map<String, IPlugin> getPlugins( InputStream xmlInputStream ) {
-    try {
-      SAXParserFactory spf = XmlParserFactoryProducer.createSecureSAXParserFactory();
-      Source xmlSource = new SAXSource( spf.newSAXParser().getXMLReader(), new InputSource( xmlInputStream ) );
-      Market market = (Market) jaxbUnmarshaller.unmarshal( xmlSource );
-      Map<String, IPlugin> plugins = this.toPlugins( market );
-      return plugins;
-
-    } catch ( JAXBException | SAXException | ParserConfigurationException e ) {
-      this.getLogger().debug( "Failed trying to parse invalid marketplace metadata." );
-      return Collections.emptyMap();
-    }
+    return this.getPlugins( new InputSource( xmlInputStream ) );
   }
 
   @Override public Map<String, IPlugin> getPlugins( String xml ) {
+    return this.getPlugins( new InputSource( new StringReader( xml ) ) );
+  }
+
+  private Map<String, IPlugin> getPlugins( InputSource inputSource ) {
     try {
-      SAXParserFactory spf = XmlParserFactoryProducer.createSecureSAXParserFactory();
-      Source xmlSource = new SAXSource( spf.newSAXParser().getXMLReader(), new InputSource( new StringReader( xml ) ) );
-      Market market = (Market) jaxbUnmarshaller.unmarshal( xmlSource );
+      SAXParserFactory spf = this.getSAXParserFactory();
+      Source xmlSource = new SAXSource( spf.newSAXParser().getXMLReader(), inputSource );
+      Market market = this.unmarshal( xmlSource );
       Map<String, IPlugin> plugins = this.toPlugins( market );
       return plugins;
 
@@ -129,7 +140,7 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
   @Override public Map<String, IPlugin> getPlugins( Document marketplaceMetadataDocument )
     throws XPathExpressionException {
     try {
-      Market market = (Market) jaxbUnmarshaller.unmarshal( marketplaceMetadataDocument );
+      Market market = this.unmarshal( new DOMSource( marketplaceMetadataDocument ) );
       Map<String, IPlugin> plugins = this.toPlugins( market );
       return plugins;
 
@@ -139,6 +150,23 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
     }
   }
 
+  /**
+   * Unmarshals the marketplace metadata with an idle unmarshaller, creating one if all of them are in use.
+   * Unmarshallers are not thread safe, so each is used by one caller at a time.
+   */
+  private Market unmarshal( Source xmlSource ) throws JAXBException {
+    Unmarshaller unmarshaller = this.idleUnmarshallers.poll();
+    if ( unmarshaller == null ) {
+      unmarshaller = this.jaxbContext.createUnmarshaller();
+    }
+
+    Market market = (Market) unmarshaller.unmarshal( xmlSource );
+
+    // only unmarshallers that finished cleanly are kept, and no more than the pool holds
+    this.idleUnmarshallers.offer( unmarshaller );
+    return market;
+  }
+
   @Override public IPluginVersion getInstalledVersion( String xml ) {
     return this.getInstalledVersion( new InputSource( new StringReader( xml ) ) );
   }
@@ -182,16 +210,17 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
   private Map<String, IPlugin> toPlugins( Market market ) {
     Collection<Market.MarketEntry> marketEntries = market.getMarketEntry();
     Map<String, IPlugin> plugins = new HashMap<>( marketEntries.size() );
+    StringDeduplicator strings = new StringDeduplicator();
 
     int rank = 0;
     for ( Market.MarketEntry entry : marketEntries ) {
-      plugins.put( entry.getId(), this.toPlugin( entry, rank++ ) );
+      plugins.put( entry.getId(), this.toPlugin( entry, rank++, strings ) );
     }
 
     return plugins;
   }
 
-  private IPlugin toPlugin( Market.MarketEntry entry, int rank ) {
+  private IPlugin toPlugin( Market.MarketEntry entry, int rank, StringDeduplicator strings ) {
     IPlugin plugin = this.pluginFactory.create();
 
     //fill the instance
@@ -203,47 +232,47 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
     plugin.setSmallImg( entry.getSmallImg() );
     plugin.setDocumentationUrl( entry.getDocumentationUrl() );
     plugin.setDescription( entry.getDescription() );
-    plugin.setAuthorName( entry.getAuthor() );
-    plugin.setAuthorUrl( entry.getAuthorUrl() );
-    plugin.setAuthorLogo( entry.getAuthorLogo() );
+    plugin.setAuthorName( strings.deduplicate( entry.getAuthor() ) );
+    plugin.setAuthorUrl( strings.deduplicate( entry.getAuthorUrl() ) );
+    plugin.setAuthorLogo( strings.deduplicate( entry.getAuthorLogo() ) );
     plugin.setInstallationNotes( entry.getInstallationNotes() );
     plugin.setDependencies( entry.getDependencies() );
-    plugin.setLicense( entry.getLicense() );
-    plugin.setLicenseName( entry.getLicenseName() );
+    plugin.setLicense( strings.deduplicate( entry.getLicense() ) );
+    plugin.setLicenseName( strings.deduplicate( entry.getLicenseName() ) );
     plugin.setLicenseText( entry.getLicenseText() );
 
     List<Version> versions = ( entry.getVersions() != null )
         ? entry.getVersions().getVersion()
         : new ArrayList<Version>( 0 );
-    plugin.setVersions( this.toVersions( versions ) );
+    plugin.setVersions( this.toVersions( versions, strings ) );
 
     List<String> screenshots = ( entry.getScreenshots() != null )
         ? entry.getScreenshots().getScreenshot()
         : new ArrayList<String>( 0 );
     plugin.setScreenshots( screenshots.toArray( new String[ screenshots.size() ] ) );
 
-    plugin.setCategory( this.toCategory( entry.getCategory() ) );
+    plugin.setCategory( this.toCategory( entry.getCategory(), strings ) );
 
     return plugin;
   }
 
-  private Collection<IPluginVersion> toVersions( List<Version> versions ) {
+  private Collection<IPluginVersion> toVersions( List<Version> versions, StringDeduplicator strings ) {
     Collection<IPluginVersion> pluginVersions = new ArrayList<>( versions.size() );
 
     for ( Version version : versions ) {
-      pluginVersions.add( this.toVersion( version ) );
+      pluginVersions.add( this.toVersion( version, strings ) );
     }
 
     return pluginVersions;
   }
 
-  private IPluginVersion toVersion( Version version ) {
+  private IPluginVersion toVersion( Version version, StringDeduplicator strings ) {
     //get new pluginVersion instance
     IPluginVersion pluginVersion = this.pluginVersionFactory.create();
 
     //fill the instance
-    pluginVersion.setBranch( version.getBranch() );
-    pluginVersion.setName( version.getName() );
+    pluginVersion.setBranch( strings.deduplicate( version.getBranch() ) );
+    pluginVersion.setName( strings.deduplicate( version.getName() ) );
     String downloadUrl = version.getPackageUrl();
     if ( downloadUrl != null ) {
       downloadUrl = downloadUrl.trim();
@@ -256,14 +285,14 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
     pluginVersion.setChangelog( version.getChangelog() );
     pluginVersion.setBuildId( version.getBuildId() );
     //pluginVersion.setReleaseDate( version.getReleaseDate() );
-    pluginVersion.setMinParentVersion( version.getMinParentVersion() );
-    pluginVersion.setMaxParentVersion( version.getMaxParentVersion() );
+    pluginVersion.setMinParentVersion( strings.deduplicate( version.getMinParentVersion() ) );
+    pluginVersion.setMaxParentVersion( strings.deduplicate( version.getMaxParentVersion() ) );
 
     // TODO: use factory for DI?
     org.pentaho.marketplace.domain.model.entities.serialization.jaxb.dto.DevelopmentStage dtoDevStage = version.getDevelopmentStage();
     if ( dtoDevStage != null ) {
-      IDevelopmentStage devStage = new DevelopmentStage( dtoDevStage.getLane().value(),
-          String.valueOf( dtoDevStage.getPhase() ) );
+      IDevelopmentStage devStage = new DevelopmentStage( strings.deduplicate( dtoDevStage.getLane().value() ),
+          strings.deduplicate( String.valueOf( dtoDevStage.getPhase() ) ) );
       pluginVersion.setDevelopmentStage( devStage );
     }
 
@@ -276,17 +305,18 @@ public final class JAXBMarketplaceXmlSerializer implements IMarketplaceXmlSerial
     return MarketEntryType.getMarketEntryType( entryType.value() );
   }
 
-  private ICategory toCategory( org.pentaho.marketplace.domain.model.entities.serialization.jaxb.dto.Category categoryDto ) {
+  private ICategory toCategory( org.pentaho.marketplace.domain.model.entities.serialization.jaxb.dto.Category categoryDto,
+                                StringDeduplicator strings ) {
     if ( categoryDto == null ) {
       return null;
     }
 
     ICategory parent = null;
     if ( categoryDto.getParent() != null ) {
-      parent = this.toCategory( categoryDto.getParent() );
+      parent = this.toCategory( categoryDto.getParent(), strings );
     }
 
-    ICategory category = this.categoryFactory.create( categoryDto.getName(), parent );
+    ICategory category = this.categoryFactory.create( strings.deduplicate( categoryDto.getName() ), parent );
     return category;
   }
   // endregion
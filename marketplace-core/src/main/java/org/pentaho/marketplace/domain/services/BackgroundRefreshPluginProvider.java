@@ -0,0 +1,225 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.services.interfaces.IRefreshablePluginProvider;
+import org.pentaho.marketplace.domain.services.interfaces.IRemotePluginProvider;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the last obtained plugins immediately while a background thread keeps them up to date
+ * (stale-while-revalidate), so that requests for the plugins do not wait on the remote server.
+ *
+ * The remote server is only contacted by a requesting thread when no plugins were ever obtained (cold start).
+ * Refreshes run every {@link #getRefreshIntervalSeconds()} seconds with a random jitter so that several servers do
+ * not hit the remote server at the same time. When a refresh fails the interval is doubled on each consecutive
+ * failure, up to {@link #getMaxBackoffSeconds()} seconds.
+ */
+public class BackgroundRefreshPluginProvider implements IRemotePluginProvider {
+
+  // region Constants
+  private static final String REFRESH_THREAD_NAME = "Marketplace Metadata Refresh Thread";
+  private static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 300;
+  private static final long DEFAULT_MAX_BACKOFF_SECONDS = 3600;
+  private static final long MIN_REFRESH_INTERVAL_SECONDS = 1;
+  private static final double JITTER_RATIO = 0.1;
+  // endregion
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  public IRefreshablePluginProvider getPluginProvider() {
+    return this.pluginProvider;
+  }
+  protected BackgroundRefreshPluginProvider setPluginProvider( IRefreshablePluginProvider pluginProvider ) {
+    this.pluginProvider = pluginProvider;
+    return this;
+  }
+  private IRefreshablePluginProvider pluginProvider;
+
+  /**
+   * Gets the number of seconds between background refreshes while the remote server is reachable.
+   * @return the refresh interval in seconds
+   */
+  public long getRefreshIntervalSeconds() {
+    return this.refreshIntervalSeconds;
+  }
+  public void setRefreshIntervalSeconds( long refreshIntervalSeconds ) {
+    this.refreshIntervalSeconds = Math.max( MIN_REFRESH_INTERVAL_SECONDS, refreshIntervalSeconds );
+  }
+  private long refreshIntervalSeconds = DEFAULT_REFRESH_INTERVAL_SECONDS;
+
+  /**
+   * Gets the maximum number of seconds between background refreshes while the remote server is unreachable.
+   * @return the maximum backoff in seconds
+   */
+  public long getMaxBackoffSeconds() {
+    return this.maxBackoffSeconds;
+  }
+  public void setMaxBackoffSeconds( long maxBackoffSeconds ) {
+    this.maxBackoffSeconds = Math.max( MIN_REFRESH_INTERVAL_SECONDS, maxBackoffSeconds );
+  }
+  private long maxBackoffSeconds = DEFAULT_MAX_BACKOFF_SECONDS;
+
+  protected ScheduledThreadPoolExecutor getRefreshExecutor() {
+    return this.refreshExecutor;
+  }
+  protected void setRefreshExecutor( ScheduledThreadPoolExecutor refreshExecutor ) {
+    this.refreshExecutor = refreshExecutor;
+  }
+  private volatile ScheduledThreadPoolExecutor refreshExecutor;
+
+  /**
+   * Only accessed from the refresh thread.
+   */
+  private int consecutiveFailures;
+  // endregion
+
+  // region Constructors
+  public BackgroundRefreshPluginProvider( IRefreshablePluginProvider pluginProvider ) {
+    this.setPluginProvider( pluginProvider );
+  }
+
+  /**
+   * Called after class is instantiated by dependency injection
+   */
+  public void init() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+      1,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r );
+          thread.setName( REFRESH_THREAD_NAME );
+          thread.setDaemon( true );
+          return thread;
+        }
+      },
+      new ThreadPoolExecutor.DiscardPolicy()
+    );
+    this.setRefreshExecutor( executor );
+
+    // warm up the plugins right away so that the first request does not have to
+    this.scheduleRefresh( 0 );
+  }
+
+  /**
+   * Called on object destruction by dependency injection
+   */
+  public void destroy() {
+    ScheduledThreadPoolExecutor executor = this.getRefreshExecutor();
+    if ( executor != null ) {
+      executor.shutdownNow();
+      this.setRefreshExecutor( null );
+    }
+  }
+  // endregion
+
+  // region Methods
+  @Override
+  public URL getUrl() {
+    return this.getPluginProvider().getUrl();
+  }
+
+  @Override
+  public void setUrl( URL url ) {
+    this.getPluginProvider().setUrl( url );
+  }
+
+  @Override
+  public Map<String, IPlugin> getPlugins() {
+    IRefreshablePluginProvider provider = this.getPluginProvider();
+    if ( this.getRefreshExecutor() == null ) {
+      // not refreshing in the background, let the provider decide when to fetch
+      return provider.getPlugins();
+    }
+
+    Map<String, IPlugin> plugins = provider.getCachedPlugins();
+    if ( plugins == null ) {
+      // cold start: nothing to serve yet, so this request has to wait for the remote server
+      provider.refresh();
+      plugins = provider.getCachedPlugins();
+    }
+
+    return plugins != null ? plugins : Collections.<String, IPlugin>emptyMap();
+  }
+
+  private void scheduleRefresh( long delayMillis ) {
+    ScheduledThreadPoolExecutor executor = this.getRefreshExecutor();
+    if ( executor == null || executor.isShutdown() ) {
+      return;
+    }
+
+    executor.schedule( new Runnable() {
+      @Override
+      public void run() {
+        refreshAndReschedule();
+      }
+    }, delayMillis, TimeUnit.MILLISECONDS );
+  }
+
+  private void refreshAndReschedule() {
+    boolean refreshed = false;
+    try {
+      refreshed = this.getPluginProvider().refresh();
+    } catch ( RuntimeException e ) {
+      this.getLogger().warn( "Unexpected error refreshing marketplace metadata.", e );
+    }
+
+    this.consecutiveFailures = refreshed ? 0 : this.consecutiveFailures + 1;
+    if ( !refreshed ) {
+      this.getLogger().debug( "Marketplace metadata refresh failed " + this.consecutiveFailures + " time(s) in a row." );
+    }
+
+    long delay = this.getRefreshDelayMillis( this.consecutiveFailures );
+    this.scheduleRefresh( this.addJitter( delay ) );
+  }
+
+  /**
+   * Gets the delay until the next refresh, without jitter.
+   * @param consecutiveFailures the number of refreshes that failed in a row
+   * @return the refresh interval, doubled for each consecutive failure and capped by the maximum backoff.
+   */
+  long getRefreshDelayMillis( int consecutiveFailures ) {
+    long delay = TimeUnit.SECONDS.toMillis( this.getRefreshIntervalSeconds() );
+    long maxDelay = Math.max( delay, TimeUnit.SECONDS.toMillis( this.getMaxBackoffSeconds() ) );
+    for ( int i = 0; i < consecutiveFailures && delay < maxDelay; i++ ) {
+      delay *= 2;
+    }
+    return Math.min( delay, maxDelay );
+  }
+
+  private long addJitter( long delayMillis ) {
+    long jitter = (long) ( delayMillis * JITTER_RATIO );
+    if ( jitter <= 0 ) {
+      return delayMillis;
+    }
+    return delayMillis - jitter + ThreadLocalRandom.current().nextLong( 2 * jitter + 1 );
+  }
+  // endregion
+}
@@ -16,14 +16,20 @@ package org.pentaho.marketplace.domain.services;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.karaf.features.Feature;
+import org.apache.karaf.features.FeatureEvent;
+import org.apache.karaf.features.FeaturesListener;
 import org.apache.karaf.features.FeaturesService;
+import org.apache.karaf.features.RepositoryEvent;
 import org.apache.karaf.kar.KarService;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 
+import org.pentaho.marketplace.domain.model.entities.InstalledState;
+import org.pentaho.marketplace.domain.model.entities.PluginView;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
@@ -31,23 +37,45 @@ import org.pentaho.marketplace.domain.model.entities.interfaces.IVersionData;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IDomainStatusMessageFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IVersionDataFactory;
+import org.pentaho.marketplace.domain.services.interfaces.IPluginCatalog;
 import org.pentaho.marketplace.domain.services.interfaces.IPluginProvider;
 import org.pentaho.marketplace.domain.services.interfaces.IPluginService;
 import org.pentaho.marketplace.domain.services.interfaces.IRemotePluginProvider;
+import org.pentaho.marketplace.util.DownloadProgress;
+import org.pentaho.marketplace.util.FolderWatcher;
+import org.pentaho.marketplace.util.ZipExtractor;
+import org.pentaho.marketplace.util.web.DownloadResult;
+import org.pentaho.marketplace.util.web.HttpUtil;
 import org.pentaho.telemetry.ITelemetryService;
 import org.pentaho.telemetry.TelemetryEvent;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public abstract class BasePluginService implements IPluginService {
 
@@ -67,12 +95,17 @@ public abstract class BasePluginService implements IPluginService {
   protected static final String FAIL_ERROR_CODE = "ERROR_0003_FAIL";
   protected static final String PLUGIN_INSTALLED_CODE = "PLUGIN_INSTALLED";
   protected static final String PLUGIN_UNINSTALLED_CODE = "PLUGIN_UNINSTALLED";
+  protected static final String PLUGIN_ROLLED_BACK_CODE = "PLUGIN_ROLLED_BACK";
 
   protected static final String KARAF_FEATURES_CONFIG_PID = "org.apache.karaf.features";
   protected static final String KARAF_FEATURES_BOOT_PROPERTY_ID = "featuresBoot";
   protected static final String PENTAHO_FEATURES_CONFIG_PID = "org.pentaho.features";
   protected static final String PENTAHO_RUNTIME_FEATURES_PROPERTY_ID = "runtimeFeatures";
 
+  protected static final long DEFAULT_CATALOG_MAX_AGE_SECONDS = 60;
+  protected static final int DEFAULT_BATCH_DOWNLOAD_THREADS = 4;
+  private static final String BATCH_DOWNLOAD_THREAD_NAME = "Marketplace Package Download Thread";
+
   //endregion
 
   //region Properties
@@ -192,6 +225,135 @@ public abstract class BasePluginService implements IPluginService {
     return this;
   }
   private ConfigurationAdmin configurationAdmin;
+
+  //region catalog
+  /**
+   * Gets the catalog used to look up single plugins. The catalog is rebuilt when listing all plugins, when it is
+   * older than {@link #getCatalogMaxAgeSeconds()} seconds and after (un)installing plugins.
+   * @return the current plugin catalog
+   */
+  protected IPluginCatalog getCatalog() {
+    IPluginCatalog catalog = this.catalog;
+    if ( catalog == null || this.isExpired( catalog ) ) {
+      catalog = this.buildCatalog();
+    }
+    return catalog;
+  }
+
+  /**
+   * Discards the current catalog, so that the next lookup rebuilds it.
+   */
+  protected void invalidateCatalog() {
+    this.catalog = null;
+  }
+
+  private volatile IPluginCatalog catalog;
+
+  private volatile CompatibilityIndex compatibilityIndex;
+
+  public long getCatalogMaxAgeSeconds() {
+    return this.catalogMaxAgeSeconds;
+  }
+
+  public void setCatalogMaxAgeSeconds( long catalogMaxAgeSeconds ) {
+    this.catalogMaxAgeSeconds = Math.max( 0, catalogMaxAgeSeconds );
+  }
+
+  private long catalogMaxAgeSeconds = DEFAULT_CATALOG_MAX_AGE_SECONDS;
+  //endregion
+
+  //region installedPluginRegistry
+  protected InstalledPluginRegistry getInstalledPluginRegistry() {
+    return this.installedPluginRegistry;
+  }
+
+  private final InstalledPluginRegistry installedPluginRegistry =
+    new InstalledPluginRegistry( new InstalledPluginRegistry.Loader() {
+      @Override
+      public Map<String, InstalledState> load( Map<String, PluginView> compatiblePlugins ) {
+        return computeInstalledStates( compatiblePlugins );
+      }
+    } );
+
+  private final FeaturesListener featuresListener = new FeaturesListener() {
+    @Override
+    public void featureEvent( FeatureEvent event ) {
+      invalidateInstalledPlugins();
+    }
+
+    @Override
+    public void repositoryEvent( RepositoryEvent event ) {
+      invalidateInstalledPlugins();
+    }
+  };
+
+  private FolderWatcher pluginFolderWatcher;
+  //endregion
+
+  //region batchDownloadThreads
+  /**
+   * Gets the maximum number of packages downloaded at the same time when installing several plugins at once.
+   * @return the number of download threads
+   */
+  public int getBatchDownloadThreads() {
+    return this.batchDownloadThreads;
+  }
+
+  public void setBatchDownloadThreads( int batchDownloadThreads ) {
+    this.batchDownloadThreads = Math.max( 1, batchDownloadThreads );
+  }
+
+  private int batchDownloadThreads = DEFAULT_BATCH_DOWNLOAD_THREADS;
+
+  /**
+   * Packages downloaded ahead of their install, by download url.
+   */
+  private final Map<String, File> prefetchedPackages = new ConcurrentHashMap<>();
+  //endregion
+
+  //region packageCache
+  /**
+   * Gets the cache packages are downloaded into, so that installing them again does not download them again.
+   * @return the package cache, or null if packages are not cached
+   */
+  public PackageCache getPackageCache() {
+    return this.packageCache;
+  }
+
+  public void setPackageCache( PackageCache packageCache ) {
+    this.packageCache = packageCache;
+  }
+
+  private PackageCache packageCache;
+  //endregion
+
+  //region folderTrash
+  /**
+   * Gets the trash removed plugin folders are moved to, so that removing them does not wait for their deletion.
+   * @return the folder trash, or null if folders are deleted right away
+   */
+  public FolderTrash getFolderTrash() {
+    return this.folderTrash;
+  }
+
+  public void setFolderTrash( FolderTrash folderTrash ) {
+    this.folderTrash = folderTrash;
+  }
+
+  private FolderTrash folderTrash;
+  //endregion
+
+  //region zipExtractor
+  /**
+   * Gets the extractor of plugin packages.
+   * @return the zip extractor
+   */
+  public ZipExtractor getZipExtractor() {
+    return this.zipExtractor;
+  }
+
+  private final ZipExtractor zipExtractor = new ZipExtractor();
+  //endregion
   //endregion
 
   //region Constructors
@@ -214,53 +376,121 @@ public abstract class BasePluginService implements IPluginService {
     this.setTelemetryService( telemetryService );
     this.setDomainStatusMessageFactory( domainStatusMessageFactory );
   }
-  //endregion
 
-  //region Methods
+  /**
+   * Called after class is instantiated by dependency injection.
+   * Starts keeping the installed plugins in memory, listening to Karaf feature events and to changes in the plugin
+   * folders to know when they change.
+   */
+  public void init() {
+    try {
+      this.getFeaturesService().registerListener( this.featuresListener );
+    } catch ( Exception e ) {
+      this.getLogger().warn( "Unable to listen to Karaf feature events. Installed plugins will not be cached.", e );
+      return;
+    }
 
-  private boolean withinParentVersion( IPluginVersion pv ) {
-    // need to compare plugin version min and max parent with system version.
-    // replace the version of the xml url path with the current release version:
-    String v = this.getServerVersion();
-    IVersionData pvMax = this.getVersionDataFactory().create( pv.getMaxParentVersion() );
-    IVersionData pvMin = this.getVersionDataFactory().create( pv.getMinParentVersion() );
-    IVersionData version = this.getVersionDataFactory().create( v );
+    Collection<File> pluginFolders = new ArrayList<>( this.getPluginFolders() );
+    pluginFolders.add( new File( this.getKarafDeployFolder() ) );
+    try {
+      this.pluginFolderWatcher = new FolderWatcher( "Marketplace Plugin Folder Watcher Thread", pluginFolders,
+        new Runnable() {
+          @Override
+          public void run() {
+            invalidateInstalledPlugins();
+          }
+        } );
+      this.pluginFolderWatcher.start();
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to watch plugin folders. Installed plugins will not be cached.", e );
+      this.getFeaturesService().unregisterListener( this.featuresListener );
+      return;
+    }
 
-    return version.within( pvMin, pvMax );
+    this.getInstalledPluginRegistry().setCaching( true );
   }
 
-  private Collection<IPluginVersion> getCompatibleVersionsWithParent( Iterable<IPluginVersion> versions ) {
-    Collection<IPluginVersion> compatibleVersions = new ArrayList<>();
-    for ( IPluginVersion version : versions ) {
-      if ( withinParentVersion( version ) ) {
-        compatibleVersions.add( version );
-      }
+  /**
+   * Called on object destruction by dependency injection
+   */
+  public void destroy() {
+    this.getInstalledPluginRegistry().setCaching( false );
+
+    if ( this.pluginFolderWatcher != null ) {
+      this.pluginFolderWatcher.close();
+      this.pluginFolderWatcher = null;
+    }
+
+    try {
+      this.getFeaturesService().unregisterListener( this.featuresListener );
+    } catch ( Exception e ) {
+      this.getLogger().debug( "Unable to stop listening to Karaf feature events.", e );
     }
+  }
+  //endregion
+
+  //region Methods
 
-    return compatibleVersions;
+  /**
+   * Gets the compatible plugins from the index computed for the marketplace plugins snapshot and the server version,
+   * computing the index if they changed.
+   */
+  private Map<String, PluginView> getCompatiblePlugins( Map<String, IPlugin> marketplacePlugins ) {
+    String serverVersion = this.getServerVersion();
+    CompatibilityIndex index = this.compatibilityIndex;
+    if ( index == null || !index.isFor( marketplacePlugins, serverVersion ) ) {
+      index = new CompatibilityIndex( marketplacePlugins, serverVersion,
+        this.computeCompatiblePlugins( marketplacePlugins.values(), serverVersion ) );
+      this.compatibilityIndex = index;
+    }
+    return index.getCompatiblePlugins();
   }
 
   /**
-   * Filters out plugins without a compatible version to server. Removes non compatible versions for the plugins which
-   * pass the filter.
+   * Filters out plugins without a compatible version to server. The plugins which pass the filter are viewed with
+   * only their compatible versions; the plugins themselves are not changed.
    */
-  private Map<String, IPlugin> removeNonCompatibleVersions( Iterable<IPlugin> plugins ) {
-    Map<String, IPlugin> pluginsWithCompatibleVersions = new HashMap<>();
+  private Map<String, PluginView> computeCompatiblePlugins( Iterable<IPlugin> plugins, String serverVersion ) {
+    IVersionData version = this.getVersionDataFactory().create( serverVersion );
+    // parent version ranges are mostly the same across plugin versions, so each one is only parsed once
+    Map<String, IVersionData> parsedVersions = new HashMap<>();
+    Map<String, PluginView> pluginsWithCompatibleVersions = new HashMap<>();
 
     for ( IPlugin plugin : plugins ) {
+      if ( !this.isSupported( plugin ) ) {
+        continue;
+      }
+
       // filter out plugin versions that are not compatible with parent version
-      Collection<IPluginVersion> compatibleVersions = this.getCompatibleVersionsWithParent( plugin.getVersions() );
+      Collection<IPluginVersion> compatibleVersions = new ArrayList<>();
+      for ( IPluginVersion pluginVersion : plugin.getVersions() ) {
+        IVersionData pvMin = this.getVersionData( pluginVersion.getMinParentVersion(), parsedVersions );
+        IVersionData pvMax = this.getVersionData( pluginVersion.getMaxParentVersion(), parsedVersions );
+        if ( version.within( pvMin, pvMax ) ) {
+          compatibleVersions.add( pluginVersion );
+        }
+      }
+
       // only include plugins that have versions within this release
       if ( compatibleVersions.size() > 0 ) {
-        // change available version to only compatible ones
-        plugin.setVersions( compatibleVersions );
-        pluginsWithCompatibleVersions.put( plugin.getId(), plugin );
+        // only expose compatible versions
+        pluginsWithCompatibleVersions.put( plugin.getId(),
+          new PluginView( plugin, compatibleVersions, InstalledState.NOT_INSTALLED ) );
       }
     }
 
     return pluginsWithCompatibleVersions;
   }
 
+  private IVersionData getVersionData( String version, Map<String, IVersionData> parsedVersions ) {
+    IVersionData versionData = parsedVersions.get( version );
+    if ( versionData == null ) {
+      versionData = this.getVersionDataFactory().create( version );
+      parsedVersions.put( version, versionData );
+    }
+    return versionData;
+  }
+
   private boolean isPluginIdValid( String pluginId ) {
     return pluginId != null
       && pluginId.length() > 0
@@ -269,8 +499,9 @@ public abstract class BasePluginService implements IPluginService {
       && pluginId.indexOf( "." ) < 0;
   }
 
+  @Override
   public IPlugin getPlugin( String id ) {
-    return this.getPlugins().get( id );
+    return this.getCatalog().getPlugin( id );
   }
 
   // TODO: only allows one version per branch
@@ -284,15 +515,15 @@ public abstract class BasePluginService implements IPluginService {
   /**
    * Filters plugins by plugin id
    */
-  private Map<String, IPlugin> filterPlugins( Map<String, IPlugin> plugins, Collection<String> pluginIds ) {
+  private <T extends IPlugin> Map<String, T> filterPlugins( Map<String, T> plugins, Collection<String> pluginIds ) {
     if ( pluginIds.size() < 1 ) {
       return Collections.emptyMap();
     }
 
-    Map<String, IPlugin> filteredPlugins = new HashMap<>();
+    Map<String, T> filteredPlugins = new HashMap<>();
 
     for ( String pluginId : pluginIds ) {
-      IPlugin plugin = plugins.get( pluginId );
+      T plugin = plugins.get( pluginId );
       if ( plugin != null ) {
         filteredPlugins.put( pluginId, plugin );
       }
@@ -302,20 +533,51 @@ public abstract class BasePluginService implements IPluginService {
   }
 
   /**
-   * Sets plugins as installed as well as the installed version
+   * Gets the installed state, including the installed version, of installed plugins
    *
-   * @param plugins the plugins to be marked as installed
+   * @param plugins the installed plugins
+   * @param installedKars the ids of the installed KARs
+   * @return the installed state of each plugin, by plugin id
    */
-  private void setPluginsAsInstalled( Collection<IPlugin> plugins ) {
+  private Map<String, InstalledState> getInstalledStates( Collection<? extends IPlugin> plugins,
+                                                          Collection<String> installedKars ) {
+    Map<String, InstalledState> installedStates = new HashMap<>();
     for ( IPlugin plugin : plugins ) {
-      plugin.setInstalled( true );
-      IPluginVersion installedVersion = getInstalledPluginVersion( plugin );
-      if ( installedVersion != null ) {
-        plugin.setInstalledBranch( installedVersion.getBranch() );
-        plugin.setInstalledVersion( installedVersion.getVersion() );
-        plugin.setInstalledBuildId( installedVersion.getBuildId() );
-      }
+      installedStates.put( plugin.getId(),
+        InstalledState.installed( getInstalledPluginVersion( plugin, installedKars ) ) );
     }
+    return installedStates;
+  }
+
+  /**
+   * Queries Karaf and the plugin folders for the installed state of the compatible plugins.
+   */
+  private Map<String, InstalledState> computeInstalledStates( Map<String, PluginView> compatiblePlugins ) {
+    Collection<String> installedKars = this.getInstalledKars();
+    Collection<String> installedPluginIds = this.getInstalledPluginIds( installedKars );
+    Map<String, PluginView> installedPlugins = this.filterPlugins( compatiblePlugins, installedPluginIds );
+    return this.getInstalledStates( installedPlugins.values(), installedKars );
+  }
+
+  /**
+   * Discards the known installed plugins, so that they are queried again on the next catalog build.
+   */
+  protected void invalidateInstalledPlugins() {
+    this.getInstalledPluginRegistry().invalidate();
+    this.invalidateCatalog();
+  }
+
+  /**
+   * Overlays the installed states on the compatible plugins.
+   */
+  private Map<String, IPlugin> mergeInstalledStates( Map<String, PluginView> plugins,
+                                                     Map<String, InstalledState> installedStates ) {
+    Map<String, IPlugin> mergedPlugins = new HashMap<>();
+    for ( PluginView plugin : plugins.values() ) {
+      InstalledState installedState = installedStates.get( plugin.getId() );
+      mergedPlugins.put( plugin.getId(), installedState != null ? plugin.withInstalledState( installedState ) : plugin );
+    }
+    return mergedPlugins;
   }
 
 
@@ -332,7 +594,7 @@ public abstract class BasePluginService implements IPluginService {
     }
   }
 
-  private IDomainStatusMessage upgradePluginAux( String pluginId, String versionBranch ) {
+  private IDomainStatusMessage upgradePluginAux( String pluginId, String versionBranch, IPluginCatalog catalog ) {
 
     if ( !hasMarketplacePermission() ) {
       return this.getDomainStatusMessageFactory()
@@ -344,7 +606,7 @@ public abstract class BasePluginService implements IPluginService {
         .create( NO_PLUGIN_ERROR_CODE, "Invalid plugin id" );
     }
 
-    IPlugin plugin = this.getPlugin( pluginId );
+    IPlugin plugin = catalog.getPlugin( pluginId );
     if ( plugin == null ) {
       return this.getDomainStatusMessageFactory()
         .create( NO_PLUGIN_ERROR_CODE, "Plugin not found" );
@@ -375,8 +637,11 @@ public abstract class BasePluginService implements IPluginService {
             .create(FAIL_ERROR_CODE, "Failed to uninstall on plugin upgrade, see log for details.");
 
 
-    // it's an upgrade, uninstall old version first
-    if ( !this.executeUninstall(plugin) ) {
+    // a non OSGi version replaces the installed non OSGi version in place, which keeps the installed version until the
+    // new one is staged and keeps it for rollback; otherwise it's an upgrade, uninstall old version first
+    IPluginVersion installedVersion = this.getInstalledPluginVersion( plugin );
+    boolean replaceInPlace = installedVersion != null && !installedVersion.isOsgi() && !pluginVersionToInstall.isOsgi();
+    if ( !replaceInPlace && !this.executeUninstall( plugin ) ) {
       return upgradeUninstallFailureMessage;
     }
 
@@ -394,7 +659,7 @@ public abstract class BasePluginService implements IPluginService {
     return successMessage;
   }
 
-  private IDomainStatusMessage installPluginAux( String pluginId, String versionBranch )
+  private IDomainStatusMessage installPluginAux( String pluginId, String versionBranch, IPluginCatalog catalog )
     throws MarketplaceSecurityException {
 
     if ( !hasMarketplacePermission() ) {
@@ -405,7 +670,7 @@ public abstract class BasePluginService implements IPluginService {
       return this.domainStatusMessageFactory.create( NO_PLUGIN_ERROR_CODE, "Invalid Plugin Id." );
     }
 
-    IPlugin toInstall = this.getPlugin( pluginId );
+    IPlugin toInstall = catalog.getPlugin( pluginId );
     if ( toInstall == null ) {
       return this.domainStatusMessageFactory.create( NO_PLUGIN_ERROR_CODE, "Plugin Not Found" );
     }
@@ -488,35 +753,156 @@ public abstract class BasePluginService implements IPluginService {
 
     return successMessage;
   }
+
+  private IDomainStatusMessage rollbackPluginAux( String pluginId ) throws MarketplaceSecurityException {
+
+    if ( !hasMarketplacePermission() ) {
+      throw new MarketplaceSecurityException();
+    }
+
+    IPlugin toRollback = this.getPlugin( pluginId );
+    if ( toRollback == null ) {
+      return this.domainStatusMessageFactory.create( NO_PLUGIN_ERROR_CODE, "Plugin Not Found" );
+    }
+    // an uninstalled plugin must not come back from its previous version
+    if ( !toRollback.isInstalled() ) {
+      return this.domainStatusMessageFactory
+        .create( FAIL_ERROR_CODE, toRollback.getName() + " is not installed, there is no version to restore." );
+    }
+
+    // before restoring, close class loader of the version being replaced
+    this.unloadPlugin( toRollback );
+    if ( !this.executeNonOsgiRollback( toRollback ) ) {
+      return this.domainStatusMessageFactory
+        .create( FAIL_ERROR_CODE, "Failed to restore the previous version, see log for details." );
+    }
+
+    return this.domainStatusMessageFactory.create( PLUGIN_ROLLED_BACK_CODE, toRollback.getName()
+      + " was successfully restored to its previous version.  Please restart your BI Server." );
+  }
   //endregion
 
-  //region IPluginService implementation
-  @Override public Map<String, IPlugin> getPlugins() {
+  private boolean isExpired( IPluginCatalog catalog ) {
+    long maxAge = TimeUnit.SECONDS.toMillis( this.getCatalogMaxAgeSeconds() );
+    return System.currentTimeMillis() - catalog.getCreatedAt() >= maxAge;
+  }
+
+  /**
+   * Builds a new catalog from the marketplace metadata and the installed plugins and makes it the current catalog.
+   */
+  private IPluginCatalog buildCatalog() {
     Map<String, IPlugin> marketplacePlugins = this.getMetadataPluginsProvider().getPlugins();
 
-    Map<String, IPlugin> compatiblePlugins = this.removeNonCompatibleVersions( marketplacePlugins.values() );
+    // the marketplace plugins are shared, they are only viewed and never changed
+    Map<String, PluginView> compatiblePlugins = this.getCompatiblePlugins( marketplacePlugins );
 
-    Collection<String> installedPluginIds = getInstalledPluginIds();
-    Map<String, IPlugin> installedPlugins = this.filterPlugins( compatiblePlugins, installedPluginIds );
-    this.setPluginsAsInstalled( installedPlugins.values() );
+    // the installed states are only queried again when plugins are (un)installed
+    Map<String, InstalledState> installedStates =
+      this.getInstalledPluginRegistry().getInstalledStates( compatiblePlugins );
 
-    return compatiblePlugins;
+    IPluginCatalog catalog = new PluginCatalog( this.mergeInstalledStates( compatiblePlugins, installedStates ) );
+    this.catalog = catalog;
+    return catalog;
+  }
+
+  //region IPluginService implementation
+  @Override public Map<String, IPlugin> getPlugins() {
+    // listing the plugins always reflects the latest metadata and installed plugins
+    return this.buildCatalog().getPlugins();
   }
 
   @Override
   public IDomainStatusMessage installPlugin( String pluginId, String versionBranch ) {
     try {
-      IPlugin plugin = this.getPlugin( pluginId );
+      return this.installPlugin( pluginId, versionBranch, this.getCatalog() );
+    } finally {
+      // installed state changed
+      this.invalidateInstalledPlugins();
+    }
+  }
+
+  @Override
+  public Map<String, IDomainStatusMessage> installPlugins( Map<String, String> versionBranchesByPluginId ) {
+    Map<String, IDomainStatusMessage> results = new LinkedHashMap<>();
+
+    if ( !this.hasMarketplacePermission() ) {
+      IDomainStatusMessage unauthorized =
+        this.domainStatusMessageFactory.create( UNAUTHORIZED_ACCESS_ERROR_CODE, UNAUTHORIZED_ACCESS_MESSAGE );
+      for ( String pluginId : versionBranchesByPluginId.keySet() ) {
+        results.put( pluginId, unauthorized );
+      }
+      return results;
+    }
+
+    // every plugin is resolved against the same catalog, even though it is invalidated by each install
+    IPluginCatalog catalog = this.getCatalog();
+
+    Collection<String> packageUrls = new LinkedHashSet<>();
+    for ( Map.Entry<String, String> entry : versionBranchesByPluginId.entrySet() ) {
+      IPlugin plugin = isPluginIdValid( entry.getKey() ) ? catalog.getPlugin( entry.getKey() ) : null;
+      IPluginVersion version = plugin != null ? plugin.getVersionByBranch( entry.getValue() ) : null;
+      if ( version != null && version.getDownloadUrl() != null ) {
+        packageUrls.add( version.getDownloadUrl() );
+      }
+    }
+
+    // the cached packages are kept from being evicted by each other until all of them are installed
+    this.retainPackages( packageUrls );
+    Map<String, File> packages = this.prefetchPackages( packageUrls );
+    try {
+      for ( Map.Entry<String, String> entry : versionBranchesByPluginId.entrySet() ) {
+        results.put( entry.getKey(), this.installPlugin( entry.getKey(), entry.getValue(), catalog ) );
+      }
+    } finally {
+      for ( Map.Entry<String, File> prefetchedPackage : packages.entrySet() ) {
+        this.prefetchedPackages.remove( prefetchedPackage.getKey(), prefetchedPackage.getValue() );
+        FileUtils.deleteQuietly( prefetchedPackage.getValue() );
+      }
+      this.releasePackages( packageUrls );
+      // installed state changed
+      this.invalidateInstalledPlugins();
+    }
+
+    return results;
+  }
 
+  private IDomainStatusMessage installPlugin( String pluginId, String versionBranch, IPluginCatalog catalog ) {
+    IPlugin plugin = isPluginIdValid( pluginId ) ? catalog.getPlugin( pluginId ) : null;
+    IPluginVersion version = plugin != null ? plugin.getVersionByBranch( versionBranch ) : null;
+    // the package is kept in the cache until the install is done with it
+    Collection<String> packageUrls = version != null && version.getDownloadUrl() != null
+      ? Collections.singleton( version.getDownloadUrl() ) : Collections.<String>emptySet();
+    this.retainPackages( packageUrls );
+    try {
       if ( plugin != null && plugin.isInstalled() ) {
-        return this.upgradePluginAux( pluginId, versionBranch );
+        return this.upgradePluginAux( pluginId, versionBranch, catalog );
       } else {
-        return this.installPluginAux( pluginId, versionBranch );
+        return this.installPluginAux( pluginId, versionBranch, catalog );
       }
 
     } catch ( MarketplaceSecurityException e ) {
       this.getLogger().debug( e.getMessage(), e );
       return this.domainStatusMessageFactory.create( UNAUTHORIZED_ACCESS_ERROR_CODE, UNAUTHORIZED_ACCESS_MESSAGE );
+    } finally {
+      this.releasePackages( packageUrls );
+    }
+  }
+
+  private void retainPackages( Collection<String> packageUrls ) {
+    PackageCache packageCache = this.getPackageCache();
+    if ( packageCache != null ) {
+      for ( String packageUrl : packageUrls ) {
+        packageCache.retain( packageUrl );
+      }
+    }
+  }
+
+  private void releasePackages( Collection<String> packageUrls ) {
+    PackageCache packageCache = this.getPackageCache();
+    if ( packageCache != null ) {
+      for ( String packageUrl : packageUrls ) {
+        packageCache.release( packageUrl );
+      }
     }
   }
 
@@ -527,8 +913,30 @@ public abstract class BasePluginService implements IPluginService {
     } catch ( MarketplaceSecurityException e ) {
       this.getLogger().debug( e.getMessage(), e );
       return this.domainStatusMessageFactory.create( UNAUTHORIZED_ACCESS_ERROR_CODE, UNAUTHORIZED_ACCESS_MESSAGE );
+    } finally {
+      // installed state changed
+      this.invalidateInstalledPlugins();
     }
   }
+
+  @Override
+  public IDomainStatusMessage rollbackPlugin( String pluginId ) {
+    try {
+      return rollbackPluginAux( pluginId );
+    } catch ( MarketplaceSecurityException e ) {
+      this.getLogger().debug( e.getMessage(), e );
+      return this.domainStatusMessageFactory.create( UNAUTHORIZED_ACCESS_ERROR_CODE, UNAUTHORIZED_ACCESS_MESSAGE );
+    } finally {
+      // installed state changed
+      this.invalidateInstalledPlugins();
+    }
+  }
+
+  @Override
+  public <T> Callable<T> inCallerContext( Callable<T> operation ) {
+    // no thread bound context by default
+    return operation;
+  }
   //endregion
 
   protected boolean executeOsgiInstallViaKarService( IPlugin plugin, IPluginVersion versionToInstall ) {
@@ -547,6 +955,242 @@ public abstract class BasePluginService implements IPluginService {
     return false;
   }
 
+  /**
+   * Downloads packages concurrently, so that installing them does not wait on the network.
+   * @param packageUrls the download urls of the packages
+   * @return the downloaded packages, by download url. Packages that failed to download are left out.
+   */
+  private Map<String, File> prefetchPackages( Collection<String> packageUrls ) {
+    Map<String, File> packages = new HashMap<>();
+    if ( packageUrls.isEmpty() ) {
+      return packages;
+    }
+
+    // downloads are reported on the progress of the calling thread
+    final DownloadProgress progress = DownloadProgress.current();
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min( this.getBatchDownloadThreads(), packageUrls.size() ),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r );
+          thread.setName( BATCH_DOWNLOAD_THREAD_NAME );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+
+    try {
+      Map<String, Future<File>> downloads = new LinkedHashMap<>();
+      for ( final String packageUrl : packageUrls ) {
+        downloads.put( packageUrl, executor.submit( new Callable<File>() {
+          @Override
+          public File call() throws IOException {
+            if ( progress != null ) {
+              progress.attach();
+            }
+            try {
+              return downloadPackage( packageUrl );
+            } finally {
+              DownloadProgress.detach();
+            }
+          }
+        } ) );
+      }
+
+      for ( Map.Entry<String, Future<File>> download : downloads.entrySet() ) {
+        try {
+          File packageFile = download.getValue().get();
+          if ( packageFile != null ) {
+            packages.put( download.getKey(), packageFile );
+            this.prefetchedPackages.put( download.getKey(), packageFile );
+          }
+        } catch ( ExecutionException e ) {
+          // the install will try to download it again
+          this.getLogger().warn( "Failed to download package " + download.getKey(), e.getCause() );
+        }
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return packages;
+  }
+
+  private File downloadPackage( String packageUrl ) throws IOException {
+    PackageCache packageCache = this.getPackageCache();
+    if ( packageCache != null ) {
+      // the install reads the package from the cache, there is no temporary file to keep track of
+      packageCache.getPackage( packageUrl );
+      return null;
+    }
+
+    File packageFile = File.createTempFile( "marketplace-package", ".tmp" );
+    try {
+      if ( this.downloadPackageFile( packageUrl, packageFile.toPath() ) ) {
+        return packageFile;
+      }
+      FileUtils.deleteQuietly( packageFile );
+      return null;
+    } catch ( IOException e ) {
+      FileUtils.deleteQuietly( packageFile );
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the package of a plugin version as a file, using the package already on disk if it was downloaded before.
+   * @param downloadUrl the download url of the package
+   * @param downloadTarget where to download the package into if it is not on disk yet
+   * @return the download target if the package had to be downloaded; otherwise a shared file that must not be changed.
+   * Null if the package could not be obtained.
+   */
+  protected File getPackageFile( String downloadUrl, Path downloadTarget ) throws IOException {
+    File prefetchedPackage = downloadUrl != null ? this.prefetchedPackages.get( downloadUrl ) : null;
+    if ( prefetchedPackage != null && prefetchedPackage.isFile() ) {
+      return prefetchedPackage;
+    }
+
+    PackageCache packageCache = this.getPackageCache();
+    File cachedPackage = packageCache != null ? packageCache.getPackage( downloadUrl ) : null;
+    if ( cachedPackage != null ) {
+      return cachedPackage;
+    }
+
+    return this.downloadPackageFile( downloadUrl, downloadTarget ) ? downloadTarget.toFile() : null;
+  }
+
+  /**
+   * Gets the package of a plugin version only if it is already on disk, without downloading it.
+   * @param downloadUrl the download url of the package
+   * @return a shared file that must not be changed, or null if the package is not on disk.
+   */
+  protected File getLocalPackageFile( String downloadUrl ) {
+    File prefetchedPackage = downloadUrl != null ? this.prefetchedPackages.get( downloadUrl ) : null;
+    if ( prefetchedPackage != null && prefetchedPackage.isFile() ) {
+      return prefetchedPackage;
+    }
+
+    PackageCache packageCache = this.getPackageCache();
+    return packageCache != null ? packageCache.getCachedPackage( downloadUrl ) : null;
+  }
+
+  /**
+   * Extracts the package of a plugin version into a folder. A package already on disk has its entries extracted in
+   * parallel, and so does a large package, once it is downloaded in parallel chunks; otherwise it is extracted while it
+   * is downloaded.
+   * @param downloadUrl the download url of the package
+   * @param folder the folder to extract into
+   * @throws IOException if the package could not be obtained or extracted
+   */
+  protected void extractPackage( String downloadUrl, File folder ) throws IOException {
+    File packageFile = this.getLocalPackageFile( downloadUrl );
+    InputStream packageInputStream = null;
+    if ( packageFile == null ) {
+      PackageCache packageCache = this.getPackageCache();
+      if ( packageCache != null ) {
+        // a cached package is revalidated, and downloaded again if it changed; the length of the response tells
+        // whether it is large enough to be downloaded in parallel chunks instead of being streamed
+        PackageCache.FetchedPackage fetchedPackage = packageCache.fetchPackage( downloadUrl );
+        if ( fetchedPackage != null ) {
+          packageFile = fetchedPackage.getFile();
+          packageInputStream = fetchedPackage.getInputStream();
+        }
+      } else {
+        packageInputStream = this.openPackageStream( downloadUrl );
+      }
+    }
+
+    if ( packageFile != null ) {
+      this.getZipExtractor().extract( packageFile, folder );
+      return;
+    }
+    if ( packageInputStream == null ) {
+      throw new IOException( "Unable to get package from " + downloadUrl );
+    }
+    try {
+      this.getZipExtractor().extract( packageInputStream, folder );
+    } finally {
+      IOUtils.closeQuietly( packageInputStream );
+    }
+  }
+
+  /**
+   * Removes a folder, deleting its contents in the background when a folder trash is set. A folder that can not be
+   * moved into the trash is deleted right away.
+   * @param folder the folder to remove
+   * @throws IOException if the folder could not be removed
+   */
+  protected void discardFolder( File folder ) throws IOException {
+    FolderTrash folderTrash = this.getFolderTrash();
+    if ( folderTrash != null ) {
+      try {
+        folderTrash.discard( folder );
+        return;
+      } catch ( IOException e ) {
+        this.getLogger().warn( "Unable to move " + folder + " to the trash, deleting it right away.", e );
+      }
+    }
+    FileUtils.deleteDirectory( folder );
+  }
+
+  /**
+   * Moves a folder with a single rename, unless source and target are in different file systems.
+   * @param source the folder to move
+   * @param target the new location of the folder, which must not exist
+   * @throws IOException if the folder could not be moved
+   */
+  protected static void moveFolder( File source, File target ) throws IOException {
+    File targetParent = target.getAbsoluteFile().getParentFile();
+    if ( !targetParent.isDirectory() && !targetParent.mkdirs() ) {
+      throw new IOException( "Unable to create folder " + targetParent );
+    }
+
+    try {
+      Files.move( source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE );
+    } catch ( AtomicMoveNotSupportedException e ) {
+      FileUtils.moveDirectory( source, target );
+    }
+  }
+
+  /**
+   * Opens the package of a plugin version. A package that is not on disk yet is read straight from the network, so
+   * that it can be processed while it is downloaded. Large packages are better fetched with
+   * {@link PackageCache#getPackage(String)}, which downloads them in parallel chunks.
+   * @param downloadUrl the download url of the package
+   * @return the package content, or null if it could not be obtained
+   */
+  protected InputStream openPackageStream( String downloadUrl ) throws IOException {
+    File prefetchedPackage = downloadUrl != null ? this.prefetchedPackages.get( downloadUrl ) : null;
+    if ( prefetchedPackage != null && prefetchedPackage.isFile() ) {
+      return new FileInputStream( prefetchedPackage );
+    }
+
+    PackageCache packageCache = this.getPackageCache();
+    if ( packageCache != null ) {
+      // cached while it is read
+      return packageCache.openPackage( downloadUrl );
+    }
+
+    // using HttpUtil to handle http redirects and proxies, and to report download progress
+    return HttpUtil.getURLInputStream( downloadUrl );
+  }
+
+  private boolean downloadPackageFile( String downloadUrl, Path downloadTarget ) throws IOException {
+    // using HttpUtil to handle http redirects and proxies, and to report download progress
+    DownloadResult result = HttpUtil.downloadToFile( downloadUrl, downloadTarget );
+    if ( result == null ) {
+      this.getLogger().warn( "Unable to download package " + downloadUrl );
+      return false;
+    }
+
+    this.getLogger().debug( "Downloaded " + result.getSize() + " bytes (sha256 " + result.getDigest() + ") from "
+      + downloadUrl + " in " + result.getElapsedMillis() + " ms" );
+    return true;
+  }
+
   private String getKarafDeployFolder() {
     //TODO: hardcoded deploy folder. Check for better alternative
     return System.getProperty( "karaf.base" ) + File.separator + "deploy";
@@ -560,7 +1204,14 @@ public abstract class BasePluginService implements IPluginService {
         String downloadUrl = versionToInstall.getDownloadUrl();
         //String karName = FilenameUtils.getName( downloadUrl );
         File dlKarFile = new File( deployFolderName + File.separator + plugin.getId() + ".kar" );
-        FileUtils.copyURLToFile( new URL( downloadUrl ), dlKarFile );
+        File packageFile = this.getPackageFile( downloadUrl, dlKarFile.toPath() );
+        if ( packageFile == null ) {
+          this.getLogger().warn( "Unable to download OSGi plugin " + plugin.getId() + " from " + downloadUrl );
+          return false;
+        }
+        if ( !packageFile.equals( dlKarFile ) ) {
+          FileUtils.copyFile( packageFile, dlKarFile );
+        }
 
         // TODO: check if it was successful or not
         return true;
@@ -635,27 +1286,23 @@ public abstract class BasePluginService implements IPluginService {
     }
   }
 
-  private IPluginVersion getInstalledOsgiPluginVersion( IPlugin plugin ) {
+  private IPluginVersion getInstalledOsgiPluginVersion( IPlugin plugin, Collection<String> installedKars ) {
     this.getLogger().debug( "Infer Version from installed Osgi Plugin" );
     // search installed features for plugin id
     IPluginVersion installedOsgiPluginVersion = this.getInstalledOsgiPluginVersionFromFeatures( plugin );
     if( installedOsgiPluginVersion == null ) {
       // If no feature with the plugin id is found, check installed KARs
-      installedOsgiPluginVersion = this.getInstalledOsgiPluginVersionFromKars( plugin );
+      installedOsgiPluginVersion = this.getInstalledOsgiPluginVersionFromKars( plugin, installedKars );
     }
     return installedOsgiPluginVersion;
   }
 
-  private IPluginVersion getInstalledOsgiPluginVersionFromKars( IPlugin plugin ) {
-    try {
-      if ( this.getKarService().list().contains( plugin.getId() ) ) {
-        IPluginVersion installedPluginVersion = this.getPluginVersionFactory().create();
-        installedPluginVersion.setIsOsgi( true );
-        // TODO: add branch / version / buildId information that currently is not available
-        return installedPluginVersion;
-      }
-    } catch ( Exception e ) {
-      return null;
+  private IPluginVersion getInstalledOsgiPluginVersionFromKars( IPlugin plugin, Collection<String> installedKars ) {
+    if ( installedKars.contains( plugin.getId() ) ) {
+      IPluginVersion installedPluginVersion = this.getPluginVersionFactory().create();
+      installedPluginVersion.setIsOsgi( true );
+      // TODO: add branch / version / buildId information that currently is not available
+      return installedPluginVersion;
     }
     return null;
   }
@@ -684,7 +1331,11 @@ public abstract class BasePluginService implements IPluginService {
 
 
   private IPluginVersion getInstalledPluginVersion( IPlugin plugin ) {
-    IPluginVersion osgiPluginVersion = this.getInstalledOsgiPluginVersion( plugin );
+    return this.getInstalledPluginVersion( plugin, this.getInstalledKars() );
+  }
+
+  private IPluginVersion getInstalledPluginVersion( IPlugin plugin, Collection<String> installedKars ) {
+    IPluginVersion osgiPluginVersion = this.getInstalledOsgiPluginVersion( plugin, installedKars );
     if( osgiPluginVersion != null ) {
         return osgiPluginVersion;
     } else {
@@ -692,14 +1343,16 @@ public abstract class BasePluginService implements IPluginService {
     }
   }
 
-  private Collection<String> getInstalledOsgiPluginIds() {
-    Collection<String> potentialOsgiPluginIds = new HashSet<>();
-
+  private Collection<String> getInstalledKars() {
+    Collection<String> installedKars = new HashSet<>();
     try {
-      for( String installedKar : this.getKarService().list() ) {
-       potentialOsgiPluginIds.add( installedKar );
-      }
+      installedKars.addAll( this.getKarService().list() );
     } catch ( Exception e ) { }
+    return installedKars;
+  }
+
+  private Collection<String> getInstalledOsgiPluginIds( Collection<String> installedKars ) {
+    Collection<String> potentialOsgiPluginIds = new HashSet<>( installedKars );
 
     try {
       for( Feature feature : this.getFeaturesService().listInstalledFeatures() ) {
@@ -710,8 +1363,8 @@ public abstract class BasePluginService implements IPluginService {
     return potentialOsgiPluginIds;
   }
 
-  private Collection<String> getInstalledPluginIds() {
-    Collection<String> installedPluginIds = this.getInstalledOsgiPluginIds();
+  private Collection<String> getInstalledPluginIds( Collection<String> installedKars ) {
+    Collection<String> installedPluginIds = this.getInstalledOsgiPluginIds( installedKars );
     installedPluginIds.addAll( this.getInstalledNonOsgiPluginIds() );
 
     return installedPluginIds;
@@ -745,6 +1398,35 @@ public abstract class BasePluginService implements IPluginService {
   }
 
 
+  /**
+   * Whether the plugin can be installed by this service. Plugins that are not supported are left out of the catalog.
+   * @param plugin the plugin to check
+   * @return true if the plugin is supported; all plugins are supported by default.
+   */
+  protected boolean isSupported( IPlugin plugin ) {
+    return true;
+  }
+
+  /**
+   * Gets the folders where non OSGi plugins are installed, which are watched to know when plugins are installed or
+   * removed outside of the marketplace. Only the folders themselves are watched, not their sub folders, and folders
+   * that do not exist yet are watched once they are created.
+   * @return the plugin folders; none by default.
+   */
+  protected Collection<File> getPluginFolders() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Restores the version of a non OSGi plugin that was installed before its last upgrade.
+   * @param plugin the plugin to restore
+   * @return true if the previous version was restored; rolling back is not supported by default.
+   */
+  protected boolean executeNonOsgiRollback( IPlugin plugin ) {
+    this.getLogger().info( "Restoring previous versions of plugins is not supported." );
+    return false;
+  }
+
   protected abstract boolean hasMarketplacePermission();
 
   protected abstract void unloadPlugin( IPlugin pluginId );
@@ -0,0 +1,70 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.pentaho.marketplace.domain.model.entities.PluginView;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plugins with at least one version compatible with a given server / spoon version, each viewed with only its
+ * compatible versions. The index is computed once for a marketplace plugins snapshot and server version, so that
+ * serving the plugins does not parse versions again until either of them changes.
+ */
+public final class CompatibilityIndex {
+
+  // region Properties
+  private final Map<String, IPlugin> marketplacePlugins;
+  private final String serverVersion;
+  private final Map<String, PluginView> compatiblePlugins;
+
+  /**
+   * @return the compatible plugins, by id. The returned map can not be changed.
+   */
+  public Map<String, PluginView> getCompatiblePlugins() {
+    return this.compatiblePlugins;
+  }
+  // endregion
+
+  // region Constructors
+  /**
+   * @param marketplacePlugins the marketplace plugins snapshot the index was computed from
+   * @param serverVersion the server / spoon version the index was computed for
+   * @param compatiblePlugins the compatible plugins, by id
+   */
+  public CompatibilityIndex( Map<String, IPlugin> marketplacePlugins, String serverVersion,
+                             Map<String, PluginView> compatiblePlugins ) {
+    this.marketplacePlugins = marketplacePlugins;
+    this.serverVersion = serverVersion;
+    this.compatiblePlugins = Collections.unmodifiableMap( new HashMap<>( compatiblePlugins ) );
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Checks whether this index was computed for the given marketplace plugins snapshot and server version.
+   * Snapshots are compared by identity: plugin providers return a new map whenever the plugins change.
+   * @param marketplacePlugins the marketplace plugins snapshot
+   * @param serverVersion the server / spoon version
+   * @return true if this index can be used for the given snapshot and version.
+   */
+  public boolean isFor( Map<String, IPlugin> marketplacePlugins, String serverVersion ) {
+    return this.marketplacePlugins == marketplacePlugins
+      && ( this.serverVersion == null ? serverVersion == null : this.serverVersion.equals( serverVersion ) );
+  }
+  // endregion
+}
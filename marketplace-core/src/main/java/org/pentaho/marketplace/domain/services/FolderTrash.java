@@ -0,0 +1,190 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Removes folders without making the caller wait for their contents to be deleted.
+ *
+ * A discarded folder is renamed into the trash folder, which takes constant time, and then deleted by a low priority
+ * background thread. Folders left in the trash by a previous run, e.g. because the server stopped in the middle of a
+ * deletion, are deleted on {@link #init()}.
+ *
+ * Folders that can not be renamed into the trash, because they are in another file system, are deleted right away.
+ */
+public class FolderTrash {
+
+  // region Constants
+  protected static final String DEFAULT_TRASH_DIR_NAME =
+    MetadataSnapshotStore.DEFAULT_SNAPSHOT_DIR_NAME + File.separator + "trash";
+
+  private static final String DELETE_THREAD_NAME = "Marketplace Folder Delete Thread";
+  // endregion
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  public File getTrashDir() {
+    return this.trashDir;
+  }
+  protected void setTrashDir( File trashDir ) {
+    this.trashDir = trashDir;
+  }
+  private File trashDir;
+
+  protected ExecutorService getDeleteExecutor() {
+    return this.deleteExecutor;
+  }
+  protected void setDeleteExecutor( ExecutorService deleteExecutor ) {
+    this.deleteExecutor = deleteExecutor;
+  }
+  private volatile ExecutorService deleteExecutor;
+  // endregion
+
+  // region Constructors
+  public FolderTrash() {
+    this( "system" + File.separator + DEFAULT_TRASH_DIR_NAME );
+  }
+
+  public FolderTrash( String trashDirPath ) {
+    this.setTrashDir( new File( trashDirPath ) );
+  }
+
+  /**
+   * Called after class is instantiated by dependency injection
+   */
+  public void init() {
+    ExecutorService executor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+      @Override
+      public Thread newThread( Runnable r ) {
+        Thread thread = new Thread( r );
+        thread.setName( DELETE_THREAD_NAME );
+        thread.setDaemon( true );
+        // deleting is never urgent
+        thread.setPriority( Thread.MIN_PRIORITY );
+        return thread;
+      }
+    } );
+    this.setDeleteExecutor( executor );
+
+    this.sweep();
+  }
+
+  /**
+   * Called on object destruction by dependency injection
+   */
+  public void destroy() {
+    ExecutorService executor = this.getDeleteExecutor();
+    if ( executor != null ) {
+      // whatever is left is deleted on the next start
+      executor.shutdownNow();
+      this.setDeleteExecutor( null );
+    }
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Removes a folder. The folder is gone once this method returns, but its contents may still be being deleted.
+   * @param folder the folder to remove
+   * @throws IOException if the folder could not be removed
+   */
+  public void discard( File folder ) throws IOException {
+    if ( !folder.exists() ) {
+      return;
+    }
+
+    File trashDir = this.getTrashDir();
+    if ( !trashDir.isDirectory() && !trashDir.mkdirs() ) {
+      throw new IOException( "Unable to create trash folder " + trashDir.getAbsolutePath() );
+    }
+
+    // a folder of its own, so that folders with the same name never collide
+    File trashedFolder = Files.createTempDirectory( trashDir.toPath(), folder.getName() + "_" ).toFile();
+    boolean moved = false;
+    try {
+      Files.move( folder.toPath(), new File( trashedFolder, folder.getName() ).toPath(),
+        StandardCopyOption.ATOMIC_MOVE );
+      moved = true;
+    } catch ( AtomicMoveNotSupportedException e ) {
+      this.getLogger().debug( "Unable to move " + folder + " to the trash, deleting it right away." );
+      FileUtils.deleteDirectory( folder );
+      return;
+    } finally {
+      // whatever went wrong, the folder made for it must not be left in the trash
+      if ( !moved ) {
+        FileUtils.deleteQuietly( trashedFolder );
+      }
+    }
+
+    this.delete( trashedFolder );
+  }
+
+  /**
+   * Deletes the folders left in the trash.
+   */
+  private void sweep() {
+    File[] trashedFolders = this.getTrashDir().listFiles();
+    if ( trashedFolders == null ) {
+      return;
+    }
+
+    for ( File trashedFolder : trashedFolders ) {
+      this.delete( trashedFolder );
+    }
+  }
+
+  private void delete( final File trashedFolder ) {
+    ExecutorService executor = this.getDeleteExecutor();
+    if ( executor != null ) {
+      try {
+        executor.execute( new Runnable() {
+          @Override
+          public void run() {
+            deleteNow( trashedFolder );
+          }
+        } );
+        return;
+      } catch ( RejectedExecutionException e ) {
+        // shutting down
+      }
+    }
+
+    // not deleting in the background
+    this.deleteNow( trashedFolder );
+  }
+
+  private void deleteNow( File trashedFolder ) {
+    if ( !FileUtils.deleteQuietly( trashedFolder ) ) {
+      this.getLogger().warn( "Unable to delete " + trashedFolder.getAbsolutePath() + ", retrying on next start." );
+    }
+  }
+  // endregion
+}
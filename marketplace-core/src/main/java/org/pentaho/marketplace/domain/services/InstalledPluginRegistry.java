@@ -0,0 +1,113 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.pentaho.marketplace.domain.model.entities.InstalledState;
+import org.pentaho.marketplace.domain.model.entities.PluginView;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the installed state of the compatible plugins, so that reading the plugins does not query Karaf or the
+ * file system every time.
+ *
+ * The registry only keeps the installed states while {@link #isCaching()}, which should only be enabled once
+ * something calls {@link #invalidate()} whenever plugins are installed or uninstalled (Karaf feature events, plugin
+ * folder changes, marketplace (un)installs).
+ */
+public class InstalledPluginRegistry {
+
+  // region Inner Definitions
+  /**
+   * Computes the installed states of compatible plugins.
+   */
+  public interface Loader {
+    /**
+     * @param compatiblePlugins the compatible plugins, by id
+     * @return the installed state of each installed plugin, by plugin id
+     */
+    Map<String, InstalledState> load( Map<String, PluginView> compatiblePlugins );
+  }
+
+  private static final class Entry {
+    private final Map<String, PluginView> compatiblePlugins;
+    private final Map<String, InstalledState> installedStates;
+    private final long generation;
+
+    private Entry( Map<String, PluginView> compatiblePlugins, Map<String, InstalledState> installedStates,
+                   long generation ) {
+      this.compatiblePlugins = compatiblePlugins;
+      this.installedStates = installedStates;
+      this.generation = generation;
+    }
+  }
+  // endregion
+
+  // region Properties
+  public boolean isCaching() {
+    return this.caching;
+  }
+  public void setCaching( boolean caching ) {
+    this.caching = caching;
+    this.invalidate();
+  }
+  private volatile boolean caching;
+
+  private final Loader loader;
+  private final AtomicLong generation = new AtomicLong();
+  private volatile Entry entry;
+  // endregion
+
+  // region Constructors
+  public InstalledPluginRegistry( Loader loader ) {
+    this.loader = loader;
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Gets the installed states of the compatible plugins, loading them if they are not known or were invalidated.
+   * @param compatiblePlugins the compatible plugins, by id. Compared by identity with the ones of the kept states.
+   * @return the installed state of each installed plugin, by plugin id. The returned map can not be changed.
+   */
+  public Map<String, InstalledState> getInstalledStates( Map<String, PluginView> compatiblePlugins ) {
+    long generation = this.generation.get();
+    Entry entry = this.entry;
+    if ( this.caching && entry != null && entry.generation == generation
+      && entry.compatiblePlugins == compatiblePlugins ) {
+      return entry.installedStates;
+    }
+
+    Map<String, InstalledState> installedStates =
+      Collections.unmodifiableMap( new HashMap<>( this.loader.load( compatiblePlugins ) ) );
+
+    // states loaded while being invalidated may already be stale, so they are not kept
+    if ( this.caching && this.generation.get() == generation ) {
+      this.entry = new Entry( compatiblePlugins, installedStates, generation );
+    }
+    return installedStates;
+  }
+
+  /**
+   * Discards the kept installed states.
+   */
+  public void invalidate() {
+    this.generation.incrementAndGet();
+    this.entry = null;
+  }
+  // endregion
+}
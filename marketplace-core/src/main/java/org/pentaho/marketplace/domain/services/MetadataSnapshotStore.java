@@ -0,0 +1,255 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Persists the last successfully obtained marketplace metadata, so that it is available right after a restart and
+ * while the remote server is unreachable.
+ *
+ * The raw metadata xml is stored as is, together with a properties file holding the url it was obtained from and the
+ * validators (ETag / Last-Modified) the server sent for it. Files are replaced atomically so that a crash while saving
+ * never leaves a truncated snapshot behind.
+ *
+ * Next to the metadata xml, a binary catalog of the plugins parsed from it may be stored, so that the snapshot can be
+ * used on startup without parsing the xml again.
+ */
+public class MetadataSnapshotStore {
+
+  // region Inner Definitions
+  /**
+   * Metadata xml obtained from a given url, with the validators the server sent for it.
+   */
+  public static final class Snapshot {
+    private final byte[] metadata;
+    private final String url;
+    private final String eTag;
+    private final String lastModified;
+
+    public Snapshot( byte[] metadata, String url, String eTag, String lastModified ) {
+      this.metadata = metadata;
+      this.url = url;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+
+    public byte[] getMetadata() {
+      return this.metadata;
+    }
+
+    public String getUrl() {
+      return this.url;
+    }
+
+    public String getETag() {
+      return this.eTag;
+    }
+
+    public String getLastModified() {
+      return this.lastModified;
+    }
+  }
+  // endregion
+
+  // region Constants
+  protected static final String DEFAULT_SNAPSHOT_DIR_NAME = ".marketplace";
+  private static final String METADATA_FILE_NAME = "marketplace-metadata.xml";
+  private static final String PROPERTIES_FILE_NAME = "marketplace-metadata.properties";
+  private static final String CATALOG_FILE_NAME = "marketplace-catalog.bin";
+  private static final String URL_PROPERTY = "url";
+  private static final String ETAG_PROPERTY = "etag";
+  private static final String LAST_MODIFIED_PROPERTY = "lastModified";
+  // endregion
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  public File getSnapshotDir() {
+    return this.snapshotDir;
+  }
+  protected void setSnapshotDir( File snapshotDir ) {
+    this.snapshotDir = snapshotDir;
+  }
+  private File snapshotDir;
+  // endregion
+
+  // region Constructors
+  public MetadataSnapshotStore() {
+    this( "system" + File.separator + DEFAULT_SNAPSHOT_DIR_NAME );
+  }
+
+  public MetadataSnapshotStore( String snapshotDirPath ) {
+    this.setSnapshotDir( new File( snapshotDirPath ) );
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Loads the stored snapshot.
+   * @return the snapshot, or null if there is none or it could not be read.
+   */
+  public Snapshot load() {
+    File metadataFile = new File( this.getSnapshotDir(), METADATA_FILE_NAME );
+    if ( !metadataFile.isFile() ) {
+      return null;
+    }
+
+    try {
+      byte[] metadata = FileUtils.readFileToByteArray( metadataFile );
+
+      // without the properties the metadata is still usable, it just can not be revalidated
+      Properties properties = new Properties();
+      File propertiesFile = new File( this.getSnapshotDir(), PROPERTIES_FILE_NAME );
+      if ( propertiesFile.isFile() ) {
+        InputStream inputStream = new FileInputStream( propertiesFile );
+        try {
+          properties.load( inputStream );
+        } finally {
+          IOUtils.closeQuietly( inputStream );
+        }
+      }
+
+      return new Snapshot( metadata, properties.getProperty( URL_PROPERTY ),
+        properties.getProperty( ETAG_PROPERTY ), properties.getProperty( LAST_MODIFIED_PROPERTY ) );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to read marketplace metadata snapshot from " + metadataFile.getAbsolutePath(), e );
+      return null;
+    }
+  }
+
+  /**
+   * Stores the snapshot, replacing the previous one.
+   * @param snapshot the snapshot to store
+   * @return true if the snapshot was stored.
+   */
+  public boolean save( Snapshot snapshot ) {
+    File snapshotDir = this.getSnapshotDir();
+    if ( !snapshotDir.isDirectory() && !snapshotDir.mkdirs() ) {
+      this.getLogger().warn( "Unable to create marketplace metadata snapshot folder " + snapshotDir.getAbsolutePath() );
+      return false;
+    }
+
+    Properties properties = new Properties();
+    setProperty( properties, URL_PROPERTY, snapshot.getUrl() );
+    setProperty( properties, ETAG_PROPERTY, snapshot.getETag() );
+    setProperty( properties, LAST_MODIFIED_PROPERTY, snapshot.getLastModified() );
+
+    File propertiesFile = new File( snapshotDir, PROPERTIES_FILE_NAME );
+    try {
+      // stale validators must never be paired with the new metadata, so they go away first and come back last
+      Files.deleteIfExists( propertiesFile.toPath() );
+      this.deleteCatalog();
+      this.writeAtomically( new File( snapshotDir, METADATA_FILE_NAME ), snapshot.getMetadata() );
+
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      properties.store( outputStream, null );
+      this.writeAtomically( propertiesFile, outputStream.toByteArray() );
+      return true;
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to write marketplace metadata snapshot to " + snapshotDir.getAbsolutePath(), e );
+      return false;
+    }
+  }
+
+  /**
+   * Memory maps the stored binary catalog. The catalog is not checked in any way.
+   * @return the catalog, or null if there is none or it could not be read.
+   */
+  public ByteBuffer loadCatalog() {
+    File catalogFile = new File( this.getSnapshotDir(), CATALOG_FILE_NAME );
+    if ( !catalogFile.isFile() ) {
+      return null;
+    }
+
+    try ( FileChannel channel = FileChannel.open( catalogFile.toPath(), StandardOpenOption.READ ) ) {
+      // the mapping stays valid after the channel is closed
+      return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to read marketplace catalog snapshot from " + catalogFile.getAbsolutePath(), e );
+      return null;
+    }
+  }
+
+  /**
+   * Stores the binary catalog of the plugins parsed from the stored metadata, replacing the previous one.
+   * @param catalog the binary catalog
+   * @return true if the catalog was stored.
+   */
+  public boolean saveCatalog( byte[] catalog ) {
+    File catalogFile = new File( this.getSnapshotDir(), CATALOG_FILE_NAME );
+    try {
+      this.writeAtomically( catalogFile, catalog );
+      return true;
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to write marketplace catalog snapshot to " + catalogFile.getAbsolutePath(), e );
+      return false;
+    }
+  }
+
+  private void deleteCatalog() {
+    File catalogFile = new File( this.getSnapshotDir(), CATALOG_FILE_NAME );
+    try {
+      Files.deleteIfExists( catalogFile.toPath() );
+    } catch ( IOException e ) {
+      // e.g. still mapped on windows, it is then rejected on load as not written for the new metadata
+      this.getLogger().debug( "Unable to delete marketplace catalog snapshot " + catalogFile.getAbsolutePath(), e );
+    }
+  }
+
+  private static void setProperty( Properties properties, String key, String value ) {
+    if ( value != null ) {
+      properties.setProperty( key, value );
+    }
+  }
+
+  private void writeAtomically( File file, byte[] content ) throws IOException {
+    File tempFile = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+    try {
+      FileUtils.writeByteArrayToFile( tempFile, content );
+      this.move( tempFile, file );
+    } finally {
+      FileUtils.deleteQuietly( tempFile );
+    }
+  }
+
+  private void move( File source, File target ) throws IOException {
+    try {
+      Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE );
+    } catch ( AtomicMoveNotSupportedException e ) {
+      Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+    }
+  }
+  // endregion
+}
@@ -0,0 +1,799 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.marketplace.util.Digests;
+import org.pentaho.marketplace.util.DownloadProgress;
+import org.pentaho.marketplace.util.web.ConditionalResponse;
+import org.pentaho.marketplace.util.web.HttpUtil;
+import org.pentaho.marketplace.util.web.RangeDownloader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps downloaded plugin packages on disk, so that installing a package again (reinstall, rollback, upgrade then
+ * downgrade) does not download it again.
+ *
+ * Packages are stored by the SHA-256 digest of their content, and each download url is mapped to the digest it last
+ * served together with the validators (ETag / Last-Modified) the server sent for it. A cached package is used as is for
+ * {@link #getMaxAgeSeconds()} seconds; after that it is revalidated with a conditional GET, and still used while the
+ * remote server is unreachable. The digest of a package is computed when it is added, and checked again the first
+ * time this process serves a package cached by a previous one, so a corrupted file is downloaded again instead of being
+ * installed.
+ *
+ * {@link #getPackage(String)} fetches packages that are not cached yet with a {@link RangeDownloader}, so that a
+ * dropped connection is resumed instead of starting over and large packages are fetched in parallel chunks.
+ * {@link #openPackage(String)} instead streams them to the caller, caching them while they are read, unless the
+ * response tells that they are large enough to be fetched in parallel chunks.
+ *
+ * The total size of the cached packages is bounded by {@link #getMaxSizeMb()}; the least recently used ones are removed
+ * first, together with their entries, except for the packages retained with {@link #retain(String)}. Leftovers of
+ * interrupted downloads are removed by {@link #init()}.
+ */
+public class PackageCache {
+
+  // region Inner Definitions
+  /**
+   * Package obtained by {@link #fetchPackage(String)}: either a file or a stream to read it from the network.
+   */
+  public static final class FetchedPackage {
+    private final File file;
+    private final InputStream inputStream;
+
+    private FetchedPackage( File file, InputStream inputStream ) {
+      this.file = file;
+      this.inputStream = inputStream;
+    }
+
+    /**
+     * @return the package file, a shared file that must not be changed; null if the package is to be read from
+     * {@link #getInputStream()}.
+     */
+    public File getFile() {
+      return this.file;
+    }
+
+    /**
+     * @return the package content, cached as it is read, which the caller must close; null if the package is a file.
+     */
+    public InputStream getInputStream() {
+      return this.inputStream;
+    }
+  }
+
+  /**
+   * Package last served by a download url, with the validators the server sent for it.
+   */
+  private static final class Entry {
+    private final String url;
+    private final String digest;
+    private final String eTag;
+    private final String lastModified;
+    private final long validatedAt;
+
+    private Entry( String url, String digest, String eTag, String lastModified, long validatedAt ) {
+      this.url = url;
+      this.digest = digest;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.validatedAt = validatedAt;
+    }
+  }
+  // endregion
+
+  // region Constants
+  protected static final String DEFAULT_CACHE_DIR_NAME =
+    MetadataSnapshotStore.DEFAULT_SNAPSHOT_DIR_NAME + File.separator + "packages";
+  protected static final long DEFAULT_MAX_SIZE_MB = 512;
+  protected static final long DEFAULT_MAX_AGE_SECONDS = 86400;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final String PACKAGE_FILE_EXTENSION = ".pkg";
+  private static final String ENTRY_FILE_EXTENSION = ".properties";
+  private static final String TEMP_FILE_EXTENSION = ".tmp";
+  private static final String URL_PROPERTY = "url";
+  private static final String DIGEST_PROPERTY = "digest";
+  private static final String ETAG_PROPERTY = "etag";
+  private static final String LAST_MODIFIED_PROPERTY = "lastModified";
+  private static final String VALIDATED_AT_PROPERTY = "validatedAt";
+  // endregion
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  public File getCacheDir() {
+    return this.cacheDir;
+  }
+  protected void setCacheDir( File cacheDir ) {
+    this.cacheDir = cacheDir;
+  }
+  private File cacheDir;
+
+  /**
+   * Gets the maximum total size of the cached packages, in megabytes.
+   * @return the maximum cache size in megabytes
+   */
+  public long getMaxSizeMb() {
+    return this.maxSizeMb;
+  }
+  /**
+   * Sets the maximum total size of the cached packages, in megabytes. A value of zero only keeps the last package.
+   * @param maxSizeMb the maximum cache size in megabytes
+   */
+  public void setMaxSizeMb( long maxSizeMb ) {
+    this.maxSizeMb = Math.max( 0, maxSizeMb );
+  }
+  private long maxSizeMb = DEFAULT_MAX_SIZE_MB;
+
+  /**
+   * Gets the number of seconds a cached package is used before being revalidated against the remote server.
+   * @return the maximum age in seconds
+   */
+  public long getMaxAgeSeconds() {
+    return this.maxAgeSeconds;
+  }
+  /**
+   * Sets the number of seconds a cached package is used before being revalidated against the remote server.
+   * A value of zero revalidates on every request.
+   * @param maxAgeSeconds the maximum age in seconds
+   */
+  public void setMaxAgeSeconds( long maxAgeSeconds ) {
+    this.maxAgeSeconds = Math.max( 0, maxAgeSeconds );
+  }
+  private long maxAgeSeconds = DEFAULT_MAX_AGE_SECONDS;
+
+  public RangeDownloader getDownloader() {
+    return this.downloader;
+  }
+  public void setDownloader( RangeDownloader downloader ) {
+    this.downloader = downloader;
+  }
+  private RangeDownloader downloader = new RangeDownloader();
+
+  /**
+   * Downloads of the same url are serialized, downloads of different urls are not.
+   */
+  private final ConcurrentMap<String, Object> urlLocks = new ConcurrentHashMap<>();
+  private final Object evictionLock = new Object();
+
+  /**
+   * Digests of the packages whose content was checked by this process.
+   */
+  private final Set<String> verifiedDigests = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+  /**
+   * Number of times the package of each url is retained, guarded by the eviction lock.
+   */
+  private final Map<String, Integer> retainedUrls = new HashMap<>();
+  // endregion
+
+  // region Constructors
+  public PackageCache() {
+    this( "system" + File.separator + DEFAULT_CACHE_DIR_NAME );
+  }
+
+  public PackageCache( String cacheDirPath ) {
+    this.setCacheDir( new File( cacheDirPath ) );
+  }
+
+  /**
+   * Called after class is instantiated by dependency injection. Removes the temporary files of downloads that were
+   * interrupted by a crash, and the entries of packages that are no longer cached.
+   */
+  public void init() {
+    File[] files = this.getCacheDir().listFiles();
+    if ( files == null ) {
+      return;
+    }
+
+    for ( File file : files ) {
+      String name = file.getName();
+      boolean staleEntry = name.endsWith( ENTRY_FILE_EXTENSION ) && !this.isPackageCached( file );
+      if ( file.isFile() && ( name.endsWith( TEMP_FILE_EXTENSION ) || staleEntry ) ) {
+        this.getLogger().debug( "Removing package cache leftover " + file.getAbsolutePath() );
+        FileUtils.deleteQuietly( file );
+      }
+    }
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Gets the package served by a download url, downloading it only if it is not cached yet or it changed.
+   * @param url the download url of the package
+   * @return the cached package file, or null if it could not be obtained.
+   */
+  public File getPackage( String url ) {
+    if ( url == null ) {
+      return null;
+    }
+
+    synchronized ( this.getUrlLock( url ) ) {
+      Entry entry = this.loadEntry( url );
+      File packageFile = entry != null ? this.getVerifiedPackageFile( entry ) : null;
+      if ( packageFile == null ) {
+        return this.download( url, null );
+      }
+
+      if ( this.isExpired( entry ) ) {
+        ConditionalResponse response = this.revalidate( entry );
+        if ( response != null ) {
+          return this.store( url, response );
+        }
+      }
+      return this.touch( packageFile );
+    }
+  }
+
+  /**
+   * Gets the package served by a download url only if it is cached and does not need to be revalidated, without any
+   * network access.
+   * @param url the download url of the package
+   * @return the cached package file, or null if it is not cached or it is expired.
+   */
+  public File getCachedPackage( String url ) {
+    if ( url == null ) {
+      return null;
+    }
+
+    synchronized ( this.getUrlLock( url ) ) {
+      Entry entry = this.loadEntry( url );
+      if ( entry == null || this.isExpired( entry ) ) {
+        return null;
+      }
+
+      File packageFile = this.getVerifiedPackageFile( entry );
+      return packageFile != null ? this.touch( packageFile ) : null;
+    }
+  }
+
+  /**
+   * Opens the package served by a download url. A package that is not cached yet, or that changed, is read straight
+   * from the network and cached as it is read, so that the caller can process it while it is downloaded. It is only
+   * added to the cache once it has been read to the end.
+   * @param url the download url of the package
+   * @return the package content, or null if it could not be obtained.
+   */
+  public InputStream openPackage( String url ) {
+    FetchedPackage fetchedPackage = this.fetchPackage( url );
+    if ( fetchedPackage == null ) {
+      return null;
+    }
+
+    File packageFile = fetchedPackage.getFile();
+    return packageFile != null ? this.openPackageFile( url, packageFile ) : fetchedPackage.getInputStream();
+  }
+
+  /**
+   * Gets the package served by a download url as a file when it is cached, or when it is large enough to be downloaded
+   * in parallel chunks, which is told by the Content-Length of the GET issued to download it; otherwise opens it as
+   * {@link #openPackage(String)} does, to be read straight from the network.
+   * @param url the download url of the package
+   * @return the package, or null if it could not be obtained.
+   */
+  public FetchedPackage fetchPackage( String url ) {
+    if ( url == null ) {
+      return null;
+    }
+
+    ConditionalResponse response;
+    synchronized ( this.getUrlLock( url ) ) {
+      Entry entry = this.loadEntry( url );
+      File packageFile = entry != null ? this.getVerifiedPackageFile( entry ) : null;
+      if ( packageFile == null ) {
+        response = HttpUtil.getConditionalURLResponse( url, null, null );
+        if ( response == null || response.isNotModified() ) {
+          this.getLogger().warn( "Unable to download package " + url );
+          return null;
+        }
+      } else {
+        response = this.isExpired( entry ) ? this.revalidate( entry ) : null;
+        if ( response == null ) {
+          return new FetchedPackage( this.touch( packageFile ), null );
+        }
+      }
+
+      if ( this.getDownloader().isParallel( response ) ) {
+        packageFile = this.download( url, response );
+        return packageFile != null ? new FetchedPackage( packageFile, null ) : null;
+      }
+    }
+
+    return new FetchedPackage( null, this.cacheWhileReading( url, response ) );
+  }
+
+  /**
+   * Keeps the package served by a download url from being removed to make room for other packages, until it is
+   * released. Packages are retained while they are used, e.g. between being downloaded and being installed.
+   * @param url the download url of the package
+   */
+  public void retain( String url ) {
+    if ( url == null ) {
+      return;
+    }
+
+    synchronized ( this.evictionLock ) {
+      Integer count = this.retainedUrls.get( url );
+      this.retainedUrls.put( url, count != null ? count + 1 : 1 );
+    }
+  }
+
+  /**
+   * Releases a package retained with {@link #retain(String)}. It can be removed once it was released as many times as
+   * it was retained.
+   * @param url the download url of the package
+   */
+  public void release( String url ) {
+    if ( url == null ) {
+      return;
+    }
+
+    synchronized ( this.evictionLock ) {
+      Integer count = this.retainedUrls.get( url );
+      if ( count == null || count <= 1 ) {
+        this.retainedUrls.remove( url );
+      } else {
+        this.retainedUrls.put( url, count - 1 );
+      }
+    }
+  }
+
+  /**
+   * @return the total size of the cached packages, in bytes.
+   */
+  public long getSize() {
+    long size = 0;
+    for ( File packageFile : this.listPackageFiles() ) {
+      size += packageFile.length();
+    }
+    return size;
+  }
+
+  private Object getUrlLock( String url ) {
+    Object lock = new Object();
+    Object existingLock = this.urlLocks.putIfAbsent( url, lock );
+    return existingLock != null ? existingLock : lock;
+  }
+
+  private boolean isExpired( Entry entry ) {
+    long maxAge = TimeUnit.SECONDS.toMillis( this.getMaxAgeSeconds() );
+    return System.currentTimeMillis() - entry.validatedAt >= maxAge;
+  }
+
+  /**
+   * Checks with the remote server whether an expired package changed.
+   * @return the response carrying the changed package; null if the cached package is to be used.
+   */
+  private ConditionalResponse revalidate( Entry entry ) {
+    ConditionalResponse response = HttpUtil.getConditionalURLResponse( entry.url, entry.eTag, entry.lastModified );
+    if ( response == null ) {
+      this.getLogger().warn( "Unable to revalidate package " + entry.url + ", using cached copy." );
+      return null;
+    }
+
+    if ( response.isNotModified() ) {
+      this.saveEntry( new Entry( entry.url, entry.digest, entry.eTag, entry.lastModified,
+        System.currentTimeMillis() ) );
+      return null;
+    }
+    return response;
+  }
+
+  /**
+   * Opens a cached package, retaining it until the returned stream is closed.
+   */
+  private InputStream openPackageFile( final String url, File packageFile ) {
+    this.retain( url );
+    try {
+      return new FilterInputStream( new FileInputStream( packageFile ) ) {
+        private boolean closed;
+
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            if ( !this.closed ) {
+              this.closed = true;
+              release( url );
+            }
+          }
+        }
+      };
+    } catch ( FileNotFoundException e ) {
+      this.release( url );
+      this.getLogger().warn( "Cached package " + packageFile.getAbsolutePath() + " is no longer available.", e );
+      return null;
+    }
+  }
+
+  /**
+   * Passes the package in the response through to the caller, writing it into the cache on the way.
+   */
+  private InputStream cacheWhileReading( final String url, final ConditionalResponse response ) {
+    InputStream inputStream = DownloadProgress.track( response.getInputStream(), response.getContentLength() );
+
+    final File tempFile;
+    final MessageDigest messageDigest = Digests.createSha256();
+    OutputStream cacheOutputStream;
+    try {
+      tempFile = this.createTempFile();
+      cacheOutputStream = new DigestOutputStream( new FileOutputStream( tempFile ), messageDigest );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to cache package " + url + ", reading it without caching.", e );
+      return inputStream;
+    }
+
+    return new TeeInputStream( inputStream, new BufferedOutputStream( cacheOutputStream, BUFFER_SIZE ), true ) {
+      private boolean endReached;
+
+      @Override
+      protected void afterRead( int n ) throws IOException {
+        if ( n < 0 ) {
+          this.endReached = true;
+        }
+        super.afterRead( n );
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+          // a package that was not read to the end may be truncated
+          if ( this.endReached ) {
+            synchronized ( getUrlLock( url ) ) {
+              addPackage( url, tempFile, Digests.toHex( messageDigest.digest() ), response.getETag(),
+                response.getLastModified() );
+            }
+          }
+        } finally {
+          FileUtils.deleteQuietly( tempFile );
+        }
+      }
+    };
+  }
+
+  /**
+   * Downloads a package that is not cached yet, or that changed, into the cache, resuming the download if the
+   * connection drops.
+   * @param response the response to a GET of the package, used instead of asking the server for its size; null if
+   * there is none
+   */
+  private File download( String url, ConditionalResponse response ) {
+    File tempFile = null;
+    try {
+      tempFile = this.createTempFile();
+      RangeDownloader.Result result = response != null ? this.getDownloader().download( url, tempFile, response )
+        : this.getDownloader().download( url, tempFile );
+      // packages fetched in parallel chunks are only hashed once they are complete
+      String digest = result.getDigest() != null ? result.getDigest() : Digests.sha256Of( tempFile );
+      return this.addPackage( url, tempFile, digest, result.getETag(), result.getLastModified() );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to download package " + url + " into " + this.getCacheDir().getAbsolutePath(), e );
+      return null;
+    } finally {
+      FileUtils.deleteQuietly( tempFile );
+    }
+  }
+
+  /**
+   * Stores the changed package sent in a revalidation response into the cache.
+   */
+  private File store( String url, ConditionalResponse response ) {
+    InputStream inputStream = DownloadProgress.track( response.getInputStream(), response.getContentLength() );
+    File tempFile = null;
+    try {
+      tempFile = this.createTempFile();
+      MessageDigest messageDigest = Digests.createSha256();
+      OutputStream outputStream = new FileOutputStream( tempFile );
+      try {
+        IOUtils.copyLarge( new DigestInputStream( inputStream, messageDigest ), outputStream );
+      } finally {
+        outputStream.close();
+      }
+
+      return this.addPackage( url, tempFile, Digests.toHex( messageDigest.digest() ), response.getETag(),
+        response.getLastModified() );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to download package " + url + " into " + this.getCacheDir().getAbsolutePath(), e );
+      return null;
+    } finally {
+      IOUtils.closeQuietly( inputStream );
+      FileUtils.deleteQuietly( tempFile );
+    }
+  }
+
+  private File createTempFile() throws IOException {
+    File cacheDir = this.getCacheDir();
+    if ( !cacheDir.isDirectory() && !cacheDir.mkdirs() ) {
+      throw new IOException( "Unable to create package cache folder " + cacheDir.getAbsolutePath() );
+    }
+    return File.createTempFile( "package", TEMP_FILE_EXTENSION, cacheDir );
+  }
+
+  /**
+   * Moves a downloaded package into the cache, naming it by the digest of its content.
+   * @param digest the digest of the downloaded content, which is therefore verified
+   */
+  private File addPackage( String url, File tempFile, String digest, String eTag, String lastModified )
+    throws IOException {
+    File packageFile = this.getPackageFile( digest );
+    // the same content may already be cached for another url, it is replaced with an identical copy
+    move( tempFile, packageFile );
+    this.touch( packageFile );
+    this.verifiedDigests.add( digest );
+
+    this.saveEntry( new Entry( url, digest, eTag, lastModified, System.currentTimeMillis() ) );
+    this.evict( packageFile );
+    return packageFile;
+  }
+
+  /**
+   * Gets the package file of an entry, checking that its content still matches the digest it is stored by the first
+   * time it is used by this process.
+   * @return the package file, or null if it is missing or corrupted.
+   */
+  private File getVerifiedPackageFile( Entry entry ) {
+    File packageFile = this.getPackageFile( entry.digest );
+    if ( !packageFile.isFile() ) {
+      return null;
+    }
+    if ( this.verifiedDigests.contains( entry.digest ) ) {
+      return packageFile;
+    }
+
+    try {
+      if ( entry.digest.equals( Digests.sha256Of( packageFile ) ) ) {
+        this.verifiedDigests.add( entry.digest );
+        return packageFile;
+      }
+      this.getLogger().warn( "Cached package " + packageFile.getAbsolutePath() + " of " + entry.url
+        + " is corrupted and will be downloaded again." );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to read cached package " + packageFile.getAbsolutePath(), e );
+    }
+    FileUtils.deleteQuietly( packageFile );
+    return null;
+  }
+
+  /**
+   * Removes the least recently used packages until the cache fits its maximum size, together with the entries pointing
+   * to them. Retained packages are kept.
+   * @param keep package that must not be removed, as it is about to be used
+   */
+  private void evict( File keep ) {
+    long maxSize = this.getMaxSizeMb() * FileUtils.ONE_MB;
+
+    synchronized ( this.evictionLock ) {
+      File[] packageFiles = this.listPackageFiles();
+      long size = 0;
+      for ( File packageFile : packageFiles ) {
+        size += packageFile.length();
+      }
+      if ( size <= maxSize ) {
+        return;
+      }
+
+      Set<File> keptFiles = new HashSet<>();
+      keptFiles.add( keep );
+      for ( String retainedUrl : this.retainedUrls.keySet() ) {
+        Entry entry = this.loadEntry( retainedUrl );
+        if ( entry != null ) {
+          keptFiles.add( this.getPackageFile( entry.digest ) );
+        }
+      }
+
+      Arrays.sort( packageFiles, new Comparator<File>() {
+        @Override
+        public int compare( File file1, File file2 ) {
+          return Long.compare( file1.lastModified(), file2.lastModified() );
+        }
+      } );
+      for ( File packageFile : packageFiles ) {
+        if ( size <= maxSize ) {
+          break;
+        }
+        if ( keptFiles.contains( packageFile ) ) {
+          continue;
+        }
+
+        long length = packageFile.length();
+        if ( packageFile.delete() ) {
+          this.getLogger().debug( "Removed cached package " + packageFile.getAbsolutePath() );
+          this.verifiedDigests.remove( getDigest( packageFile ) );
+          size -= length;
+        }
+      }
+
+      // entries pointing to a removed package would be treated as not cached, but would never be removed
+      this.removeStaleEntries();
+    }
+  }
+
+  private void removeStaleEntries() {
+    File[] entryFiles = this.getCacheDir().listFiles( new FileFilter() {
+      @Override
+      public boolean accept( File file ) {
+        return file.isFile() && file.getName().endsWith( ENTRY_FILE_EXTENSION );
+      }
+    } );
+    if ( entryFiles == null ) {
+      return;
+    }
+
+    for ( File entryFile : entryFiles ) {
+      if ( !this.isPackageCached( entryFile ) ) {
+        FileUtils.deleteQuietly( entryFile );
+      }
+    }
+  }
+
+  /**
+   * @return whether the package an entry file points to is cached; false if the entry can not be read.
+   */
+  private boolean isPackageCached( File entryFile ) {
+    Properties properties = this.loadProperties( entryFile );
+    String digest = properties != null ? properties.getProperty( DIGEST_PROPERTY ) : null;
+    return digest != null && this.getPackageFile( digest ).isFile();
+  }
+
+  private static String getDigest( File packageFile ) {
+    String name = packageFile.getName();
+    return name.substring( 0, name.length() - PACKAGE_FILE_EXTENSION.length() );
+  }
+
+  private File[] listPackageFiles() {
+    File[] packageFiles = this.getCacheDir().listFiles( new FileFilter() {
+      @Override
+      public boolean accept( File file ) {
+        return file.isFile() && file.getName().endsWith( PACKAGE_FILE_EXTENSION );
+      }
+    } );
+    return packageFiles != null ? packageFiles : new File[ 0 ];
+  }
+
+  /**
+   * Marks a package as recently used.
+   */
+  private File touch( File packageFile ) {
+    if ( !packageFile.setLastModified( System.currentTimeMillis() ) ) {
+      this.getLogger().debug( "Unable to update last use of cached package " + packageFile.getAbsolutePath() );
+    }
+    return packageFile;
+  }
+
+  private File getPackageFile( String digest ) {
+    return new File( this.getCacheDir(), digest + PACKAGE_FILE_EXTENSION );
+  }
+
+  private File getEntryFile( String url ) {
+    byte[] urlDigest = Digests.createSha256().digest( url.getBytes( StandardCharsets.UTF_8 ) );
+    return new File( this.getCacheDir(), Digests.toHex( urlDigest ) + ENTRY_FILE_EXTENSION );
+  }
+
+  private Entry loadEntry( String url ) {
+    File entryFile = this.getEntryFile( url );
+    if ( !entryFile.isFile() ) {
+      return null;
+    }
+
+    Properties properties = this.loadProperties( entryFile );
+    String digest = properties != null ? properties.getProperty( DIGEST_PROPERTY ) : null;
+    if ( digest == null || !url.equals( properties.getProperty( URL_PROPERTY ) ) ) {
+      return null;
+    }
+
+    long validatedAt;
+    try {
+      validatedAt = Long.parseLong( properties.getProperty( VALIDATED_AT_PROPERTY, "0" ) );
+    } catch ( NumberFormatException e ) {
+      validatedAt = 0;
+    }
+    return new Entry( url, digest, properties.getProperty( ETAG_PROPERTY ),
+      properties.getProperty( LAST_MODIFIED_PROPERTY ), validatedAt );
+  }
+
+  private Properties loadProperties( File entryFile ) {
+    Properties properties = new Properties();
+    try {
+      InputStream inputStream = new FileInputStream( entryFile );
+      try {
+        properties.load( inputStream );
+      } finally {
+        IOUtils.closeQuietly( inputStream );
+      }
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to read package cache entry " + entryFile.getAbsolutePath(), e );
+      return null;
+    }
+    return properties;
+  }
+
+  private void saveEntry( Entry entry ) {
+    Properties properties = new Properties();
+    setProperty( properties, URL_PROPERTY, entry.url );
+    setProperty( properties, DIGEST_PROPERTY, entry.digest );
+    setProperty( properties, ETAG_PROPERTY, entry.eTag );
+    setProperty( properties, LAST_MODIFIED_PROPERTY, entry.lastModified );
+    setProperty( properties, VALIDATED_AT_PROPERTY, String.valueOf( entry.validatedAt ) );
+
+    File entryFile = this.getEntryFile( entry.url );
+    File tempFile = null;
+    try {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      properties.store( outputStream, null );
+
+      tempFile = File.createTempFile( entryFile.getName(), TEMP_FILE_EXTENSION, entryFile.getParentFile() );
+      FileUtils.writeByteArrayToFile( tempFile, outputStream.toByteArray() );
+      move( tempFile, entryFile );
+    } catch ( IOException e ) {
+      // the package is still usable, it will just be downloaded again next time
+      this.getLogger().warn( "Unable to write package cache entry " + entryFile.getAbsolutePath(), e );
+    } finally {
+      FileUtils.deleteQuietly( tempFile );
+    }
+  }
+
+  private static void setProperty( Properties properties, String key, String value ) {
+    if ( value != null ) {
+      properties.setProperty( key, value );
+    }
+  }
+
+  private static void move( File source, File target ) throws IOException {
+    try {
+      Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE );
+    } catch ( AtomicMoveNotSupportedException e ) {
+      Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+    }
+  }
+  // endregion
+}
@@ -0,0 +1,60 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.services.interfaces.IPluginCatalog;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plugin catalog whose index is built once, when the catalog is created.
+ */
+public final class PluginCatalog implements IPluginCatalog {
+
+  // region Properties
+  private final long createdAt;
+  private final Map<String, IPlugin> pluginsById;
+  // endregion
+
+  // region Constructors
+  public PluginCatalog( Map<String, IPlugin> plugins ) {
+    this.createdAt = System.currentTimeMillis();
+    this.pluginsById = Collections.unmodifiableMap( new HashMap<>( plugins ) );
+  }
+
+  public static IPluginCatalog empty() {
+    return new PluginCatalog( Collections.<String, IPlugin>emptyMap() );
+  }
+  // endregion
+
+  // region Methods
+  @Override
+  public long getCreatedAt() {
+    return this.createdAt;
+  }
+
+  @Override
+  public Map<String, IPlugin> getPlugins() {
+    return this.pluginsById;
+  }
+
+  @Override
+  public IPlugin getPlugin( String id ) {
+    return id != null ? this.pluginsById.get( id ) : null;
+  }
+  // endregion
+}
@@ -0,0 +1,429 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.marketplace.domain.model.entities.PluginJob;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IDomainStatusMessageFactory;
+import org.pentaho.marketplace.domain.services.interfaces.IPluginJobService;
+import org.pentaho.marketplace.domain.services.interfaces.IPluginService;
+import org.pentaho.marketplace.util.DownloadProgress;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs plugin installs and uninstalls on a bounded pool of background threads, so that requests return right away
+ * instead of waiting on downloads and extraction.
+ *
+ * Only one job runs at a time for each plugin; a job submitted while another one for the same plugin is queued or
+ * running, or while the queue is full, fails right away. Batch installs leave out the plugins with another job in
+ * progress and keep the others locked until the whole batch is done. Installs, uninstalls and rollbacks can also run on
+ * the calling thread, taking the same per plugin lock. Finished jobs are kept for {@link #getJobRetentionSeconds()}
+ * seconds so that their outcome can be polled.
+ */
+public class PluginJobService implements IPluginJobService {
+
+  // region Constants
+  private static final String JOB_THREAD_NAME = "Marketplace Plugin Job Thread ";
+  private static final int DEFAULT_THREAD_COUNT = 2;
+  private static final int DEFAULT_QUEUE_CAPACITY = 16;
+  private static final long DEFAULT_JOB_RETENTION_SECONDS = 3600;
+
+  // Error messages codes should begin with ERROR
+  protected static final String FAIL_ERROR_CODE = "ERROR_0003_FAIL";
+  protected static final String JOB_REJECTED_ERROR_CODE = "ERROR_0004_JOB_REJECTED";
+  protected static final String PLUGINS_INSTALLED_CODE = "PLUGINS_INSTALLED";
+  // endregion
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  public IPluginService getPluginService() {
+    return this.pluginService;
+  }
+  protected PluginJobService setPluginService( IPluginService pluginService ) {
+    this.pluginService = pluginService;
+    return this;
+  }
+  private IPluginService pluginService;
+
+  public IDomainStatusMessageFactory getDomainStatusMessageFactory() {
+    return this.domainStatusMessageFactory;
+  }
+  protected PluginJobService setDomainStatusMessageFactory( IDomainStatusMessageFactory domainStatusMessageFactory ) {
+    this.domainStatusMessageFactory = domainStatusMessageFactory;
+    return this;
+  }
+  private IDomainStatusMessageFactory domainStatusMessageFactory;
+
+  /**
+   * Gets the maximum number of jobs running at the same time.
+   * @return the number of job threads
+   */
+  public int getThreadCount() {
+    return this.threadCount;
+  }
+  public void setThreadCount( int threadCount ) {
+    this.threadCount = Math.max( 1, threadCount );
+  }
+  private int threadCount = DEFAULT_THREAD_COUNT;
+
+  /**
+   * Gets the maximum number of jobs waiting for a thread. Jobs submitted when the queue is full are rejected.
+   * @return the queue capacity
+   */
+  public int getQueueCapacity() {
+    return this.queueCapacity;
+  }
+  public void setQueueCapacity( int queueCapacity ) {
+    this.queueCapacity = Math.max( 1, queueCapacity );
+  }
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+  /**
+   * Gets the number of seconds finished jobs are kept.
+   * @return the job retention in seconds
+   */
+  public long getJobRetentionSeconds() {
+    return this.jobRetentionSeconds;
+  }
+  public void setJobRetentionSeconds( long jobRetentionSeconds ) {
+    this.jobRetentionSeconds = Math.max( 0, jobRetentionSeconds );
+  }
+  private long jobRetentionSeconds = DEFAULT_JOB_RETENTION_SECONDS;
+
+  protected ThreadPoolExecutor getJobExecutor() {
+    return this.jobExecutor;
+  }
+  protected void setJobExecutor( ThreadPoolExecutor jobExecutor ) {
+    this.jobExecutor = jobExecutor;
+  }
+  private volatile ThreadPoolExecutor jobExecutor;
+
+  private final Map<String, PluginJob> jobs = new ConcurrentHashMap<>();
+  private final Map<String, PluginJob> activeJobsByPluginId = new ConcurrentHashMap<>();
+  // endregion
+
+  // region Constructors
+  public PluginJobService( IPluginService pluginService, IDomainStatusMessageFactory domainStatusMessageFactory ) {
+    this.setPluginService( pluginService );
+    this.setDomainStatusMessageFactory( domainStatusMessageFactory );
+  }
+
+  /**
+   * Called after class is instantiated by dependency injection
+   */
+  public void init() {
+    final AtomicInteger threadNumber = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      this.getThreadCount(), this.getThreadCount(),
+      60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<Runnable>( this.getQueueCapacity() ),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r );
+          thread.setName( JOB_THREAD_NAME + threadNumber.incrementAndGet() );
+          thread.setDaemon( true );
+          return thread;
+        }
+      },
+      new ThreadPoolExecutor.AbortPolicy()
+    );
+    executor.allowCoreThreadTimeOut( true );
+    this.setJobExecutor( executor );
+  }
+
+  /**
+   * Called on object destruction by dependency injection
+   */
+  public void destroy() {
+    ThreadPoolExecutor executor = this.getJobExecutor();
+    if ( executor != null ) {
+      // let running jobs finish, interrupting an install could leave the plugin half installed
+      executor.shutdown();
+      this.setJobExecutor( null );
+    }
+  }
+  // endregion
+
+  // region Methods
+  @Override
+  public PluginJob submitInstall( final String pluginId, final String versionBranch ) {
+    PluginJob job = new PluginJob( UUID.randomUUID().toString(), PluginJob.Type.INSTALL, pluginId, versionBranch );
+    return this.submit( job, new Callable<IDomainStatusMessage>() {
+      @Override
+      public IDomainStatusMessage call() {
+        return getPluginService().installPlugin( pluginId, versionBranch );
+      }
+    } );
+  }
+
+  @Override
+  public PluginJob submitBatchInstall( Map<String, String> versionBranchesByPluginId ) {
+    final PluginJob job = new PluginJob( UUID.randomUUID().toString(), versionBranchesByPluginId );
+    this.removeExpiredJobs();
+    this.jobs.put( job.getId(), job );
+
+    if ( job.getVersionBranchesByPluginId().isEmpty() ) {
+      job.finish( true, this.getDomainStatusMessageFactory()
+        .create( PLUGINS_INSTALLED_CODE, "No plugins to install." ) );
+      return job;
+    }
+
+    // plugins with another job in progress are left out, the others are locked until the whole batch is done
+    final Map<String, String> lockedVersionBranches = new LinkedHashMap<>();
+    for ( Map.Entry<String, String> entry : job.getVersionBranchesByPluginId().entrySet() ) {
+      if ( this.lock( entry.getKey(), job ) ) {
+        lockedVersionBranches.put( entry.getKey(), entry.getValue() );
+      } else {
+        job.setPluginStatusMessage( entry.getKey(), this.createBusyStatusMessage( entry.getKey() ) );
+      }
+    }
+    if ( lockedVersionBranches.isEmpty() ) {
+      job.finish( false, this.getDomainStatusMessageFactory()
+        .create( JOB_REJECTED_ERROR_CODE, "Another operation is in progress for every plugin of the batch." ) );
+      return job;
+    }
+
+    return this.execute( job, lockedVersionBranches.keySet(), new Callable<IDomainStatusMessage>() {
+      @Override
+      public IDomainStatusMessage call() {
+        Map<String, IDomainStatusMessage> statusMessages =
+          getPluginService().installPlugins( lockedVersionBranches );
+        for ( Map.Entry<String, IDomainStatusMessage> statusMessage : statusMessages.entrySet() ) {
+          job.setPluginStatusMessage( statusMessage.getKey(), statusMessage.getValue() );
+        }
+        return createBatchStatusMessage( job );
+      }
+    } );
+  }
+
+  @Override
+  public PluginJob submitUninstall( final String pluginId ) {
+    PluginJob job = new PluginJob( UUID.randomUUID().toString(), PluginJob.Type.UNINSTALL, pluginId, null );
+    return this.submit( job, new Callable<IDomainStatusMessage>() {
+      @Override
+      public IDomainStatusMessage call() {
+        return getPluginService().uninstallPlugin( pluginId );
+      }
+    } );
+  }
+
+  @Override
+  public IDomainStatusMessage installPlugin( final String pluginId, final String versionBranch ) {
+    PluginJob job = new PluginJob( UUID.randomUUID().toString(), PluginJob.Type.INSTALL, pluginId, versionBranch );
+    return this.runLocked( job, new Callable<IDomainStatusMessage>() {
+      @Override
+      public IDomainStatusMessage call() {
+        return getPluginService().installPlugin( pluginId, versionBranch );
+      }
+    } );
+  }
+
+  @Override
+  public IDomainStatusMessage uninstallPlugin( final String pluginId ) {
+    PluginJob job = new PluginJob( UUID.randomUUID().toString(), PluginJob.Type.UNINSTALL, pluginId, null );
+    return this.runLocked( job, new Callable<IDomainStatusMessage>() {
+      @Override
+      public IDomainStatusMessage call() {
+        return getPluginService().uninstallPlugin( pluginId );
+      }
+    } );
+  }
+
+  @Override
+  public IDomainStatusMessage rollbackPlugin( final String pluginId ) {
+    PluginJob job = new PluginJob( UUID.randomUUID().toString(), PluginJob.Type.ROLLBACK, pluginId, null );
+    return this.runLocked( job, new Callable<IDomainStatusMessage>() {
+      @Override
+      public IDomainStatusMessage call() {
+        return getPluginService().rollbackPlugin( pluginId );
+      }
+    } );
+  }
+
+  @Override
+  public PluginJob getJob( String jobId ) {
+    if ( jobId == null ) {
+      return null;
+    }
+    PluginJob job = this.jobs.get( jobId );
+    return job != null && !this.isExpired( job ) ? job : null;
+  }
+
+  private PluginJob submit( final PluginJob job, Callable<IDomainStatusMessage> operation ) {
+    this.removeExpiredJobs();
+    this.jobs.put( job.getId(), job );
+
+    if ( !this.lock( job.getPluginId(), job ) ) {
+      job.finish( false, this.createBusyStatusMessage( job.getPluginId() ) );
+      return job;
+    }
+
+    return this.execute( job, Collections.singleton( job.getPluginId() ), operation );
+  }
+
+  /**
+   * Runs the operation of a job on the calling thread, holding the lock of its plugin while it runs.
+   * @param job the job, which is not kept, it only holds the plugin lock
+   * @param operation the operation of the job
+   * @return the outcome of the operation, or a rejection if another job for the plugin is in progress
+   */
+  private IDomainStatusMessage runLocked( PluginJob job, Callable<IDomainStatusMessage> operation ) {
+    String pluginId = job.getPluginId();
+    try {
+      if ( pluginId == null ) {
+        // nothing to lock, the plugin service reports the invalid plugin id
+        return operation.call();
+      }
+
+      if ( !this.lock( pluginId, job ) ) {
+        return this.createBusyStatusMessage( pluginId );
+      }
+      try {
+        return operation.call();
+      } finally {
+        this.unlock( Collections.singleton( pluginId ), job );
+      }
+    } catch ( RuntimeException e ) {
+      throw e;
+    } catch ( Exception e ) {
+      // the operations only call the plugin service, which throws no checked exceptions
+      throw new IllegalStateException( e );
+    }
+  }
+
+  /**
+   * Runs the job in the background, or on the calling thread if the service is not initialized.
+   * @param job the job to run
+   * @param lockedPluginIds the plugins locked for the job, unlocked once it finishes
+   * @param operation the operation of the job
+   * @return the job
+   */
+  private PluginJob execute( final PluginJob job, final Collection<String> lockedPluginIds,
+                             Callable<IDomainStatusMessage> operation ) {
+    // the job runs as if it was run by the caller, e.g. with the caller's permissions
+    final Callable<IDomainStatusMessage> boundOperation = this.getPluginService().inCallerContext( operation );
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        runJob( job, lockedPluginIds, boundOperation );
+      }
+    };
+
+    ThreadPoolExecutor executor = this.getJobExecutor();
+    if ( executor == null ) {
+      // not initialized, run on the calling thread
+      task.run();
+      return job;
+    }
+
+    try {
+      executor.execute( task );
+    } catch ( RejectedExecutionException e ) {
+      this.unlock( lockedPluginIds, job );
+      job.finish( false, this.getDomainStatusMessageFactory()
+        .create( JOB_REJECTED_ERROR_CODE, "Too many operations in progress, please try again later." ) );
+    }
+    return job;
+  }
+
+  private void runJob( PluginJob job, Collection<String> lockedPluginIds, Callable<IDomainStatusMessage> operation ) {
+    job.getDownloadProgress().attach();
+    job.start();
+    try {
+      IDomainStatusMessage statusMessage = operation.call();
+      job.finish( !this.isError( statusMessage ), statusMessage );
+    } catch ( Exception e ) {
+      this.getLogger().error( "Failed to run " + job.getType() + " job for plugin " + job.getPluginId(), e );
+      job.finish( false, this.getDomainStatusMessageFactory()
+        .create( FAIL_ERROR_CODE, "Failed to execute " + job.getType().name().toLowerCase()
+          + ", see log for details." ) );
+    } finally {
+      DownloadProgress.detach();
+      this.unlock( lockedPluginIds, job );
+    }
+  }
+
+  private boolean lock( String pluginId, PluginJob job ) {
+    return pluginId != null && this.activeJobsByPluginId.putIfAbsent( pluginId, job ) == null;
+  }
+
+  private void unlock( Collection<String> pluginIds, PluginJob job ) {
+    for ( String pluginId : pluginIds ) {
+      this.activeJobsByPluginId.remove( pluginId, job );
+    }
+  }
+
+  private IDomainStatusMessage createBusyStatusMessage( String pluginId ) {
+    return this.getDomainStatusMessageFactory()
+      .create( JOB_REJECTED_ERROR_CODE, "Another operation is in progress for plugin " + pluginId );
+  }
+
+  private IDomainStatusMessage createBatchStatusMessage( PluginJob job ) {
+    Map<String, IDomainStatusMessage> statusMessages = job.getPluginStatusMessages();
+    int failed = 0;
+    for ( IDomainStatusMessage statusMessage : statusMessages.values() ) {
+      if ( this.isError( statusMessage ) ) {
+        failed++;
+      }
+    }
+
+    if ( failed > 0 ) {
+      return this.getDomainStatusMessageFactory().create( FAIL_ERROR_CODE,
+        failed + " of " + statusMessages.size() + " plugins could not be installed." );
+    }
+    return this.getDomainStatusMessageFactory().create( PLUGINS_INSTALLED_CODE,
+      statusMessages.size() + " plugins installed." );
+  }
+
+  private boolean isError( IDomainStatusMessage statusMessage ) {
+    return statusMessage == null || statusMessage.getCode() == null
+      || statusMessage.getCode().toUpperCase().startsWith( "ERROR" );
+  }
+
+  private boolean isExpired( PluginJob job ) {
+    long retention = TimeUnit.SECONDS.toMillis( this.getJobRetentionSeconds() );
+    return job.isFinished() && System.currentTimeMillis() - job.getFinishedAt() > retention;
+  }
+
+  private void removeExpiredJobs() {
+    Iterator<PluginJob> iterator = this.jobs.values().iterator();
+    while ( iterator.hasNext() ) {
+      if ( this.isExpired( iterator.next() ) ) {
+        iterator.remove();
+      }
+    }
+  }
+  // endregion
+}
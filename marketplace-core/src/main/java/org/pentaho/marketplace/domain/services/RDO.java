@@ -13,16 +13,19 @@
 
 package org.pentaho.marketplace.domain.services;
 
+import org.pentaho.marketplace.domain.services.interfaces.IPluginJobService;
 import org.pentaho.marketplace.domain.services.interfaces.IPluginService;
 import org.pentaho.marketplace.domain.services.interfaces.IRDO;
 
 public class RDO implements IRDO {
 
   private IPluginService pluginService;
+  private IPluginJobService pluginJobService;
 
   //region Constructors
-  public RDO( IPluginService pluginService ) {
+  public RDO( IPluginService pluginService, IPluginJobService pluginJobService ) {
     this.pluginService = pluginService;
+    this.pluginJobService = pluginJobService;
   }
   //endregion
 
@@ -31,5 +34,10 @@ public class RDO implements IRDO {
   public IPluginService getPluginService() {
     return this.pluginService;
   }
+
+  @Override
+  public IPluginJobService getPluginJobService() {
+    return this.pluginJobService;
+  }
   //endregion
 }
@@ -13,22 +13,66 @@
 
 package org.pentaho.marketplace.domain.services;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.serialization.BinaryCatalogSerializer;
 import org.pentaho.marketplace.domain.model.entities.serialization.IMarketplaceXmlSerializer;
-import org.pentaho.marketplace.domain.services.interfaces.IRemotePluginProvider;
+import org.pentaho.marketplace.domain.services.interfaces.IRefreshablePluginProvider;
+import org.pentaho.marketplace.util.SingleFlight;
+import org.pentaho.marketplace.util.web.ConditionalResponse;
 import org.pentaho.marketplace.util.web.HttpUtil;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
-public class RemoteMetadataPluginProvider implements IRemotePluginProvider {
+/**
+ * Gets the plugins from the remote marketplace metadata xml.
+ *
+ * The parsed metadata is kept in memory for {@link #getCacheTtlSeconds()} seconds. Once that time has elapsed the
+ * metadata is revalidated with a conditional GET (If-None-Match / If-Modified-Since), so an unchanged metadata file
+ * costs a single 304 round trip instead of a full download and parse.
+ *
+ * When a {@link MetadataSnapshotStore} is set, every newly downloaded metadata is persisted and the last snapshot is
+ * loaded on {@link #init()}, so plugins are available right after a restart without waiting on the remote server.
+ * When a {@link BinaryCatalogSerializer} is also set, the parsed plugins are persisted along with the metadata, and
+ * read back on {@link #init()} instead of parsing the metadata xml again.
+ *
+ * Concurrent fetches are coalesced: callers arriving while a fetch is in flight wait for it and share its result.
+ */
+public class RemoteMetadataPluginProvider implements IRefreshablePluginProvider {
+
+  // region Inner Definitions
+  /**
+   * Immutable holder of the last successfully parsed metadata and the validators the server sent for it.
+   */
+  private static final class CachedMetadata {
+    private final Map<String, IPlugin> plugins;
+    private final String eTag;
+    private final String lastModified;
+    private final long validatedAt;
+
+    private CachedMetadata( Map<String, IPlugin> plugins, String eTag, String lastModified, long validatedAt ) {
+      this.plugins = plugins;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.validatedAt = validatedAt;
+    }
+  }
+  // endregion
 
   // region Properties
   private static final String MARKETPLACE_ENTRIES_URL_FALLBACK = "https://raw.github.com/pentaho/marketplace-metadata/master/marketplace.xml";
+  private static final long DEFAULT_CACHE_TTL_SECONDS = 300;
 
   private Log logger = LogFactory.getLog( this.getClass() );
   private Log getLogger() {
@@ -40,10 +84,12 @@ public class RemoteMetadataPluginProvider implements IRemotePluginProvider {
     return this.metadataUrl;
   }
   @Override
-  public void setUrl( URL metadataUrl ) {
+  public synchronized void setUrl( URL metadataUrl ) {
     this.metadataUrl = metadataUrl;
+    // metadata from a different location is not valid anymore
+    this.cachedMetadata = null;
   }
-  private URL metadataUrl;
+  private volatile URL metadataUrl;
 
   public IMarketplaceXmlSerializer getXmlSerializer() {
     return this.xmlPluginsSerializer;
@@ -54,6 +100,55 @@ public class RemoteMetadataPluginProvider implements IRemotePluginProvider {
   }
   private IMarketplaceXmlSerializer xmlPluginsSerializer;
 
+  /**
+   * Gets the number of seconds the parsed metadata is used before being revalidated against the remote server.
+   * @return the cache time to live in seconds
+   */
+  public long getCacheTtlSeconds() {
+    return this.cacheTtlSeconds;
+  }
+  /**
+   * Sets the number of seconds the parsed metadata is used before being revalidated against the remote server.
+   * A value of zero revalidates on every request.
+   * @param cacheTtlSeconds the cache time to live in seconds
+   */
+  public void setCacheTtlSeconds( long cacheTtlSeconds ) {
+    this.cacheTtlSeconds = Math.max( 0, cacheTtlSeconds );
+  }
+  private long cacheTtlSeconds = DEFAULT_CACHE_TTL_SECONDS;
+
+  public MetadataSnapshotStore getSnapshotStore() {
+    return this.snapshotStore;
+  }
+  public void setSnapshotStore( MetadataSnapshotStore snapshotStore ) {
+    this.snapshotStore = snapshotStore;
+  }
+  private MetadataSnapshotStore snapshotStore;
+
+  public BinaryCatalogSerializer getCatalogSerializer() {
+    return this.catalogSerializer;
+  }
+  public void setCatalogSerializer( BinaryCatalogSerializer catalogSerializer ) {
+    this.catalogSerializer = catalogSerializer;
+  }
+  private BinaryCatalogSerializer catalogSerializer;
+
+  /**
+   * @return the number of times the remote metadata was actually fetched.
+   */
+  public long getFetchCount() {
+    return this.metadataFetch.getExecutionCount();
+  }
+
+  /**
+   * @return the number of fetches that shared the result of a fetch already in flight.
+   */
+  public long getCoalescedFetchCount() {
+    return this.metadataFetch.getCoalescedCount();
+  }
+  private final SingleFlight<CachedMetadata> metadataFetch = new SingleFlight<>();
+
+  private volatile CachedMetadata cachedMetadata;
   // endregion
 
   // region Constructors
@@ -66,14 +161,200 @@ public class RemoteMetadataPluginProvider implements IRemotePluginProvider {
       this.getLogger().error( "Invalid metadata url: " + MARKETPLACE_ENTRIES_URL_FALLBACK, e );
     }
   }
+
+  /**
+   * Called after class is instantiated by dependency injection
+   */
+  public void init() {
+    this.loadSnapshot();
+  }
   // endregion
 
   // region Methods
+  @Override
   public Map<String, IPlugin> getPlugins() {
+    CachedMetadata metadata = this.cachedMetadata;
+    if ( metadata == null || this.isExpired( metadata ) ) {
+      CachedMetadata fetched = this.fetchMetadata( metadata );
+      if ( fetched != null ) {
+        metadata = fetched;
+      } else if ( metadata != null ) {
+        this.getLogger().warn( "Using previously obtained marketplace metadata." );
+      }
+    }
+
+    return metadata != null ? metadata.plugins : Collections.<String, IPlugin>emptyMap();
+  }
+
+  @Override
+  public Map<String, IPlugin> getCachedPlugins() {
+    CachedMetadata metadata = this.cachedMetadata;
+    return metadata != null ? metadata.plugins : null;
+  }
+
+  @Override
+  public boolean refresh() {
+    return this.fetchMetadata( this.cachedMetadata ) != null;
+  }
+
+  private boolean isExpired( CachedMetadata metadata ) {
+    long ttl = TimeUnit.SECONDS.toMillis( this.getCacheTtlSeconds() );
+    return System.currentTimeMillis() - metadata.validatedAt >= ttl;
+  }
+
+  /**
+   * Revalidates / downloads the remote metadata, or waits for the fetch already in flight.
+   * @param previous the currently cached metadata, or null if none
+   * @return the metadata to use from now on; null if the remote metadata could not be obtained.
+   */
+  private CachedMetadata fetchMetadata( final CachedMetadata previous ) {
+    return this.metadataFetch.execute( new Callable<CachedMetadata>() {
+      @Override
+      public CachedMetadata call() {
+        return downloadMetadata( previous );
+      }
+    } );
+  }
+
+  private CachedMetadata downloadMetadata( CachedMetadata previous ) {
+    URL url = this.getUrl();
+    String eTag = previous != null ? previous.eTag : null;
+    String lastModified = previous != null ? previous.lastModified : null;
+
     // TODO: make dependency explicit
-    InputStream inputStream = HttpUtil.getURLInputStream( this.getUrl() );
-    Map<String, IPlugin> plugins = this.getXmlSerializer().getPlugins( inputStream );
-    return plugins;
+    ConditionalResponse response = HttpUtil.getConditionalURLResponse( url.toString(), eTag, lastModified );
+    if ( response == null ) {
+      this.getLogger().warn( "Unable to get marketplace metadata from " + url + "." );
+      return null;
+    }
+
+    if ( response.isNotModified() ) {
+      if ( previous == null ) {
+        // e.g. a misbehaving proxy, there is nothing to revalidate
+        this.getLogger().warn( "Unexpected not modified response for marketplace metadata from " + url + "." );
+        return null;
+      }
+      this.getLogger().debug( "Marketplace metadata not modified since last request." );
+      return this.cacheFetchedMetadata( url,
+        new CachedMetadata( previous.plugins, previous.eTag, previous.lastModified, System.currentTimeMillis() ) );
+    }
+
+    InputStream inputStream = response.getInputStream();
+    byte[] metadata;
+    try {
+      metadata = IOUtils.toByteArray( inputStream );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Unable to read marketplace metadata from " + url + ".", e );
+      return null;
+    } finally {
+      IOUtils.closeQuietly( inputStream );
+    }
+
+    Map<String, IPlugin> plugins = this.parsePlugins( metadata );
+    if ( plugins == null || plugins.isEmpty() ) {
+      this.getLogger().warn( "No plugins found in marketplace metadata from " + url + "." );
+      return null;
+    }
+
+    this.saveSnapshot( new MetadataSnapshotStore.Snapshot( metadata, url.toString(),
+      response.getETag(), response.getLastModified() ), plugins );
+
+    return this.cacheFetchedMetadata( url, new CachedMetadata( Collections.unmodifiableMap( plugins ),
+      response.getETag(), response.getLastModified(), System.currentTimeMillis() ) );
+  }
+
+  /**
+   * Caches the fetched metadata, unless the url was changed while it was being fetched.
+   * @param url the url the metadata was fetched from
+   * @param metadata the fetched metadata
+   * @return the fetched metadata
+   */
+  private synchronized CachedMetadata cacheFetchedMetadata( URL url, CachedMetadata metadata ) {
+    URL currentUrl = this.getUrl();
+    if ( currentUrl == null || !currentUrl.toString().equals( url.toString() ) ) {
+      this.getLogger().debug( "Not caching marketplace metadata from " + url + ", the url changed to " + currentUrl );
+      return metadata;
+    }
+    return this.setCachedMetadata( metadata );
+  }
+
+  private Map<String, IPlugin> parsePlugins( byte[] metadata ) {
+    return this.getXmlSerializer().getPlugins( new ByteArrayInputStream( metadata ) );
+  }
+
+  /**
+   * Uses the persisted snapshot, if any, until the remote metadata is revalidated.
+   */
+  private void loadSnapshot() {
+    MetadataSnapshotStore snapshotStore = this.getSnapshotStore();
+    if ( snapshotStore == null || this.cachedMetadata != null ) {
+      return;
+    }
+
+    MetadataSnapshotStore.Snapshot snapshot = snapshotStore.load();
+    if ( snapshot == null ) {
+      return;
+    }
+
+    URL url = this.getUrl();
+    if ( url == null || !url.toString().equals( snapshot.getUrl() ) ) {
+      this.getLogger().debug( "Ignoring marketplace metadata snapshot obtained from " + snapshot.getUrl() );
+      return;
+    }
+
+    Map<String, IPlugin> plugins = this.readCatalog( snapshotStore, snapshot );
+    if ( plugins == null ) {
+      plugins = this.parsePlugins( snapshot.getMetadata() );
+    }
+    if ( plugins == null || plugins.isEmpty() ) {
+      this.getLogger().warn( "No plugins found in marketplace metadata snapshot." );
+      return;
+    }
+
+    // the snapshot may be arbitrarily old, so it is revalidated on first use
+    this.setCachedMetadata( new CachedMetadata( Collections.unmodifiableMap( plugins ),
+      snapshot.getETag(), snapshot.getLastModified(), 0 ) );
+  }
+
+  private void saveSnapshot( MetadataSnapshotStore.Snapshot snapshot, Map<String, IPlugin> plugins ) {
+    MetadataSnapshotStore snapshotStore = this.getSnapshotStore();
+    if ( snapshotStore == null || !snapshotStore.save( snapshot ) ) {
+      return;
+    }
+
+    BinaryCatalogSerializer catalogSerializer = this.getCatalogSerializer();
+    if ( catalogSerializer != null ) {
+      snapshotStore.saveCatalog( catalogSerializer.write( plugins, snapshot.getMetadata() ) );
+    }
+  }
+
+  /**
+   * Reads the plugins from the binary catalog persisted with the snapshot.
+   * @return the plugins, or null if there is no usable catalog for the snapshot.
+   */
+  private Map<String, IPlugin> readCatalog( MetadataSnapshotStore snapshotStore,
+                                           MetadataSnapshotStore.Snapshot snapshot ) {
+    BinaryCatalogSerializer catalogSerializer = this.getCatalogSerializer();
+    if ( catalogSerializer == null ) {
+      return null;
+    }
+
+    ByteBuffer catalog = snapshotStore.loadCatalog();
+    if ( catalog == null ) {
+      return null;
+    }
+
+    try {
+      return catalogSerializer.read( catalog, snapshot.getMetadata() );
+    } catch ( IOException e ) {
+      this.getLogger().warn( "Ignoring marketplace catalog snapshot: " + e.getMessage() );
+      return null;
+    }
+  }
+
+  private CachedMetadata setCachedMetadata( CachedMetadata metadata ) {
+    this.cachedMetadata = metadata;
+    return metadata;
   }
   // endregion
 }
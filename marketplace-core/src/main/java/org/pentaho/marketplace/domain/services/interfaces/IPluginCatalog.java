@@ -0,0 +1,41 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services.interfaces;
+
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the plugins available to install, indexed by id.
+ */
+public interface IPluginCatalog {
+
+  /**
+   * @return the time, in milliseconds since the epoch, at which this catalog was built.
+   */
+  long getCreatedAt();
+
+  /**
+   * @return all the plugins in the catalog, by id. The returned map can not be changed.
+   */
+  Map<String, IPlugin> getPlugins();
+
+  /**
+   * @param id the id of the plugin to get
+   * @return the plugin with the given id, or null if it is not in the catalog.
+   */
+  IPlugin getPlugin( String id );
+
+}
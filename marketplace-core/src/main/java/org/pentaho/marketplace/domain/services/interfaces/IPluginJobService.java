@@ -0,0 +1,80 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services.interfaces;
+
+import org.pentaho.marketplace.domain.model.entities.PluginJob;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
+
+import java.util.Map;
+
+/**
+ * Runs plugin installs and uninstalls in the background.
+ */
+public interface IPluginJobService {
+
+  /**
+   * Submits the install of a plugin, or its upgrade if it is already installed.
+   * @param pluginId the id of the plugin to install
+   * @param versionBranch the branch of the version to install
+   * @return the submitted job; failed right away if it could not be submitted.
+   */
+  PluginJob submitInstall( String pluginId, String versionBranch );
+
+  /**
+   * Submits the install, or upgrade, of several plugins, one after the other. Plugins with another job in progress
+   * are not installed, and are reported as rejected.
+   * @param versionBranchesByPluginId the ids of the plugins to install, in order, with the branch of the version to
+   *                                  install of each one
+   * @return the submitted job; failed right away if it could not be submitted.
+   */
+  PluginJob submitBatchInstall( Map<String, String> versionBranchesByPluginId );
+
+  /**
+   * Submits the uninstall of a plugin.
+   * @param pluginId the id of the plugin to uninstall
+   * @return the submitted job; failed right away if it could not be submitted.
+   */
+  PluginJob submitUninstall( String pluginId );
+
+  /**
+   * Installs a plugin, or upgrades it if it is already installed, on the calling thread. The install is rejected while
+   * another job for the plugin is in progress, and no job for the plugin can start until it is done.
+   * @param pluginId the id of the plugin to install
+   * @param versionBranch the branch of the version to install
+   * @return the outcome of the install
+   */
+  IDomainStatusMessage installPlugin( String pluginId, String versionBranch );
+
+  /**
+   * Uninstalls a plugin on the calling thread. The uninstall is rejected while another job for the plugin is in
+   * progress, and no job for the plugin can start until it is done.
+   * @param pluginId the id of the plugin to uninstall
+   * @return the outcome of the uninstall
+   */
+  IDomainStatusMessage uninstallPlugin( String pluginId );
+
+  /**
+   * Restores the version of a plugin installed before its last upgrade, on the calling thread. The rollback is
+   * rejected while another job for the plugin is in progress, and no job for the plugin can start until it is done.
+   * @param pluginId the id of the plugin to roll back
+   * @return the outcome of the rollback
+   */
+  IDomainStatusMessage rollbackPlugin( String pluginId );
+
+  /**
+   * @param jobId the id of the job
+   * @return the job, or null if it is unknown or expired.
+   */
+  PluginJob getJob( String jobId );
+}
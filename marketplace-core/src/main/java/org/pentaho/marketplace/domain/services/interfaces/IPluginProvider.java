@@ -19,6 +19,12 @@ import java.util.Map;
 
 public interface IPluginProvider {
 
+  /**
+   * Gets the plugins available in the marketplace, by id.
+   * The returned map and plugins may be shared between callers and threads, so they must not be changed.
+   * Implementations return a new map whenever the available plugins change.
+   * @return the available plugins.
+   */
   Map<String, IPlugin> getPlugins();
 
 }
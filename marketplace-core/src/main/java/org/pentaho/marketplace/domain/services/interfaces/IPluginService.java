@@ -17,12 +17,44 @@ import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMes
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public interface IPluginService {
 
   Map<String, IPlugin> getPlugins();
 
+  /**
+   * Looks up a single plugin, without rebuilding the catalog unless it is outdated.
+   * @param pluginId the plugin to look up
+   * @return the plugin, or null if there is no compatible plugin with that id
+   */
+  IPlugin getPlugin( String pluginId );
+
   IDomainStatusMessage installPlugin( String pluginId, String versionBranch );
 
   IDomainStatusMessage uninstallPlugin( String pluginId );
+
+  /**
+   * Restores the version of a plugin that was installed before its last upgrade.
+   * @param pluginId the plugin to restore
+   * @return the outcome of the rollback
+   */
+  IDomainStatusMessage rollbackPlugin( String pluginId );
+
+  /**
+   * Installs, or upgrades, several plugins at once. The packages are downloaded concurrently and then installed one at
+   * a time in the given order.
+   * @param versionBranchesByPluginId the branch of the version to install of each plugin, by plugin id, in the order to
+   *                                  install them
+   * @return the outcome of each install, by plugin id, in install order
+   */
+  Map<String, IDomainStatusMessage> installPlugins( Map<String, String> versionBranchesByPluginId );
+
+  /**
+   * Binds an operation to the context of the calling thread (e.g. the user session), so that it can run on any
+   * other thread as if it was run by the caller.
+   * @param operation the operation to bind
+   * @return the bound operation
+   */
+  <T> Callable<T> inCallerContext( Callable<T> operation );
 }
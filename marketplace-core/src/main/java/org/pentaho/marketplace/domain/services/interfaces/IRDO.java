@@ -16,4 +16,6 @@ package org.pentaho.marketplace.domain.services.interfaces;
 public interface IRDO {
 
   IPluginService getPluginService();
+
+  IPluginJobService getPluginJobService();
 }
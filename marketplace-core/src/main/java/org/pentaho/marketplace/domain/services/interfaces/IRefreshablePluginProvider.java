@@ -0,0 +1,39 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services.interfaces;
+
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+
+import java.util.Map;
+
+/**
+ * Remote plugin provider that keeps the last obtained plugins and can be explicitly refreshed, so that refreshing
+ * can happen outside of the threads that request the plugins.
+ */
+public interface IRefreshablePluginProvider extends IRemotePluginProvider {
+
+  /**
+   * Gets the plugins obtained by the last successful refresh, without contacting the remote server.
+   * As with {@link #getPlugins()}, the returned map and plugins must not be changed.
+   * @return the plugins, or null if they were never obtained.
+   */
+  Map<String, IPlugin> getCachedPlugins();
+
+  /**
+   * Revalidates the plugins against the remote server, replacing the cached plugins if they changed.
+   * @return true if the cached plugins are up to date with the remote server; false if it could not be reached.
+   */
+  boolean refresh();
+
+}
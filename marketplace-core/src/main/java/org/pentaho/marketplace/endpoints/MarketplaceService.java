@@ -13,15 +13,22 @@
 
 package org.pentaho.marketplace.endpoints;
 
+import org.pentaho.marketplace.domain.model.entities.PluginJob;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
 import org.pentaho.marketplace.domain.services.interfaces.IRDO;
 import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.IPluginDTOMapper;
+import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.IPluginJobDTOMapper;
 import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.IStatusMessageDTOMapper;
+import org.pentaho.marketplace.endpoints.dtos.requests.BatchInstallRequestDTO;
+import org.pentaho.marketplace.endpoints.dtos.requests.PluginInstallRequestDTO;
 import org.pentaho.marketplace.endpoints.dtos.responses.IterablePluginOperationResultDTO;
+import org.pentaho.marketplace.endpoints.dtos.responses.PluginJobOperationResultDTO;
+import org.pentaho.marketplace.endpoints.dtos.responses.PluginOperationResultDTO;
 import org.pentaho.marketplace.endpoints.dtos.responses.StringOperationResultDTO;
 import org.pentaho.marketplace.endpoints.dtos.responses.base.OperationResultDTO;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -34,7 +41,11 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Path( "services" )
 public class MarketplaceService {
@@ -42,15 +53,18 @@ public class MarketplaceService {
   private IRDO RDO;
   private IPluginDTOMapper pluginDTOMapper;
   private IStatusMessageDTOMapper statusMessageDTOMapper;
+  private IPluginJobDTOMapper pluginJobDTOMapper;
 
   public MarketplaceService( IRDO rdo,
                              IPluginDTOMapper pluginDTOMapper,
-                             IStatusMessageDTOMapper statusMessageDTOMapper ) {
+                             IStatusMessageDTOMapper statusMessageDTOMapper,
+                             IPluginJobDTOMapper pluginJobDTOMapper ) {
 
     //dependency obtained via constructor dependency injection from spring framework
     this.RDO = rdo;
     this.pluginDTOMapper = pluginDTOMapper;
     this.statusMessageDTOMapper = statusMessageDTOMapper;
+    this.pluginJobDTOMapper = pluginJobDTOMapper;
   }
 
   @GET
@@ -85,9 +99,9 @@ public class MarketplaceService {
       }
     );
 
-    //transform plugins to DTOs for serialization
+    //transform plugins to DTOs for serialization, the detail fields are only sent for single plugins
     IterablePluginOperationResultDTO result = new IterablePluginOperationResultDTO();
-    result.plugins = this.pluginDTOMapper.toDTOs( plugins );
+    result.plugins = this.pluginDTOMapper.toSummaryDTOs( plugins );
 
     //status message
     result.statusMessage.code = "OK_CODE";
@@ -98,31 +112,159 @@ public class MarketplaceService {
     return result;
   }
 
+  @GET
+  @Path( "/plugin/{pluginId}" )
+  @Produces( MediaType.APPLICATION_JSON )
+  public PluginOperationResultDTO getPlugin( @PathParam( "pluginId" ) String pluginId,
+                                             @Context HttpServletResponse response ) {
+
+    //get plugin from the domain model
+    IPlugin plugin = this.RDO.getPluginService().getPlugin( pluginId );
+
+    response.addHeader( "Cache-Control", "no-cache, no-store" );
+
+    PluginOperationResultDTO result = new PluginOperationResultDTO();
+    if ( plugin == null ) {
+      result.statusMessage.code = "ERROR_0001_NO_PLUGIN";
+      result.statusMessage.message = "Plugin not found";
+      return result;
+    }
+
+    //transform plugin to DTO with all its details
+    result.plugin = this.pluginDTOMapper.toDTO( plugin );
+
+    //status message
+    result.statusMessage.code = "OK_CODE";
+    result.statusMessage.message = "OK_MESSAGE";
+
+    return result;
+  }
+
   @POST
   @Path( "/plugin/{pluginId}/{versionBranch}" )
   @Produces( MediaType.APPLICATION_JSON )
   public OperationResultDTO installPlugin( @PathParam( "pluginId" ) String pluginId,
                                            @PathParam( "versionBranch" ) String versionBranch ) {
     OperationResultDTO result = new OperationResultDTO();
-    //install plugin
-    IDomainStatusMessage statusMessage = this.RDO.getPluginService().installPlugin( pluginId, versionBranch );
+    //install plugin, unless another job for the plugin is in progress
+    IDomainStatusMessage statusMessage = this.RDO.getPluginJobService().installPlugin( pluginId, versionBranch );
 
     //send installation string
     result.statusMessage = this.statusMessageDTOMapper.toDTO( statusMessage );
     return result;
   }
 
+  @POST
+  @Path( "/plugins/batch" )
+  @Consumes( MediaType.APPLICATION_JSON )
+  @Produces( MediaType.APPLICATION_JSON )
+  public PluginJobOperationResultDTO installPlugins( BatchInstallRequestDTO request ) {
+    //plugins are installed in the requested order
+    Map<String, String> versionBranchesByPluginId = new LinkedHashMap<>();
+    Set<String> duplicatePluginIds = new LinkedHashSet<>();
+    if ( request != null && request.plugins != null ) {
+      for ( PluginInstallRequestDTO plugin : request.plugins ) {
+        if ( versionBranchesByPluginId.containsKey( plugin.pluginId ) ) {
+          duplicatePluginIds.add( plugin.pluginId );
+        } else {
+          versionBranchesByPluginId.put( plugin.pluginId, plugin.versionBranch );
+        }
+      }
+    }
+
+    //a plugin can only be installed once per batch
+    if ( !duplicatePluginIds.isEmpty() ) {
+      PluginJobOperationResultDTO result = new PluginJobOperationResultDTO();
+      result.statusMessage.code = "ERROR_0006_DUPLICATE_PLUGIN";
+      result.statusMessage.message = "Plugins requested more than once: " + duplicatePluginIds;
+      return result;
+    }
+
+    //install plugins in the background
+    PluginJob job = this.RDO.getPluginJobService().submitBatchInstall( versionBranchesByPluginId );
+
+    //send job to poll for the outcome of each plugin
+    return this.toJobResult( job );
+  }
+
   @DELETE
   @Path( "/plugin/{pluginId}" )
   @Produces( MediaType.APPLICATION_JSON )
   public OperationResultDTO uninstallPlugin( @PathParam( "pluginId" ) String pluginId ) {
 
     OperationResultDTO result = new OperationResultDTO();
-    //uninstall plugin
-    IDomainStatusMessage statusMessage = this.RDO.getPluginService().uninstallPlugin( pluginId );
+    //uninstall plugin, unless another job for the plugin is in progress
+    IDomainStatusMessage statusMessage = this.RDO.getPluginJobService().uninstallPlugin( pluginId );
 
     //send installation string
     result.statusMessage = this.statusMessageDTOMapper.toDTO( statusMessage );
     return result;
   }
+
+  @POST
+  @Path( "/rollback/plugin/{pluginId}" )
+  @Produces( MediaType.APPLICATION_JSON )
+  public OperationResultDTO rollbackPlugin( @PathParam( "pluginId" ) String pluginId ) {
+
+    OperationResultDTO result = new OperationResultDTO();
+    //restore the version installed before the last upgrade, unless another job for the plugin is in progress
+    IDomainStatusMessage statusMessage = this.RDO.getPluginJobService().rollbackPlugin( pluginId );
+
+    //send installation string
+    result.statusMessage = this.statusMessageDTOMapper.toDTO( statusMessage );
+    return result;
+  }
+
+  @POST
+  @Path( "/jobs/plugin/{pluginId}/{versionBranch}" )
+  @Produces( MediaType.APPLICATION_JSON )
+  public PluginJobOperationResultDTO submitInstallPlugin( @PathParam( "pluginId" ) String pluginId,
+                                                          @PathParam( "versionBranch" ) String versionBranch ) {
+    //install plugin in the background
+    PluginJob job = this.RDO.getPluginJobService().submitInstall( pluginId, versionBranch );
+
+    //send job to poll for the outcome
+    return this.toJobResult( job );
+  }
+
+  @DELETE
+  @Path( "/jobs/plugin/{pluginId}" )
+  @Produces( MediaType.APPLICATION_JSON )
+  public PluginJobOperationResultDTO submitUninstallPlugin( @PathParam( "pluginId" ) String pluginId ) {
+    //uninstall plugin in the background
+    PluginJob job = this.RDO.getPluginJobService().submitUninstall( pluginId );
+
+    //send job to poll for the outcome
+    return this.toJobResult( job );
+  }
+
+  @GET
+  @Path( "/jobs/{jobId}" )
+  @Produces( MediaType.APPLICATION_JSON )
+  public PluginJobOperationResultDTO getJob( @PathParam( "jobId" ) String jobId,
+                                             @Context HttpServletResponse response ) {
+    PluginJob job = this.RDO.getPluginJobService().getJob( jobId );
+
+    response.addHeader( "Cache-Control", "no-cache, no-store" );
+
+    if ( job == null ) {
+      PluginJobOperationResultDTO result = new PluginJobOperationResultDTO();
+      result.statusMessage.code = "ERROR_0005_NO_JOB";
+      result.statusMessage.message = "Job not found";
+      return result;
+    }
+
+    return this.toJobResult( job );
+  }
+
+  private PluginJobOperationResultDTO toJobResult( PluginJob job ) {
+    PluginJobOperationResultDTO result = new PluginJobOperationResultDTO();
+    result.job = this.pluginJobDTOMapper.toDTO( job );
+
+    //status message
+    result.statusMessage.code = "OK_CODE";
+    result.statusMessage.message = "OK_MESSAGE";
+
+    return result;
+  }
 }
@@ -38,6 +38,7 @@ public class PluginDTO {
   public String[] screenshots;
   public String dependencies;
   public String license;
+  public String licenseText;
   public String type;
 
   public CategoryDTO category;
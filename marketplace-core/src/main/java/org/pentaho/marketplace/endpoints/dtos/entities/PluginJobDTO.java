@@ -0,0 +1,36 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.endpoints.dtos.entities;
+
+import org.pentaho.marketplace.endpoints.dtos.responses.base.StatusMessageDTO;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.List;
+
+@XmlRootElement
+public class PluginJobDTO {
+
+  //region Attributes
+  public String id;
+  public String type;
+  public String pluginId;
+  public String versionBranch;
+  public String state;
+  public boolean finished;
+  public long bytesDownloaded;
+  public long totalBytes;
+  public StatusMessageDTO result;
+  public List<PluginInstallResultDTO> results;
+  //endregion
+}
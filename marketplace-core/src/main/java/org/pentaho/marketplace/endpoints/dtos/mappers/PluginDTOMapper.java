@@ -17,6 +17,7 @@ import org.pentaho.marketplace.domain.model.entities.MarketEntryType;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginFactory;
 import org.pentaho.marketplace.endpoints.dtos.entities.PluginDTO;
+import org.pentaho.marketplace.endpoints.dtos.entities.PluginVersionDTO;
 import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.ICategoryDTOMapper;
 import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.IPluginDTOMapper;
 import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.IPluginVersionDTOMapper;
@@ -71,6 +72,7 @@ public class PluginDTOMapper implements IPluginDTOMapper {
     plugin.setScreenshots( dto.screenshots );
     plugin.setDependencies( dto.dependencies );
     plugin.setLicense( dto.license );
+    plugin.setLicenseText( dto.licenseText );
     plugin.setType( MarketEntryType.valueOf( dto.type ) );
 
     //return the instance
@@ -80,6 +82,24 @@ public class PluginDTOMapper implements IPluginDTOMapper {
   @Override
   public PluginDTO toDTO( IPlugin plugin ) {
 
+    //get the dto with the list attributes
+    PluginDTO dto = this.toDTO( plugin, this.pluginVersionDTOMapper.toDTOs( plugin.getVersions() ) );
+
+    //fill the detail attributes
+    dto.installationNotes = plugin.getInstallationNotes();
+    dto.licenseText = plugin.getLicenseText();
+
+    //return the dto
+    return dto;
+  }
+
+  @Override
+  public PluginDTO toSummaryDTO( IPlugin plugin ) {
+    return this.toDTO( plugin, this.pluginVersionDTOMapper.toSummaryDTOs( plugin.getVersions() ) );
+  }
+
+  private PluginDTO toDTO( IPlugin plugin, List<PluginVersionDTO> versions ) {
+
     //get new dto instance
     PluginDTO dto = new PluginDTO();
 
@@ -96,9 +116,8 @@ public class PluginDTOMapper implements IPluginDTOMapper {
     dto.installedBranch = plugin.getInstalledBranch();
     dto.installedVersion = plugin.getInstalledVersion();
     dto.installedBuildId = plugin.getInstalledBuildId();
-    dto.installationNotes = plugin.getInstallationNotes();
     dto.installed = plugin.isInstalled();
-    dto.versions = this.pluginVersionDTOMapper.toDTOs( plugin.getVersions() );
+    dto.versions = versions;
     dto.screenshots = plugin.getScreenshots();
     dto.dependencies = plugin.getDependencies();
     dto.license = plugin.getLicense();
@@ -133,5 +152,17 @@ public class PluginDTOMapper implements IPluginDTOMapper {
 
     return pluginDTOs;
   }
+
+  @Override
+  public List<PluginDTO> toSummaryDTOs( Collection<IPlugin> plugins ) {
+
+    List<PluginDTO> pluginDTOs = new ArrayList<PluginDTO>();
+
+    for ( IPlugin plugin : plugins ) {
+      pluginDTOs.add( this.toSummaryDTO( plugin ) );
+    }
+
+    return pluginDTOs;
+  }
   //endregion
 }
@@ -0,0 +1,78 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.endpoints.dtos.mappers;
+
+import org.pentaho.marketplace.domain.model.entities.PluginJob;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
+import org.pentaho.marketplace.endpoints.dtos.entities.PluginInstallResultDTO;
+import org.pentaho.marketplace.endpoints.dtos.entities.PluginJobDTO;
+import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.IPluginJobDTOMapper;
+import org.pentaho.marketplace.endpoints.dtos.mappers.interfaces.IStatusMessageDTOMapper;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+public class PluginJobDTOMapper implements IPluginJobDTOMapper {
+
+  //region Attributes
+  private IStatusMessageDTOMapper statusMessageDTOMapper;
+  //endregion
+
+  //region Constructors
+  public PluginJobDTOMapper( IStatusMessageDTOMapper statusMessageDTOMapper ) {
+
+    //initialize dependencies
+    this.statusMessageDTOMapper = statusMessageDTOMapper;
+  }
+  //endregion
+
+  //region IPluginJobDTOMapper
+  @Override
+  public PluginJobDTO toDTO( PluginJob job ) {
+
+    //get new dto instance
+    PluginJobDTO dto = new PluginJobDTO();
+
+    //fill this dto's attributes
+    dto.id = job.getId();
+    dto.type = job.getType().name();
+    dto.pluginId = job.getPluginId();
+    dto.versionBranch = job.getVersionBranch();
+    dto.state = job.getState().name();
+    dto.finished = job.isFinished();
+    dto.bytesDownloaded = job.getDownloadProgress().getBytesDownloaded();
+    dto.totalBytes = job.getDownloadProgress().getTotalBytes();
+
+    IDomainStatusMessage statusMessage = job.getStatusMessage();
+    if ( statusMessage != null ) {
+      dto.result = this.statusMessageDTOMapper.toDTO( statusMessage );
+    }
+
+    //the outcome of each plugin of batch installs
+    if ( job.getType() == PluginJob.Type.BATCH_INSTALL ) {
+      dto.results = new ArrayList<>();
+      for ( Map.Entry<String, IDomainStatusMessage> pluginStatusMessage : job.getPluginStatusMessages().entrySet() ) {
+        PluginInstallResultDTO pluginResult = new PluginInstallResultDTO();
+        pluginResult.pluginId = pluginStatusMessage.getKey();
+        pluginResult.versionBranch = job.getVersionBranchesByPluginId().get( pluginStatusMessage.getKey() );
+        pluginResult.result = this.statusMessageDTOMapper.toDTO( pluginStatusMessage.getValue() );
+        dto.results.add( pluginResult );
+      }
+    }
+
+    //return the dto
+    return dto;
+  }
+  //endregion
+}
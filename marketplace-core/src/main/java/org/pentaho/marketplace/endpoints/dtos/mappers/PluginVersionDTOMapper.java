@@ -69,6 +69,19 @@ public class PluginVersionDTOMapper implements IPluginVersionDTOMapper {
   @Override
   public PluginVersionDTO toDTO( IPluginVersion pluginVersion ) {
 
+    //get the dto with the list attributes
+    PluginVersionDTO dto = this.toSummaryDTO( pluginVersion );
+
+    //fill the detail attributes
+    dto.changelog = pluginVersion.getChangelog();
+
+    //return the dto
+    return dto;
+  }
+
+  @Override
+  public PluginVersionDTO toSummaryDTO( IPluginVersion pluginVersion ) {
+
     //get new dto instance
     PluginVersionDTO dto = new PluginVersionDTO();
 
@@ -79,7 +92,6 @@ public class PluginVersionDTOMapper implements IPluginVersionDTOMapper {
     dto.downloadUrl = pluginVersion.getDownloadUrl();
     dto.samplesDownloadUrl = pluginVersion.getSamplesDownloadUrl();
     dto.description = pluginVersion.getDescription();
-    dto.changelog = pluginVersion.getChangelog();
     dto.buildId = pluginVersion.getBuildId();
     dto.releaseDate = pluginVersion.getReleaseDate();
     dto.minParentVersion = pluginVersion.getMinParentVersion();
@@ -118,5 +130,17 @@ public class PluginVersionDTOMapper implements IPluginVersionDTOMapper {
 
     return pluginVersionDTOs;
   }
+
+  @Override
+  public List<PluginVersionDTO> toSummaryDTOs( Collection<IPluginVersion> pluginVersions ) {
+
+    List<PluginVersionDTO> pluginVersionDTOs = new ArrayList<PluginVersionDTO>();
+
+    for ( IPluginVersion pluginVersion : pluginVersions ) {
+      pluginVersionDTOs.add( this.toSummaryDTO( pluginVersion ) );
+    }
+
+    return pluginVersionDTOs;
+  }
   //endregion
 }
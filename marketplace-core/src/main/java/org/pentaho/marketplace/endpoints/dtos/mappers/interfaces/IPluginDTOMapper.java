@@ -16,6 +16,18 @@ package org.pentaho.marketplace.endpoints.dtos.mappers.interfaces;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
 import org.pentaho.marketplace.endpoints.dtos.entities.PluginDTO;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface IPluginDTOMapper extends IDTOMapper<PluginDTO, IPlugin> {
 
+  /**
+   * Maps a plugin for the plugin list, leaving out the fields that are only needed on the plugin detail:
+   * installation notes, license text and version changelogs.
+   * @param plugin the plugin to map
+   * @return the plugin dto without the detail fields
+   */
+  PluginDTO toSummaryDTO( IPlugin plugin );
+
+  List<PluginDTO> toSummaryDTOs( Collection<IPlugin> plugins );
 }
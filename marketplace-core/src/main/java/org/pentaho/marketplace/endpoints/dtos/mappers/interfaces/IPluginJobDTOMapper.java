@@ -0,0 +1,22 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.endpoints.dtos.mappers.interfaces;
+
+import org.pentaho.marketplace.domain.model.entities.PluginJob;
+import org.pentaho.marketplace.endpoints.dtos.entities.PluginJobDTO;
+
+public interface IPluginJobDTOMapper {
+
+  PluginJobDTO toDTO( PluginJob job );
+}
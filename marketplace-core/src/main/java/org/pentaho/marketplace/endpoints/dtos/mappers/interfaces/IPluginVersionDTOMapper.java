@@ -16,6 +16,17 @@ package org.pentaho.marketplace.endpoints.dtos.mappers.interfaces;
 import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
 import org.pentaho.marketplace.endpoints.dtos.entities.PluginVersionDTO;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface IPluginVersionDTOMapper extends IDTOMapper<PluginVersionDTO, IPluginVersion> {
 
+  /**
+   * Maps a plugin version for the plugin list, leaving out its changelog.
+   * @param pluginVersion the plugin version to map
+   * @return the plugin version dto without the changelog
+   */
+  PluginVersionDTO toSummaryDTO( IPluginVersion pluginVersion );
+
+  List<PluginVersionDTO> toSummaryDTOs( Collection<IPluginVersion> pluginVersions );
 }
@@ -0,0 +1,27 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.endpoints.dtos.responses;
+
+import org.pentaho.marketplace.endpoints.dtos.entities.PluginDTO;
+import org.pentaho.marketplace.endpoints.dtos.responses.base.OperationResultDTO;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement
+public class PluginOperationResultDTO extends OperationResultDTO {
+
+  //region Attributes
+  public PluginDTO plugin;
+  //endregion
+}
@@ -0,0 +1,206 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable text kept deflated in memory, for long values that are seldom read, e.g. plugin license texts or
+ * changelogs. The text is inflated every time it is read.
+ *
+ * Texts shorter than {@link #MIN_COMPRESSED_LENGTH} characters, and texts that do not get smaller when deflated, are
+ * kept as they are.
+ */
+public final class CompressedText {
+
+  // region Constants
+  public static final int MIN_COMPRESSED_LENGTH = 256;
+  // endregion
+
+  // region Properties
+  private final String text;
+  private final byte[] deflated;
+  private final int inflatedLength;
+  // endregion
+
+  // region Constructors
+  private CompressedText( String text, byte[] deflated, int inflatedLength ) {
+    this.text = text;
+    this.deflated = deflated;
+    this.inflatedLength = inflatedLength;
+  }
+
+  /**
+   * @param text the text to keep, may be null
+   * @return the compressed text, or null if the text is null
+   */
+  public static CompressedText of( String text ) {
+    if ( text == null ) {
+      return null;
+    }
+    if ( text.length() < MIN_COMPRESSED_LENGTH ) {
+      return new CompressedText( text, null, 0 );
+    }
+
+    byte[] bytes = text.getBytes( StandardCharsets.UTF_8 );
+    byte[] deflated = deflate( bytes );
+    if ( deflated.length >= bytes.length ) {
+      return new CompressedText( text, null, 0 );
+    }
+    return new CompressedText( null, deflated, bytes.length );
+  }
+
+  /**
+   * Restores a text that was not kept deflated, e.g. read back from a {@link #getText()} copy, without trying to
+   * deflate it again.
+   * @param text the text to keep as it is, may be null
+   * @return the compressed text, or null if the text is null
+   */
+  public static CompressedText ofPlain( String text ) {
+    return text != null ? new CompressedText( text, null, 0 ) : null;
+  }
+
+  /**
+   * Restores a text kept deflated, e.g. read back from a {@link #getDeflated()} copy, without deflating it again.
+   * @param deflated the deflated UTF-8 bytes of the text, kept as they are
+   * @param inflatedLength the number of UTF-8 bytes of the text
+   * @return the compressed text
+   */
+  public static CompressedText ofDeflated( byte[] deflated, int inflatedLength ) {
+    if ( deflated == null || inflatedLength < 0 ) {
+      throw new IllegalArgumentException( "Invalid deflated text." );
+    }
+    return new CompressedText( null, deflated, inflatedLength );
+  }
+
+  /**
+   * @param compressedText the compressed text, may be null
+   * @return the text, or null if the compressed text is null
+   */
+  public static String textOf( CompressedText compressedText ) {
+    return compressedText != null ? compressedText.getText() : null;
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * @return the text, inflated if it is kept deflated
+   */
+  public String getText() {
+    if ( this.deflated == null ) {
+      return this.text;
+    }
+    return new String( inflate( this.deflated, this.inflatedLength ), StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * @return true if the text is kept deflated
+   */
+  public boolean isDeflated() {
+    return this.deflated != null;
+  }
+
+  /**
+   * @return a copy of the deflated UTF-8 bytes of the text, or null if the text is not kept deflated
+   */
+  public byte[] getDeflated() {
+    return this.deflated != null ? this.deflated.clone() : null;
+  }
+
+  /**
+   * @return the number of UTF-8 bytes of the text once inflated, or 0 if the text is not kept deflated
+   */
+  public int getInflatedLength() {
+    return this.inflatedLength;
+  }
+
+  /**
+   * @return the number of bytes used to keep the text, not counting the object overhead
+   */
+  public int getSize() {
+    return this.deflated != null ? this.deflated.length : this.text.length() * 2;
+  }
+
+  private static byte[] deflate( byte[] bytes ) {
+    Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION );
+    try {
+      deflater.setInput( bytes );
+      deflater.finish();
+
+      byte[] buffer = new byte[ bytes.length ];
+      int length = 0;
+      while ( !deflater.finished() && length < buffer.length ) {
+        length += deflater.deflate( buffer, length, buffer.length - length );
+      }
+
+      // not smaller than the text itself
+      if ( !deflater.finished() ) {
+        return bytes;
+      }
+      return Arrays.copyOf( buffer, length );
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate( byte[] deflated, int inflatedLength ) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput( deflated );
+
+      byte[] bytes = new byte[ inflatedLength ];
+      int length = 0;
+      while ( length < inflatedLength && !inflater.finished() ) {
+        length += inflater.inflate( bytes, length, inflatedLength - length );
+      }
+      return bytes;
+    } catch ( DataFormatException e ) {
+      // only ever inflating what was deflated here
+      throw new IllegalStateException( e );
+    } finally {
+      inflater.end();
+    }
+  }
+
+  @Override
+  public boolean equals( Object o ) {
+    if ( this == o ) {
+      return true;
+    }
+    if ( o == null || getClass() != o.getClass() ) {
+      return false;
+    }
+
+    CompressedText that = (CompressedText) o;
+    if ( this.deflated != null && that.deflated != null ) {
+      return this.inflatedLength == that.inflatedLength && Arrays.equals( this.deflated, that.deflated );
+    }
+    return this.getText().equals( that.getText() );
+  }
+
+  @Override
+  public int hashCode() {
+    return this.getText().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return this.getText();
+  }
+  // endregion
+}
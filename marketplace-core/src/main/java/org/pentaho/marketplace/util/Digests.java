@@ -0,0 +1,79 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.marketplace.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digests used to identify and verify downloaded packages.
+ */
+public final class Digests {
+
+  private static final String SHA_256 = "SHA-256";
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private Digests() {
+  }
+
+  /**
+   * @return a new SHA-256 message digest.
+   */
+  public static MessageDigest createSha256() {
+    try {
+      return MessageDigest.getInstance( SHA_256 );
+    } catch ( NoSuchAlgorithmException e ) {
+      // every java platform is required to support SHA-256
+      throw new IllegalStateException( e );
+    }
+  }
+
+  /**
+   * Computes the SHA-256 digest of the content of a file.
+   * @param file the file
+   * @return the digest, in lower case hexadecimal
+   * @throws IOException if the file could not be read
+   */
+  public static String sha256Of( File file ) throws IOException {
+    MessageDigest messageDigest = createSha256();
+    InputStream inputStream = new DigestInputStream( new FileInputStream( file ), messageDigest );
+    try {
+      IOUtils.copyLarge( inputStream, NullOutputStream.NULL_OUTPUT_STREAM );
+    } finally {
+      IOUtils.closeQuietly( inputStream );
+    }
+    return toHex( messageDigest.digest() );
+  }
+
+  /**
+   * @return the given bytes in lower case hexadecimal.
+   */
+  public static String toHex( byte[] bytes ) {
+    char[] hex = new char[ bytes.length * 2 ];
+    for ( int i = 0; i < bytes.length; i++ ) {
+      hex[ i * 2 ] = HEX_DIGITS[ ( bytes[ i ] >> 4 ) & 0x0F ];
+      hex[ i * 2 + 1 ] = HEX_DIGITS[ bytes[ i ] & 0x0F ];
+    }
+    return new String( hex );
+  }
+}
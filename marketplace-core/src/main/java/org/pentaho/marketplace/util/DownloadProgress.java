@@ -0,0 +1,130 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the bytes downloaded by a long running operation.
+ *
+ * A progress is attached to the thread running the operation, so that downloads started on that thread, e.g. through
+ * {@link org.pentaho.marketplace.util.web.HttpUtil#getURLInputStream(String)}, are counted without having to hand the
+ * progress down to them.
+ */
+public final class DownloadProgress {
+
+  // region Properties
+  private static final ThreadLocal<DownloadProgress> CURRENT = new ThreadLocal<>();
+
+  private final AtomicLong bytesDownloaded = new AtomicLong();
+  private final AtomicLong totalBytes = new AtomicLong( -1 );
+
+  /**
+   * @return the number of bytes downloaded so far.
+   */
+  public long getBytesDownloaded() {
+    return this.bytesDownloaded.get();
+  }
+
+  /**
+   * @return the number of bytes expected to be downloaded so far, or -1 if unknown.
+   */
+  public long getTotalBytes() {
+    return this.totalBytes.get();
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * @return the progress attached to the current thread, or null if none.
+   */
+  public static DownloadProgress current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Counts the downloads made by the current thread on this progress, until {@link #detach()} is called.
+   */
+  public void attach() {
+    CURRENT.set( this );
+  }
+
+  /**
+   * Stops counting the downloads made by the current thread.
+   */
+  public static void detach() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Counts the bytes read from a download on the progress attached to the current thread, if any.
+   * @param inputStream the download content
+   * @param contentLength the size of the download, or a negative value if unknown
+   * @return a stream counting the bytes read from the given one; the given stream if no progress is attached.
+   */
+  public static InputStream track( InputStream inputStream, long contentLength ) {
+    final DownloadProgress progress = CURRENT.get();
+    if ( progress == null || inputStream == null ) {
+      return inputStream;
+    }
+
+    progress.addTotalBytes( contentLength );
+    return count( inputStream );
+  }
+
+  /**
+   * Counts the bytes read from a download on the progress attached to the current thread, if any, without changing
+   * the expected total. Used for parts of a download whose total size was already given to {@link #expect(long)}.
+   * @param inputStream the download content
+   * @return a stream counting the bytes read from the given one; the given stream if no progress is attached.
+   */
+  public static InputStream count( InputStream inputStream ) {
+    final DownloadProgress progress = CURRENT.get();
+    if ( progress == null || inputStream == null ) {
+      return inputStream;
+    }
+
+    return new ProxyInputStream( inputStream ) {
+      @Override
+      protected void afterRead( int n ) {
+        if ( n > 0 ) {
+          progress.bytesDownloaded.addAndGet( n );
+        }
+      }
+    };
+  }
+
+  /**
+   * Adds the size of a download to the total expected by the progress attached to the current thread, if any.
+   * @param contentLength the size of the download, or a negative value if unknown
+   */
+  public static void expect( long contentLength ) {
+    DownloadProgress progress = CURRENT.get();
+    if ( progress != null ) {
+      progress.addTotalBytes( contentLength );
+    }
+  }
+
+  private void addTotalBytes( long contentLength ) {
+    if ( contentLength >= 0 ) {
+      // several downloads may be made for a single operation, e.g. plugin and samples
+      this.totalBytes.compareAndSet( -1, 0 );
+      this.totalBytes.addAndGet( contentLength );
+    }
+  }
+  // endregion
+}
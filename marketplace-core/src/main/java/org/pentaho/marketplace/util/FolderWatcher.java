@@ -0,0 +1,182 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Watches folders for entries being created, deleted or modified and notifies a listener on a dedicated daemon
+ * thread. Sub folders are not watched.
+ *
+ * Folders that do not exist yet are watched once they are created: their nearest existing parent is watched until
+ * then, without notifying the listener of changes to the parent itself.
+ */
+public class FolderWatcher implements Closeable {
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  private final WatchService watchService;
+  private final Runnable listener;
+  private final Thread thread;
+
+  // only used by the constructor and then by the watcher thread
+  private final Set<Path> watchedFolders = new HashSet<>();
+  private final List<File> missingFolders = new ArrayList<>();
+  // endregion
+
+  // region Constructors
+  /**
+   * Creates a watcher for the given folders. Folders that do not exist are watched once they are created.
+   * @param threadName the name of the watcher thread
+   * @param folders the folders to watch
+   * @param listener called, on the watcher thread, whenever a watched folder changes
+   * @throws IOException if the file system does not support watching folders
+   */
+  public FolderWatcher( String threadName, Collection<File> folders, Runnable listener ) throws IOException {
+    this.listener = listener;
+    this.watchService = FileSystems.getDefault().newWatchService();
+
+    for ( File folder : folders ) {
+      folder = folder.getAbsoluteFile();
+      if ( folder.isDirectory() ) {
+        this.register( folder );
+      } else {
+        this.getLogger().debug( "Watching missing folder " + folder + " once it is created" );
+        this.missingFolders.add( folder );
+      }
+    }
+    this.registerCreatedFolders();
+
+    this.thread = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        watch();
+      }
+    } );
+    this.thread.setName( threadName );
+    this.thread.setDaemon( true );
+  }
+  // endregion
+
+  // region Methods
+  public void start() {
+    this.thread.start();
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.watchService.close();
+    } catch ( IOException e ) {
+      this.getLogger().debug( "Error closing folder watch service.", e );
+    }
+    this.thread.interrupt();
+  }
+
+  private void watch() {
+    try {
+      while ( true ) {
+        WatchKey key = this.watchService.take();
+        // events are only used as a signal, their details do not matter
+        key.pollEvents();
+        Path folder = (Path) key.watchable();
+        boolean changed = this.watchedFolders.contains( folder );
+        if ( !key.reset() && this.watchedFolders.remove( folder ) ) {
+          // deleted, watched again if it is created again
+          this.missingFolders.add( folder.toFile() );
+        }
+
+        // a change to the parent of a missing folder may be its creation
+        if ( this.registerCreatedFolders() || changed ) {
+          this.notifyListener();
+        }
+      }
+    } catch ( InterruptedException | ClosedWatchServiceException e ) {
+      // watcher was closed
+    }
+  }
+
+  /**
+   * Watches the missing folders that were created since last checked, and the nearest existing parent of the others.
+   * @return true if any missing folder was created
+   */
+  private boolean registerCreatedFolders() {
+    boolean created = false;
+    Iterator<File> iterator = this.missingFolders.iterator();
+    while ( iterator.hasNext() ) {
+      File folder = iterator.next();
+      try {
+        if ( folder.isDirectory() ) {
+          this.register( folder );
+          iterator.remove();
+          created = true;
+          continue;
+        }
+
+        File parent = folder.getParentFile();
+        while ( parent != null && !parent.isDirectory() ) {
+          parent = parent.getParentFile();
+        }
+        if ( parent != null ) {
+          this.registerFolder( parent );
+        }
+      } catch ( IOException e ) {
+        // e.g. deleted right after being checked, the next change will tell
+        this.getLogger().debug( "Unable to watch folder " + folder, e );
+      }
+    }
+    return created;
+  }
+
+  private void register( File folder ) throws IOException {
+    this.registerFolder( folder );
+    this.watchedFolders.add( folder.toPath() );
+  }
+
+  private void registerFolder( File folder ) throws IOException {
+    // registering a folder again is harmless, it keeps its key
+    folder.toPath().register( this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+      StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY );
+  }
+
+  private void notifyListener() {
+    try {
+      this.listener.run();
+    } catch ( RuntimeException e ) {
+      this.getLogger().warn( "Error notifying folder change.", e );
+    }
+  }
+  // endregion
+}
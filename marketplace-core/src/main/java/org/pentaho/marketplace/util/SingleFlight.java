@@ -0,0 +1,96 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Coalesces concurrent executions of the same operation: while an execution is in flight, other callers wait for it
+ * and all of them receive its result, instead of each one running the operation on its own.
+ *
+ * Callers arriving after an execution completes start a new one; results are not cached.
+ *
+ * @param <V> the type of the operation result
+ */
+public class SingleFlight<V> {
+
+  // region Properties
+  private final AtomicReference<FutureTask<V>> inFlight = new AtomicReference<>();
+  private final AtomicLong executionCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  /**
+   * @return the number of times the operation was actually executed.
+   */
+  public long getExecutionCount() {
+    return this.executionCount.get();
+  }
+
+  /**
+   * @return the number of calls that did not execute the operation but shared the result of an in flight execution.
+   */
+  public long getCoalescedCount() {
+    return this.coalescedCount.get();
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Executes the operation, or waits for the execution already in flight.
+   * @param operation the operation to execute
+   * @return the result of the operation execution
+   * @throws RuntimeException thrown by the operation, or if interrupted while waiting for another caller's execution.
+   */
+  public V execute( Callable<V> operation ) {
+    FutureTask<V> task = new FutureTask<>( operation );
+    while ( !this.inFlight.compareAndSet( null, task ) ) {
+      FutureTask<V> current = this.inFlight.get();
+      if ( current != null ) {
+        this.coalescedCount.incrementAndGet();
+        return this.getResult( current );
+      }
+    }
+
+    this.executionCount.incrementAndGet();
+    try {
+      task.run();
+    } finally {
+      this.inFlight.compareAndSet( task, null );
+    }
+    return this.getResult( task );
+  }
+
+  private V getResult( FutureTask<V> task ) {
+    try {
+      return task.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException( "Interrupted while waiting for in flight execution.", e );
+    } catch ( ExecutionException e ) {
+      Throwable cause = e.getCause();
+      if ( cause instanceof RuntimeException ) {
+        throw (RuntimeException) cause;
+      }
+      if ( cause instanceof Error ) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException( cause );
+    }
+  }
+  // endregion
+}
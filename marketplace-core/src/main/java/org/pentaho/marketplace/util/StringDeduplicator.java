@@ -0,0 +1,88 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces equal strings by a single instance, so that values repeated all over a document, e.g. author names or
+ * branch names in the marketplace metadata, are only kept once in memory.
+ *
+ * Unlike {@link String#intern()}, the strings are only shared among the users of the same deduplicator, which is
+ * meant to live as long as the reading of one document. Once it holds {@link #getMaxSize()} distinct strings, new
+ * strings are no longer added, and are returned as they are.
+ *
+ * Instances are not thread safe.
+ */
+public class StringDeduplicator {
+
+  // region Constants
+  public static final int DEFAULT_MAX_SIZE = 4096;
+  // endregion
+
+  // region Properties
+  /**
+   * Gets the maximum number of distinct strings kept.
+   * @return the maximum size of the deduplication table
+   */
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+  private final int maxSize;
+
+  private final Map<String, String> strings = new HashMap<>();
+  // endregion
+
+  // region Constructors
+  public StringDeduplicator() {
+    this( DEFAULT_MAX_SIZE );
+  }
+
+  public StringDeduplicator( int maxSize ) {
+    this.maxSize = Math.max( 0, maxSize );
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Gets the instance kept for a string.
+   * @param value the string to deduplicate, may be null
+   * @return the first instance equal to the value that was kept, or the value itself
+   */
+  public String deduplicate( String value ) {
+    if ( value == null ) {
+      return null;
+    }
+
+    String kept = this.strings.get( value );
+    if ( kept != null ) {
+      return kept;
+    }
+
+    if ( this.strings.size() < this.maxSize ) {
+      this.strings.put( value, value );
+    }
+    return value;
+  }
+
+  /**
+   * Gets the number of distinct strings kept.
+   * @return the size of the deduplication table
+   */
+  public int size() {
+    return this.strings.size();
+  }
+  // endregion
+}
@@ -20,6 +20,7 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
 
 public class XmlParserFactoryProducer {
 
@@ -63,4 +64,17 @@ public class XmlParserFactoryProducer {
     factory.setFeature( "http://apache.org/xml/features/nonvalidating/load-external-dtd", false );
     return factory;
   }
-}
\ No newline at end of file
+
+  /**
+   * Creates an instance of {@link XMLInputFactory} class with DTD processing and external entities disabled.
+   * Readers created by it report a DOCTYPE declaration as a {@link javax.xml.stream.XMLStreamConstants#DTD} event
+   * without processing it, so callers rejecting those events get the same protection as
+   * {@link #createSecureDocBuilderFactory()}.
+   */
+  public static XMLInputFactory createSecureXMLInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+    factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+    return factory;
+  }
+}
@@ -0,0 +1,267 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts zip archives.
+ *
+ * Archives on disk of at least {@link #getParallelThresholdBytes()} bytes have their entries inflated and written
+ * concurrently by a fork-join pool of {@link #getParallelism()} threads, using the random access to entries that
+ * {@link ZipFile} provides. Smaller archives are extracted by the calling thread, and so are archives read from a
+ * stream, entry by entry as they arrive.
+ *
+ * Entries that would be extracted outside of the target folder are rejected.
+ */
+public class ZipExtractor {
+
+  // region Inner Definitions
+  /**
+   * Extracts a range of the file entries of an archive, splitting it in halves until it is small enough to be
+   * extracted by a single thread.
+   */
+  private static final class ExtractTask extends RecursiveAction {
+    private final ZipFile zipFile;
+    private final File folder;
+    private final List<ZipEntry> entries;
+    private final int from;
+    private final int to;
+
+    private ExtractTask( ZipFile zipFile, File folder, List<ZipEntry> entries, int from, int to ) {
+      this.zipFile = zipFile;
+      this.folder = folder;
+      this.entries = entries;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if ( this.to - this.from <= ENTRIES_PER_TASK ) {
+        try {
+          extractEntries( this.zipFile, this.folder, this.entries, this.from, this.to );
+        } catch ( IOException e ) {
+          throw new UncheckedIOException( e );
+        }
+        return;
+      }
+
+      int middle = ( this.from + this.to ) >>> 1;
+      invokeAll( new ExtractTask( this.zipFile, this.folder, this.entries, this.from, middle ),
+        new ExtractTask( this.zipFile, this.folder, this.entries, middle, this.to ) );
+    }
+  }
+  // endregion
+
+  // region Constants
+  protected static final long DEFAULT_PARALLEL_THRESHOLD_BYTES = 8 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int ENTRIES_PER_TASK = 16;
+  private static final String EXTRACT_THREAD_NAME = "Marketplace Extract Thread";
+  // endregion
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  /**
+   * Gets the maximum number of entries extracted at the same time.
+   * @return the number of extraction threads
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+  public void setParallelism( int parallelism ) {
+    this.parallelism = Math.max( 1, parallelism );
+  }
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Gets the minimum size of an archive to extract its entries in parallel.
+   * @return the parallel extraction threshold in bytes
+   */
+  public long getParallelThresholdBytes() {
+    return this.parallelThresholdBytes;
+  }
+  public void setParallelThresholdBytes( long parallelThresholdBytes ) {
+    this.parallelThresholdBytes = Math.max( 0, parallelThresholdBytes );
+  }
+  private long parallelThresholdBytes = DEFAULT_PARALLEL_THRESHOLD_BYTES;
+  // endregion
+
+  // region Methods
+  /**
+   * Extracts an archive into a folder, replacing the files that already exist.
+   * @param archive the zip file to extract
+   * @param folder the folder to extract into
+   * @return the number of files extracted
+   * @throws IOException if the archive could not be read or a file could not be written
+   */
+  public int extract( File archive, File folder ) throws IOException {
+    long start = System.currentTimeMillis();
+    ZipFile zipFile = new ZipFile( archive );
+    try {
+      List<ZipEntry> fileEntries = new ArrayList<>();
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while ( entries.hasMoreElements() ) {
+        ZipEntry entry = entries.nextElement();
+        File file = getEntryFile( folder, entry );
+        // folders are created up front, so that concurrent writers never race to create them
+        if ( entry.isDirectory() ) {
+          makeFolder( file );
+        } else {
+          makeFolder( file.getParentFile() );
+          fileEntries.add( entry );
+        }
+      }
+
+      boolean parallel = this.isParallel( archive, fileEntries );
+      if ( parallel ) {
+        this.extractInParallel( zipFile, folder, fileEntries );
+      } else {
+        extractEntries( zipFile, folder, fileEntries, 0, fileEntries.size() );
+      }
+
+      this.getLogger().debug( "Extracted " + fileEntries.size() + " files from " + archive.getName()
+        + ( parallel ? " in parallel" : "" ) + " in " + ( System.currentTimeMillis() - start ) + " ms" );
+      return fileEntries.size();
+    } finally {
+      IOUtils.closeQuietly( zipFile );
+    }
+  }
+
+  /**
+   * Extracts an archive as it is read, replacing the files that already exist. The stream is read to the end, past the
+   * last entry, but it is not closed.
+   * @param inputStream the zip archive content
+   * @param folder the folder to extract into
+   * @return the number of files extracted
+   * @throws IOException if the archive could not be read or a file could not be written
+   */
+  public int extract( InputStream inputStream, File folder ) throws IOException {
+    ZipInputStream zipInputStream = new ZipInputStream( new BufferedInputStream( inputStream, BUFFER_SIZE ) );
+    byte[] buffer = new byte[ BUFFER_SIZE ];
+    int fileCount = 0;
+    ZipEntry entry;
+    while ( ( entry = zipInputStream.getNextEntry() ) != null ) {
+      File file = getEntryFile( folder, entry );
+      if ( entry.isDirectory() ) {
+        makeFolder( file );
+        continue;
+      }
+
+      makeFolder( file.getParentFile() );
+      OutputStream outputStream = new FileOutputStream( file );
+      try {
+        IOUtils.copyLarge( zipInputStream, outputStream, buffer );
+      } finally {
+        outputStream.close();
+      }
+      fileCount++;
+    }
+
+    // the central directory at the end of the archive is not needed to extract it, but whoever reads along may be
+    IOUtils.copyLarge( inputStream, NullOutputStream.NULL_OUTPUT_STREAM, buffer );
+    return fileCount;
+  }
+
+  /**
+   * Gets the file a zip entry is extracted to.
+   * @param folder the folder the archive is extracted into
+   * @param entry the zip entry
+   * @return the file to extract the entry to
+   * @throws IOException if the entry would end up outside of the folder
+   */
+  public static File getEntryFile( File folder, ZipEntry entry ) throws IOException {
+    File file = new File( folder, entry.getName() );
+    if ( !file.getCanonicalPath().startsWith( folder.getCanonicalPath() + File.separator ) ) {
+      throw new IOException( "Zip entry outside of the extraction folder: " + entry.getName() );
+    }
+    return file;
+  }
+
+  private boolean isParallel( File archive, List<ZipEntry> fileEntries ) {
+    return this.getParallelism() > 1 && fileEntries.size() > ENTRIES_PER_TASK
+      && archive.length() >= this.getParallelThresholdBytes();
+  }
+
+  private void extractInParallel( ZipFile zipFile, File folder, List<ZipEntry> fileEntries ) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool( this.getParallelism(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      @Override
+      public ForkJoinWorkerThread newThread( ForkJoinPool pool ) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( pool );
+        thread.setName( EXTRACT_THREAD_NAME );
+        return thread;
+      }
+    }, null, false );
+
+    try {
+      pool.invoke( new ExtractTask( zipFile, folder, fileEntries, 0, fileEntries.size() ) );
+    } catch ( UncheckedIOException e ) {
+      throw e.getCause();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void extractEntries( ZipFile zipFile, File folder, List<ZipEntry> fileEntries, int from, int to )
+    throws IOException {
+    byte[] buffer = new byte[ BUFFER_SIZE ];
+    for ( int i = from; i < to; i++ ) {
+      ZipEntry entry = fileEntries.get( i );
+      InputStream inputStream = zipFile.getInputStream( entry );
+      try {
+        OutputStream outputStream = new FileOutputStream( new File( folder, entry.getName() ) );
+        try {
+          IOUtils.copyLarge( inputStream, outputStream, buffer );
+        } finally {
+          outputStream.close();
+        }
+      } finally {
+        IOUtils.closeQuietly( inputStream );
+      }
+    }
+  }
+
+  private static void makeFolder( File folder ) throws IOException {
+    if ( !folder.isDirectory() && !folder.mkdirs() ) {
+      throw new IOException( "Unable to create folder " + folder.getAbsolutePath() );
+    }
+  }
+  // endregion
+}
@@ -0,0 +1,114 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util.web;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.InputStream;
+
+/**
+ * Result of a conditional GET issued by {@link HttpUtil#getConditionalURLResponse(String, String, String)}.
+ * Either the resource was not modified since the supplied validators, or a new body is available together with the
+ * validators the server sent for it.
+ */
+public final class ConditionalResponse {
+
+  // region Properties
+  private final boolean notModified;
+  private final InputStream inputStream;
+  private final String eTag;
+  private final String lastModified;
+  private final long contentLength;
+  private final boolean acceptsRanges;
+  private final HttpRequestBase request;
+
+  /**
+   * @return true if the server answered 304 Not Modified; the cached copy is still valid.
+   */
+  public boolean isNotModified() {
+    return this.notModified;
+  }
+
+  /**
+   * @return the response body, or null if the resource was not modified.
+   */
+  public InputStream getInputStream() {
+    return this.inputStream;
+  }
+
+  /**
+   * @return the ETag header returned by the server, if any.
+   */
+  public String getETag() {
+    return this.eTag;
+  }
+
+  /**
+   * @return the Last-Modified header returned by the server, if any.
+   */
+  public String getLastModified() {
+    return this.lastModified;
+  }
+
+  /**
+   * @return the length of the response body, or -1 if unknown.
+   */
+  public long getContentLength() {
+    return this.contentLength;
+  }
+
+  /**
+   * @return true if the server told that it accepts byte ranges of the resource.
+   */
+  public boolean isAcceptingRanges() {
+    return this.acceptsRanges;
+  }
+  // endregion
+
+  // region Constructors
+  private ConditionalResponse( boolean notModified, InputStream inputStream, String eTag, String lastModified,
+                               long contentLength, boolean acceptsRanges, HttpRequestBase request ) {
+    this.notModified = notModified;
+    this.inputStream = inputStream;
+    this.eTag = eTag;
+    this.lastModified = lastModified;
+    this.contentLength = contentLength;
+    this.acceptsRanges = acceptsRanges;
+    this.request = request;
+  }
+
+  static ConditionalResponse notModified( String eTag, String lastModified ) {
+    return new ConditionalResponse( true, null, eTag, lastModified, -1, false, null );
+  }
+
+  static ConditionalResponse modified( InputStream inputStream, String eTag, String lastModified,
+                                       long contentLength, boolean acceptsRanges, HttpRequestBase request ) {
+    return new ConditionalResponse( false, inputStream, eTag, lastModified, contentLength, acceptsRanges, request );
+  }
+  // endregion
+
+  // region Methods
+  /**
+   * Drops the connection the response body is read from, without reading the rest of it. Closing the body instead
+   * would read it to the end, so that the connection can be reused.
+   */
+  public void abort() {
+    if ( this.request != null ) {
+      this.request.abort();
+    }
+    IOUtils.closeQuietly( this.inputStream );
+  }
+  // endregion
+}
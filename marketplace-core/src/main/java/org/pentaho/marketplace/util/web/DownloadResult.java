@@ -0,0 +1,55 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util.web;
+
+/**
+ * Outcome of a download into a file made by {@link HttpUtil#downloadToFile(String, java.nio.file.Path)}.
+ */
+public final class DownloadResult {
+
+  // region Properties
+  private final long size;
+  private final String digest;
+  private final long elapsedMillis;
+
+  /**
+   * @return the number of bytes written to the file.
+   */
+  public long getSize() {
+    return this.size;
+  }
+
+  /**
+   * @return the SHA-256 digest of the downloaded content, in lower case hexadecimal.
+   */
+  public String getDigest() {
+    return this.digest;
+  }
+
+  /**
+   * @return the time the download took, in milliseconds.
+   */
+  public long getElapsedMillis() {
+    return this.elapsedMillis;
+  }
+  // endregion
+
+  // region Constructors
+  DownloadResult( long size, String digest, long elapsedMillis ) {
+    this.size = size;
+    this.digest = digest;
+    this.elapsedMillis = elapsedMillis;
+  }
+  // endregion
+}
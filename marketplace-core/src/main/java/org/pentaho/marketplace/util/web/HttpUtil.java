@@ -13,9 +13,13 @@
 
 package org.pentaho.marketplace.util.web;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
@@ -23,14 +27,27 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.util.EntityUtils;
+import org.pentaho.marketplace.util.Digests;
+import org.pentaho.marketplace.util.DownloadProgress;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
 public class HttpUtil {
 
@@ -39,6 +56,9 @@ public class HttpUtil {
   private static final String PROXY_USER_PROPERTY_NAME = "http.proxyUser";
   private static final String PROXY_PASSWORD_PROPERTY_NAME = "http.proxyPassword";
 
+  private static final int DOWNLOAD_BUFFER_SIZE = 256 * 1024;
+  private static final String BYTES_RANGE_UNIT = "bytes";
+
   private static final int CONNECTION_TIMEOUT = 3000;
   private static final int PAGE_TIMEOUT = 7000;
 
@@ -83,17 +103,18 @@ public class HttpUtil {
       return false;
     }
 
+    Reader reader = new InputStreamReader( response, StandardCharsets.UTF_8 );
     try {
-      byte[] buffer = new byte[ 2048 ];
-      int size = response.read( buffer );
+      char[] buffer = new char[ 2048 ];
+      int size = reader.read( buffer );
       while ( size > 0 ) {
-        for ( int idx = 0; idx < size; idx++ ) {
-          content.append( (char) buffer[ idx ] );
-        }
-        size = response.read( buffer );
+        content.append( buffer, 0, size );
+        size = reader.read( buffer );
       }
     } catch ( Exception e ) {
       // we can ignore this because the content comparison will fail
+    } finally {
+      IOUtils.closeQuietly( reader );
     }
 
     return true;
@@ -113,7 +134,8 @@ public class HttpUtil {
       HttpResponse response = client.execute( call );
       int status = response.getStatusLine().getStatusCode();
       if ( status == HttpStatus.SC_OK ) {
-        return response.getEntity().getContent();
+        HttpEntity entity = response.getEntity();
+        return DownloadProgress.track( entity.getContent(), entity.getContentLength() );
       }
       logger.debug( "The status code is not \"ok\": " + status );
       return null;
@@ -128,11 +150,105 @@ public class HttpUtil {
     return getURLInputStream( url.toString() );
   }
 
+  /**
+   * Downloads a url straight into a file, computing the SHA-256 digest of the content on the way, so that it does not
+   * have to be read again to verify it.
+   *
+   * @param url the resource to download
+   * @param target the file to download into; replaced if it exists
+   * @return the outcome of the download, or null if the server answered with an unexpected status.
+   * @throws IOException if the download failed midway
+   */
+  public static DownloadResult downloadToFile( final String url, final Path target ) throws IOException {
+    long startTime = System.nanoTime();
+
+    HttpResponse response = HttpUtil.getClient().execute( new HttpGet( url ) );
+    HttpEntity entity = response.getEntity();
+    int status = response.getStatusLine().getStatusCode();
+    if ( status != HttpStatus.SC_OK || entity == null ) {
+      logger.debug( "The status code is not \"ok\": " + status );
+      EntityUtils.consumeQuietly( entity );
+      return null;
+    }
+
+    MessageDigest messageDigest = Digests.createSha256();
+    long size = 0;
+    ReadableByteChannel source =
+      Channels.newChannel( DownloadProgress.track( entity.getContent(), entity.getContentLength() ) );
+    FileChannel destination = null;
+    try {
+      destination = FileChannel.open( target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING );
+      ByteBuffer buffer = ByteBuffer.allocateDirect( DOWNLOAD_BUFFER_SIZE );
+      while ( source.read( buffer ) >= 0 ) {
+        buffer.flip();
+        messageDigest.update( buffer.duplicate() );
+        while ( buffer.hasRemaining() ) {
+          size += destination.write( buffer );
+        }
+        buffer.clear();
+      }
+    } finally {
+      IOUtils.closeQuietly( source );
+      IOUtils.closeQuietly( destination );
+    }
+
+    return new DownloadResult( size, Digests.toHex( messageDigest.digest() ),
+      TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - startTime ) );
+  }
+
+  /**
+   * Issues a conditional GET using the validators of a previously fetched copy of the resource.
+   *
+   * @param url the resource to get
+   * @param eTag the ETag of the cached copy, sent as If-None-Match. May be null.
+   * @param lastModified the Last-Modified of the cached copy, sent as If-Modified-Since. May be null.
+   * @return the response, or null if the request failed or the server answered with an unexpected status.
+   */
+  public static ConditionalResponse getConditionalURLResponse( final String url, final String eTag,
+                                                               final String lastModified ) {
+    HttpClient client = HttpUtil.getClient();
+    try {
+      HttpGet call = new HttpGet( url );
+      if ( StringUtils.isNotEmpty( eTag ) ) {
+        call.setHeader( HttpHeaders.IF_NONE_MATCH, eTag );
+      }
+      if ( StringUtils.isNotEmpty( lastModified ) ) {
+        call.setHeader( HttpHeaders.IF_MODIFIED_SINCE, lastModified );
+      }
+
+      HttpResponse response = client.execute( call );
+      int status = response.getStatusLine().getStatusCode();
+      if ( status == HttpStatus.SC_NOT_MODIFIED ) {
+        // release the connection back to the pool
+        EntityUtils.consumeQuietly( response.getEntity() );
+        return ConditionalResponse.notModified( eTag, lastModified );
+      }
+      if ( status == HttpStatus.SC_OK ) {
+        HttpEntity entity = response.getEntity();
+        return ConditionalResponse.modified( entity.getContent(), getHeaderValue( response, HttpHeaders.ETAG ),
+          getHeaderValue( response, HttpHeaders.LAST_MODIFIED ), entity.getContentLength(),
+          BYTES_RANGE_UNIT.equalsIgnoreCase( getHeaderValue( response, HttpHeaders.ACCEPT_RANGES ) ), call );
+      }
+      logger.debug( "The status code is not \"ok\": " + status );
+      EntityUtils.consumeQuietly( response.getEntity() );
+      return null;
+    } catch ( Throwable e ) {
+      logger.debug( "Unable to get conditional response from " + url, e );
+      return null;
+    }
+  }
+
+  private static String getHeaderValue( HttpResponse response, String headerName ) {
+    Header header = response.getFirstHeader( headerName );
+    return header != null ? header.getValue() : null;
+  }
+
 
   public static Reader getURLReader( final String uri ) {
     InputStream inputStream = getURLInputStream( uri );
     if ( inputStream != null ) {
-      return new InputStreamReader( inputStream );
+      return new InputStreamReader( inputStream, StandardCharsets.UTF_8 );
     }
 
     return null;
@@ -0,0 +1,531 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util.web;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.util.EntityUtils;
+import org.pentaho.marketplace.util.Digests;
+import org.pentaho.marketplace.util.DownloadProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Downloads a file over http, resuming from where it stopped when the connection drops.
+ *
+ * When the server accepts byte ranges, a dropped connection is resumed with a Range request instead of starting over,
+ * guarded by If-Range so that a file changed in the meantime is downloaded from the start. Files of at least
+ * {@link #getParallelThresholdBytes()} bytes are split in chunks of {@link #getChunkSizeBytes()} bytes that are
+ * fetched in parallel straight into their position of a preallocated file. Files fetched in one piece have their
+ * SHA-256 digest computed as they are written, so that they do not have to be read again to be verified.
+ *
+ * Downloaded bytes are reported on the {@link DownloadProgress} of the calling thread.
+ */
+public class RangeDownloader {
+
+  // region Inner Definitions
+  /**
+   * Outcome of a download, with the validators the server sent for the downloaded file.
+   */
+  public static final class Result {
+    private final long length;
+    private final String eTag;
+    private final String lastModified;
+    private final int chunkCount;
+    private final String digest;
+
+    private Result( long length, String eTag, String lastModified, int chunkCount, String digest ) {
+      this.length = length;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.chunkCount = chunkCount;
+      this.digest = digest;
+    }
+
+    /**
+     * @return the number of bytes downloaded.
+     */
+    public long getLength() {
+      return this.length;
+    }
+
+    /**
+     * @return the ETag header returned by the server, if any.
+     */
+    public String getETag() {
+      return this.eTag;
+    }
+
+    /**
+     * @return the Last-Modified header returned by the server, if any.
+     */
+    public String getLastModified() {
+      return this.lastModified;
+    }
+
+    /**
+     * @return the number of chunks the file was fetched in; 1 if it was not fetched in parallel.
+     */
+    public int getChunkCount() {
+      return this.chunkCount;
+    }
+
+    /**
+     * @return the SHA-256 digest of the downloaded file, in lower case hexadecimal; null if it was fetched in parallel
+     * chunks, in which case it is not computed.
+     */
+    public String getDigest() {
+      return this.digest;
+    }
+  }
+
+  /**
+   * What the server told about the file before downloading it.
+   */
+  private static final class RemoteFile {
+    private final long length;
+    private final boolean acceptsRanges;
+    private final String eTag;
+    private final String lastModified;
+
+    private RemoteFile( long length, boolean acceptsRanges, String eTag, String lastModified ) {
+      this.length = length;
+      this.acceptsRanges = acceptsRanges;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+
+    private static RemoteFile of( ConditionalResponse response ) {
+      return new RemoteFile( response.getContentLength(), response.isAcceptingRanges(), response.getETag(),
+        response.getLastModified() );
+    }
+
+    /**
+     * @return the validator sent as If-Range, so that a range of a changed file is never mixed with the old one.
+     */
+    private String getRangeValidator() {
+      // weak ETags can not be used with If-Range
+      if ( this.eTag != null && !this.eTag.startsWith( "W/" ) ) {
+        return this.eTag;
+      }
+      return this.lastModified;
+    }
+  }
+
+  /**
+   * Bytes of a file to download, and how far the download got.
+   */
+  private static final class Range {
+    private final long start;
+    private final long end;
+    private final MessageDigest messageDigest;
+    private long position;
+    private boolean endReached;
+
+    private Range( long start, long end, MessageDigest messageDigest ) {
+      this.start = start;
+      this.end = end;
+      this.messageDigest = messageDigest;
+      this.position = start;
+    }
+
+    private boolean isComplete() {
+      return this.end >= 0 ? this.position > this.end : this.endReached;
+    }
+
+    /**
+     * Moves past bytes written to the target, adding them to the digest.
+     */
+    private void advance( ByteBuffer written ) {
+      this.position += written.remaining();
+      if ( this.messageDigest != null ) {
+        this.messageDigest.update( written );
+      }
+    }
+
+    private void restart() {
+      this.position = this.start;
+      if ( this.messageDigest != null ) {
+        this.messageDigest.reset();
+      }
+    }
+  }
+  // endregion
+
+  // region Constants
+  protected static final long DEFAULT_CHUNK_SIZE_BYTES = 8 * 1024 * 1024;
+  protected static final long DEFAULT_PARALLEL_THRESHOLD_BYTES = 32 * 1024 * 1024;
+  protected static final int DEFAULT_THREAD_COUNT = 4;
+  protected static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final String BYTES_RANGE_UNIT = "bytes";
+  private static final String DOWNLOAD_THREAD_NAME = "Marketplace Range Download Thread";
+  // endregion
+
+  // region Properties
+  private Log logger = LogFactory.getLog( this.getClass() );
+  private Log getLogger() {
+    return this.logger;
+  }
+
+  /**
+   * Gets the size of the chunks a large file is split in to be fetched in parallel.
+   * @return the chunk size in bytes
+   */
+  public long getChunkSizeBytes() {
+    return this.chunkSizeBytes;
+  }
+  public void setChunkSizeBytes( long chunkSizeBytes ) {
+    this.chunkSizeBytes = Math.max( 1, chunkSizeBytes );
+  }
+  private long chunkSizeBytes = DEFAULT_CHUNK_SIZE_BYTES;
+
+  /**
+   * Gets the minimum size of a file to fetch it in parallel chunks.
+   * @return the parallel download threshold in bytes
+   */
+  public long getParallelThresholdBytes() {
+    return this.parallelThresholdBytes;
+  }
+  public void setParallelThresholdBytes( long parallelThresholdBytes ) {
+    this.parallelThresholdBytes = Math.max( 0, parallelThresholdBytes );
+  }
+  private long parallelThresholdBytes = DEFAULT_PARALLEL_THRESHOLD_BYTES;
+
+  /**
+   * Gets the maximum number of chunks of a file fetched at the same time.
+   * @return the number of download threads
+   */
+  public int getThreadCount() {
+    return this.threadCount;
+  }
+  public void setThreadCount( int threadCount ) {
+    this.threadCount = Math.max( 1, threadCount );
+  }
+  private int threadCount = DEFAULT_THREAD_COUNT;
+
+  /**
+   * Gets the number of times a download (or chunk) is attempted before giving up, resuming each time from the last
+   * byte received.
+   * @return the maximum number of attempts
+   */
+  public int getMaxAttempts() {
+    return this.maxAttempts;
+  }
+  public void setMaxAttempts( int maxAttempts ) {
+    this.maxAttempts = Math.max( 1, maxAttempts );
+  }
+  private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+  // endregion
+
+  // region Methods
+  /**
+   * Downloads a file, replacing the contents of the target file.
+   * @param url the file to download
+   * @param target the file to download into
+   * @return the outcome of the download
+   * @throws IOException if the file could not be downloaded
+   */
+  public Result download( String url, File target ) throws IOException {
+    // using HttpUtil to handle http redirects and proxies
+    HttpClient client = HttpUtil.getClient();
+    return this.download( client, url, this.probe( client, url ), target );
+  }
+
+  /**
+   * Downloads a file whose response to a GET of the whole file was already received, taking its size and validators
+   * from that response instead of asking the server for them again. The body of the response is not read: it is
+   * aborted, and the file fetched again in parallel chunks if it is large enough.
+   * @param url the file to download
+   * @param target the file to download into
+   * @param response the response to a GET of the whole file
+   * @return the outcome of the download
+   * @throws IOException if the file could not be downloaded
+   */
+  public Result download( String url, File target, ConditionalResponse response ) throws IOException {
+    response.abort();
+    return this.download( HttpUtil.getClient(), url, RemoteFile.of( response ), target );
+  }
+
+  /**
+   * Tells whether a file is large enough to be fetched in parallel chunks, going by the response to a GET of the whole
+   * file, so that the file is not downloaded over the single connection of that response.
+   * @param response the response to a GET of the whole file
+   * @return true if the file is to be fetched in parallel chunks
+   */
+  public boolean isParallel( ConditionalResponse response ) {
+    return !response.isNotModified() && this.isParallel( RemoteFile.of( response ) );
+  }
+
+  private Result download( HttpClient client, String url, RemoteFile remoteFile, File target ) throws IOException {
+    DownloadProgress.expect( remoteFile.length );
+
+    RandomAccessFile file = new RandomAccessFile( target, "rw" );
+    try {
+      FileChannel channel = file.getChannel();
+      channel.truncate( 0 );
+
+      if ( this.isParallel( remoteFile ) ) {
+        try {
+          int chunkCount = this.downloadChunks( client, url, remoteFile, file );
+          return new Result( remoteFile.length, remoteFile.eTag, remoteFile.lastModified, chunkCount, null );
+        } catch ( IOException e ) {
+          this.getLogger().warn( "Parallel download of " + url + " failed, downloading it in one piece.", e );
+          channel.truncate( 0 );
+        }
+      }
+
+      // the bytes arrive in order, so the digest is computed on the way
+      MessageDigest messageDigest = Digests.createSha256();
+      long length = this.downloadRange( client, url, remoteFile, channel, 0, remoteFile.length - 1, messageDigest );
+      channel.truncate( length );
+      return new Result( length, remoteFile.eTag, remoteFile.lastModified, 1,
+        Digests.toHex( messageDigest.digest() ) );
+    } finally {
+      IOUtils.closeQuietly( file );
+    }
+  }
+
+  private boolean isParallel( RemoteFile remoteFile ) {
+    return remoteFile.acceptsRanges && remoteFile.length > 0 && this.getThreadCount() > 1
+      && remoteFile.length >= this.getParallelThresholdBytes() && remoteFile.length > this.getChunkSizeBytes();
+  }
+
+  /**
+   * Asks the server for the size of the file and whether it accepts byte ranges.
+   */
+  private RemoteFile probe( HttpClient client, String url ) {
+    try {
+      HttpResponse response = client.execute( new HttpHead( url ) );
+      EntityUtils.consumeQuietly( response.getEntity() );
+      if ( response.getStatusLine().getStatusCode() == HttpStatus.SC_OK ) {
+        return new RemoteFile( getContentLength( response ),
+          BYTES_RANGE_UNIT.equalsIgnoreCase( getHeaderValue( response, HttpHeaders.ACCEPT_RANGES ) ),
+          getHeaderValue( response, HttpHeaders.ETAG ), getHeaderValue( response, HttpHeaders.LAST_MODIFIED ) );
+      }
+    } catch ( IOException e ) {
+      this.getLogger().debug( "Unable to get file information from " + url, e );
+    }
+
+    // the server does not answer HEAD requests; fall back to a plain download
+    return new RemoteFile( -1, false, null, null );
+  }
+
+  /**
+   * Fetches the chunks of a file in parallel, writing each one in its position of the preallocated file.
+   * @return the number of chunks
+   */
+  private int downloadChunks( final HttpClient client, final String url, final RemoteFile remoteFile,
+                              RandomAccessFile file ) throws IOException {
+    file.setLength( remoteFile.length );
+    final FileChannel channel = file.getChannel();
+
+    // chunks are reported on the progress of the calling thread
+    final DownloadProgress progress = DownloadProgress.current();
+    long chunkSize = this.getChunkSizeBytes();
+    int chunkCount = (int) ( ( remoteFile.length + chunkSize - 1 ) / chunkSize );
+    ExecutorService executor = Executors.newFixedThreadPool( Math.min( this.getThreadCount(), chunkCount ),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r );
+          thread.setName( DOWNLOAD_THREAD_NAME );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+
+    try {
+      List<Future<Long>> chunks = new ArrayList<>( chunkCount );
+      for ( long start = 0; start < remoteFile.length; start += chunkSize ) {
+        final long chunkStart = start;
+        final long chunkEnd = Math.min( start + chunkSize, remoteFile.length ) - 1;
+        chunks.add( executor.submit( new Callable<Long>() {
+          @Override
+          public Long call() throws IOException {
+            if ( progress != null ) {
+              progress.attach();
+            }
+            try {
+              return downloadRange( client, url, remoteFile, channel, chunkStart, chunkEnd, null );
+            } finally {
+              DownloadProgress.detach();
+            }
+          }
+        } ) );
+      }
+
+      for ( Future<Long> chunk : chunks ) {
+        chunk.get();
+      }
+      return chunkCount;
+    } catch ( ExecutionException e ) {
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException( cause );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new IOException( "Interrupted while downloading " + url, e );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Downloads a range of a file into the same position of the target channel, resuming from the last byte received
+   * when the connection drops.
+   * @param start position of the first byte of the range
+   * @param end position of the last byte of the range; negative to download up to the end of the file
+   * @param messageDigest digest to add the bytes of the range to, in order; null if not needed
+   * @return the position after the last byte written
+   */
+  private long downloadRange( HttpClient client, String url, RemoteFile remoteFile, FileChannel channel,
+                              long start, long end, MessageDigest messageDigest ) throws IOException {
+    Range range = new Range( start, end, messageDigest );
+    for ( int attempt = 1; ; attempt++ ) {
+      try {
+        this.transferRange( client, url, remoteFile, channel, range );
+        if ( range.isComplete() ) {
+          return range.position;
+        }
+        throw new IOException( "Premature end of " + url + " at byte " + range.position );
+      } catch ( IOException e ) {
+        if ( attempt >= this.getMaxAttempts() ) {
+          throw e;
+        }
+        this.getLogger().debug( "Download of " + url + " interrupted at byte " + range.position + ", retrying.", e );
+        if ( !remoteFile.acceptsRanges ) {
+          // can not be resumed, start over
+          range.restart();
+        }
+      }
+    }
+  }
+
+  /**
+   * Issues a single request for the rest of a range, writing the bytes as they arrive.
+   */
+  private void transferRange( HttpClient client, String url, RemoteFile remoteFile, FileChannel channel,
+                              Range range ) throws IOException {
+    long end = range.end;
+    HttpGet call = new HttpGet( url );
+    boolean ranged = range.position > 0 || end >= 0 && end < remoteFile.length - 1;
+    if ( ranged ) {
+      if ( !remoteFile.acceptsRanges ) {
+        throw new IOException( "Server does not accept ranges, unable to resume " + url );
+      }
+      call.setHeader( HttpHeaders.RANGE, BYTES_RANGE_UNIT + "=" + range.position + "-" + ( end >= 0 ? end : "" ) );
+      String validator = remoteFile.getRangeValidator();
+      if ( validator != null ) {
+        call.setHeader( HttpHeaders.IF_RANGE, validator );
+      }
+    }
+
+    HttpResponse response = client.execute( call );
+    HttpEntity entity = response.getEntity();
+    int status = response.getStatusLine().getStatusCode();
+    if ( status == HttpStatus.SC_OK && ranged ) {
+      EntityUtils.consumeQuietly( entity );
+      // the whole file was sent back, so it changed since the download started
+      throw new IOException( "File changed while downloading " + url );
+    }
+    if ( status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT || entity == null ) {
+      EntityUtils.consumeQuietly( entity );
+      throw new IOException( "Unable to download " + url + ", status code: " + status );
+    }
+    if ( status == HttpStatus.SC_PARTIAL_CONTENT && getRangeStart( response ) != range.position ) {
+      EntityUtils.consumeQuietly( entity );
+      throw new IOException( "Unexpected range received from " + url );
+    }
+
+    ReadableByteChannel source = Channels.newChannel( DownloadProgress.count( entity.getContent() ) );
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+      while ( !range.isComplete() && source.read( buffer ) >= 0 ) {
+        buffer.flip();
+        if ( end >= 0 && buffer.remaining() > end - range.position + 1 ) {
+          buffer.limit( (int) ( end - range.position + 1 ) );
+        }
+        while ( buffer.hasRemaining() ) {
+          ByteBuffer written = buffer.duplicate();
+          written.limit( written.position() + channel.write( buffer, range.position ) );
+          range.advance( written );
+        }
+        buffer.clear();
+      }
+      // a response without length ends when the server closes it
+      range.endReached = true;
+    } finally {
+      IOUtils.closeQuietly( source );
+    }
+  }
+
+  private static long getContentLength( HttpResponse response ) {
+    String contentLength = getHeaderValue( response, HttpHeaders.CONTENT_LENGTH );
+    try {
+      return contentLength != null ? Long.parseLong( contentLength.trim() ) : -1;
+    } catch ( NumberFormatException e ) {
+      return -1;
+    }
+  }
+
+  /**
+   * @return the position of the first byte of a partial response, as stated by its Content-Range header.
+   */
+  private static long getRangeStart( HttpResponse response ) {
+    // Content-Range: bytes <start>-<end>/<length>
+    String contentRange = getHeaderValue( response, HttpHeaders.CONTENT_RANGE );
+    if ( contentRange == null ) {
+      return -1;
+    }
+    int startIndex = contentRange.indexOf( ' ' ) + 1;
+    int endIndex = contentRange.indexOf( '-', startIndex );
+    try {
+      return endIndex > startIndex ? Long.parseLong( contentRange.substring( startIndex, endIndex ).trim() ) : -1;
+    } catch ( NumberFormatException e ) {
+      return -1;
+    }
+  }
+
+  private static String getHeaderValue( HttpResponse response, String headerName ) {
+    Header header = response.getFirstHeader( headerName );
+    return header != null ? header.getValue() : null;
+  }
+  // endregion
+}
@@ -23,12 +23,16 @@ define(
       logger.log("Required services/appService.js");
 
       app.factory('appService',
-          [ '$http', 'dtoMapperService', '$q', 'BASE_URL',
-            function( $http, dtoMapper, $q, BASE_URL ) {
+          [ '$http', 'dtoMapperService', '$q', '$timeout', 'BASE_URL',
+            function( $http, dtoMapper, $q, $timeout, BASE_URL ) {
 
               var pluginsUrl =  BASE_URL + '/plugins';
-              var installPluginBaseUrl = BASE_URL + '/plugin';
+              var pluginUrl = BASE_URL + '/plugin';
+              var jobsBaseUrl = BASE_URL + '/jobs';
+              var installPluginBaseUrl = jobsBaseUrl + '/plugin';
               var pluginsPromise = null;
+              var pluginDetailsPromises = {};
+              var JOB_POLL_INTERVAL_MS = 1000;
 
               var PENTAHO_MARKETPLACE_ID = "pentaho-marketplace";
               var PDI_MARKETPLACE_ID = "pdi-marketplace";
@@ -36,9 +40,35 @@ define(
               function isResponseError( response ) {
                 return response.data.statusMessage.code.substring(0,5).toLowerCase() == 'error';
               }
+
+              /**
+               * Polls a plugin job until it finishes.
+               * The returned promise is resolved with a response holding the job outcome as its status message.
+               */
+              function waitForJob( response ) {
+                if ( isResponseError( response ) ) {
+                  return response;
+                }
+
+                var job = response.data.job;
+                if ( job.finished ) {
+                  return { data: { statusMessage: job.result } };
+                }
+
+                return $timeout( function() {}, JOB_POLL_INTERVAL_MS ).then( function() {
+                  return $http.get( jobsBaseUrl + '/' + job.id ).then( function ( pollResponse ) {
+                    // the job is lost, e.g. if the marketplace restarted
+                    if ( isResponseError( pollResponse ) ) {
+                      return $q.reject( pollResponse );
+                    }
+                    return waitForJob( pollResponse );
+                  } );
+                } );
+              }
               return {
                 refreshPluginsFromServer: function() {
                   pluginsPromise = null;
+                  pluginDetailsPromises = {};
                   return this.getPlugins();
                 },
 
@@ -67,9 +97,36 @@ define(
                   );
                 },
 
+                /**
+                 * Adds the details that are not in the plugin list, e.g. installation notes, to a plugin.
+                 * The returned promise is always resolved with the plugin, with or without its details.
+                 */
+                getPluginDetails: function( plugin ) {
+                  if ( !pluginDetailsPromises[ plugin.id ] ) {
+                    pluginDetailsPromises[ plugin.id ] = $http.get( pluginUrl + '/' + plugin.id ).then(
+                        function ( response ) {
+                          if ( isResponseError( response ) ) {
+                            logger.log( "Failed getting details of plugin " + plugin.id + " from server." );
+                            delete pluginDetailsPromises[ plugin.id ];
+                            return plugin;
+                          }
+                          return dtoMapper.addPluginDetails( plugin, response.data.plugin );
+                        },
+                        function () {
+                          logger.log( "Failed getting details of plugin " + plugin.id + " from server." );
+                          delete pluginDetailsPromises[ plugin.id ];
+                          return plugin;
+                        }
+                    );
+                  }
+
+                  return pluginDetailsPromises[ plugin.id ];
+                },
+
                 installPlugin: function ( plugin, version ) {
                   logger.log("Installing " + plugin.id + " " + version.branch );
                   return $http.post( installPluginBaseUrl + '/' + plugin.id + '/' + version.branch)
+                      .then( waitForJob )
                       .then( function ( response ) {
                         if ( isResponseError( response ) ) {
                           logger.log("Install NOT OK. plugin Id: " + plugin.id + " branch: " + version.branch);
@@ -83,7 +140,7 @@ define(
                       },
                       function ( response ) {
                         // FIXME: marketplace upgrade raises exceptions due to serialization issues on the server side
-                        // even when the upgrade is OK
+                        // even when the upgrade is OK. The job may also be lost while the marketplace restarts.
                         if ( plugin.id === PENTAHO_MARKETPLACE_ID || plugin.id === PDI_MARKETPLACE_ID ) {
                             logger.debug("Got error while upgrading marketplace but everything should be ok. " );
                             return;
@@ -98,6 +155,7 @@ define(
                   logger.log( "Uninstalling " + plugin.id );
                   // Not using the shortcut method $http.delete because it does not work in IE8
                   return $http( { method: 'DELETE', url: installPluginBaseUrl + '/' + plugin.id } )
+                      .then( waitForJob )
                       .then( function ( response ) {
                         if ( isResponseError( response ) ) {
                           logger.log( "Uninstall NOT OK. plugin Id: " + plugin.id );
@@ -73,7 +73,7 @@ define(
                     pluginDTO.license !== undefined ) {
                   plugin.license.name = pluginDTO.license;
                 }
-                plugin.license.text = pluginDTO.license_text;
+                plugin.license.text = pluginDTO.licenseText;
 
                 plugin.type = pluginDTO.type;
 
@@ -83,6 +83,28 @@ define(
                 return plugin;
               };
 
+              /**
+               * Adds the details that are not in the plugin list, e.g. installation notes, to a plugin.
+               * @param plugin the plugin from the plugin list
+               * @param pluginDTO the plugin with all its details
+               * @returns the plugin
+               */
+              function addPluginDetails( plugin, pluginDTO ) {
+                plugin.installationNotes = pluginDTO.installationNotes;
+                plugin.license.text = pluginDTO.licenseText;
+
+                _.each( toArray( pluginDTO.versions ), function ( versionDTO ) {
+                  var version = _.find( plugin.versions, function ( version ) {
+                    return version.branch == versionDTO.branch && version.version == versionDTO.version;
+                  } );
+                  if ( version ) {
+                    version.changeLog = versionDTO.changelog;
+                  }
+                } );
+
+                return plugin;
+              }
+
               function getInstalledVersion ( installableVersions, pluginDTO ) {
                 var installedVersion = _.find( installableVersions, function ( version ) {
                   return version.branch == pluginDTO.installedBranch &&
@@ -160,7 +182,7 @@ define(
                 // TODO description i8ln;
                 version.description = versionDTO.description;
                 // TODO changeLog internationalization?
-                version.changeLog = versionDTO.changeLog;
+                version.changeLog = versionDTO.changelog;
                 // TODO: use Date type
                 version.releaseDate = versionDTO.releaseDate;
 
@@ -207,6 +229,8 @@ define(
               return {
                 toPlugin: toPlugin,
 
+                addPluginDetails: addPluginDetails,
+
                 toVersion: toVersion
 
               }
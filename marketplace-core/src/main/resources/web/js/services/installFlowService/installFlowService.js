@@ -33,14 +33,19 @@ define(
               }
 
               function installPlugin( plugin, version ) {
+                // the installation notes are not in the plugin list, they are only needed once installed
+                var pluginDetails = appService.getPluginDetails( plugin );
                 newDialogModal( {
-                  okAction: function ( ) { return appService.installPlugin( plugin, version); },
+                  okAction: function ( ) {
+                    return appService.installPlugin( plugin, version )
+                        .then( function () { return pluginDetails; } );
+                  },
                   titleId: 'marketplace.installationDialog.title',
                   bodyId:  'marketplace.installationDialog.confirmation',
                   processingMessageId:  'marketplace.installationDialog.installing',
                   onSuccessMessageId: 'marketplace.installationDialog.success',
                   onFailMessageId: 'marketplace.installationDialog.error',
-                  notes: plugin.installationNotes,
+                  notes: function () { return plugin.installationNotes; },
                   plugin: plugin
                 });
               }
@@ -86,7 +91,7 @@ define(
                   opts.okAction().then(
                       function () {
                         var successMessage = $translate.instant( opts.onSuccessMessageId, { pluginName: opts.plugin.name } );
-                        scope.dialog.notes = opts.notes;
+                        scope.dialog.notes = opts.notes ? opts.notes() : undefined;
                         onOperationResult( successMessage, scope.dialog, modalInstance );
                       },
                       function ( error ) {
@@ -92,4 +92,43 @@ public class VersionDataTest {
     
     
   }
+
+  @Test
+  public void testCompareTo() {
+    // compareTo returns 1 when the argument is the greater version
+    Assert.assertEquals(1, new VersionData("4.5.0").compareTo(new VersionData("4.5.1")));
+    Assert.assertEquals(-1, new VersionData("4.6").compareTo(new VersionData("4.5.1")));
+    Assert.assertEquals(0, new VersionData("4.5.0-GA").compareTo(new VersionData("4.5.0.stable")));
+    Assert.assertEquals(1, new VersionData("4.5.0").compareTo(new VersionData("4.5-SNAPSHOT")));
+    Assert.assertEquals(-1, new VersionData("TRUNK-SNAPSHOT").compareTo(new VersionData("2097150.2097150.2097150")));
+
+    // components which do not fit the packed representation
+    Assert.assertEquals(1, new VersionData("2097150.0").compareTo(new VersionData("3000000.0")));
+    Assert.assertEquals(-1, new VersionData("2147483646.0").compareTo(new VersionData("4.5")));
+    Assert.assertEquals(1, new VersionData("-1.0").compareTo(new VersionData("0.0")));
+    Assert.assertEquals(1, new VersionData("2147483646.0").compareTo(new VersionData("TRUNK-SNAPSHOT")));
+  }
+
+  @Test
+  public void testParseMatchesIntegerParsing() {
+    VersionData vd = new VersionData("+4.-5.6");
+    Assert.assertEquals(4, vd.getMajor());
+    Assert.assertEquals(-5, vd.getMinor());
+    Assert.assertEquals(6, vd.getPatch());
+
+    vd = new VersionData("4.2147483648");
+    Assert.assertEquals(4, vd.getMajor());
+    Assert.assertEquals(Integer.MAX_VALUE, vd.getMinor());
+    Assert.assertEquals(Integer.MAX_VALUE, vd.getPatch());
+
+    vd = new VersionData("4..1");
+    Assert.assertEquals(4, vd.getMajor());
+    Assert.assertEquals(Integer.MAX_VALUE, vd.getMinor());
+    Assert.assertEquals(Integer.MAX_VALUE, vd.getPatch());
+
+    vd = new VersionData("4.5.x");
+    Assert.assertEquals(4, vd.getMajor());
+    Assert.assertEquals(5, vd.getMinor());
+    Assert.assertEquals(Integer.MAX_VALUE, vd.getPatch());
+  }
 }
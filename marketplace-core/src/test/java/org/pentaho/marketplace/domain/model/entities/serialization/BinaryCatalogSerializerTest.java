@@ -0,0 +1,299 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.model.entities.serialization;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+import org.pentaho.marketplace.domain.model.entities.serialization.jaxb.JAXBMarketplaceXmlSerializer;
+import org.pentaho.marketplace.domain.model.factories.CategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginVersionFactory;
+import org.pentaho.marketplace.util.CompressedText;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class BinaryCatalogSerializerTest {
+
+  private static final int CATALOG_COPIES = 200;
+
+  private byte[] metadata;
+  private IMarketplaceXmlSerializer xmlSerializer;
+  private BinaryCatalogSerializer serializer;
+
+  // region auxiliary methods
+  /**
+   * Creates a catalog with many copies of the market entries of the metadata.xml test resource.
+   */
+  private byte[] createLargeMetadata() {
+    String metadataXml = new String( this.metadata, StandardCharsets.UTF_8 );
+    int entriesStart = metadataXml.indexOf( "<market_entry>" );
+    int entriesEnd = metadataXml.lastIndexOf( "</market_entry>" ) + "</market_entry>".length();
+    String entries = metadataXml.substring( entriesStart, entriesEnd );
+
+    StringBuilder catalog = new StringBuilder( metadataXml.substring( 0, entriesStart ) );
+    for ( int i = 0; i < CATALOG_COPIES; i++ ) {
+      catalog.append( entries.replace( "<id>", "<id>copy" + i + "-" ) );
+    }
+    catalog.append( metadataXml.substring( entriesEnd ) );
+    return catalog.toString().getBytes( StandardCharsets.UTF_8 );
+  }
+
+  private static String longText( String line ) {
+    StringBuilder text = new StringBuilder();
+    for ( int i = 0; i < 100; i++ ) {
+      text.append( line ).append( ' ' ).append( i ).append( '\n' );
+    }
+    return text.toString();
+  }
+
+  private IPlugin createPlugin( String id, String licenseText, String changelog ) {
+    IPlugin plugin = new PluginFactory().create();
+    plugin.setId( id );
+    plugin.setLicenseText( licenseText );
+    plugin.setInstallationNotes( "Restart the server." );
+    IPluginVersion version = new PluginVersionFactory().create();
+    version.setVersion( "1.0" );
+    version.setChangelog( changelog );
+    plugin.getVersions().add( version );
+    return plugin;
+  }
+
+  private static void assertSamePlugins( Map<String, IPlugin> plugins, Map<String, IPlugin> expectedPlugins ) {
+    assertThat( plugins, is( equalTo( expectedPlugins ) ) );
+    for ( IPlugin plugin : plugins.values() ) {
+      IPlugin expectedPlugin = expectedPlugins.get( plugin.getId() );
+      assertThat( plugin.getRank(), is( equalTo( expectedPlugin.getRank() ) ) );
+      assertThat( plugin.getCategory(), is( sameInstance( expectedPlugin.getCategory() ) ) );
+
+      Iterator<IPluginVersion> expectedVersions = expectedPlugin.getVersions().iterator();
+      for ( IPluginVersion version : plugin.getVersions() ) {
+        IPluginVersion expectedVersion = expectedVersions.next();
+        assertThat( version.isOsgi(), is( equalTo( expectedVersion.isOsgi() ) ) );
+        assertThat( version.getDevelopmentStage(), is( equalTo( expectedVersion.getDevelopmentStage() ) ) );
+      }
+    }
+  }
+  // endregion
+
+  @Before
+  public void setup() throws IOException {
+    FileInputStream inputStream = new FileInputStream( "metadata.xml" );
+    try {
+      this.metadata = IOUtils.toByteArray( inputStream );
+    } finally {
+      inputStream.close();
+    }
+
+    this.xmlSerializer =
+      new JAXBMarketplaceXmlSerializer( new PluginFactory(), new PluginVersionFactory(), new CategoryFactory() );
+    this.serializer =
+      new BinaryCatalogSerializer( new PluginFactory(), new PluginVersionFactory(), new CategoryFactory() );
+  }
+
+  /**
+   * Tests that the plugins read from a catalog are the same as the plugins it was written from
+   */
+  @Test
+  public void testReadSameAsJAXB() throws IOException {
+    // arrange
+    Map<String, IPlugin> jaxbPlugins = this.xmlSerializer.getPlugins( new ByteArrayInputStream( this.metadata ) );
+
+    // act
+    byte[] catalog = this.serializer.write( jaxbPlugins, this.metadata );
+    Map<String, IPlugin> plugins = this.serializer.read( ByteBuffer.wrap( catalog ), this.metadata );
+
+    // assert
+    assertThat( plugins.size(), is( equalTo( 12 ) ) );
+    assertSamePlugins( plugins, jaxbPlugins );
+  }
+
+  /**
+   * Tests that a large catalog is read back the same, and is smaller than its metadata xml
+   */
+  @Test
+  public void testReadLargeCatalogSameAsJAXB() throws IOException {
+    // arrange
+    byte[] largeMetadata = this.createLargeMetadata();
+    Map<String, IPlugin> jaxbPlugins = this.xmlSerializer.getPlugins( new ByteArrayInputStream( largeMetadata ) );
+
+    // act
+    byte[] catalog = this.serializer.write( jaxbPlugins, largeMetadata );
+    Map<String, IPlugin> plugins = this.serializer.read( ByteBuffer.wrap( catalog ), largeMetadata );
+
+    // assert
+    assertThat( plugins.size(), is( equalTo( CATALOG_COPIES * 12 ) ) );
+    assertSamePlugins( plugins, jaxbPlugins );
+    assertThat( catalog.length, is( lessThan( largeMetadata.length ) ) );
+  }
+
+  /**
+   * Tests that writing the plugins read from a catalog results in the same catalog
+   */
+  @Test
+  public void testWriteIsStable() throws IOException {
+    // arrange
+    Map<String, IPlugin> jaxbPlugins = this.xmlSerializer.getPlugins( new ByteArrayInputStream( this.metadata ) );
+    byte[] catalog = this.serializer.write( jaxbPlugins, this.metadata );
+
+    // act
+    Map<String, IPlugin> plugins = this.serializer.read( ByteBuffer.wrap( catalog ), this.metadata );
+    byte[] rewrittenCatalog = this.serializer.write( plugins, this.metadata );
+
+    // assert
+    assertThat( rewrittenCatalog.length, is( equalTo( catalog.length ) ) );
+    assertThat( this.serializer.read( ByteBuffer.wrap( rewrittenCatalog ), this.metadata ), is( equalTo( plugins ) ) );
+  }
+
+  /**
+   * Tests that equal strings are read into the same instance
+   */
+  @Test
+  public void testReadSharesRepeatedStrings() throws IOException {
+    // arrange
+    Map<String, IPlugin> jaxbPlugins = this.xmlSerializer.getPlugins( new ByteArrayInputStream( this.metadata ) );
+    byte[] catalog = this.serializer.write( jaxbPlugins, this.metadata );
+
+    // act
+    Map<String, IPlugin> plugins = this.serializer.read( ByteBuffer.wrap( catalog ), this.metadata );
+
+    // assert
+    List<String> branches = new ArrayList<>();
+    for ( IPlugin plugin : plugins.values() ) {
+      for ( IPluginVersion version : plugin.getVersions() ) {
+        if ( version.getBranch() == null ) {
+          continue;
+        }
+        for ( String branch : branches ) {
+          if ( branch.equals( version.getBranch() ) ) {
+            assertThat( version.getBranch(), is( sameInstance( branch ) ) );
+          }
+        }
+        branches.add( version.getBranch() );
+      }
+    }
+  }
+
+  /**
+   * Tests that long texts are read back deflated as they were written, and that equal texts share the same instance
+   */
+  @Test
+  public void testReadKeepsTextsDeflated() throws IOException {
+    // arrange
+    String licenseText = longText( "Licensed under the Apache License, Version 2.0" );
+    String changelog = longText( "Fixed a bug" );
+    Map<String, IPlugin> plugins = new HashMap<>();
+    plugins.put( "a", this.createPlugin( "a", licenseText, changelog ) );
+    plugins.put( "b", this.createPlugin( "b", licenseText, "Initial release" ) );
+
+    // act
+    byte[] catalog = this.serializer.write( plugins, this.metadata );
+    Map<String, IPlugin> readPlugins = this.serializer.read( ByteBuffer.wrap( catalog ), this.metadata );
+
+    // assert
+    CompressedText readLicenseText = readPlugins.get( "a" ).getCompressedLicenseText();
+    assertThat( readLicenseText.isDeflated(), is( true ) );
+    assertThat( readLicenseText, is( equalTo( plugins.get( "a" ).getCompressedLicenseText() ) ) );
+    assertThat( readLicenseText.getText(), is( equalTo( licenseText ) ) );
+    assertThat( readPlugins.get( "b" ).getCompressedLicenseText(), is( sameInstance( readLicenseText ) ) );
+
+    CompressedText readChangelog = readPlugins.get( "a" ).getVersions().iterator().next().getCompressedChangelog();
+    assertThat( readChangelog.isDeflated(), is( true ) );
+    assertThat( readChangelog.getText(), is( equalTo( changelog ) ) );
+    assertThat( readPlugins.get( "b" ).getVersions().iterator().next().getChangelog(),
+      is( equalTo( "Initial release" ) ) );
+    assertThat( readPlugins.get( "b" ).getInstallationNotes(), is( equalTo( "Restart the server." ) ) );
+  }
+
+  /**
+   * Tests that the install state of the plugins is not written, as it is not part of the metadata
+   */
+  @Test
+  public void testWriteSkipsInstallState() throws IOException {
+    // arrange
+    IPlugin plugin = this.createPlugin( "a", "Apache 2.0", null );
+    plugin.setInstalled( true );
+    plugin.setInstalledBranch( "TRUNK" );
+    plugin.setInstalledVersion( "1.0" );
+    plugin.setInstalledBuildId( "42" );
+    Map<String, IPlugin> plugins = new HashMap<>();
+    plugins.put( plugin.getId(), plugin );
+
+    // act
+    byte[] catalog = this.serializer.write( plugins, this.metadata );
+    IPlugin readPlugin = this.serializer.read( ByteBuffer.wrap( catalog ), this.metadata ).get( "a" );
+
+    // assert
+    assertThat( readPlugin.isInstalled(), is( false ) );
+    assertThat( readPlugin.getInstalledBranch(), is( nullValue() ) );
+    assertThat( readPlugin.getInstalledVersion(), is( nullValue() ) );
+    assertThat( readPlugin.getInstalledBuildId(), is( nullValue() ) );
+    assertThat( readPlugin.getLicenseText(), is( equalTo( "Apache 2.0" ) ) );
+  }
+
+  /**
+   * Tests that a catalog written for other metadata is rejected
+   */
+  @Test( expected = IOException.class )
+  public void testReadRejectsOtherMetadata() throws IOException {
+    // arrange
+    Map<String, IPlugin> jaxbPlugins = this.xmlSerializer.getPlugins( new ByteArrayInputStream( this.metadata ) );
+    byte[] catalog = this.serializer.write( jaxbPlugins, this.metadata );
+
+    // act
+    this.serializer.read( ByteBuffer.wrap( catalog ), this.createLargeMetadata() );
+  }
+
+  /**
+   * Tests that a catalog of another format version is rejected
+   */
+  @Test( expected = IOException.class )
+  public void testReadRejectsOtherFormatVersion() throws IOException {
+    // arrange
+    Map<String, IPlugin> jaxbPlugins = this.xmlSerializer.getPlugins( new ByteArrayInputStream( this.metadata ) );
+    ByteBuffer catalog = ByteBuffer.wrap( this.serializer.write( jaxbPlugins, this.metadata ) );
+    catalog.putInt( 4, BinaryCatalogSerializer.FORMAT_VERSION + 1 );
+
+    // act
+    this.serializer.read( catalog, this.metadata );
+  }
+
+  /**
+   * Tests that a truncated catalog is rejected
+   */
+  @Test( expected = IOException.class )
+  public void testReadRejectsTruncatedCatalog() throws IOException {
+    // arrange
+    Map<String, IPlugin> jaxbPlugins = this.xmlSerializer.getPlugins( new ByteArrayInputStream( this.metadata ) );
+    byte[] catalog = this.serializer.write( jaxbPlugins, this.metadata );
+
+    // act
+    this.serializer.read( ByteBuffer.wrap( Arrays.copyOf( catalog, catalog.length - 4 ) ), this.metadata );
+  }
+}
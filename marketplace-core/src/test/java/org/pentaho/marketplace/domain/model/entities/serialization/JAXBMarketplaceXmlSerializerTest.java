@@ -13,16 +13,90 @@
 
 package org.pentaho.marketplace.domain.model.entities.serialization;
 
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
 import org.pentaho.marketplace.domain.model.entities.serialization.jaxb.JAXBMarketplaceXmlSerializer;
+import org.pentaho.marketplace.domain.model.factories.CategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginVersionFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.ICategoryFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionFactory;
 import org.pentaho.marketplace.domain.model.factories.interfaces.IVersionDataFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
 
 public class JAXBMarketplaceXmlSerializerTest extends MarketplaceXmlSerializerTest<JAXBMarketplaceXmlSerializer> {
+
+  private static final int THREAD_COUNT = 8;
+  private static final int PARSES_PER_THREAD = 25;
+
   @Override
   protected JAXBMarketplaceXmlSerializer create(IPluginFactory pluginFactory, IPluginVersionFactory pluginVersionFactory, IVersionDataFactory versionDataFactory, ICategoryFactory categoryFactory) {
     return new JAXBMarketplaceXmlSerializer( pluginFactory, pluginVersionFactory, categoryFactory );
   }
+
+  /**
+   * Tests that concurrent parses with the same serializer all result in the same plugins as a single parse
+   */
+  @Test
+  public void testGetPluginsConcurrently() throws Exception {
+    // arrange
+    FileInputStream inputStream = new FileInputStream( "metadata.xml" );
+    final byte[] metadataXml = IOUtils.toByteArray( inputStream );
+    inputStream.close();
+
+    final IMarketplaceXmlSerializer serializer =
+      this.create( new PluginFactory(), new PluginVersionFactory(), null, new CategoryFactory() );
+    Map<String, IPlugin> expectedPlugins = serializer.getPlugins( new ByteArrayInputStream( metadataXml ) );
+
+    final CountDownLatch start = new CountDownLatch( 1 );
+    ExecutorService executor = Executors.newFixedThreadPool( THREAD_COUNT );
+    List<Future<List<Map<String, IPlugin>>>> futures = new ArrayList<>();
+
+    // act
+    try {
+      for ( int i = 0; i < THREAD_COUNT; i++ ) {
+        final boolean fromString = i % 2 == 0;
+        futures.add( executor.submit( new Callable<List<Map<String, IPlugin>>>() {
+          @Override public List<Map<String, IPlugin>> call() throws Exception {
+            start.await();
+            List<Map<String, IPlugin>> results = new ArrayList<>();
+            for ( int j = 0; j < PARSES_PER_THREAD; j++ ) {
+              results.add( fromString
+                ? serializer.getPlugins( new String( metadataXml, StandardCharsets.UTF_8 ) )
+                : serializer.getPlugins( new ByteArrayInputStream( metadataXml ) ) );
+            }
+            return results;
+          }
+        } ) );
+      }
+      start.countDown();
+
+      // assert
+      for ( Future<List<Map<String, IPlugin>>> future : futures ) {
+        for ( Map<String, IPlugin> plugins : future.get() ) {
+          assertThat( plugins.size(), is( equalTo( expectedPlugins.size() ) ) );
+          assertThat( plugins, is( equalTo( expectedPlugins ) ) );
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -342,6 +342,31 @@ public abstract class MarketplaceXmlSerializerTest<TSerializer extends IMarketpl
     inputStream.close();
   }
 
+  /**
+   * Tests that strings repeated across plugins and versions are deserialized into the same instance
+   */
+  @Test
+  public void testGetPluginsSharesRepeatedStrings() throws IOException {
+    // arrange
+    FileInputStream inputStream = new FileInputStream( "metadata.xml" );
+    String pluginsXml = IOUtils.toString( inputStream );
+    IMarketplaceXmlSerializer serializer = this.createSerializer();
+
+    // act
+    Map<String, IPlugin> plugins = serializer.getPlugins( pluginsXml );
+
+    // assert
+    IPlugin cdfPlugin = plugins.get( "pentaho-cdf" );
+    IPlugin cdaPlugin = plugins.get( "cda" );
+    assertThat( cdaPlugin.getAuthorName(), is( sameInstance( cdfPlugin.getAuthorName() ) ) );
+    assertThat( cdaPlugin.getVersionByBranch( "TRUNK" ).getBranch(),
+      is( sameInstance( cdfPlugin.getVersionByBranch( "TRUNK" ).getBranch() ) ) );
+    assertThat( plugins.get( "idh23" ).getAuthorName(),
+      is( sameInstance( plugins.get( "marketplace" ).getAuthorName() ) ) );
+
+    inputStream.close();
+  }
+
 
   /**
    * Tests that an installed version is properly serialized
@@ -0,0 +1,117 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.model.entities.serialization;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.serialization.jaxb.JAXBMarketplaceXmlSerializer;
+import org.pentaho.marketplace.domain.model.factories.CategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginVersionFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.ICategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionFactory;
+import org.pentaho.marketplace.domain.model.factories.interfaces.IVersionDataFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StaxMarketplaceXmlSerializerTest extends MarketplaceXmlSerializerTest<StaxMarketplaceXmlSerializer> {
+
+  private static final int CATALOG_COPIES = 200;
+
+  @Override
+  protected StaxMarketplaceXmlSerializer create( IPluginFactory pluginFactory,
+                                                 IPluginVersionFactory pluginVersionFactory,
+                                                 IVersionDataFactory versionDataFactory,
+                                                 ICategoryFactory categoryFactory ) {
+    return new StaxMarketplaceXmlSerializer( pluginFactory, pluginVersionFactory, categoryFactory );
+  }
+
+  // region auxiliary methods
+  /**
+   * Creates a catalog with many copies of the market entries of the metadata.xml test resource.
+   */
+  private static String createLargeCatalog() throws IOException {
+    FileInputStream inputStream = new FileInputStream( "metadata.xml" );
+    String metadataXml;
+    try {
+      metadataXml = IOUtils.toString( inputStream, StandardCharsets.UTF_8 );
+    } finally {
+      inputStream.close();
+    }
+
+    int entriesStart = metadataXml.indexOf( "<market_entry>" );
+    int entriesEnd = metadataXml.lastIndexOf( "</market_entry>" ) + "</market_entry>".length();
+    String entries = metadataXml.substring( entriesStart, entriesEnd );
+
+    StringBuilder catalog = new StringBuilder( metadataXml.substring( 0, entriesStart ) );
+    for ( int i = 0; i < CATALOG_COPIES; i++ ) {
+      catalog.append( entries.replace( "<id>", "<id>copy" + i + "-" ) );
+    }
+    catalog.append( metadataXml.substring( entriesEnd ) );
+    return catalog.toString();
+  }
+  // endregion
+
+  /**
+   * Tests that a large catalog read from a stream results in the same plugins as with the JAXB serializer
+   */
+  @Test
+  public void testGetPluginsLargeCatalogSameAsJAXB() throws IOException {
+    // arrange
+    byte[] catalog = createLargeCatalog().getBytes( StandardCharsets.UTF_8 );
+    IMarketplaceXmlSerializer serializer =
+      this.create( new PluginFactory(), new PluginVersionFactory(), null, new CategoryFactory() );
+    IMarketplaceXmlSerializer jaxbSerializer =
+      new JAXBMarketplaceXmlSerializer( new PluginFactory(), new PluginVersionFactory(), new CategoryFactory() );
+
+    // act
+    Map<String, IPlugin> plugins = serializer.getPlugins( new ByteArrayInputStream( catalog ) );
+    Map<String, IPlugin> jaxbPlugins = jaxbSerializer.getPlugins( new ByteArrayInputStream( catalog ) );
+
+    // assert
+    assertThat( plugins.size(), is( equalTo( CATALOG_COPIES * 12 ) ) );
+    assertThat( plugins, is( equalTo( jaxbPlugins ) ) );
+    for ( IPlugin plugin : plugins.values() ) {
+      assertThat( plugin.getRank(), is( equalTo( jaxbPlugins.get( plugin.getId() ).getRank() ) ) );
+    }
+  }
+
+  /**
+   * Tests that metadata declaring a DTD is rejected
+   */
+  @Test
+  public void testGetPluginsRejectsDoctype() {
+    // arrange
+    String xml = "<?xml version=\"1.0\"?>\n"
+      + "<!DOCTYPE market [ <!ENTITY name \"Expanded\"> ]>\n"
+      + "<market><market_entry><id>plugin</id><name>&name;</name><type>Platform</type></market_entry></market>";
+    IMarketplaceXmlSerializer serializer =
+      this.create( new PluginFactory(), new PluginVersionFactory(), null, new CategoryFactory() );
+
+    // act
+    Map<String, IPlugin> plugins = serializer.getPlugins( xml );
+
+    // assert
+    assertThat( plugins.size(), is( equalTo( 0 ) ) );
+  }
+}
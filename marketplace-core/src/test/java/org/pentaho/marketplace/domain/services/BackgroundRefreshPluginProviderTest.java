@@ -0,0 +1,121 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.services.interfaces.IRefreshablePluginProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+public class BackgroundRefreshPluginProviderTest {
+
+  private IRefreshablePluginProvider remoteProvider;
+  private BackgroundRefreshPluginProvider provider;
+
+  @Before
+  public void setup() {
+    this.remoteProvider = mock( IRefreshablePluginProvider.class );
+    this.provider = new BackgroundRefreshPluginProvider( this.remoteProvider );
+    // keep the background refresh out of the way of the tests
+    this.provider.setRefreshIntervalSeconds( 3600 );
+  }
+
+  @After
+  public void tearDown() {
+    this.provider.destroy();
+  }
+
+  /**
+   * Tests that cached plugins are served without waiting on the remote server.
+   */
+  @Test
+  public void testServesCachedPluginsWithoutRefreshing() {
+    Map<String, IPlugin> cachedPlugins = new HashMap<>();
+    cachedPlugins.put( "plugin", mock( IPlugin.class ) );
+    when( this.remoteProvider.getCachedPlugins() ).thenReturn( cachedPlugins );
+    // the warm up refresh must not be the one serving this request
+    when( this.remoteProvider.refresh() ).thenReturn( true );
+
+    this.provider.init();
+    Map<String, IPlugin> plugins = this.provider.getPlugins();
+
+    assertThat( plugins, is( sameInstance( cachedPlugins ) ) );
+    verify( this.remoteProvider, never() ).getPlugins();
+  }
+
+  /**
+   * Tests that the requesting thread refreshes the plugins when none were ever obtained.
+   */
+  @Test
+  public void testRefreshesOnColdStart() {
+    Map<String, IPlugin> fetchedPlugins = new HashMap<>();
+    fetchedPlugins.put( "plugin", mock( IPlugin.class ) );
+    when( this.remoteProvider.getCachedPlugins() ).thenReturn( null, fetchedPlugins );
+    // the mocked refresh is instantaneous, so it does not matter whether the warm up refresh ran before
+    when( this.remoteProvider.refresh() ).thenReturn( true );
+
+    this.provider.init();
+    Map<String, IPlugin> plugins = this.provider.getPlugins();
+
+    assertThat( plugins, is( sameInstance( fetchedPlugins ) ) );
+    verify( this.remoteProvider, atLeastOnce() ).refresh();
+  }
+
+  /**
+   * Tests that an empty map is served when the remote server is unreachable on cold start.
+   */
+  @Test
+  public void testEmptyPluginsWhenColdStartFails() {
+    when( this.remoteProvider.getCachedPlugins() ).thenReturn( null );
+    when( this.remoteProvider.refresh() ).thenReturn( false );
+
+    this.provider.init();
+
+    assertThat( this.provider.getPlugins().isEmpty(), is( true ) );
+  }
+
+  /**
+   * Tests that the provider is used directly when the background refresh is not running.
+   */
+  @Test
+  public void testDelegatesWhenNotInitialized() {
+    Map<String, IPlugin> remotePlugins = new HashMap<>();
+    when( this.remoteProvider.getPlugins() ).thenReturn( remotePlugins );
+
+    assertThat( this.provider.getPlugins(), is( sameInstance( remotePlugins ) ) );
+  }
+
+  /**
+   * Tests that the refresh interval doubles on each consecutive failure up to the maximum backoff.
+   */
+  @Test
+  public void testRefreshDelayBacksOff() {
+    this.provider.setRefreshIntervalSeconds( 60 );
+    this.provider.setMaxBackoffSeconds( 300 );
+
+    assertThat( this.provider.getRefreshDelayMillis( 0 ), is( 60000L ) );
+    assertThat( this.provider.getRefreshDelayMillis( 1 ), is( 120000L ) );
+    assertThat( this.provider.getRefreshDelayMillis( 2 ), is( 240000L ) );
+    assertThat( this.provider.getRefreshDelayMillis( 3 ), is( 300000L ) );
+    assertThat( this.provider.getRefreshDelayMillis( Integer.MAX_VALUE ), is( 300000L ) );
+  }
+}
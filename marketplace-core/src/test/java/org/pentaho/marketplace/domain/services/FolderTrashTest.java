@@ -0,0 +1,158 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class FolderTrashTest {
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private FolderTrash trash;
+
+  // region auxiliary methods
+  private FolderTrash createTrash() {
+    this.trash = new FolderTrash( new File( this.temporaryFolder.getRoot(), "trash" ).getPath() );
+    return this.trash;
+  }
+
+  private File createPluginFolder( String name ) throws IOException {
+    File folder = this.temporaryFolder.newFolder( name );
+    for ( int i = 0; i < 100; i++ ) {
+      FileUtils.writeStringToFile( new File( folder, "lib/library-" + i + ".jar" ), name, StandardCharsets.UTF_8 );
+    }
+    return folder;
+  }
+
+  private static void awaitEmpty( File folder ) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while ( System.currentTimeMillis() < deadline ) {
+      String[] names = folder.list();
+      if ( names == null || names.length == 0 ) {
+        return;
+      }
+      Thread.sleep( 10 );
+    }
+  }
+  // endregion
+
+  @After
+  public void tearDown() {
+    if ( this.trash != null ) {
+      this.trash.destroy();
+    }
+  }
+
+  /**
+   * Tests that a discarded folder is gone right away and its contents are deleted in the background.
+   */
+  @Test
+  public void testDiscardedFolderIsDeletedInBackground() throws Exception {
+    FolderTrash trash = this.createTrash();
+    trash.init();
+    File folder = this.createPluginFolder( "plugin" );
+
+    trash.discard( folder );
+
+    assertThat( folder.exists(), is( false ) );
+    awaitEmpty( trash.getTrashDir() );
+    assertThat( trash.getTrashDir().list(), is( emptyArray() ) );
+  }
+
+  /**
+   * Tests that folders with the same name can be discarded one after the other.
+   */
+  @Test
+  public void testFoldersWithSameNameAreDiscarded() throws Exception {
+    FolderTrash trash = this.createTrash();
+    File folder = this.createPluginFolder( "plugin" );
+    trash.discard( folder );
+
+    assertThat( this.createPluginFolder( "plugin" ).getPath(), is( folder.getPath() ) );
+    trash.discard( folder );
+
+    assertThat( folder.exists(), is( false ) );
+  }
+
+  /**
+   * Tests that folders left in the trash by a previous run are deleted on start.
+   */
+  @Test
+  public void testLeftoversAreDeletedOnStart() throws Exception {
+    FolderTrash trash = this.createTrash();
+    File leftover = new File( trash.getTrashDir(), "plugin_123/plugin" );
+    FileUtils.writeStringToFile( new File( leftover, "plugin.xml" ), "plugin", StandardCharsets.UTF_8 );
+
+    trash.init();
+
+    awaitEmpty( trash.getTrashDir() );
+    assertThat( trash.getTrashDir().list(), is( emptyArray() ) );
+  }
+
+  /**
+   * Tests that a folder that can not be moved to the trash leaves nothing in the trash.
+   */
+  @Test
+  public void testFailedMoveLeavesNothingInTrash() throws IOException {
+    FolderTrash trash = this.createTrash();
+    final File missingFolder = new File( this.temporaryFolder.getRoot(), "missing" );
+    File folder = new File( this.temporaryFolder.getRoot(), "plugin" ) {
+      @Override
+      public boolean exists() {
+        // gone by the time it is moved
+        return true;
+      }
+
+      @Override
+      public Path toPath() {
+        return missingFolder.toPath();
+      }
+    };
+
+    try {
+      trash.discard( folder );
+      fail( "The folder should not have been discarded" );
+    } catch ( IOException e ) {
+      assertThat( trash.getTrashDir().list(), is( emptyArray() ) );
+    }
+  }
+
+  /**
+   * Tests that discarding a folder that does not exist does nothing.
+   */
+  @Test
+  public void testMissingFolderIsIgnored() throws IOException {
+    FolderTrash trash = this.createTrash();
+
+    trash.discard( new File( this.temporaryFolder.getRoot(), "missing" ) );
+
+    assertThat( trash.getTrashDir().exists(), is( false ) );
+  }
+}
@@ -0,0 +1,127 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.junit.Test;
+import org.pentaho.marketplace.domain.model.entities.InstalledState;
+import org.pentaho.marketplace.domain.model.entities.PluginView;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class InstalledPluginRegistryTest {
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  // region auxiliary methods
+  private InstalledPluginRegistry createRegistry( final Runnable onLoad ) {
+    return new InstalledPluginRegistry( new InstalledPluginRegistry.Loader() {
+      @Override
+      public Map<String, InstalledState> load( Map<String, PluginView> compatiblePlugins ) {
+        loads.incrementAndGet();
+        if ( onLoad != null ) {
+          onLoad.run();
+        }
+        return Collections.singletonMap( "plugin", InstalledState.NOT_INSTALLED );
+      }
+    } );
+  }
+  // endregion
+
+  /**
+   * Tests that the installed states are loaded every time while not caching.
+   */
+  @Test
+  public void testStatesAreLoadedEveryTimeWhenNotCaching() {
+    InstalledPluginRegistry registry = this.createRegistry( null );
+    Map<String, PluginView> compatiblePlugins = new HashMap<>();
+
+    registry.getInstalledStates( compatiblePlugins );
+    registry.getInstalledStates( compatiblePlugins );
+
+    assertThat( this.loads.get(), is( 2 ) );
+  }
+
+  /**
+   * Tests that the installed states are kept until invalidated.
+   */
+  @Test
+  public void testStatesAreKeptUntilInvalidated() {
+    InstalledPluginRegistry registry = this.createRegistry( null );
+    registry.setCaching( true );
+    Map<String, PluginView> compatiblePlugins = new HashMap<>();
+
+    Map<String, InstalledState> first = registry.getInstalledStates( compatiblePlugins );
+    Map<String, InstalledState> second = registry.getInstalledStates( compatiblePlugins );
+    assertThat( second, is( sameInstance( first ) ) );
+    assertThat( this.loads.get(), is( 1 ) );
+
+    registry.invalidate();
+    registry.getInstalledStates( compatiblePlugins );
+    assertThat( this.loads.get(), is( 2 ) );
+  }
+
+  /**
+   * Tests that the installed states are loaded again for other compatible plugins.
+   */
+  @Test
+  public void testStatesAreLoadedForOtherCompatiblePlugins() {
+    InstalledPluginRegistry registry = this.createRegistry( null );
+    registry.setCaching( true );
+
+    registry.getInstalledStates( new HashMap<String, PluginView>() );
+    registry.getInstalledStates( new HashMap<String, PluginView>() );
+
+    assertThat( this.loads.get(), is( 2 ) );
+  }
+
+  /**
+   * Tests that states loaded while being invalidated are not kept.
+   */
+  @Test
+  public void testStatesLoadedWhileInvalidatedAreNotKept() {
+    final InstalledPluginRegistry[] registry = new InstalledPluginRegistry[ 1 ];
+    registry[ 0 ] = this.createRegistry( new Runnable() {
+      @Override
+      public void run() {
+        if ( loads.get() == 1 ) {
+          registry[ 0 ].invalidate();
+        }
+      }
+    } );
+    registry[ 0 ].setCaching( true );
+    Map<String, PluginView> compatiblePlugins = new HashMap<>();
+
+    registry[ 0 ].getInstalledStates( compatiblePlugins );
+    registry[ 0 ].getInstalledStates( compatiblePlugins );
+    registry[ 0 ].getInstalledStates( compatiblePlugins );
+
+    assertThat( this.loads.get(), is( 2 ) );
+  }
+
+  /**
+   * Tests that the installed states can not be changed.
+   */
+  @Test( expected = UnsupportedOperationException.class )
+  public void testStatesCanNotBeChanged() {
+    InstalledPluginRegistry registry = this.createRegistry( null );
+
+    registry.getInstalledStates( new HashMap<String, PluginView>() ).clear();
+  }
+}
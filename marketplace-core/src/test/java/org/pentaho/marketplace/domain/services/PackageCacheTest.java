@@ -0,0 +1,343 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PackageCacheTest {
+
+  private static final String ETAG = "\"package-v1\"";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private volatile boolean available = true;
+  private final AtomicInteger fullResponses = new AtomicInteger();
+  private final AtomicInteger notModifiedResponses = new AtomicInteger();
+  private final AtomicInteger headRequests = new AtomicInteger();
+  private final AtomicInteger rangeResponses = new AtomicInteger();
+
+  // region auxiliary methods
+  private PackageCache createCache() {
+    return new PackageCache( this.temporaryFolder.getRoot().getPath() );
+  }
+
+  private String getUrl( String packageName ) {
+    return "http://localhost:" + this.server.getAddress().getPort() + "/packages/" + packageName;
+  }
+  // endregion
+
+  @Before
+  public void setup() throws IOException {
+    this.server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+    this.server.createContext( "/packages/", new HttpHandler() {
+      @Override public void handle( HttpExchange exchange ) throws IOException {
+        if ( !available ) {
+          exchange.sendResponseHeaders( 503, -1 );
+          exchange.close();
+          return;
+        }
+
+        if ( ETAG.equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) ) {
+          notModifiedResponses.incrementAndGet();
+          exchange.sendResponseHeaders( 304, -1 );
+          exchange.close();
+          return;
+        }
+
+        // the content of a package is its name
+        String path = exchange.getRequestURI().getPath();
+        byte[] content = path.substring( path.lastIndexOf( '/' ) + 1 ).getBytes( StandardCharsets.UTF_8 );
+
+        exchange.getResponseHeaders().add( "ETag", ETAG );
+        exchange.getResponseHeaders().add( "Accept-Ranges", "bytes" );
+        if ( "HEAD".equals( exchange.getRequestMethod() ) ) {
+          headRequests.incrementAndGet();
+          exchange.getResponseHeaders().add( "Content-Length", String.valueOf( content.length ) );
+          exchange.sendResponseHeaders( 200, -1 );
+          exchange.close();
+          return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst( "Range" );
+        if ( range != null ) {
+          rangeResponses.incrementAndGet();
+          String[] bounds = range.substring( "bytes=".length() ).split( "-", -1 );
+          int start = Integer.parseInt( bounds[ 0 ] );
+          int end = bounds[ 1 ].isEmpty() ? content.length - 1 : Integer.parseInt( bounds[ 1 ] );
+          exchange.getResponseHeaders().add( "Content-Range", "bytes " + start + "-" + end + "/" + content.length );
+          exchange.sendResponseHeaders( 206, end - start + 1 );
+          try ( OutputStream body = exchange.getResponseBody() ) {
+            body.write( content, start, end - start + 1 );
+          }
+          return;
+        }
+
+        fullResponses.incrementAndGet();
+        exchange.sendResponseHeaders( 200, content.length );
+        try ( OutputStream body = exchange.getResponseBody() ) {
+          body.write( content );
+        }
+      }
+    } );
+    this.server.start();
+  }
+
+  @After
+  public void tearDown() {
+    this.server.stop( 0 );
+  }
+
+  /**
+   * Tests that a cached package is not downloaded again.
+   */
+  @Test
+  public void testPackageIsDownloadedOnce() throws IOException {
+    PackageCache cache = this.createCache();
+
+    File first = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    File second = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+
+    assertThat( FileUtils.readFileToString( first, StandardCharsets.UTF_8 ), is( "plugin-1.0.zip" ) );
+    assertThat( second, is( equalTo( first ) ) );
+    assertThat( this.fullResponses.get(), is( 1 ) );
+  }
+
+  /**
+   * Tests that the cache survives a restart.
+   */
+  @Test
+  public void testPackageIsReusedByNewCacheInstance() throws IOException {
+    this.createCache().getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    File cachedPackage = this.createCache().getPackage( this.getUrl( "plugin-1.0.zip" ) );
+
+    assertThat( FileUtils.readFileToString( cachedPackage, StandardCharsets.UTF_8 ), is( "plugin-1.0.zip" ) );
+    assertThat( this.fullResponses.get(), is( 1 ) );
+  }
+
+  /**
+   * Tests that once a cached package expires it is revalidated and a 304 reuses it.
+   */
+  @Test
+  public void testExpiredPackageIsRevalidated() throws IOException {
+    PackageCache cache = this.createCache();
+    cache.setMaxAgeSeconds( 0 );
+
+    File first = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    File second = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+
+    assertThat( second, is( equalTo( first ) ) );
+    assertThat( this.fullResponses.get(), is( 1 ) );
+    assertThat( this.notModifiedResponses.get(), is( 1 ) );
+  }
+
+  /**
+   * Tests that an expired package is still used while the remote server is unreachable.
+   */
+  @Test
+  public void testExpiredPackageIsUsedWhenRemoteIsUnreachable() throws IOException {
+    PackageCache cache = this.createCache();
+    cache.setMaxAgeSeconds( 0 );
+
+    File first = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    this.available = false;
+    File second = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+
+    assertThat( second, is( equalTo( first ) ) );
+  }
+
+  /**
+   * Tests that a package that can not be downloaded is not cached.
+   */
+  @Test
+  public void testUnavailablePackageIsNotCached() {
+    this.available = false;
+
+    assertThat( this.createCache().getPackage( this.getUrl( "plugin-1.0.zip" ) ), is( nullValue() ) );
+  }
+
+  /**
+   * Tests that a package corrupted while the process was not running is downloaded again instead of being served.
+   */
+  @Test
+  public void testCorruptedPackageIsDownloadedAgain() throws IOException {
+    File cachedPackage = this.createCache().getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    FileUtils.writeStringToFile( cachedPackage, "corrupted", StandardCharsets.UTF_8 );
+    File downloadedPackage = this.createCache().getPackage( this.getUrl( "plugin-1.0.zip" ) );
+
+    assertThat( FileUtils.readFileToString( downloadedPackage, StandardCharsets.UTF_8 ), is( "plugin-1.0.zip" ) );
+    assertThat( this.fullResponses.get(), is( 2 ) );
+  }
+
+  /**
+   * Tests that the least recently used packages are removed when the cache exceeds its size.
+   */
+  @Test
+  public void testLeastRecentlyUsedPackageIsEvicted() throws IOException {
+    PackageCache cache = this.createCache();
+    cache.setMaxSizeMb( 0 );
+
+    File first = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    File second = cache.getPackage( this.getUrl( "plugin-2.0.zip" ) );
+
+    assertThat( first.exists(), is( false ) );
+    assertThat( second.exists(), is( true ) );
+    assertThat( cache.getSize(), is( second.length() ) );
+
+    // the evicted package is downloaded again
+    cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    assertThat( this.fullResponses.get(), is( 3 ) );
+  }
+
+  /**
+   * Tests that the entries of evicted packages are removed with them.
+   */
+  @Test
+  public void testEntryOfEvictedPackageIsRemoved() {
+    PackageCache cache = this.createCache();
+    cache.setMaxSizeMb( 0 );
+
+    cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    cache.getPackage( this.getUrl( "plugin-2.0.zip" ) );
+
+    assertThat( this.temporaryFolder.getRoot().list( new SuffixFileFilter( ".properties" ) ).length, is( 1 ) );
+  }
+
+  /**
+   * Tests that retained packages are not evicted until they are released.
+   */
+  @Test
+  public void testRetainedPackageIsNotEvicted() {
+    PackageCache cache = this.createCache();
+    cache.setMaxSizeMb( 0 );
+
+    cache.retain( this.getUrl( "plugin-1.0.zip" ) );
+    File first = cache.getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    cache.getPackage( this.getUrl( "plugin-2.0.zip" ) );
+    assertThat( first.exists(), is( true ) );
+
+    cache.release( this.getUrl( "plugin-1.0.zip" ) );
+    cache.getPackage( this.getUrl( "plugin-3.0.zip" ) );
+    assertThat( first.exists(), is( false ) );
+  }
+
+  /**
+   * Tests that leftovers of interrupted downloads and entries of packages no longer cached are removed on startup.
+   */
+  @Test
+  public void testLeftoversAreRemovedOnInit() throws IOException {
+    this.createCache().getPackage( this.getUrl( "plugin-1.0.zip" ) );
+    File cachedPackage = this.createCache().getPackage( this.getUrl( "plugin-2.0.zip" ) );
+    File tempFile = this.temporaryFolder.newFile( "package123.tmp" );
+    FileUtils.deleteQuietly( cachedPackage );
+
+    PackageCache cache = this.createCache();
+    cache.init();
+
+    assertThat( tempFile.exists(), is( false ) );
+    assertThat( this.temporaryFolder.getRoot().list( new SuffixFileFilter( ".properties" ) ).length, is( 1 ) );
+    assertThat( cache.getCachedPackage( this.getUrl( "plugin-1.0.zip" ) ), is( notNullValue() ) );
+  }
+
+  /**
+   * Tests that a streamed package is cached once it was read to the end.
+   */
+  @Test
+  public void testStreamedPackageIsCachedWhenReadToTheEnd() throws IOException {
+    PackageCache cache = this.createCache();
+
+    try ( InputStream inputStream = cache.openPackage( this.getUrl( "plugin-1.0.zip" ) ) ) {
+      assertThat( IOUtils.toString( inputStream, StandardCharsets.UTF_8 ), is( "plugin-1.0.zip" ) );
+    }
+    try ( InputStream inputStream = cache.openPackage( this.getUrl( "plugin-1.0.zip" ) ) ) {
+      assertThat( IOUtils.toString( inputStream, StandardCharsets.UTF_8 ), is( "plugin-1.0.zip" ) );
+    }
+
+    assertThat( this.fullResponses.get(), is( 1 ) );
+    assertThat( cache.getPackage( this.getUrl( "plugin-1.0.zip" ) ), is( notNullValue() ) );
+    assertThat( this.fullResponses.get(), is( 1 ) );
+  }
+
+  /**
+   * Tests that a streamed package that was not read to the end is not cached.
+   */
+  @Test
+  public void testPartiallyStreamedPackageIsNotCached() throws IOException {
+    PackageCache cache = this.createCache();
+
+    try ( InputStream inputStream = cache.openPackage( this.getUrl( "plugin-1.0.zip" ) ) ) {
+      assertThat( inputStream.read(), is( (int) 'p' ) );
+    }
+
+    assertThat( cache.getSize(), is( 0L ) );
+  }
+
+  /**
+   * Tests that a package large enough to be fetched in parallel chunks is told apart by the length of the response to
+   * its GET, without asking the server for its size first.
+   */
+  @Test
+  public void testLargeFetchedPackageIsDownloadedInParallelChunks() throws IOException {
+    PackageCache cache = this.createCache();
+    cache.getDownloader().setParallelThresholdBytes( 8 );
+    cache.getDownloader().setChunkSizeBytes( 4 );
+
+    PackageCache.FetchedPackage fetchedPackage = cache.fetchPackage( this.getUrl( "plugin-1.0.zip" ) );
+
+    assertThat( fetchedPackage.getInputStream(), is( nullValue() ) );
+    File packageFile = fetchedPackage.getFile();
+    assertThat( FileUtils.readFileToString( packageFile, StandardCharsets.UTF_8 ), is( "plugin-1.0.zip" ) );
+    assertThat( this.rangeResponses.get(), is( 4 ) );
+    assertThat( this.headRequests.get(), is( 0 ) );
+  }
+
+  /**
+   * Tests that a small package is streamed from the response to its GET, without asking the server for its size first.
+   */
+  @Test
+  public void testSmallFetchedPackageIsStreamed() throws IOException {
+    PackageCache cache = this.createCache();
+
+    PackageCache.FetchedPackage fetchedPackage = cache.fetchPackage( this.getUrl( "plugin-1.0.zip" ) );
+
+    assertThat( fetchedPackage.getFile(), is( nullValue() ) );
+    try ( InputStream inputStream = fetchedPackage.getInputStream() ) {
+      assertThat( IOUtils.toString( inputStream, StandardCharsets.UTF_8 ), is( "plugin-1.0.zip" ) );
+    }
+    assertThat( this.fullResponses.get(), is( 1 ) );
+    assertThat( this.headRequests.get(), is( 0 ) );
+  }
+}
@@ -0,0 +1,85 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.junit.Test;
+import org.pentaho.marketplace.domain.model.entities.MarketEntryType;
+import org.pentaho.marketplace.domain.model.entities.interfaces.ICategory;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.factories.CategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginFactory;
+import org.pentaho.marketplace.domain.services.interfaces.IPluginCatalog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class PluginCatalogTest {
+
+  private final PluginFactory pluginFactory = new PluginFactory();
+  private final CategoryFactory categoryFactory = new CategoryFactory();
+
+  // region auxiliary methods
+  private IPlugin createPlugin( String id, MarketEntryType type, ICategory category ) {
+    IPlugin plugin = this.pluginFactory.create();
+    plugin.setId( id );
+    plugin.setType( type );
+    plugin.setCategory( category );
+    return plugin;
+  }
+  // endregion
+
+  /**
+   * Tests that plugins are indexed by id.
+   */
+  @Test
+  public void testPluginsAreIndexed() {
+    ICategory parentCategory = this.categoryFactory.create( "PluginCatalogTest parent" );
+    ICategory childCategory = this.categoryFactory.create( "PluginCatalogTest child", parentCategory );
+
+    IPlugin platformPlugin = this.createPlugin( "platform", MarketEntryType.Platform, childCategory );
+    IPlugin stepPlugin = this.createPlugin( "step", MarketEntryType.Step, parentCategory );
+    Map<String, IPlugin> plugins = new HashMap<>();
+    plugins.put( platformPlugin.getId(), platformPlugin );
+    plugins.put( stepPlugin.getId(), stepPlugin );
+
+    IPluginCatalog catalog = new PluginCatalog( plugins );
+
+    assertThat( catalog.getPlugin( "platform" ), is( sameInstance( platformPlugin ) ) );
+    assertThat( catalog.getPlugin( "unknown" ), is( nullValue() ) );
+    assertThat( catalog.getPlugin( null ), is( nullValue() ) );
+    assertThat( catalog.getPlugin( "step" ), is( sameInstance( stepPlugin ) ) );
+  }
+
+  /**
+   * Tests that the catalog is not affected by later changes to the map it was created from.
+   */
+  @Test
+  public void testCatalogIsImmutable() {
+    Map<String, IPlugin> plugins = new HashMap<>();
+    plugins.put( "plugin", this.createPlugin( "plugin", MarketEntryType.Step, null ) );
+
+    IPluginCatalog catalog = new PluginCatalog( plugins );
+    plugins.clear();
+
+    assertThat( catalog.getPlugins().size(), is( 1 ) );
+  }
+
+  @Test( expected = UnsupportedOperationException.class )
+  public void testCatalogPluginsCanNotBeChanged() {
+    PluginCatalog.empty().getPlugins().put( "plugin", this.createPlugin( "plugin", MarketEntryType.Step, null ) );
+  }
+}
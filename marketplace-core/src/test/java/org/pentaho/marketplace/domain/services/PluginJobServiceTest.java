@@ -0,0 +1,362 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.marketplace.domain.model.entities.PluginJob;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
+import org.pentaho.marketplace.domain.model.factories.DomainStatusMessageFactory;
+import org.pentaho.marketplace.domain.services.interfaces.IPluginService;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PluginJobServiceTest {
+
+  private final DomainStatusMessageFactory statusMessageFactory = new DomainStatusMessageFactory();
+  private IPluginService pluginService;
+  private PluginJobService jobService;
+
+  // region auxiliary methods
+  private PluginJob waitForJob( PluginJob job ) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 10 );
+    while ( !job.isFinished() && System.currentTimeMillis() < deadline ) {
+      Thread.sleep( 10 );
+    }
+    return job;
+  }
+
+  private Answer<IDomainStatusMessage> awaitAndReturn( final CountDownLatch latch,
+                                                       final IDomainStatusMessage statusMessage ) {
+    return new Answer<IDomainStatusMessage>() {
+      @Override
+      public IDomainStatusMessage answer( InvocationOnMock invocation ) throws InterruptedException {
+        latch.await( 10, TimeUnit.SECONDS );
+        return statusMessage;
+      }
+    };
+  }
+  // endregion
+
+  @Before
+  public void setup() throws Exception {
+    this.pluginService = mock( IPluginService.class );
+    when( this.pluginService.inCallerContext( any( Callable.class ) ) ).thenAnswer( new Answer<Object>() {
+      @Override
+      public Object answer( InvocationOnMock invocation ) {
+        return invocation.getArguments()[ 0 ];
+      }
+    } );
+
+    this.jobService = new PluginJobService( this.pluginService, this.statusMessageFactory );
+    this.jobService.init();
+  }
+
+  @After
+  public void tearDown() {
+    this.jobService.destroy();
+  }
+
+  /**
+   * Tests that the install job is returned before the install finishes, and reports its outcome once it does.
+   */
+  @Test
+  public void testInstallRunsInBackground() throws InterruptedException {
+    CountDownLatch installed = new CountDownLatch( 1 );
+    IDomainStatusMessage success = this.statusMessageFactory.create( "PLUGIN_INSTALLED", "installed" );
+    when( this.pluginService.installPlugin( "plugin", "stable" ) ).thenAnswer( this.awaitAndReturn( installed, success ) );
+
+    PluginJob job = this.jobService.submitInstall( "plugin", "stable" );
+    assertThat( job.isFinished(), is( false ) );
+    assertThat( this.jobService.getJob( job.getId() ), is( sameInstance( job ) ) );
+
+    installed.countDown();
+    this.waitForJob( job );
+
+    assertThat( job.getState(), is( PluginJob.State.SUCCEEDED ) );
+    assertThat( job.getStatusMessage(), is( sameInstance( success ) ) );
+    verify( this.pluginService ).installPlugin( "plugin", "stable" );
+  }
+
+  /**
+   * Tests that an error status message fails the job.
+   */
+  @Test
+  public void testErrorStatusFailsJob() throws InterruptedException {
+    IDomainStatusMessage failure = this.statusMessageFactory.create( "ERROR_0003_FAIL", "failed" );
+    when( this.pluginService.uninstallPlugin( "plugin" ) ).thenReturn( failure );
+
+    PluginJob job = this.waitForJob( this.jobService.submitUninstall( "plugin" ) );
+
+    assertThat( job.getState(), is( PluginJob.State.FAILED ) );
+    assertThat( job.getStatusMessage(), is( sameInstance( failure ) ) );
+  }
+
+  /**
+   * Tests that an exception fails the job.
+   */
+  @Test
+  public void testExceptionFailsJob() throws InterruptedException {
+    when( this.pluginService.uninstallPlugin( "plugin" ) ).thenThrow( new IllegalStateException() );
+
+    PluginJob job = this.waitForJob( this.jobService.submitUninstall( "plugin" ) );
+
+    assertThat( job.getState(), is( PluginJob.State.FAILED ) );
+    assertThat( job.getStatusMessage().getCode(), startsWith( "ERROR" ) );
+  }
+
+  /**
+   * Tests that a job for a plugin with another job in progress is rejected.
+   */
+  @Test
+  public void testConcurrentJobForSamePluginIsRejected() throws InterruptedException {
+    CountDownLatch installed = new CountDownLatch( 1 );
+    IDomainStatusMessage success = this.statusMessageFactory.create( "PLUGIN_INSTALLED", "installed" );
+    when( this.pluginService.installPlugin( "plugin", "stable" ) ).thenAnswer( this.awaitAndReturn( installed, success ) );
+
+    PluginJob install = this.jobService.submitInstall( "plugin", "stable" );
+    PluginJob uninstall = this.jobService.submitUninstall( "plugin" );
+
+    assertThat( uninstall.getState(), is( PluginJob.State.FAILED ) );
+    verify( this.pluginService, never() ).uninstallPlugin( anyString() );
+
+    installed.countDown();
+    this.waitForJob( install );
+    assertThat( install.getState(), is( PluginJob.State.SUCCEEDED ) );
+  }
+
+  /**
+   * Tests that the batch install job is returned before the install finishes, and reports the outcome of each plugin
+   * once it does.
+   */
+  @Test
+  public void testBatchInstallRunsInBackground() throws InterruptedException {
+    final CountDownLatch installed = new CountDownLatch( 1 );
+    final Map<String, IDomainStatusMessage> statusMessages = new LinkedHashMap<>();
+    statusMessages.put( "plugin1", this.statusMessageFactory.create( "PLUGIN_INSTALLED", "installed" ) );
+    statusMessages.put( "plugin2", this.statusMessageFactory.create( "ERROR_0003_FAIL", "failed" ) );
+    when( this.pluginService.installPlugins( anyMap() ) ).thenAnswer( new Answer<Map<String, IDomainStatusMessage>>() {
+      @Override
+      public Map<String, IDomainStatusMessage> answer( InvocationOnMock invocation ) throws InterruptedException {
+        installed.await( 10, TimeUnit.SECONDS );
+        return statusMessages;
+      }
+    } );
+    Map<String, String> versionBranchesByPluginId = new LinkedHashMap<>();
+    versionBranchesByPluginId.put( "plugin1", "stable" );
+    versionBranchesByPluginId.put( "plugin2", "stable" );
+
+    PluginJob job = this.jobService.submitBatchInstall( versionBranchesByPluginId );
+    assertThat( job.isFinished(), is( false ) );
+    assertThat( job.getType(), is( PluginJob.Type.BATCH_INSTALL ) );
+
+    installed.countDown();
+    this.waitForJob( job );
+
+    assertThat( job.getState(), is( PluginJob.State.FAILED ) );
+    assertThat( job.getPluginStatusMessages(), is( equalTo( statusMessages ) ) );
+    verify( this.pluginService ).installPlugins( versionBranchesByPluginId );
+  }
+
+  /**
+   * Tests that a batch install leaves out the plugins with another job in progress, and that the plugins of a batch
+   * install in progress can not be changed by other jobs.
+   */
+  @Test
+  public void testBatchInstallTakesPluginLocks() throws InterruptedException {
+    CountDownLatch installed = new CountDownLatch( 1 );
+    IDomainStatusMessage success = this.statusMessageFactory.create( "PLUGIN_INSTALLED", "installed" );
+    when( this.pluginService.installPlugin( "plugin1", "stable" ) ).thenAnswer( this.awaitAndReturn( installed, success ) );
+    Map<String, IDomainStatusMessage> statusMessages = new LinkedHashMap<>();
+    statusMessages.put( "plugin2", success );
+    when( this.pluginService.installPlugins( anyMap() ) ).thenReturn( statusMessages );
+    Map<String, String> versionBranchesByPluginId = new LinkedHashMap<>();
+    versionBranchesByPluginId.put( "plugin1", "stable" );
+    versionBranchesByPluginId.put( "plugin2", "stable" );
+
+    PluginJob install = this.jobService.submitInstall( "plugin1", "stable" );
+    PluginJob batchInstall = this.waitForJob( this.jobService.submitBatchInstall( versionBranchesByPluginId ) );
+
+    assertThat( batchInstall.getState(), is( PluginJob.State.FAILED ) );
+    assertThat( batchInstall.getPluginStatusMessages().get( "plugin1" ).getCode(), is( "ERROR_0004_JOB_REJECTED" ) );
+    assertThat( batchInstall.getPluginStatusMessages().get( "plugin2" ), is( sameInstance( success ) ) );
+    verify( this.pluginService ).installPlugins( Collections.singletonMap( "plugin2", "stable" ) );
+
+    installed.countDown();
+    this.waitForJob( install );
+    assertThat( install.getState(), is( PluginJob.State.SUCCEEDED ) );
+  }
+
+  /**
+   * Tests that a job for a plugin of a batch install in progress is rejected.
+   */
+  @Test
+  public void testJobForPluginOfBatchInstallIsRejected() throws InterruptedException {
+    final CountDownLatch installed = new CountDownLatch( 1 );
+    final Map<String, IDomainStatusMessage> statusMessages = new LinkedHashMap<>();
+    statusMessages.put( "plugin", this.statusMessageFactory.create( "PLUGIN_INSTALLED", "installed" ) );
+    when( this.pluginService.installPlugins( anyMap() ) ).thenAnswer( new Answer<Map<String, IDomainStatusMessage>>() {
+      @Override
+      public Map<String, IDomainStatusMessage> answer( InvocationOnMock invocation ) throws InterruptedException {
+        installed.await( 10, TimeUnit.SECONDS );
+        return statusMessages;
+      }
+    } );
+    Map<String, String> versionBranchesByPluginId = new LinkedHashMap<>();
+    versionBranchesByPluginId.put( "plugin", "stable" );
+
+    PluginJob batchInstall = this.jobService.submitBatchInstall( versionBranchesByPluginId );
+    PluginJob uninstall = this.jobService.submitUninstall( "plugin" );
+
+    assertThat( uninstall.getState(), is( PluginJob.State.FAILED ) );
+    verify( this.pluginService, never() ).uninstallPlugin( anyString() );
+
+    installed.countDown();
+    this.waitForJob( batchInstall );
+    assertThat( batchInstall.getState(), is( PluginJob.State.SUCCEEDED ) );
+  }
+
+  /**
+   * Tests that a rollback of a plugin with another job in progress is rejected.
+   */
+  @Test
+  public void testRollbackOfBusyPluginIsRejected() throws InterruptedException {
+    CountDownLatch installed = new CountDownLatch( 1 );
+    IDomainStatusMessage success = this.statusMessageFactory.create( "PLUGIN_INSTALLED", "installed" );
+    when( this.pluginService.installPlugin( "plugin", "stable" ) ).thenAnswer( this.awaitAndReturn( installed, success ) );
+
+    PluginJob install = this.jobService.submitInstall( "plugin", "stable" );
+    IDomainStatusMessage rollback = this.jobService.rollbackPlugin( "plugin" );
+
+    assertThat( rollback.getCode(), is( "ERROR_0004_JOB_REJECTED" ) );
+    verify( this.pluginService, never() ).rollbackPlugin( anyString() );
+
+    installed.countDown();
+    this.waitForJob( install );
+  }
+
+  /**
+   * Tests that installing a plugin on the calling thread is rejected while a job for the plugin is in progress.
+   */
+  @Test
+  public void testInstallOfBusyPluginIsRejected() throws InterruptedException {
+    CountDownLatch uninstalled = new CountDownLatch( 1 );
+    IDomainStatusMessage success = this.statusMessageFactory.create( "PLUGIN_UNINSTALLED", "uninstalled" );
+    when( this.pluginService.uninstallPlugin( "plugin" ) ).thenAnswer( this.awaitAndReturn( uninstalled, success ) );
+
+    PluginJob uninstall = this.jobService.submitUninstall( "plugin" );
+    IDomainStatusMessage install = this.jobService.installPlugin( "plugin", "stable" );
+
+    assertThat( install.getCode(), is( "ERROR_0004_JOB_REJECTED" ) );
+    verify( this.pluginService, never() ).installPlugin( anyString(), anyString() );
+
+    uninstalled.countDown();
+    this.waitForJob( uninstall );
+
+    // the lock is released once the job is done
+    IDomainStatusMessage installed = this.statusMessageFactory.create( "PLUGIN_INSTALLED", "installed" );
+    when( this.pluginService.installPlugin( "plugin", "stable" ) ).thenReturn( installed );
+    assertThat( this.jobService.installPlugin( "plugin", "stable" ), is( sameInstance( installed ) ) );
+  }
+
+  /**
+   * Tests that a job for a plugin being uninstalled on the calling thread is rejected.
+   */
+  @Test
+  public void testJobForPluginBeingUninstalledIsRejected() throws InterruptedException {
+    final CountDownLatch uninstalled = new CountDownLatch( 1 );
+    final IDomainStatusMessage success = this.statusMessageFactory.create( "PLUGIN_UNINSTALLED", "uninstalled" );
+    when( this.pluginService.uninstallPlugin( "plugin" ) ).thenAnswer( this.awaitAndReturn( uninstalled, success ) );
+
+    final IDomainStatusMessage[] uninstall = new IDomainStatusMessage[ 1 ];
+    Thread uninstallThread = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        uninstall[ 0 ] = jobService.uninstallPlugin( "plugin" );
+      }
+    } );
+    uninstallThread.start();
+    verify( this.pluginService, timeout( 10000 ) ).uninstallPlugin( "plugin" );
+
+    PluginJob install = this.jobService.submitInstall( "plugin", "stable" );
+    uninstalled.countDown();
+    uninstallThread.join( 10000 );
+
+    assertThat( install.getState(), is( PluginJob.State.FAILED ) );
+    verify( this.pluginService, never() ).installPlugin( anyString(), anyString() );
+    assertThat( uninstall[ 0 ], is( sameInstance( success ) ) );
+  }
+
+  /**
+   * Tests that a job for a plugin being rolled back is rejected.
+   */
+  @Test
+  public void testJobForPluginBeingRolledBackIsRejected() throws InterruptedException {
+    final CountDownLatch rolledBack = new CountDownLatch( 1 );
+    final IDomainStatusMessage success = this.statusMessageFactory.create( "PLUGIN_ROLLED_BACK", "rolled back" );
+    when( this.pluginService.rollbackPlugin( "plugin" ) ).thenAnswer( this.awaitAndReturn( rolledBack, success ) );
+
+    final IDomainStatusMessage[] rollback = new IDomainStatusMessage[ 1 ];
+    Thread rollbackThread = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        rollback[ 0 ] = jobService.rollbackPlugin( "plugin" );
+      }
+    } );
+    rollbackThread.start();
+    verify( this.pluginService, timeout( 10000 ) ).rollbackPlugin( "plugin" );
+
+    PluginJob uninstall = this.jobService.submitUninstall( "plugin" );
+    rolledBack.countDown();
+    rollbackThread.join( 10000 );
+
+    assertThat( uninstall.getState(), is( PluginJob.State.FAILED ) );
+    verify( this.pluginService, never() ).uninstallPlugin( anyString() );
+    assertThat( rollback[ 0 ], is( sameInstance( success ) ) );
+
+    // the lock is released once the rollback is done
+    when( this.pluginService.uninstallPlugin( "plugin" ) )
+      .thenReturn( this.statusMessageFactory.create( "PLUGIN_UNINSTALLED", "uninstalled" ) );
+    assertThat( this.waitForJob( this.jobService.submitUninstall( "plugin" ) ).getState(),
+      is( PluginJob.State.SUCCEEDED ) );
+  }
+
+  /**
+   * Tests that unknown jobs are not found.
+   */
+  @Test
+  public void testUnknownJobIsNotFound() {
+    assertThat( this.jobService.getJob( "unknown" ), is( nullValue() ) );
+    assertThat( this.jobService.getJob( null ), is( nullValue() ) );
+  }
+}
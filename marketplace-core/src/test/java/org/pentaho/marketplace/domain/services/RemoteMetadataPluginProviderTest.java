@@ -0,0 +1,325 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.serialization.BinaryCatalogSerializer;
+import org.pentaho.marketplace.domain.model.entities.serialization.IMarketplaceXmlSerializer;
+import org.pentaho.marketplace.domain.model.entities.serialization.jaxb.JAXBMarketplaceXmlSerializer;
+import org.pentaho.marketplace.domain.model.factories.CategoryFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginVersionFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RemoteMetadataPluginProviderTest {
+
+  private static final String ETAG = "\"metadata-v1\"";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private byte[] metadata;
+  private volatile boolean available = true;
+  private volatile boolean notModified = false;
+  private volatile CountDownLatch requestReceived;
+  private volatile CountDownLatch responseAllowed;
+  private final AtomicInteger fullResponses = new AtomicInteger();
+  private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+  // region auxiliary methods
+  private RemoteMetadataPluginProvider createProvider() throws IOException {
+    return this.createProvider(
+      new JAXBMarketplaceXmlSerializer( new PluginFactory(), new PluginVersionFactory(), new CategoryFactory() ) );
+  }
+
+  private RemoteMetadataPluginProvider createProvider( IMarketplaceXmlSerializer serializer ) throws IOException {
+    RemoteMetadataPluginProvider provider = new RemoteMetadataPluginProvider( serializer );
+    provider.setUrl( new URL( "http://localhost:" + this.server.getAddress().getPort() + "/marketplace.xml" ) );
+    return provider;
+  }
+  // endregion
+
+  @Before
+  public void setup() throws IOException {
+    try ( InputStream inputStream = this.getClass().getResourceAsStream( "/metadata.xml" ) ) {
+      this.metadata = IOUtils.toByteArray( inputStream );
+    }
+
+    this.server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+    this.server.createContext( "/marketplace.xml", new HttpHandler() {
+      @Override public void handle( HttpExchange exchange ) throws IOException {
+        if ( !available ) {
+          exchange.sendResponseHeaders( 503, -1 );
+          exchange.close();
+          return;
+        }
+
+        CountDownLatch received = requestReceived;
+        if ( received != null ) {
+          received.countDown();
+          try {
+            responseAllowed.await();
+          } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+          }
+        }
+
+        if ( notModified || ETAG.equals( exchange.getRequestHeaders().getFirst( "If-None-Match" ) ) ) {
+          notModifiedResponses.incrementAndGet();
+          exchange.sendResponseHeaders( 304, -1 );
+          exchange.close();
+          return;
+        }
+
+        fullResponses.incrementAndGet();
+        exchange.getResponseHeaders().add( "ETag", ETAG );
+        exchange.sendResponseHeaders( 200, metadata.length );
+        try ( OutputStream body = exchange.getResponseBody() ) {
+          body.write( metadata );
+        }
+      }
+    } );
+    this.server.start();
+  }
+
+  @After
+  public void tearDown() {
+    this.server.stop( 0 );
+  }
+
+  /**
+   * Tests that the metadata is not requested again while the cache is valid.
+   */
+  @Test
+  public void testMetadataIsCachedWithinTtl() throws IOException {
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    provider.setCacheTtlSeconds( 3600 );
+
+    Map<String, IPlugin> first = provider.getPlugins();
+    Map<String, IPlugin> second = provider.getPlugins();
+
+    assertThat( first.isEmpty(), is( false ) );
+    assertThat( second.keySet(), is( equalTo( first.keySet() ) ) );
+    assertThat( this.fullResponses.get(), is( 1 ) );
+    assertThat( this.notModifiedResponses.get(), is( 0 ) );
+  }
+
+  /**
+   * Tests that once the cache expires the metadata is revalidated and a 304 reuses the parsed plugins.
+   */
+  @Test
+  public void testExpiredMetadataIsRevalidated() throws IOException {
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    provider.setCacheTtlSeconds( 0 );
+
+    Map<String, IPlugin> first = provider.getPlugins();
+    Map<String, IPlugin> second = provider.getPlugins();
+
+    assertThat( second.keySet(), is( equalTo( first.keySet() ) ) );
+    assertThat( this.fullResponses.get(), is( 1 ) );
+    assertThat( this.notModifiedResponses.get(), is( 1 ) );
+  }
+
+  /**
+   * Tests that the cached plugins are shared between callers, without copies.
+   */
+  @Test
+  public void testReturnedPluginsAreShared() throws IOException {
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    provider.setCacheTtlSeconds( 3600 );
+
+    Map<String, IPlugin> first = provider.getPlugins();
+    Map<String, IPlugin> second = provider.getPlugins();
+
+    assertThat( second, is( sameInstance( first ) ) );
+  }
+
+  /**
+   * Tests that the shared plugins can not be changed by callers.
+   */
+  @Test( expected = UnsupportedOperationException.class )
+  public void testReturnedPluginsCanNotBeChanged() throws IOException {
+    RemoteMetadataPluginProvider provider = this.createProvider();
+
+    provider.getPlugins().clear();
+  }
+
+  /**
+   * Tests that the persisted snapshot is used after a restart when the remote server is unreachable.
+   */
+  @Test
+  public void testSnapshotIsUsedWhenRemoteIsUnreachable() throws IOException {
+    MetadataSnapshotStore snapshotStore = new MetadataSnapshotStore( this.temporaryFolder.getRoot().getPath() );
+
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    provider.setSnapshotStore( snapshotStore );
+    provider.init();
+    Map<String, IPlugin> remotePlugins = provider.getPlugins();
+
+    MetadataSnapshotStore.Snapshot snapshot = snapshotStore.load();
+    assertThat( snapshot, is( notNullValue() ) );
+    assertThat( snapshot.getETag(), is( ETAG ) );
+    assertThat( snapshot.getUrl(), is( provider.getUrl().toString() ) );
+
+    // restart with the remote server down
+    this.available = false;
+    RemoteMetadataPluginProvider restartedProvider = this.createProvider();
+    restartedProvider.setSnapshotStore( snapshotStore );
+    restartedProvider.init();
+
+    assertThat( restartedProvider.getCachedPlugins().keySet(), is( equalTo( remotePlugins.keySet() ) ) );
+    assertThat( restartedProvider.getPlugins().keySet(), is( equalTo( remotePlugins.keySet() ) ) );
+  }
+
+  /**
+   * Tests that a snapshot obtained from a different url is ignored.
+   */
+  @Test
+  public void testSnapshotFromOtherUrlIsIgnored() throws IOException {
+    MetadataSnapshotStore snapshotStore = new MetadataSnapshotStore( this.temporaryFolder.getRoot().getPath() );
+    snapshotStore.save( new MetadataSnapshotStore.Snapshot( this.metadata, "http://localhost/other.xml", ETAG, null ) );
+
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    provider.setSnapshotStore( snapshotStore );
+    provider.init();
+
+    assertThat( provider.getCachedPlugins(), is( nullValue() ) );
+  }
+
+  /**
+   * Tests that the plugins are read from the persisted catalog after a restart, without parsing the metadata.
+   */
+  @Test
+  public void testCatalogSnapshotIsUsedOnRestart() throws IOException {
+    MetadataSnapshotStore snapshotStore = new MetadataSnapshotStore( this.temporaryFolder.getRoot().getPath() );
+    BinaryCatalogSerializer catalogSerializer =
+      new BinaryCatalogSerializer( new PluginFactory(), new PluginVersionFactory(), new CategoryFactory() );
+
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    provider.setSnapshotStore( snapshotStore );
+    provider.setCatalogSerializer( catalogSerializer );
+    provider.init();
+    Map<String, IPlugin> remotePlugins = provider.getPlugins();
+    assertThat( snapshotStore.loadCatalog(), is( notNullValue() ) );
+
+    // restart with the remote server down
+    this.available = false;
+    IMarketplaceXmlSerializer xmlSerializer = mock( IMarketplaceXmlSerializer.class );
+    RemoteMetadataPluginProvider restartedProvider = this.createProvider( xmlSerializer );
+    restartedProvider.setSnapshotStore( snapshotStore );
+    restartedProvider.setCatalogSerializer( catalogSerializer );
+    restartedProvider.init();
+
+    assertThat( restartedProvider.getCachedPlugins(), is( equalTo( remotePlugins ) ) );
+    verify( xmlSerializer, never() ).getPlugins( any( InputStream.class ) );
+  }
+
+  /**
+   * Tests that the metadata is parsed when the persisted catalog was not written for it.
+   */
+  @Test
+  public void testStaleCatalogSnapshotIsIgnored() throws IOException {
+    MetadataSnapshotStore snapshotStore = new MetadataSnapshotStore( this.temporaryFolder.getRoot().getPath() );
+    BinaryCatalogSerializer catalogSerializer =
+      new BinaryCatalogSerializer( new PluginFactory(), new PluginVersionFactory(), new CategoryFactory() );
+
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    provider.setSnapshotStore( snapshotStore );
+    provider.setCatalogSerializer( catalogSerializer );
+    provider.init();
+    Map<String, IPlugin> remotePlugins = provider.getPlugins();
+
+    // a catalog with a single plugin left behind by other metadata
+    IPlugin plugin = remotePlugins.values().iterator().next();
+    byte[] otherMetadata = "<market/>".getBytes( "UTF-8" );
+    snapshotStore.saveCatalog(
+      catalogSerializer.write( Collections.singletonMap( plugin.getId(), plugin ), otherMetadata ) );
+
+    this.available = false;
+    RemoteMetadataPluginProvider restartedProvider = this.createProvider();
+    restartedProvider.setSnapshotStore( snapshotStore );
+    restartedProvider.setCatalogSerializer( catalogSerializer );
+    restartedProvider.init();
+
+    assertThat( restartedProvider.getCachedPlugins().keySet(), is( equalTo( remotePlugins.keySet() ) ) );
+  }
+
+  /**
+   * Tests that a not modified response without previously obtained metadata is a failed fetch.
+   */
+  @Test
+  public void testNotModifiedWithoutPreviousMetadataFails() throws IOException {
+    RemoteMetadataPluginProvider provider = this.createProvider();
+    this.notModified = true;
+
+    assertThat( provider.refresh(), is( false ) );
+    assertThat( provider.getPlugins().isEmpty(), is( true ) );
+    assertThat( provider.getCachedPlugins(), is( nullValue() ) );
+  }
+
+  /**
+   * Tests that metadata fetched while the url is changed is not cached for the new url.
+   */
+  @Test
+  public void testUrlChangedDuringFetchIsNotCached() throws Exception {
+    final RemoteMetadataPluginProvider provider = this.createProvider();
+    this.requestReceived = new CountDownLatch( 1 );
+    this.responseAllowed = new CountDownLatch( 1 );
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Map<String, IPlugin>> fetch = executor.submit( new Callable<Map<String, IPlugin>>() {
+        @Override public Map<String, IPlugin> call() {
+          return provider.getPlugins();
+        }
+      } );
+      this.requestReceived.await();
+      provider.setUrl( new URL( "http://localhost:" + this.server.getAddress().getPort() + "/other.xml" ) );
+      this.responseAllowed.countDown();
+
+      assertThat( fetch.get().isEmpty(), is( false ) );
+      assertThat( provider.getCachedPlugins(), is( nullValue() ) );
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
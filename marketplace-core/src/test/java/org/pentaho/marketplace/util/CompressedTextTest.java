@@ -0,0 +1,95 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class CompressedTextTest {
+
+  private static String longText() {
+    StringBuilder text = new StringBuilder();
+    for ( int i = 0; i < 100; i++ ) {
+      text.append( "Licensed under the Apache License, Version 2.0 - édition " ).append( i ).append( '\n' );
+    }
+    return text.toString();
+  }
+
+  /**
+   * Tests that a long text is kept in less memory and read back unchanged.
+   */
+  @Test
+  public void testLongTextRoundTrip() {
+    String text = longText();
+
+    CompressedText compressedText = CompressedText.of( text );
+
+    assertThat( compressedText.getText(), is( equalTo( text ) ) );
+    assertThat( compressedText.getSize(), is( lessThan( text.length() ) ) );
+  }
+
+  /**
+   * Tests that a short text is kept as it is.
+   */
+  @Test
+  public void testShortTextIsKept() {
+    String text = "Apache 2.0";
+
+    CompressedText compressedText = CompressedText.of( text );
+
+    assertThat( compressedText.getText(), is( sameInstance( text ) ) );
+  }
+
+  /**
+   * Tests that a deflated text is restored from its deflated bytes.
+   */
+  @Test
+  public void testDeflatedRoundTrip() {
+    CompressedText compressedText = CompressedText.of( longText() );
+
+    CompressedText restoredText =
+      CompressedText.ofDeflated( compressedText.getDeflated(), compressedText.getInflatedLength() );
+
+    assertThat( compressedText.isDeflated(), is( true ) );
+    assertThat( restoredText, is( equalTo( compressedText ) ) );
+    assertThat( restoredText.getText(), is( equalTo( longText() ) ) );
+    assertThat( CompressedText.of( "short" ).getDeflated(), is( nullValue() ) );
+  }
+
+  /**
+   * Tests that null texts are kept as null.
+   */
+  @Test
+  public void testNullText() {
+    assertThat( CompressedText.of( null ), is( nullValue() ) );
+    assertThat( CompressedText.textOf( null ), is( nullValue() ) );
+  }
+
+  /**
+   * Tests that compressed texts are equal if their texts are equal.
+   */
+  @Test
+  public void testEquals() {
+    CompressedText compressedText = CompressedText.of( longText() );
+    CompressedText sameText = CompressedText.of( longText() );
+    CompressedText otherText = CompressedText.of( longText() + "." );
+
+    assertThat( compressedText, is( equalTo( sameText ) ) );
+    assertThat( compressedText.hashCode(), is( equalTo( sameText.hashCode() ) ) );
+    assertThat( compressedText, is( not( equalTo( otherText ) ) ) );
+    assertThat( CompressedText.of( "short" ), is( equalTo( CompressedText.of( "short" ) ) ) );
+  }
+}
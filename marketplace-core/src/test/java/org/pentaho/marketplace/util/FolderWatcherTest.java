@@ -0,0 +1,106 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class FolderWatcherTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Semaphore changes = new Semaphore( 0 );
+  private FolderWatcher watcher;
+
+  // region auxiliary methods
+  private void startWatching( File folder ) throws IOException {
+    this.watcher = new FolderWatcher( "Test Folder Watcher Thread", Collections.singletonList( folder ),
+      new Runnable() {
+        @Override
+        public void run() {
+          changes.release();
+        }
+      } );
+    this.watcher.start();
+  }
+
+  private boolean awaitChange() throws InterruptedException {
+    return this.changes.tryAcquire( TIMEOUT_SECONDS, TimeUnit.SECONDS );
+  }
+  // endregion
+
+  @After
+  public void tearDown() {
+    if ( this.watcher != null ) {
+      this.watcher.close();
+    }
+  }
+
+  /**
+   * Tests that a change in a watched folder is notified.
+   */
+  @Test
+  public void testChangeIsNotified() throws IOException, InterruptedException {
+    File folder = this.temporaryFolder.newFolder( "plugins" );
+    this.startWatching( folder );
+
+    assertThat( new File( folder, "plugin" ).mkdir(), is( true ) );
+
+    assertThat( this.awaitChange(), is( true ) );
+  }
+
+  /**
+   * Tests that a folder missing when the watcher starts is watched once it is created, e.g. the folder of a plugin type
+   * created by the first install of that type.
+   */
+  @Test
+  public void testMissingFolderIsWatchedOnceCreated() throws IOException, InterruptedException {
+    File folder = new File( this.temporaryFolder.getRoot(), "plugins" + File.separator + "steps" );
+    this.startWatching( folder );
+
+    assertThat( folder.mkdirs(), is( true ) );
+    assertThat( this.awaitChange(), is( true ) );
+
+    this.changes.drainPermits();
+    assertThat( new File( folder, "plugin" ).mkdir(), is( true ) );
+    assertThat( this.awaitChange(), is( true ) );
+  }
+
+  /**
+   * Tests that changes to the parent of a missing folder, other than its creation, are not notified.
+   */
+  @Test
+  public void testParentOfMissingFolderChangeIsNotNotified() throws IOException, InterruptedException {
+    File folder = new File( this.temporaryFolder.getRoot(), "steps" );
+    this.startWatching( folder );
+
+    assertThat( new File( this.temporaryFolder.getRoot(), "other" ).mkdir(), is( true ) );
+
+    assertThat( this.changes.tryAcquire( 1, TimeUnit.SECONDS ), is( false ) );
+  }
+}
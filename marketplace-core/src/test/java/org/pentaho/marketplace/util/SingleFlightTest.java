@@ -0,0 +1,119 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  /**
+   * Tests that concurrent callers share a single execution and all receive its result.
+   */
+  @Test( timeout = 10000 )
+  public void testConcurrentCallsAreCoalesced() throws Exception {
+    final SingleFlight<Integer> singleFlight = new SingleFlight<>();
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+
+    final Callable<Integer> operation = new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        started.countDown();
+        release.await();
+        return executions.incrementAndGet();
+      }
+    };
+    Callable<Integer> caller = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return singleFlight.execute( operation );
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool( CALLERS );
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      results.add( executor.submit( caller ) );
+      started.await();
+      for ( int i = 1; i < CALLERS; i++ ) {
+        results.add( executor.submit( caller ) );
+      }
+
+      // only let the execution complete once every other caller is waiting on it
+      while ( singleFlight.getCoalescedCount() < CALLERS - 1 ) {
+        Thread.sleep( 10 );
+      }
+      release.countDown();
+
+      for ( Future<Integer> result : results ) {
+        assertThat( result.get(), is( 1 ) );
+      }
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination( 1, TimeUnit.SECONDS );
+    }
+
+    assertThat( executions.get(), is( 1 ) );
+    assertThat( singleFlight.getExecutionCount(), is( 1L ) );
+    assertThat( singleFlight.getCoalescedCount(), is( (long) CALLERS - 1 ) );
+  }
+
+  /**
+   * Tests that sequential calls each execute the operation.
+   */
+  @Test
+  public void testSequentialCallsAreNotCoalesced() {
+    SingleFlight<Integer> singleFlight = new SingleFlight<>();
+    final AtomicInteger executions = new AtomicInteger();
+    Callable<Integer> operation = new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return executions.incrementAndGet();
+      }
+    };
+
+    assertThat( singleFlight.execute( operation ), is( 1 ) );
+    assertThat( singleFlight.execute( operation ), is( 2 ) );
+    assertThat( singleFlight.getCoalescedCount(), is( 0L ) );
+  }
+
+  /**
+   * Tests that runtime exceptions thrown by the operation reach the caller.
+   */
+  @Test( expected = UnsupportedOperationException.class )
+  public void testOperationExceptionIsRethrown() {
+    new SingleFlight<Object>().execute( new Callable<Object>() {
+      @Override
+      public Object call() {
+        throw new UnsupportedOperationException();
+      }
+    } );
+  }
+}
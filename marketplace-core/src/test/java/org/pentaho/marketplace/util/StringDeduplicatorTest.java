@@ -0,0 +1,65 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StringDeduplicatorTest {
+
+  /**
+   * Tests that equal strings are replaced by the first instance seen.
+   */
+  @Test
+  public void testEqualStringsAreSameInstance() {
+    StringDeduplicator strings = new StringDeduplicator();
+    String first = new String( "TRUNK" );
+    String second = new String( "TRUNK" );
+
+    assertThat( strings.deduplicate( first ), is( sameInstance( first ) ) );
+    assertThat( strings.deduplicate( second ), is( sameInstance( first ) ) );
+    assertThat( strings.deduplicate( "STABLE" ), is( equalTo( "STABLE" ) ) );
+    assertThat( strings.size(), is( 2 ) );
+  }
+
+  /**
+   * Tests that no more strings than the maximum size are kept, and new ones are returned as they are.
+   */
+  @Test
+  public void testTableIsBounded() {
+    StringDeduplicator strings = new StringDeduplicator( 2 );
+    String kept = new String( "5.0" );
+    strings.deduplicate( kept );
+    strings.deduplicate( "5.1" );
+
+    String notKept = new String( "5.2" );
+    assertThat( strings.deduplicate( notKept ), is( sameInstance( notKept ) ) );
+    assertThat( strings.deduplicate( new String( "5.2" ) ), is( not( sameInstance( notKept ) ) ) );
+    assertThat( strings.deduplicate( new String( "5.0" ) ), is( sameInstance( kept ) ) );
+    assertThat( strings.size(), is( 2 ) );
+  }
+
+  /**
+   * Tests that null values are returned as null.
+   */
+  @Test
+  public void testNullIsIgnored() {
+    StringDeduplicator strings = new StringDeduplicator();
+
+    assertThat( strings.deduplicate( null ), is( nullValue() ) );
+    assertThat( strings.size(), is( 0 ) );
+  }
+}
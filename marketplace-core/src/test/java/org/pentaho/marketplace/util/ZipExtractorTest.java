@@ -0,0 +1,163 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ZipExtractorTest {
+
+  private static final int JAR_COUNT = 500;
+  private static final int RESOURCE_COUNT = 1500;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  // region auxiliary methods
+  /**
+   * Creates an archive laid out like a plugin with many libraries and resources.
+   */
+  private File createPluginArchive() throws IOException {
+    File archive = this.temporaryFolder.newFile( "plugin.zip" );
+    ZipOutputStream zipOutputStream = new ZipOutputStream( new FileOutputStream( archive ) );
+    try {
+      zipOutputStream.putNextEntry( new ZipEntry( "plugin/" ) );
+      zipOutputStream.putNextEntry( new ZipEntry( "plugin/lib/" ) );
+      for ( int i = 0; i < JAR_COUNT; i++ ) {
+        zipOutputStream.putNextEntry( new ZipEntry( "plugin/lib/library-" + i + ".jar" ) );
+        zipOutputStream.write( getContent( "library-" + i, 4096 ) );
+      }
+      for ( int i = 0; i < RESOURCE_COUNT; i++ ) {
+        // parent folders without entries of their own
+        zipOutputStream.putNextEntry( new ZipEntry( "plugin/resources/" + ( i % 10 ) + "/resource-" + i + ".txt" ) );
+        zipOutputStream.write( getContent( "resource-" + i, 256 ) );
+      }
+    } finally {
+      zipOutputStream.close();
+    }
+    return archive;
+  }
+
+  private static byte[] getContent( String name, int length ) {
+    StringBuilder content = new StringBuilder( length );
+    while ( content.length() < length ) {
+      content.append( name ).append( '\n' );
+    }
+    return content.toString().getBytes( StandardCharsets.UTF_8 );
+  }
+  // endregion
+
+  /**
+   * Tests that every file of a large archive is extracted with its content when extracting in parallel.
+   */
+  @Test
+  public void testLargeArchiveIsExtractedInParallel() throws IOException {
+    File archive = this.createPluginArchive();
+    File folder = this.temporaryFolder.newFolder( "parallel" );
+
+    ZipExtractor extractor = new ZipExtractor();
+    extractor.setParallelism( 4 );
+    extractor.setParallelThresholdBytes( 0 );
+
+    assertThat( extractor.extract( archive, folder ), is( JAR_COUNT + RESOURCE_COUNT ) );
+    for ( int i = 0; i < JAR_COUNT; i++ ) {
+      File jar = new File( folder, "plugin/lib/library-" + i + ".jar" );
+      assertThat( FileUtils.readFileToByteArray( jar ), is( getContent( "library-" + i, 4096 ) ) );
+    }
+    for ( int i = 0; i < RESOURCE_COUNT; i++ ) {
+      File resource = new File( folder, "plugin/resources/" + ( i % 10 ) + "/resource-" + i + ".txt" );
+      assertThat( FileUtils.readFileToByteArray( resource ), is( getContent( "resource-" + i, 256 ) ) );
+    }
+  }
+
+  /**
+   * Tests that parallel and single threaded extraction produce the same files.
+   */
+  @Test
+  public void testParallelExtractionMatchesSequentialExtraction() throws IOException {
+    File archive = this.createPluginArchive();
+
+    ZipExtractor parallelExtractor = new ZipExtractor();
+    parallelExtractor.setParallelism( 4 );
+    parallelExtractor.setParallelThresholdBytes( 0 );
+    File parallelFolder = this.temporaryFolder.newFolder( "parallel" );
+    parallelExtractor.extract( archive, parallelFolder );
+
+    ZipExtractor sequentialExtractor = new ZipExtractor();
+    sequentialExtractor.setParallelism( 1 );
+    File sequentialFolder = this.temporaryFolder.newFolder( "sequential" );
+    sequentialExtractor.extract( archive, sequentialFolder );
+
+    assertThat( FileUtils.sizeOfDirectory( parallelFolder ), is( FileUtils.sizeOfDirectory( sequentialFolder ) ) );
+    assertThat( FileUtils.listFiles( parallelFolder, null, true ).size(),
+      is( FileUtils.listFiles( sequentialFolder, null, true ).size() ) );
+  }
+
+  /**
+   * Tests that an archive read from a stream is extracted, and the stream is read to its end.
+   */
+  @Test
+  public void testStreamedArchiveIsExtracted() throws IOException {
+    File archive = this.createPluginArchive();
+    File folder = this.temporaryFolder.newFolder( "streamed" );
+
+    CountingInputStream inputStream = new CountingInputStream( new FileInputStream( archive ) );
+    try {
+      assertThat( new ZipExtractor().extract( inputStream, folder ), is( JAR_COUNT + RESOURCE_COUNT ) );
+    } finally {
+      inputStream.close();
+    }
+
+    assertThat( inputStream.getByteCount(), is( archive.length() ) );
+    File jar = new File( folder, "plugin/lib/library-0.jar" );
+    assertThat( FileUtils.readFileToByteArray( jar ), is( getContent( "library-0", 4096 ) ) );
+  }
+
+  /**
+   * Tests that an entry that would be extracted outside of the target folder is rejected.
+   */
+  @Test
+  public void testEntryOutsideOfFolderIsRejected() throws IOException {
+    File archive = this.temporaryFolder.newFile( "evil.zip" );
+    ZipOutputStream zipOutputStream = new ZipOutputStream( new FileOutputStream( archive ) );
+    try {
+      zipOutputStream.putNextEntry( new ZipEntry( "../evil.txt" ) );
+      zipOutputStream.write( getContent( "evil", 16 ) );
+    } finally {
+      zipOutputStream.close();
+    }
+    File folder = this.temporaryFolder.newFolder( "target" );
+
+    try {
+      new ZipExtractor().extract( archive, folder );
+      throw new AssertionError( "Entry outside of the folder was extracted" );
+    } catch ( IOException e ) {
+      assertThat( new File( folder.getParentFile(), "evil.txt" ).exists(), is( false ) );
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.marketplace.util.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.marketplace.util.Digests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HttpUtilTest {
+
+  private static final String TEXT = "Plugins für Pentaho – ✓";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private byte[] content;
+
+  // region auxiliary methods
+  private String getUrl( String path ) {
+    return "http://localhost:" + this.server.getAddress().getPort() + path;
+  }
+
+  private void respond( HttpExchange exchange, byte[] body ) throws IOException {
+    exchange.sendResponseHeaders( 200, body.length );
+    try ( OutputStream outputStream = exchange.getResponseBody() ) {
+      outputStream.write( body );
+    }
+  }
+  // endregion
+
+  @Before
+  public void setup() throws IOException {
+    this.content = new byte[ 1024 * 1024 + 7 ];
+    new Random( 7 ).nextBytes( this.content );
+
+    this.server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+    this.server.createContext( "/package.zip", new HttpHandler() {
+      @Override public void handle( HttpExchange exchange ) throws IOException {
+        respond( exchange, content );
+      }
+    } );
+    this.server.createContext( "/text", new HttpHandler() {
+      @Override public void handle( HttpExchange exchange ) throws IOException {
+        respond( exchange, TEXT.getBytes( StandardCharsets.UTF_8 ) );
+      }
+    } );
+    this.server.start();
+  }
+
+  @After
+  public void tearDown() {
+    this.server.stop( 0 );
+  }
+
+  /**
+   * Tests that the downloaded file, its size and its digest match the served content.
+   */
+  @Test
+  public void testDownloadToFile() throws IOException {
+    File target = this.temporaryFolder.newFile();
+
+    DownloadResult result = HttpUtil.downloadToFile( this.getUrl( "/package.zip" ), target.toPath() );
+
+    assertThat( FileUtils.readFileToByteArray( target ), is( equalTo( this.content ) ) );
+    assertThat( result.getSize(), is( (long) this.content.length ) );
+    assertThat( result.getDigest(), is( Digests.sha256Of( target ) ) );
+    assertThat( result.getElapsedMillis(), is( greaterThanOrEqualTo( 0L ) ) );
+  }
+
+  /**
+   * Tests that nothing is downloaded when the server does not answer with the content.
+   */
+  @Test
+  public void testDownloadToFileOfMissingResource() throws IOException {
+    File target = new File( this.temporaryFolder.getRoot(), "missing.zip" );
+
+    DownloadResult result = HttpUtil.downloadToFile( this.getUrl( "/missing.zip" ), target.toPath() );
+
+    assertThat( result, is( nullValue() ) );
+    assertThat( target.exists(), is( false ) );
+  }
+
+  /**
+   * Tests that text content is decoded as UTF-8.
+   */
+  @Test
+  public void testGetURLContentDecodesUtf8() {
+    assertThat( HttpUtil.getURLContent( this.getUrl( "/text" ) ), is( TEXT ) );
+  }
+}
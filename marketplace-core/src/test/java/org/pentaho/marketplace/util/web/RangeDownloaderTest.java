@@ -0,0 +1,265 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+
+package org.pentaho.marketplace.util.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.marketplace.util.Digests;
+import org.pentaho.marketplace.util.DownloadProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RangeDownloaderTest {
+
+  private static final int FILE_SIZE = 3 * 1024 * 1024 + 123;
+  private static final String ETAG = "\"large-package-v1\"";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private byte[] content;
+  private volatile boolean acceptRanges = true;
+  private final AtomicInteger connectionsToDrop = new AtomicInteger();
+  private final List<String> requestedRanges = new CopyOnWriteArrayList<>();
+
+  // region auxiliary methods
+  private String getUrl() {
+    return "http://localhost:" + this.server.getAddress().getPort() + "/large-package.zip";
+  }
+
+  private File download( RangeDownloader downloader ) throws IOException {
+    File target = this.temporaryFolder.newFile();
+    RangeDownloader.Result result = downloader.download( this.getUrl(), target );
+    assertThat( result.getLength(), is( (long) FILE_SIZE ) );
+    return target;
+  }
+
+  private void send( HttpExchange exchange, int status, int start, int end ) throws IOException {
+    exchange.getResponseHeaders().add( "ETag", ETAG );
+    if ( acceptRanges ) {
+      exchange.getResponseHeaders().add( "Accept-Ranges", "bytes" );
+    }
+    if ( status == 206 ) {
+      exchange.getResponseHeaders().add( "Content-Range", "bytes " + start + "-" + end + "/" + content.length );
+    }
+
+    int length = end - start + 1;
+    if ( "HEAD".equals( exchange.getRequestMethod() ) ) {
+      exchange.getResponseHeaders().add( "Content-Length", String.valueOf( length ) );
+      exchange.sendResponseHeaders( status, -1 );
+      exchange.close();
+      return;
+    }
+
+    exchange.sendResponseHeaders( status, length );
+    OutputStream body = exchange.getResponseBody();
+    if ( connectionsToDrop.getAndDecrement() > 0 ) {
+      // send half of the bytes and drop the connection
+      body.write( content, start, length / 2 );
+      body.flush();
+      throw new IOException( "Connection dropped" );
+    }
+    body.write( content, start, length );
+    body.close();
+  }
+  // endregion
+
+  @Before
+  public void setup() throws IOException {
+    this.content = new byte[ FILE_SIZE ];
+    new Random( 42 ).nextBytes( this.content );
+
+    this.server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+    this.server.createContext( "/large-package.zip", new HttpHandler() {
+      @Override public void handle( HttpExchange exchange ) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst( "Range" );
+        if ( range == null || !acceptRanges ) {
+          send( exchange, 200, 0, content.length - 1 );
+          return;
+        }
+        if ( !ETAG.equals( exchange.getRequestHeaders().getFirst( "If-Range" ) ) ) {
+          send( exchange, 200, 0, content.length - 1 );
+          return;
+        }
+
+        requestedRanges.add( range );
+        String[] bounds = range.substring( "bytes=".length() ).split( "-", -1 );
+        int start = Integer.parseInt( bounds[ 0 ] );
+        int end = bounds[ 1 ].isEmpty() ? content.length - 1 : Integer.parseInt( bounds[ 1 ] );
+        send( exchange, 206, start, end );
+      }
+    } );
+    this.server.start();
+  }
+
+  @After
+  public void tearDown() {
+    this.server.stop( 0 );
+  }
+
+  /**
+   * Tests that a large file is fetched in parallel chunks that are put together in order.
+   */
+  @Test
+  public void testLargeFileIsDownloadedInParallelChunks() throws IOException {
+    RangeDownloader downloader = new RangeDownloader();
+    downloader.setParallelThresholdBytes( 1024 * 1024 );
+    downloader.setChunkSizeBytes( 1024 * 1024 );
+
+    File target = this.download( downloader );
+
+    assertThat( FileUtils.readFileToByteArray( target ), is( equalTo( this.content ) ) );
+    assertThat( this.requestedRanges.size(), is( 4 ) );
+    assertThat( this.requestedRanges, hasItem( "bytes=3145728-" + ( FILE_SIZE - 1 ) ) );
+  }
+
+  /**
+   * Tests that a small file is downloaded in a single request.
+   */
+  @Test
+  public void testSmallFileIsDownloadedInOnePiece() throws IOException {
+    File target = this.download( new RangeDownloader() );
+
+    assertThat( FileUtils.readFileToByteArray( target ), is( equalTo( this.content ) ) );
+    assertThat( this.requestedRanges, is( empty() ) );
+  }
+
+  /**
+   * Tests that a dropped connection is resumed from the last byte received instead of starting over.
+   */
+  @Test
+  public void testDroppedConnectionIsResumed() throws IOException {
+    this.connectionsToDrop.set( 1 );
+
+    File target = this.download( new RangeDownloader() );
+
+    assertThat( FileUtils.readFileToByteArray( target ), is( equalTo( this.content ) ) );
+    assertThat( this.requestedRanges.size(), is( 1 ) );
+    assertThat( this.requestedRanges.get( 0 ), startsWith( "bytes=" + FILE_SIZE / 2 + "-" ) );
+  }
+
+  /**
+   * Tests that dropped connections of parallel chunks are resumed.
+   */
+  @Test
+  public void testDroppedChunkIsResumed() throws IOException {
+    this.connectionsToDrop.set( 2 );
+    RangeDownloader downloader = new RangeDownloader();
+    downloader.setParallelThresholdBytes( 1024 * 1024 );
+    downloader.setChunkSizeBytes( 1024 * 1024 );
+
+    File target = this.download( downloader );
+
+    assertThat( FileUtils.readFileToByteArray( target ), is( equalTo( this.content ) ) );
+    assertThat( this.requestedRanges.size(), is( 6 ) );
+  }
+
+  /**
+   * Tests that the digest of a file downloaded in one piece is computed while it is downloaded, across resumes.
+   */
+  @Test
+  public void testDigestIsComputedWhileDownloading() throws IOException {
+    this.connectionsToDrop.set( 1 );
+    File target = this.temporaryFolder.newFile();
+
+    RangeDownloader.Result result = new RangeDownloader().download( this.getUrl(), target );
+
+    assertThat( result.getDigest(), is( equalTo( Digests.sha256Of( target ) ) ) );
+    assertThat( this.requestedRanges.size(), is( 1 ) );
+  }
+
+  /**
+   * Tests that the digest of a file fetched in parallel chunks is not computed.
+   */
+  @Test
+  public void testDigestIsNotComputedForParallelChunks() throws IOException {
+    RangeDownloader downloader = new RangeDownloader();
+    downloader.setParallelThresholdBytes( 1024 * 1024 );
+    downloader.setChunkSizeBytes( 1024 * 1024 );
+
+    RangeDownloader.Result result = downloader.download( this.getUrl(), this.temporaryFolder.newFile() );
+
+    assertThat( result.getDigest(), is( nullValue() ) );
+  }
+
+  /**
+   * Tests that a download from a server without range support starts over when the connection drops.
+   */
+  @Test
+  public void testDroppedConnectionStartsOverWithoutRangeSupport() throws IOException {
+    this.acceptRanges = false;
+    this.connectionsToDrop.set( 1 );
+    RangeDownloader downloader = new RangeDownloader();
+    downloader.setParallelThresholdBytes( 0 );
+
+    File target = this.temporaryFolder.newFile();
+    RangeDownloader.Result result = downloader.download( this.getUrl(), target );
+
+    assertThat( FileUtils.readFileToByteArray( target ), is( equalTo( this.content ) ) );
+    assertThat( result.getDigest(), is( equalTo( Digests.sha256Of( target ) ) ) );
+    assertThat( this.requestedRanges, is( empty() ) );
+  }
+
+  /**
+   * Tests that the download gives up once every attempt failed.
+   */
+  @Test( expected = IOException.class )
+  public void testDownloadFailsAfterMaxAttempts() throws IOException {
+    this.connectionsToDrop.set( Integer.MAX_VALUE );
+    RangeDownloader downloader = new RangeDownloader();
+    downloader.setMaxAttempts( 2 );
+
+    downloader.download( this.getUrl(), this.temporaryFolder.newFile() );
+  }
+
+  /**
+   * Tests that every downloaded byte is reported on the progress of the calling thread, chunks included.
+   */
+  @Test
+  public void testProgressIsReported() throws IOException {
+    DownloadProgress progress = new DownloadProgress();
+    RangeDownloader downloader = new RangeDownloader();
+    downloader.setParallelThresholdBytes( 1024 * 1024 );
+    downloader.setChunkSizeBytes( 1024 * 1024 );
+
+    progress.attach();
+    try {
+      this.download( downloader );
+    } finally {
+      DownloadProgress.detach();
+    }
+
+    assertThat( progress.getTotalBytes(), is( (long) FILE_SIZE ) );
+    assertThat( progress.getBytesDownloaded(), is( (long) FILE_SIZE ) );
+  }
+}
@@ -15,26 +15,20 @@ package org.pentaho.marketplace.domain.services;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
+import org.apache.commons.io.FileUtils;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.kar.KarService;
 import org.osgi.service.cm.ConfigurationAdmin;
@@ -55,7 +49,6 @@ import org.pentaho.marketplace.domain.model.factories.interfaces.IPluginVersionF
 import org.pentaho.marketplace.domain.model.factories.interfaces.IVersionDataFactory;
 import org.pentaho.marketplace.domain.services.interfaces.IRemotePluginProvider;
 import org.pentaho.marketplace.util.XmlParserFactoryProducer;
-import org.pentaho.marketplace.util.web.HttpUtil;
 import org.pentaho.telemetry.ITelemetryService;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -67,12 +60,38 @@ public class DiPluginService extends BasePluginService {
 
   // region Properties
   private static final String BASE_PLUGINS_FOLDER_NAME = "plugins";
+  // outside of the plugins folder, so that a partially extracted plugin is never loaded
+  private static final String STAGING_FOLDER_NAME = "system" + File.separator + ".marketplace" + File.separator
+    + "staging";
+  private static final String ROLLBACK_FOLDER_NAME = "system" + File.separator + ".marketplace" + File.separator
+    + "rollback";
 
   // TODO turn into explicit dependency
-  private PluginRegistry getPluginRegistry() {
+  protected PluginRegistry getPluginRegistry() {
     return PluginRegistry.getInstance();
   }
 
+  /**
+   * @return the folder plugins are installed in, relative to the Kettle distribution directory
+   */
+  protected File getBasePluginsFolder() {
+    return new File( BASE_PLUGINS_FOLDER_NAME );
+  }
+
+  /**
+   * @return the folder packages are extracted into before being put in place
+   */
+  protected File getStagingFolder() {
+    return new File( STAGING_FOLDER_NAME );
+  }
+
+  /**
+   * @return the folder the previous version of a plugin is kept in, so that it can be restored
+   */
+  protected File getRollbackFolder( IPlugin plugin ) {
+    return new File( ROLLBACK_FOLDER_NAME, plugin.getId() );
+  }
+
   private BuildVersion getBuildVersion() {
     return BuildVersion.getInstance();
   }
@@ -151,8 +170,8 @@ public class DiPluginService extends BasePluginService {
     if ( !pluginFolderFile.exists() ) {
       this.getLogger().debug( "Plugin " + plugin.getId() + " not found at expected folder " + pluginFolderFile.getPath() );
 
-      pluginFolder = BASE_PLUGINS_FOLDER_NAME + File.separator + plugin.getId();
-      pluginFolderFile = new File( pluginFolder );
+      pluginFolderFile = new File( this.getBasePluginsFolder(), plugin.getId() );
+      pluginFolder = pluginFolderFile.getPath();
       if ( !pluginFolderFile.exists() ) {
         this.getLogger().debug( "Plugin " + plugin.getId() + " not found at expected folder " + pluginFolderFile.getPath() );
         return null;
@@ -210,10 +229,7 @@ public class DiPluginService extends BasePluginService {
   private Collection<String> getInstalledPluginIdsFromFolders() {
     Collection<String> pluginIds = new HashSet<>();
 
-    for ( MarketEntryType type : MarketEntryType.values() ) {
-      String pluginTypeFolderName = this.getInstallationSubfolder( type );
-      pluginTypeFolderName = BASE_PLUGINS_FOLDER_NAME + ( pluginTypeFolderName == null ? "" : Const.FILE_SEPARATOR + pluginTypeFolderName );
-      File pluginTypeFolder = new File( pluginTypeFolderName );
+    for ( File pluginTypeFolder : this.getPluginFolders() ) {
       File[] files = pluginTypeFolder.listFiles();
       if ( files != null ) {
         for ( File file : files ) {
@@ -228,6 +244,26 @@ public class DiPluginService extends BasePluginService {
     return pluginIds;
   }
 
+  /**
+   * Gets every folder where market entries may be installed
+   */
+  @Override
+  protected Collection<File> getPluginFolders() {
+    Collection<File> pluginTypeFolders = new ArrayList<>();
+
+    for ( MarketEntryType type : MarketEntryType.values() ) {
+      String pluginTypeFolderName = this.getInstallationSubfolder( type );
+      pluginTypeFolderName = this.getBasePluginsFolder().getPath()
+        + ( pluginTypeFolderName == null ? "" : Const.FILE_SEPARATOR + pluginTypeFolderName );
+      File pluginTypeFolder = new File( pluginTypeFolderName );
+      if ( !pluginTypeFolders.contains( pluginTypeFolder ) ) {
+        pluginTypeFolders.add( pluginTypeFolder );
+      }
+    }
+
+    return pluginTypeFolders;
+  }
+
   @Override
   protected boolean executeNonOsgiInstall( IPlugin plugin, IPluginVersion version ) {
     String parentFolderName = buildPluginsFolderPath( plugin );
@@ -245,15 +281,58 @@ public class DiPluginService extends BasePluginService {
     File pluginFolder = new File( parentFolderName + File.separator + plugin.getId() );
     this.getLogger().info( "Installing plugin in folder: " + pluginFolder.getAbsolutePath() );
 
+    File stagingFolder = new File( this.getStagingFolder(), plugin.getId() + "_" + System.currentTimeMillis() );
     try {
+      // the installed plugin is left untouched until the new one is completely extracted
+      unzipMarketEntry( stagingFolder, version.getDownloadUrl() );
+      File stagedPluginFolder = new File( stagingFolder, plugin.getId() );
+      createVersionXML( stagedPluginFolder, version );
+      swapPluginFolder( plugin, stagedPluginFolder, pluginFolder );
+      // anything else the package brings along is merged into the plugins folder
+      moveStagedFolders( stagingFolder, new File( parentFolderName ) );
+    } catch ( KettleException e ) {
+      this.getLogger().error( "ERROR on delete or create", e );
+      return false;
+    } finally {
+      FileUtils.deleteQuietly( stagingFolder );
+    }
 
+    return true;
+  }
+
+  /**
+   * Swaps the previous version of the plugin, kept in the rollback folder, with the installed one. Rolling back twice
+   * restores the upgrade.
+   */
+  @Override
+  protected boolean executeNonOsgiRollback( IPlugin plugin ) {
+    File rollbackFolder = this.getRollbackFolder( plugin );
+    if ( !rollbackFolder.isDirectory() ) {
+      this.getLogger().info( "No previous version of plugin " + plugin.getId() + " to restore." );
+      return false;
+    }
+
+    File pluginFolder = new File( buildPluginsFolderPath( plugin ) + File.separator + plugin.getId() );
+    this.getLogger().info( "Restoring previous version of plugin in folder: " + pluginFolder.getAbsolutePath() );
+
+    File replacedFolder = new File( this.getStagingFolder(), plugin.getId() + "_" + System.currentTimeMillis() );
+    try {
       if ( pluginFolder.exists() ) {
-        deleteDirectory( pluginFolder );
+        moveFolder( pluginFolder, replacedFolder );
       }
-      unzipMarketEntry( parentFolderName, version.getDownloadUrl() );
-      createVersionXML( plugin, version );
-    } catch ( KettleException e ) {
-      this.getLogger().error( "ERROR on delete or create", e );
+      try {
+        moveFolder( rollbackFolder, pluginFolder );
+      } catch ( IOException e ) {
+        if ( replacedFolder.exists() ) {
+          moveFolder( replacedFolder, pluginFolder );
+        }
+        throw e;
+      }
+      if ( replacedFolder.exists() ) {
+        moveFolder( replacedFolder, rollbackFolder );
+      }
+    } catch ( IOException e ) {
+      this.getLogger().error( "Error restoring previous version of plugin " + plugin.getId(), e );
       return false;
     }
 
@@ -268,7 +347,7 @@ public class DiPluginService extends BasePluginService {
 
     if ( !pluginFolder.exists() ) {
       // try plugins/plugin-id
-      File rootPluginFolder = new File( BASE_PLUGINS_FOLDER_NAME + File.separator + plugin.getId() );
+      File rootPluginFolder = new File( this.getBasePluginsFolder(), plugin.getId() );
       if ( !rootPluginFolder.exists() ) {
         this.getLogger().error( "No plugin was found in the expected folder : " + pluginFolder.getAbsolutePath() );
         return false;
@@ -276,11 +355,12 @@ public class DiPluginService extends BasePluginService {
       pluginFolder = rootPluginFolder;
     }
 
-    // delete plugin folder
+    // delete plugin folder, and the previous version so that a rollback can not bring the plugin back
     try {
-      deleteDirectory( pluginFolder );
-    } catch ( KettleException exception ) {
-      this.getLogger().error( "Error deleting plugin folder on uninstall of plugin " + plugin.getId() );
+      discardFolder( pluginFolder );
+      discardFolder( this.getRollbackFolder( plugin ) );
+    } catch ( IOException exception ) {
+      this.getLogger().error( "Error deleting plugin folder on uninstall of plugin " + plugin.getId(), exception );
       return false;
     }
 
@@ -288,19 +368,9 @@ public class DiPluginService extends BasePluginService {
   }
 
   @Override
-  public Map<String, IPlugin> getPlugins() {
-    Map<String, IPlugin> plugins = super.getPlugins();
-
-    // remove non PDI plugins
-    CollectionUtils.filter( plugins.entrySet(), new Predicate() {
-      @SuppressWarnings( "unchecked" )
-      @Override public boolean evaluate( Object mapEntry ) {
-        Map.Entry<String, IPlugin> mapEntryCasted = (Map.Entry<String, IPlugin>) mapEntry;
-        return mapEntryCasted.getValue().getType() != MarketEntryType.Platform;
-      }
-    } );
-
-    return plugins;
+  protected boolean isSupported( IPlugin plugin ) {
+    // only PDI plugins
+    return plugin.getType() != MarketEntryType.Platform;
   }
 
   /**
@@ -318,7 +388,7 @@ public class DiPluginService extends BasePluginService {
 
       // Use current directory (should be the Kettle distribution directory) as the root folder to install plugins
       // This is because plugin types are not guaranteed to search the ~/.kettle folder for plugins.
-      return BASE_PLUGINS_FOLDER_NAME + ( subfolder == null ? "" : Const.FILE_SEPARATOR + subfolder );
+      return this.getBasePluginsFolder().getPath() + ( subfolder == null ? "" : Const.FILE_SEPARATOR + subfolder );
     }
   }
 
@@ -384,39 +454,8 @@ public class DiPluginService extends BasePluginService {
     return subfolder;
   }
 
-  /**
-   * This is a copy of method. That method works fine if the plugin is used in the same version it is built from. When
-   * the plugin was dropped into PDI 4.2.1 then an invocation target exception was thrown when invoking
-   * JarfileGenerator.deleteDirectory().
-   *
-   * I placed the method here even though the cause of the exception is not that obvious. The
-   * JarfileGenerator.deleteDirectory method has not changed since 4.2.1.
-   *
-   * @param dir
-   */
-  private static void deleteDirectory( File dir ) throws KettleException {
-    if ( dir != null ) {
-      File[] files = dir.listFiles();
-      if ( files != null ) {
-        for ( int i = 0; i < files.length; i++ ) {
-          if ( files[i].isDirectory() ) {
-            deleteDirectory( files[i] );
-          } else if ( !files[i].delete() ) {
-            throw new KettleException( "Failed to delete " + files[i] );
-          }
-        }
-      }
-      if ( !dir.delete() ) {
-        throw new KettleException( "Failed to delete directory " + dir );
-      }
-    }
-  }
-
-  private void createVersionXML( IPlugin marketEntry, IPluginVersion version ) throws KettleException {
-    String pluginFolder = buildPluginsFolderPath( marketEntry ) + File.separator + marketEntry.getId();
-    String versionPath = pluginFolder + File.separator + "version.xml";
-    File parentFolder = new File( pluginFolder );
-    File file = new File( versionPath );
+  private void createVersionXML( File parentFolder, IPluginVersion version ) throws KettleException {
+    File file = new File( parentFolder, "version.xml" );
     if ( file != null ) {
       BufferedWriter bufferedWriter = null;
       try {
@@ -454,83 +493,71 @@ public class DiPluginService extends BasePluginService {
   }
 
   /**
-   * Unzips the plugin to the file system The passed MarkeyEntry has the URL of the zip file.
+   * Extracts the plugin package into a folder.
    * @throws KettleException
    */
-  private static void unzipMarketEntry( String folderName, String packageUrl ) throws KettleException {
+  private void unzipMarketEntry( File folder, String packageUrl ) throws KettleException {
+    try {
+      this.extractPackage( packageUrl, folder );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to unzip file " + packageUrl, e );
+    }
+  }
 
-    // Copy the file locally first
-    //
-    File tmpFile = null;
-    InputStream inputStream = null;
-    ZipInputStream zis = null;
+  /**
+   * Moves the extracted folders into the folder where plugins are installed, merging them with existing ones.
+   */
+  private static void moveStagedFolders( File stagingFolder, File targetFolder ) throws KettleException {
+    File[] stagedFiles = stagingFolder.listFiles();
+    if ( stagedFiles == null ) {
+      return;
+    }
 
-    try {
-      // using HttpUtil to handle http redirects
-      InputStream urlInputStream = HttpUtil.getURLInputStream( packageUrl );
-      if ( urlInputStream == null ) {
-        throw new KettleException( "Unable get file from " + packageUrl );
-      }
-      tmpFile = File.createTempFile( "plugin", ".zip" );
-      org.apache.commons.io.FileUtils.copyInputStreamToFile( urlInputStream, tmpFile );
-
-      // Read the package, extract in folder
-      //
-      inputStream = new FileInputStream( tmpFile );
-      zis = new ZipInputStream( inputStream );
-      ZipEntry zipEntry = null;
+    targetFolder.mkdirs();
+    for ( File stagedFile : stagedFiles ) {
+      File targetFile = new File( targetFolder, stagedFile.getName() );
       try {
-        zipEntry = zis.getNextEntry();
-      } catch ( IOException ioe ) {
-        throw new KettleException( ioe );
-      }
-      byte[] buffer = new byte[1024];
-      int bytesRead = 0;
-      FileOutputStream fos = null;
-
-      while ( zipEntry != null ) {
+        Files.move( stagedFile.toPath(), targetFile.toPath() );
+      } catch ( IOException e ) {
+        // the target already exists, or is in another file system
         try {
-          File file = new File( folderName + File.separator + zipEntry.getName() );
-
-          if ( zipEntry.isDirectory() ) {
-            file.mkdirs();
+          if ( stagedFile.isDirectory() ) {
+            FileUtils.copyDirectory( stagedFile, targetFile );
           } else {
-            file.getParentFile().mkdirs();
-
-            fos = new FileOutputStream( file );
-            while ( ( bytesRead = zis.read( buffer ) ) != -1 ) {
-              fos.write( buffer, 0, bytesRead );
-            }
-          }
-
-          zipEntry = zis.getNextEntry();
-        } catch ( FileNotFoundException fnfe ) {
-          throw new KettleException( fnfe );
-        } catch ( IOException ioe ) {
-          throw new KettleException( ioe );
-        } finally {
-          if ( fos != null ) {
-            try {
-              fos.close();
-            } catch ( IOException e ) {
-              // Ignore.
-            }
+            FileUtils.copyFile( stagedFile, targetFile );
           }
+        } catch ( IOException copyException ) {
+          throw new KettleException( "Unable to move " + stagedFile + " to " + targetFile, copyException );
         }
       }
-    } catch ( IOException e ) {
-      throw new KettleException( "Unable to unzip file " + packageUrl, e );
-    } finally {
-      if ( zis != null ) {
-        tmpFile.delete();
-        try {
-          zis.close();
-        } catch ( Exception e ) {
-          throw new KettleException( "Unable to close zip file stream (corrupt file?) of file " + tmpFile, e );
+    }
+  }
+
+  /**
+   * Puts the staged plugin folder in place of the installed one, which is kept in the rollback folder. The installed
+   * plugin is restored if the staged one can not be put in place.
+   */
+  private void swapPluginFolder( IPlugin plugin, File stagedPluginFolder, File pluginFolder ) throws KettleException {
+    File rollbackFolder = this.getRollbackFolder( plugin );
+    try {
+      // only the version installed right before is kept
+      discardFolder( rollbackFolder );
+
+      boolean upgrade = pluginFolder.exists();
+      if ( upgrade ) {
+        moveFolder( pluginFolder, rollbackFolder );
+      }
+      try {
+        moveFolder( stagedPluginFolder, pluginFolder );
+      } catch ( IOException e ) {
+        if ( upgrade ) {
+          moveFolder( rollbackFolder, pluginFolder );
         }
+        throw e;
       }
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to install " + stagedPluginFolder + " in " + pluginFolder, e );
     }
-
   }
 
 }
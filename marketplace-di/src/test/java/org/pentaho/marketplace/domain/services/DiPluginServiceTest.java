@@ -0,0 +1,400 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.marketplace.domain.services;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.karaf.features.FeaturesService;
+import org.apache.karaf.kar.KarService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.marketplace.domain.model.entities.MarketEntryType;
+import org.pentaho.marketplace.domain.model.entities.Plugin;
+import org.pentaho.marketplace.domain.model.entities.PluginVersion;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IDomainStatusMessage;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPlugin;
+import org.pentaho.marketplace.domain.model.entities.interfaces.IPluginVersion;
+import org.pentaho.marketplace.domain.model.factories.DomainStatusMessageFactory;
+import org.pentaho.marketplace.domain.model.factories.PluginVersionFactory;
+import org.pentaho.marketplace.domain.model.factories.VersionDataFactory;
+import org.pentaho.marketplace.domain.services.interfaces.IRemotePluginProvider;
+import org.pentaho.telemetry.ITelemetryService;
+import org.pentaho.telemetry.TelemetryEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DiPluginServiceTest {
+
+  private static final String PLUGIN_ID = "testplugin";
+  private static final int LIBRARY_COUNT = 4;
+  private static final int LIBRARY_SIZE = 64 * 1024;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final Map<String, byte[]> packages = new HashMap<>();
+  private final Set<String> droppedPackages = new HashSet<>();
+  private File basePluginsFolder;
+  private File stagingFolder;
+  private File rollbackFolder;
+  private DiPluginService service;
+  private List<String> filesStagedWhileDownloading;
+  private boolean installedWhileDownloading;
+
+  // region auxiliary methods
+  /**
+   * Installs plugins under a temporary folder, reading their packages from memory.
+   */
+  private class TestDiPluginService extends DiPluginService {
+    private final PluginRegistry pluginRegistry = mock( PluginRegistry.class );
+
+    TestDiPluginService( IRemotePluginProvider metadataPluginsProvider, ITelemetryService telemetryService ) {
+      super( metadataPluginsProvider, new VersionDataFactory(), new PluginVersionFactory(), mock( KarService.class ),
+        mock( FeaturesService.class ), mock( ConfigurationAdmin.class ), new DomainStatusMessageFactory(),
+        telemetryService );
+      this.setServerVersion( "9.0" );
+    }
+
+    @Override
+    protected PluginRegistry getPluginRegistry() {
+      return this.pluginRegistry;
+    }
+
+    @Override
+    protected File getBasePluginsFolder() {
+      return basePluginsFolder;
+    }
+
+    @Override
+    protected File getStagingFolder() {
+      return stagingFolder;
+    }
+
+    @Override
+    protected File getRollbackFolder( IPlugin plugin ) {
+      return new File( rollbackFolder, plugin.getId() );
+    }
+
+    @Override
+    protected InputStream openPackageStream( String downloadUrl ) {
+      byte[] content = packages.get( downloadUrl );
+      final boolean dropped = droppedPackages.contains( downloadUrl );
+      // half of a dropped package arrives before the connection drops
+      InputStream received = new ByteArrayInputStream( content, 0, dropped ? content.length / 2 : content.length );
+      return new SequenceInputStream( received, new InputStream() {
+        @Override
+        public int read() throws IOException {
+          // whatever was received is extracted by now
+          filesStagedWhileDownloading = listStagedFiles();
+          installedWhileDownloading = getPluginFolder().exists();
+          if ( dropped ) {
+            throw new IOException( "Connection dropped" );
+          }
+          return -1;
+        }
+      } );
+    }
+  }
+
+  private static String getDownloadUrl( String version ) {
+    return "http://marketplace.example.com/" + PLUGIN_ID + "-" + version + ".zip";
+  }
+
+  private IPluginVersion createVersion( String version ) throws IOException {
+    PluginVersion pluginVersion = new PluginVersion();
+    pluginVersion.setBranch( version );
+    pluginVersion.setVersion( version );
+    pluginVersion.setDownloadUrl( getDownloadUrl( version ) );
+    this.packages.put( getDownloadUrl( version ), createPackage( version ) );
+    return pluginVersion;
+  }
+
+  /**
+   * Creates the package of a plugin version, with a file telling the version and some libraries.
+   */
+  private static byte[] createPackage( String version ) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try ( ZipOutputStream zipOutputStream = new ZipOutputStream( content ) ) {
+      zipOutputStream.putNextEntry( new ZipEntry( PLUGIN_ID + "/version.txt" ) );
+      zipOutputStream.write( version.getBytes( StandardCharsets.UTF_8 ) );
+
+      Random random = new Random( 42 );
+      for ( int i = 0; i < LIBRARY_COUNT; i++ ) {
+        byte[] library = new byte[ LIBRARY_SIZE ];
+        random.nextBytes( library );
+        zipOutputStream.putNextEntry( new ZipEntry( PLUGIN_ID + "/lib/library-" + i + ".jar" ) );
+        zipOutputStream.write( library );
+      }
+    }
+    return content.toByteArray();
+  }
+
+  private File getPluginFolder() {
+    return new File( this.basePluginsFolder, "steps" + File.separator + PLUGIN_ID );
+  }
+
+  private File getPluginRollbackFolder() {
+    return new File( this.rollbackFolder, PLUGIN_ID );
+  }
+
+  /**
+   * @return the paths of the files in the staging folder, relative to it
+   */
+  private List<String> listStagedFiles() {
+    List<String> stagedFiles = new ArrayList<>();
+    if ( this.stagingFolder.isDirectory() ) {
+      for ( File file : FileUtils.listFiles( this.stagingFolder, null, true ) ) {
+        stagedFiles.add( this.stagingFolder.toURI().relativize( file.toURI() ).getPath() );
+      }
+    }
+    return stagedFiles;
+  }
+
+  private static String readVersion( File pluginFolder ) throws IOException {
+    return FileUtils.readFileToString( new File( pluginFolder, "version.txt" ), StandardCharsets.UTF_8 );
+  }
+
+  /**
+   * Creates a trash that keeps the discarded folders, instead of deleting them in the background.
+   */
+  private FolderTrash createTrash() {
+    FolderTrash trash = new FolderTrash( new File( this.temporaryFolder.getRoot(), "trash" ).getPath() );
+    trash.setDeleteExecutor( mock( ExecutorService.class ) );
+    return trash;
+  }
+
+  /**
+   * @return the versions of the plugin folders in the trash
+   */
+  private static List<String> listTrashedVersions( FolderTrash trash ) throws IOException {
+    List<String> versions = new ArrayList<>();
+    for ( File file : FileUtils.listFiles( trash.getTrashDir(), null, true ) ) {
+      if ( file.getName().equals( "version.txt" ) ) {
+        versions.add( readVersion( file.getParentFile() ) );
+      }
+    }
+    return versions;
+  }
+  // endregion
+
+  @Before
+  public void setup() throws IOException {
+    this.basePluginsFolder = this.temporaryFolder.newFolder( "plugins" );
+    this.stagingFolder = new File( this.temporaryFolder.getRoot(), "staging" );
+    this.rollbackFolder = new File( this.temporaryFolder.getRoot(), "rollback" );
+
+    Plugin plugin = new Plugin();
+    plugin.setId( PLUGIN_ID );
+    plugin.setName( "Test Plugin" );
+    plugin.setType( MarketEntryType.Step );
+    List<IPluginVersion> versions = new ArrayList<>();
+    versions.add( this.createVersion( "1.0" ) );
+    versions.add( this.createVersion( "2.0" ) );
+    plugin.setVersions( versions );
+
+    IRemotePluginProvider metadataPluginsProvider = mock( IRemotePluginProvider.class );
+    when( metadataPluginsProvider.getPlugins() )
+      .thenReturn( Collections.<String, IPlugin>singletonMap( PLUGIN_ID, plugin ) );
+
+    TelemetryEvent event = mock( TelemetryEvent.class );
+    when( event.getExtraInfo() ).thenReturn( new HashMap<String, String>() );
+    ITelemetryService telemetryService = mock( ITelemetryService.class );
+    when( telemetryService.createEvent( any( TelemetryEvent.Type.class ) ) ).thenReturn( event );
+
+    this.service = new TestDiPluginService( metadataPluginsProvider, telemetryService );
+  }
+
+  /**
+   * Tests that upgrading a plugin keeps the version it replaces in the rollback folder.
+   */
+  @Test
+  public void testUpgradeKeepsPreviousVersionForRollback() throws IOException {
+    // arrange
+    this.service.installPlugin( PLUGIN_ID, "1.0" );
+
+    // act
+    IDomainStatusMessage statusMessage = this.service.installPlugin( PLUGIN_ID, "2.0" );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.PLUGIN_INSTALLED_CODE ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( "2.0" ) );
+    assertThat( readVersion( this.getPluginRollbackFolder() ), is( "1.0" ) );
+  }
+
+  /**
+   * Tests that rolling back an upgrade restores the version it replaced, and keeps the upgrade for another rollback.
+   */
+  @Test
+  public void testRollbackRestoresPreviousVersion() throws IOException {
+    // arrange
+    this.service.installPlugin( PLUGIN_ID, "1.0" );
+    this.service.installPlugin( PLUGIN_ID, "2.0" );
+
+    // act
+    IDomainStatusMessage statusMessage = this.service.rollbackPlugin( PLUGIN_ID );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.PLUGIN_ROLLED_BACK_CODE ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( "1.0" ) );
+    assertThat( readVersion( this.getPluginRollbackFolder() ), is( "2.0" ) );
+  }
+
+  /**
+   * Tests that an upgrade whose package can not be staged leaves the installed version untouched.
+   */
+  @Test
+  public void testFailedStagingLeavesInstalledPluginUntouched() throws IOException {
+    // arrange
+    this.service.installPlugin( PLUGIN_ID, "1.0" );
+    this.droppedPackages.add( getDownloadUrl( "2.0" ) );
+
+    // act
+    IDomainStatusMessage statusMessage = this.service.installPlugin( PLUGIN_ID, "2.0" );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.FAIL_ERROR_CODE ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( "1.0" ) );
+    Collection<File> libraries = FileUtils.listFiles( new File( this.getPluginFolder(), "lib" ), null, false );
+    assertThat( libraries, hasSize( LIBRARY_COUNT ) );
+    assertThat( this.getPluginRollbackFolder().exists(), is( false ) );
+  }
+
+  /**
+   * Tests that a package is extracted into a staging folder of its own while it is downloaded, and only then put in
+   * place of the plugin folder.
+   */
+  @Test
+  public void testPackageIsStagedWhileDownloaded() throws IOException {
+    // act
+    IDomainStatusMessage statusMessage = this.service.installPlugin( PLUGIN_ID, "1.0" );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.PLUGIN_INSTALLED_CODE ) );
+    assertThat( this.filesStagedWhileDownloading, hasSize( 1 + LIBRARY_COUNT ) );
+    assertThat( this.filesStagedWhileDownloading, everyItem( startsWith( PLUGIN_ID + "_" ) ) );
+    assertThat( this.filesStagedWhileDownloading, hasItem( endsWith( "/" + PLUGIN_ID + "/version.txt" ) ) );
+    assertThat( this.installedWhileDownloading, is( false ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( "1.0" ) );
+    assertThat( this.stagingFolder.list(), is( emptyArray() ) );
+  }
+
+  /**
+   * Tests that what was staged of a package whose download is cut short is removed, and nothing is installed.
+   */
+  @Test
+  public void testStagingIsRemovedWhenDownloadIsCutShort() {
+    // arrange
+    this.droppedPackages.add( getDownloadUrl( "1.0" ) );
+
+    // act
+    IDomainStatusMessage statusMessage = this.service.installPlugin( PLUGIN_ID, "1.0" );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.FAIL_ERROR_CODE ) );
+    assertThat( this.filesStagedWhileDownloading, is( not( empty() ) ) );
+    assertThat( this.stagingFolder.list(), is( emptyArray() ) );
+    assertThat( this.getPluginFolder().exists(), is( false ) );
+  }
+
+  /**
+   * Tests that uninstalling a plugin moves its folder, and the previous version kept for rollback, into the trash.
+   */
+  @Test
+  public void testUninstallMovesPluginIntoTrash() throws IOException {
+    // arrange
+    FolderTrash trash = this.createTrash();
+    this.service.setFolderTrash( trash );
+    this.service.installPlugin( PLUGIN_ID, "1.0" );
+    this.service.installPlugin( PLUGIN_ID, "2.0" );
+
+    // act
+    IDomainStatusMessage statusMessage = this.service.uninstallPlugin( PLUGIN_ID );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.PLUGIN_UNINSTALLED_CODE ) );
+    assertThat( this.getPluginFolder().exists(), is( false ) );
+    assertThat( this.getPluginRollbackFolder().exists(), is( false ) );
+    assertThat( listTrashedVersions( trash ), containsInAnyOrder( "1.0", "2.0" ) );
+  }
+
+  /**
+   * Tests that swapping in a new version moves the version kept for rollback before it into the trash.
+   */
+  @Test
+  public void testSwapMovesReplacedRollbackIntoTrash() throws IOException {
+    // arrange
+    FolderTrash trash = this.createTrash();
+    this.service.setFolderTrash( trash );
+    this.service.installPlugin( PLUGIN_ID, "1.0" );
+    this.service.installPlugin( PLUGIN_ID, "2.0" );
+
+    // act
+    IDomainStatusMessage statusMessage = this.service.installPlugin( PLUGIN_ID, "1.0" );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.PLUGIN_INSTALLED_CODE ) );
+    assertThat( readVersion( this.getPluginFolder() ), is( "1.0" ) );
+    assertThat( readVersion( this.getPluginRollbackFolder() ), is( "2.0" ) );
+    assertThat( listTrashedVersions( trash ), contains( "1.0" ) );
+  }
+
+  /**
+   * Tests that a plugin folder that can not be moved into the trash is deleted right away.
+   */
+  @Test
+  public void testFailedDiscardFallsBackToDeletion() throws IOException {
+    // arrange
+    FolderTrash trash = mock( FolderTrash.class );
+    doThrow( new IOException( "Unable to create trash folder" ) ).when( trash ).discard( any( File.class ) );
+    this.service.setFolderTrash( trash );
+    this.service.installPlugin( PLUGIN_ID, "1.0" );
+    this.service.installPlugin( PLUGIN_ID, "2.0" );
+
+    // act
+    IDomainStatusMessage statusMessage = this.service.uninstallPlugin( PLUGIN_ID );
+
+    // assert
+    assertThat( statusMessage.getCode(), is( BasePluginService.PLUGIN_UNINSTALLED_CODE ) );
+    assertThat( this.getPluginFolder().exists(), is( false ) );
+    assertThat( this.getPluginRollbackFolder().exists(), is( false ) );
+  }
+}